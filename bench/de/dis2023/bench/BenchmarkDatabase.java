@@ -0,0 +1,159 @@
+package de.dis2023.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+
+import de.dis2023.core.BulkImporter;
+import de.dis2023.core.EstateService;
+import de.dis2023.core.Page;
+import de.dis2023.core.ShardMap;
+import de.dis2023.core.ShardedEstateService;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
+import de.dis2023.data.Person;
+
+/**
+ * Embedded H2 database with generated data for the benchmarks
+ */
+public class BenchmarkDatabase {
+	/**
+	 * Creates a service on a new in-memory database
+	 * @param name Name of the database, services with the same name share it
+	 */
+	public static EstateService open(String name) {
+		return open(name, new HashMap<String, String>());
+	}
+
+	/**
+	 * Creates a service on a new in-memory database
+	 * @param name Name of the database, services with the same name share it
+	 * @param settings Hibernate settings that override hibernate.h2.cfg.xml, e.g. the pool size
+	 */
+	public static EstateService open(String name, Map<String, String> settings) {
+		return new EstateService(configuration(name, settings));
+	}
+
+	/**
+	 * Returns the configuration of a new in-memory database
+	 * @see #open(String, Map)
+	 */
+	public static Configuration configuration(String name, Map<String, String> settings) {
+		Configuration configuration = new Configuration().configure("hibernate.h2.cfg.xml");
+		configuration.setProperty(AvailableSettings.URL, "jdbc:h2:mem:"+name+";DB_CLOSE_DELAY=-1");
+		configuration.setProperty(AvailableSettings.SHOW_SQL, "false");
+		for(Map.Entry<String, String> setting : settings.entrySet())
+			configuration.setProperty(setting.getKey(), setting.getValue());
+		return configuration;
+	}
+
+	/**
+	 * Creates a sharded service on embedded H2 files in target/shards, one file per
+	 * shard. The files are kept, a service with the same name opens them again.
+	 * @param name Name of the databases, the shards are name-0, name-1, ...
+	 * @param shardMap Assigns the agents to the shards
+	 * @param settings Hibernate settings for all shards
+	 */
+	public static ShardedEstateService openSharded(String name, ShardMap shardMap, Map<String, String> settings) {
+		List<Configuration> configurations = new ArrayList<Configuration>();
+		for(int k = 0; k < shardMap.getShardCount(); k++) {
+			Configuration configuration = configuration(name+"-"+k, settings);
+			configuration.setProperty(AvailableSettings.URL, "jdbc:h2:file:./target/shards/"+name+"-"+k);
+			configurations.add(configuration);
+		}
+		return new ShardedEstateService(shardMap, configurations);
+	}
+
+	/**
+	 * Adds agents with the logins agent0, agent1, ... and the given number of 
+	 * houses and apartments per agent, as well as persons person0, person1, ...
+	 */
+	public static void seed(EstateService service, int agents, int estatesPerAgent, int persons) {
+		service.bulkImport(BulkImporter.Type.AGENT, records(agents, i -> record(
+				"name", "Agent "+i, "address", "Street "+i, "login", "agent"+i, "password", "secret")),
+				BulkImporter.DEFAULT_BATCH_SIZE, BulkImporter.DEFAULT_COMMIT_INTERVAL);
+
+		service.bulkImport(BulkImporter.Type.PERSON, records(persons, i -> record(
+				"firstname", "First"+i, "name", "person"+i, "address", "Address "+i)),
+				BulkImporter.DEFAULT_BATCH_SIZE, BulkImporter.DEFAULT_COMMIT_INTERVAL);
+
+		//Interleaved, so the estates of an agent are spread over the tables
+		int count = agents * estatesPerAgent;
+		service.bulkImport(BulkImporter.Type.HOUSE, records(count, i -> record(
+				"manager", "agent"+(i % agents), "city", "Hamburg", "postalcode", String.valueOf(20000 + i % 1000),
+				"street", "House street", "streetnumber", String.valueOf(i), "squarearea", "150",
+				"floors", "2", "price", String.valueOf(300000 + i), "garden", "y")),
+				BulkImporter.DEFAULT_BATCH_SIZE, BulkImporter.DEFAULT_COMMIT_INTERVAL);
+
+		service.bulkImport(BulkImporter.Type.APARTMENT, records(count, i -> record(
+				"manager", "agent"+(i % agents), "city", "Berlin", "postalcode", String.valueOf(10000 + i % 1000),
+				"street", "Apartment street", "streetnumber", String.valueOf(i), "squarearea", "70",
+				"floor", String.valueOf(i % 6), "rent", String.valueOf(600 + i % 500), "rooms", "3",
+				"balcony", "y", "kitchen", "y")),
+				BulkImporter.DEFAULT_BATCH_SIZE, BulkImporter.DEFAULT_COMMIT_INTERVAL);
+	}
+
+	/**
+	 * Adds tenancy contracts for the first apartments and purchase contracts 
+	 * for the first houses of every agent, the partners are taken from the 
+	 * first 1000 persons
+	 */
+	public static void seedContracts(EstateService service, int contractsPerAgent) {
+		List<Integer> persons = new ArrayList<Integer>();
+		for(Person p : service.getPersonPage(Page.Cursor.first(), 1000).getItems())
+			persons.add(p.getId());
+
+		List<Integer> apartments = new ArrayList<Integer>();
+		List<Integer> houses = new ArrayList<Integer>();
+		for(EstateAgent agent : service.getAllEstateAgents()) {
+			List<EstateSummary> a = service.getApartmentSummariesForEstateAgent(agent);
+			List<EstateSummary> h = service.getHouseSummariesForEstateAgent(agent);
+			for(int i = 0; i < contractsPerAgent && i < a.size(); i++)
+				apartments.add(a.get(i).getId());
+			for(int i = 0; i < contractsPerAgent && i < h.size(); i++)
+				houses.add(h.get(i).getId());
+		}
+
+		service.bulkImport(BulkImporter.Type.TENANCY, records(apartments.size(), i -> record(
+				"contractno", String.valueOf(100000 + i), "date", "2023-01-01", "place", "Berlin",
+				"partner", String.valueOf(persons.get(i % persons.size())), "apartment", String.valueOf(apartments.get(i)),
+				"startdate", "2023-02-01", "duration", "24", "additionalcosts", "150")),
+				BulkImporter.DEFAULT_BATCH_SIZE, BulkImporter.DEFAULT_COMMIT_INTERVAL);
+
+		service.bulkImport(BulkImporter.Type.PURCHASE, records(houses.size(), i -> record(
+				"contractno", String.valueOf(200000 + i), "date", "2023-01-01", "place", "Hamburg",
+				"partner", String.valueOf(persons.get(i % persons.size())), "house", String.valueOf(houses.get(i)),
+				"noofinstallments", "12", "intrestrate", "3")),
+				BulkImporter.DEFAULT_BATCH_SIZE, BulkImporter.DEFAULT_COMMIT_INTERVAL);
+	}
+
+	static Map<String, String> record(String... keyValues) {
+		Map<String, String> record = new HashMap<String, String>();
+		for(int i = 0; i < keyValues.length; i += 2)
+			record.put(keyValues[i], keyValues[i + 1]);
+		return record;
+	}
+
+	static Iterator<Map<String, String>> records(int count, IntFunction<Map<String, String>> generator) {
+		return new Iterator<Map<String, String>>() {
+			private int next = 0;
+
+			public boolean hasNext() {
+				return next < count;
+			}
+
+			public Map<String, String> next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				return generator.apply(next++);
+			}
+		};
+	}
+}
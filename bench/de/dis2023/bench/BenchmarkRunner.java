@@ -0,0 +1,23 @@
+package de.dis2023.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler, so the allocation rate per 
+ * operation (gc.alloc.rate.norm) is reported next to the throughput.
+ *
+ * Build and run with JDK 21 or newer:
+ * mvn -Pbench package
+ * java -jar target/benchmarks.jar [JMH options, e.g. EstateBenchmark -p estatesPerAgent=10000]
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions options = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+	}
+}
@@ -0,0 +1,145 @@
+package de.dis2023.bench;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dis2023.data.Apartment;
+import de.dis2023.data.House;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+
+/**
+ * Contract operations of the EstateService. A house or apartment can only 
+ * have one contract, the add benchmarks get a new estate for every call. It 
+ * is saved before the call and not included in the measured time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContractBenchmark {
+	@State(Scope.Thread)
+	public static class NewHouse {
+		House house;
+
+		@Setup(Level.Invocation)
+		public void setUp(SeededDatabase db) {
+			house = db.newHouse();
+			db.service.addHouse(house);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class NewApartment {
+		Apartment apartment;
+
+		@Setup(Level.Invocation)
+		public void setUp(SeededDatabase db) {
+			apartment = db.newApartment();
+			db.service.addApartment(apartment);
+		}
+	}
+
+	@Benchmark
+	public TenancyContract getTenancyContractByID(SeededDatabase db) {
+		return db.service.getTenancyContractByID(db.pick(db.tenancyIds));
+	}
+
+	@Benchmark
+	public TenancyContract addTenancyContract(SeededDatabase db, NewApartment estate) {
+		TenancyContract tc = newTenancyContract(db, estate.apartment);
+		db.service.addTenancyContract(tc);
+		return tc;
+	}
+
+	@Benchmark
+	public TenancyContract updateTenancyContract(SeededDatabase db) {
+		db.tenancy.setAdditionalCosts(100 + db.unique() % 100);
+		db.service.updateInstance(db.tenancy);
+		return db.tenancy;
+	}
+
+	@Benchmark
+	public TenancyContract addAndDeleteTenancyContract(SeededDatabase db) {
+		TenancyContract tc = newTenancyContract(db, db.freeApartment);
+		db.service.addTenancyContract(tc);
+		db.service.deleteTenancyContract(tc);
+		return tc;
+	}
+
+	@Benchmark
+	public Set<TenancyContract> getAllTenancyContractsForEstateAgent(SeededDatabase db) {
+		return db.service.getAllTenancyContractsForEstateAgent(db.agent);
+	}
+
+	@Benchmark
+	public PurchaseContract getPurchaseContractById(SeededDatabase db) {
+		return db.service.getPurchaseContractById(db.pick(db.purchaseIds));
+	}
+
+	@Benchmark
+	public PurchaseContract addPurchaseContract(SeededDatabase db, NewHouse estate) {
+		PurchaseContract pc = newPurchaseContract(db, estate.house);
+		db.service.addPurchaseContract(pc);
+		return pc;
+	}
+
+	@Benchmark
+	public PurchaseContract updatePurchaseContract(SeededDatabase db) {
+		db.purchase.setIntrestRate(1 + db.unique() % 5);
+		db.service.updateInstance(db.purchase);
+		return db.purchase;
+	}
+
+	@Benchmark
+	public PurchaseContract addAndDeletePurchaseContract(SeededDatabase db) {
+		PurchaseContract pc = newPurchaseContract(db, db.freeHouse);
+		db.service.addPurchaseContract(pc);
+		db.service.deletePurchaseContract(pc);
+		return pc;
+	}
+
+	@Benchmark
+	public Set<PurchaseContract> getAllPurchaseContractsForEstateAgent(SeededDatabase db) {
+		return db.service.getAllPurchaseContractsForEstateAgent(db.agent);
+	}
+
+	private static TenancyContract newTenancyContract(SeededDatabase db, Apartment apartment) {
+		TenancyContract tc = new TenancyContract();
+		tc.setContractNo(db.unique());
+		tc.setDate(new Date());
+		tc.setPlace("Berlin");
+		tc.setApartment(apartment);
+		tc.setContractPartner(db.person);
+		tc.setStartDate(new Date());
+		tc.setDuration(12);
+		tc.setAdditionalCosts(120);
+		return tc;
+	}
+
+	private static PurchaseContract newPurchaseContract(SeededDatabase db, House house) {
+		PurchaseContract pc = new PurchaseContract();
+		pc.setContractNo(db.unique());
+		pc.setDate(new Date());
+		pc.setPlace("Hamburg");
+		pc.setHouse(house);
+		pc.setContractPartner(db.person);
+		pc.setNoOfInstallments(12);
+		pc.setIntrestRate(3);
+		return pc;
+	}
+}
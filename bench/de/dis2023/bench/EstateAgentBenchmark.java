@@ -0,0 +1,66 @@
+package de.dis2023.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dis2023.data.EstateAgent;
+
+/**
+ * Estate agent operations of the EstateService. Add benchmarks insert a new
+ * row per call, the delete benchmarks insert and delete a row per call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EstateAgentBenchmark {
+	@Benchmark
+	public EstateAgent getEstateAgentByID(SeededDatabase db) {
+		return db.service.getEstateAgentByID(db.pick(db.agentIds));
+	}
+
+	@Benchmark
+	public EstateAgent getEstateAgentByLogin(SeededDatabase db) {
+		return db.service.getEstateAgentByLogin("agent"+db.pick(db.agentIds) % db.agents);
+	}
+
+	@Benchmark
+	public EstateAgent addEstateAgent(SeededDatabase db) {
+		EstateAgent a = newAgent(db);
+		db.service.addEstateAgent(a);
+		return a;
+	}
+
+	@Benchmark
+	public EstateAgent updateEstateAgent(SeededDatabase db) {
+		db.agent.setAddress("Street "+db.unique());
+		db.service.updateInstance(db.agent);
+		return db.agent;
+	}
+
+	@Benchmark
+	public EstateAgent addAndDeleteEstateAgent(SeededDatabase db) {
+		EstateAgent a = newAgent(db);
+		db.service.addEstateAgent(a);
+		db.service.deleteEstateAgent(a);
+		return a;
+	}
+
+	private static EstateAgent newAgent(SeededDatabase db) {
+		int i = db.unique();
+		EstateAgent a = new EstateAgent();
+		a.setName("Benchmark agent "+i);
+		a.setAddress("Street "+i);
+		a.setLogin("bench"+i);
+		a.setPassword("secret");
+		return a;
+	}
+}
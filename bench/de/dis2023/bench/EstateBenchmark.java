@@ -0,0 +1,90 @@
+package de.dis2023.bench;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dis2023.data.Apartment;
+import de.dis2023.data.House;
+
+/**
+ * House and apartment operations of the EstateService. New estates are 
+ * managed by the first agent.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EstateBenchmark {
+	@Benchmark
+	public House getHouseById(SeededDatabase db) {
+		return db.service.getHouseById(db.pick(db.houseIds));
+	}
+
+	@Benchmark
+	public House addHouse(SeededDatabase db) {
+		House h = db.newHouse();
+		db.service.addHouse(h);
+		return h;
+	}
+
+	@Benchmark
+	public House updateHouse(SeededDatabase db) {
+		db.house.setPrice(300000 + db.unique());
+		db.service.updateInstance(db.house);
+		return db.house;
+	}
+
+	@Benchmark
+	public House addAndDeleteHouse(SeededDatabase db) {
+		House h = db.newHouse();
+		db.service.addHouse(h);
+		db.service.deleteHouse(h);
+		return h;
+	}
+
+	@Benchmark
+	public Set<House> getAllHousesForEstateAgent(SeededDatabase db) {
+		return db.service.getAllHousesForEstateAgent(db.agent);
+	}
+
+	@Benchmark
+	public Apartment getApartmentByID(SeededDatabase db) {
+		return db.service.getApartmentByID(db.pick(db.apartmentIds));
+	}
+
+	@Benchmark
+	public Apartment addApartment(SeededDatabase db) {
+		Apartment w = db.newApartment();
+		db.service.addApartment(w);
+		return w;
+	}
+
+	@Benchmark
+	public Apartment updateApartment(SeededDatabase db) {
+		db.apartment.setRent(600 + db.unique() % 500);
+		db.service.updateInstance(db.apartment);
+		return db.apartment;
+	}
+
+	@Benchmark
+	public Apartment addAndDeleteApartment(SeededDatabase db) {
+		Apartment w = db.newApartment();
+		db.service.addApartment(w);
+		db.service.deleteApartment(w);
+		return w;
+	}
+
+	@Benchmark
+	public Set<Apartment> getAllApartmentsForEstateAgent(SeededDatabase db) {
+		return db.service.getAllApartmentsForEstateAgent(db.agent);
+	}
+}
@@ -0,0 +1,56 @@
+package de.dis2023.bench;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import de.dis2023.core.EstateService;
+import de.dis2023.data.Estate;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.House;
+
+/**
+ * Compares the lookup of the houses of an agent: the old way (refresh the 
+ * agent with its eager estate set over the union of both tables and filter 
+ * in Java), the query on the house table and the address projection.
+ *
+ * Arguments: [estates per agent (10000)] [iterations (20)]
+ */
+public class EstateQueryBenchmark {
+	public static void main(String[] args) {
+		int estatesPerAgent = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		EstateService service = BenchmarkDatabase.open("estatequery");
+		BenchmarkDatabase.seed(service, 2, estatesPerAgent, 10);
+		EstateAgent agent = service.getEstateAgentByLogin("agent0");
+
+		System.out.println(estatesPerAgent+" houses and "+estatesPerAgent+" apartments per agent, 2 agents");
+		run("refresh agent + instanceof filter", iterations, () -> {
+			Set<House> houses = new HashSet<>();
+			service.refreshInstance(agent);
+			for (Estate estate : agent.getEstates()) {
+				if (estate instanceof House)
+					houses.add((House) estate);
+			}
+			return houses.size();
+		});
+		run("getAllHousesForEstateAgent", iterations, () -> service.getAllHousesForEstateAgent(agent).size());
+		run("getHouseSummariesForEstateAgent", iterations, () -> service.getHouseSummariesForEstateAgent(agent).size());
+		System.exit(0);
+	}
+
+	private static void run(String name, int iterations, Supplier<Integer> operation) {
+		//Warm up JIT, statement cache and connection pool
+		int rows = 0;
+		for (int i = 0; i < Math.max(3, iterations / 4); i++)
+			rows = operation.get();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			operation.get();
+		double millis = (System.nanoTime() - start) / 1e6 / iterations;
+
+		System.out.printf("%-36s %8.2f ms/op (%d rows)%n", name, millis, rows);
+	}
+}
@@ -0,0 +1,248 @@
+package de.dis2023.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.dis2023.core.EstateService;
+import de.dis2023.core.LatencyHistogram;
+import de.dis2023.core.Page;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
+import de.dis2023.http.EstateHttpServer;
+
+/**
+ * Measures the HTTP interface with many clients at the same time. The
+ * EstateHttpServer runs on an embedded H2 database in the same process,
+ * every client logs in as one of the agents and then sends a random mix of
+ * requests on its own virtual thread until the duration is over. All
+ * clients share one HttpClient, which keeps the connections open between
+ * the requests. Afterwards throughput, latency percentiles and errors per
+ * kind of request are printed.
+ *
+ * java -cp target/benchmarks.jar de.dis2023.bench.HttpClientBenchmark [options]
+ *   --clients N         Number of clients (default 200)
+ *   --duration S        Duration in seconds (default 30)
+ *   --pool N            Maximum size of the connection pool (default from hibernate.h2.cfg.xml)
+ *   --agents N          Number of agents, the clients are spread over them (default 50)
+ *   --estates N         Houses and apartments per agent (default 100)
+ *   --persons N         Number of persons (default 10000)
+ */
+public class HttpClientBenchmark {
+	private static final int PAGE_SIZE = 20;
+	private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+
+	private enum Request {
+		LOGIN, LIST_HOUSES, GET_HOUSE, UPDATE_HOUSE, LIST_PERSONS, LIST_CONTRACTS
+	}
+
+	//Measurements of one kind of request, shared by all clients
+	private static class Statistics {
+		private LatencyHistogram latency = new LatencyHistogram();
+		private LongAdder count = new LongAdder();
+		private LongAdder errors = new LongAdder();
+		private LongAdder bytes = new LongAdder();
+	}
+
+	private int clients = 200;
+	private int duration = 30;
+	private int poolSize = 0;
+	private int agents = 50;
+	private int estatesPerAgent = 100;
+	private int persons = 10000;
+
+	private EstateService service;
+	private EstateHttpServer server;
+	private HttpClient client;
+	private String baseUrl;
+	private Map<Integer, List<Integer>> houses = new HashMap<Integer, List<Integer>>();
+
+	private Map<Request, Statistics> statistics = new LinkedHashMap<Request, Statistics>();
+	private Map<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+
+	public static void main(String[] args) throws Exception {
+		HttpClientBenchmark benchmark = new HttpClientBenchmark();
+		benchmark.parse(args);
+		benchmark.setUp();
+		benchmark.run();
+		System.exit(0);
+	}
+
+	private void parse(String[] args) {
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			int value = Integer.parseInt(args[i + 1]);
+			switch(args[i]) {
+				case "--clients": clients = value; break;
+				case "--duration": duration = value; break;
+				case "--pool": poolSize = value; break;
+				case "--agents": agents = value; break;
+				case "--estates": estatesPerAgent = value; break;
+				case "--persons": persons = value; break;
+				default:
+					throw new IllegalArgumentException("Unknown option "+args[i]);
+			}
+		}
+		if(clients < 1 || duration < 1 || agents < 1)
+			throw new IllegalArgumentException("Clients, duration and agents must be positive");
+	}
+
+	private void setUp() throws IOException {
+		Map<String, String> settings = new HashMap<String, String>();
+		if(poolSize > 0)
+			settings.put("hibernate.hikari.maximumPoolSize", String.valueOf(poolSize));
+		service = BenchmarkDatabase.open("http", settings);
+
+		long start = System.nanoTime();
+		BenchmarkDatabase.seed(service, agents, estatesPerAgent, persons);
+		BenchmarkDatabase.seedContracts(service, 5);
+		System.out.printf("Seeded %d agents, %d houses and apartments, %d persons in %.1f s%n",
+				agents, 2 * agents * estatesPerAgent, persons, (System.nanoTime() - start) / 1e9);
+
+		for(int i = 0; i < agents; i++) {
+			EstateAgent agent = service.getEstateAgentByLogin("agent"+i);
+			List<Integer> ids = new ArrayList<Integer>();
+			for(EstateSummary s : service.getHouseSummaryPage(agent, Page.Cursor.first(), PAGE_SIZE).getItems())
+				ids.add(s.getId());
+			houses.put(agent.getId(), ids);
+		}
+
+		server = new EstateHttpServer(service, new InetSocketAddress("localhost", 0));
+		server.start();
+		baseUrl = "http://localhost:"+server.getPort();
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+		for(Request request : Request.values())
+			statistics.put(request, new Statistics());
+		service.getMetrics().reset();
+	}
+
+	private void run() throws InterruptedException {
+		System.out.printf("Running %d clients for %d s against %s%n", clients, duration, baseUrl);
+
+		long start = System.nanoTime();
+		long end = start + duration * 1000000000L;
+		try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for(int i = 0; i < clients; i++) {
+				String login = "agent"+(i % agents);
+				executor.submit(() -> simulateClient(login, end));
+			}
+		}
+		report(System.nanoTime() - start);
+		server.stop(0);
+	}
+
+	/**
+	 * Requests of one client, runs on its own virtual thread
+	 */
+	private void simulateClient(String login, long end) {
+		String body = send(Request.LOGIN, HttpRequest.newBuilder(URI.create(baseUrl+"/login"))
+				.POST(HttpRequest.BodyPublishers.ofString("{\"login\":\""+login+"\",\"password\":\"secret\"}")), null);
+		Matcher token = body == null ? null : TOKEN.matcher(body);
+		if(token == null || !token.find())
+			return;
+		String authorization = "Bearer "+token.group(1);
+		int agentId = service.getEstateAgentByLogin(login).getId();
+		List<Integer> ids = houses.get(agentId);
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while(System.nanoTime() < end) {
+			int r = random.nextInt(100);
+			if(r < 30) {
+				send(Request.LIST_HOUSES, get("/agents/"+agentId+"/houses?limit="+PAGE_SIZE), authorization);
+			} else if(r < 60 && !ids.isEmpty()) {
+				send(Request.GET_HOUSE, get("/houses/"+ids.get(random.nextInt(ids.size()))), authorization);
+			} else if(r < 75 && !ids.isEmpty()) {
+				String update = "{\"price\":"+(300000 + random.nextInt(100000))+"}";
+				send(Request.UPDATE_HOUSE, HttpRequest.newBuilder(URI.create(baseUrl+"/houses/"+ids.get(random.nextInt(ids.size()))))
+						.PUT(HttpRequest.BodyPublishers.ofString(update)), authorization);
+			} else if(r < 90) {
+				send(Request.LIST_PERSONS, get("/persons?after="+random.nextInt(persons)+"&limit=100"), authorization);
+			} else {
+				send(Request.LIST_CONTRACTS, get("/agents/"+agentId+"/tenancy-contracts"), authorization);
+			}
+		}
+	}
+
+	private HttpRequest.Builder get(String path) {
+		return HttpRequest.newBuilder(URI.create(baseUrl+path)).GET();
+	}
+
+	/**
+	 * Sends a request and records its latency
+	 * @return The body of the response or null if the request failed
+	 */
+	private String send(Request request, HttpRequest.Builder builder, String authorization) {
+		if(authorization != null)
+			builder.header("Authorization", authorization);
+		Statistics stats = statistics.get(request);
+		long start = System.nanoTime();
+		try {
+			HttpResponse<String> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+			stats.bytes.add(response.body().length());
+			if(response.statusCode() >= 400) {
+				error(stats, request+" "+response.statusCode()+": "+response.body());
+				return null;
+			}
+			return response.body();
+		} catch (IOException e) {
+			error(stats, request+": "+e);
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			stats.latency.record(System.nanoTime() - start);
+			stats.count.increment();
+		}
+	}
+
+	private void error(Statistics stats, String message) {
+		stats.errors.increment();
+		errors.computeIfAbsent(message, k -> new LongAdder()).increment();
+	}
+
+	private void report(long elapsedNanos) {
+		double seconds = elapsedNanos / 1e9;
+		System.out.printf("%n%-15s %9s %7s %9s %9s %9s %9s %9s%n",
+				"request", "count", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "KB/req");
+
+		long total = 0;
+		long totalErrors = 0;
+		for(Map.Entry<Request, Statistics> entry : statistics.entrySet()) {
+			Statistics stats = entry.getValue();
+			long count = stats.count.sum();
+			total += count;
+			totalErrors += stats.errors.sum();
+			System.out.printf("%-15s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.1f%n", entry.getKey().name().toLowerCase(),
+					count, stats.errors.sum(), count / seconds, stats.latency.getPercentileMillis(50),
+					stats.latency.getPercentileMillis(99), stats.latency.getPercentileMillis(99.9),
+					count == 0 ? 0 : stats.bytes.sum() / 1024.0 / count);
+		}
+		System.out.printf("%-15s %9d %7d %9.1f%n", "total", total, totalErrors, total / seconds);
+		System.out.println("Connection pool "+service.getConnectionPoolMetrics());
+
+		if(!errors.isEmpty()) {
+			System.out.println("\nErrors:");
+			for(Map.Entry<String, LongAdder> error : errors.entrySet())
+				System.out.printf("%7d x %s%n", error.getValue().sum(), error.getKey());
+		}
+
+		System.out.println("\nSlowest operations of the service:");
+		System.out.print(service.getMetrics().getTextReport());
+	}
+}
@@ -0,0 +1,288 @@
+package de.dis2023.bench;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import de.dis2023.authentication.AgentPrincipal;
+import de.dis2023.authentication.EstateAgentAuthenticator;
+import de.dis2023.authentication.LoginSessions;
+import de.dis2023.core.ConnectionPoolMetrics;
+import de.dis2023.core.EstateService;
+import de.dis2023.core.LatencyHistogram;
+import de.dis2023.core.Page;
+import de.dis2023.data.Apartment;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.TenancyContract;
+
+/**
+ * Simulates many estate agents working with one EstateService at the same
+ * time. Every agent runs on its own virtual thread, logs in through the
+ * EstateAgentAuthenticator and then executes a random mix of listing,
+ * editing and contract creation on an embedded H2 database until the
+ * duration is over. Afterwards throughput, latency percentiles, errors
+ * and the time spent waiting for locks and connections are printed.
+ *
+ * java -cp target/benchmarks.jar de.dis2023.bench.LoadSimulator [options]
+ *   --agents N          Number of simulated agents (default 100)
+ *   --duration S        Duration in seconds (default 30)
+ *   --mix L,E,C         Weights of listing, editing and contract creation (default 70,20,10)
+ *   --shared P          Share of the edits in percent that change one of a few houses
+ *                       all agents work on, to provoke lock conflicts (default 10)
+ *   --pool N            Maximum size of the connection pool (default from hibernate.h2.cfg.xml)
+ *   --estates N         Houses and apartments per agent (default 100)
+ *   --persons N         Number of persons (default 10000)
+ */
+public class LoadSimulator {
+	private static final int PAGE_SIZE = 20;
+	private static final int SHARED_HOUSES = 5;
+
+	private enum Operation {
+		LOGIN, LIST, EDIT, CONTRACT
+	}
+
+	//Measurements of one kind of operation, shared by all agents
+	private static class Statistics {
+		private LatencyHistogram latency = new LatencyHistogram();
+		private LongAdder count = new LongAdder();
+		private LongAdder errors = new LongAdder();
+		private LongAdder nanos = new LongAdder();
+	}
+
+	private int agents = 100;
+	private int duration = 30;
+	private int[] mix = {70, 20, 10};
+	private int shared = 10;
+	private int poolSize = 0;
+	private int estatesPerAgent = 100;
+	private int persons = 10000;
+
+	private EstateService service;
+	private LoginSessions sessions = new LoginSessions();
+	private List<Integer> personIds = new ArrayList<Integer>();
+	private List<Integer> sharedHouses = new ArrayList<Integer>();
+	private AtomicInteger contractNo = new AtomicInteger(1000000);
+
+	private Map<Operation, Statistics> statistics = new LinkedHashMap<Operation, Statistics>();
+	private Map<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+
+	public static void main(String[] args) throws InterruptedException {
+		LoadSimulator simulator = new LoadSimulator();
+		simulator.parse(args);
+		simulator.setUp();
+		simulator.run();
+		System.exit(0);
+	}
+
+	private void parse(String[] args) {
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch(args[i]) {
+				case "--agents": agents = Integer.parseInt(value); break;
+				case "--duration": duration = Integer.parseInt(value); break;
+				case "--shared": shared = Integer.parseInt(value); break;
+				case "--pool": poolSize = Integer.parseInt(value); break;
+				case "--estates": estatesPerAgent = Integer.parseInt(value); break;
+				case "--persons": persons = Integer.parseInt(value); break;
+				case "--mix":
+					String[] weights = value.split(",");
+					if(weights.length != 3)
+						throw new IllegalArgumentException("--mix needs three weights, e.g. 70,20,10");
+					for(int j = 0; j < 3; j++)
+						mix[j] = Integer.parseInt(weights[j].trim());
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option "+args[i]);
+			}
+		}
+		if(agents < 1 || duration < 1 || mix[0] + mix[1] + mix[2] <= 0)
+			throw new IllegalArgumentException("Agents, duration and the sum of the weights must be positive");
+	}
+
+	private void setUp() {
+		Map<String, String> settings = new HashMap<String, String>();
+		if(poolSize > 0)
+			settings.put("hibernate.hikari.maximumPoolSize", String.valueOf(poolSize));
+		service = BenchmarkDatabase.open("simulator", settings);
+
+		long start = System.nanoTime();
+		BenchmarkDatabase.seed(service, agents, estatesPerAgent, persons);
+		System.out.printf("Seeded %d agents, %d houses and apartments, %d persons in %.1f s%n",
+				agents, 2 * agents * estatesPerAgent, persons, (System.nanoTime() - start) / 1e9);
+
+		for(Person p : service.getPersonPage(Page.Cursor.first(), 1000).getItems())
+			personIds.add(p.getId());
+
+		EstateAgent first = service.getEstateAgentByLogin("agent0");
+		for(EstateSummary s : service.getHouseSummaryPage(first, Page.Cursor.first(), SHARED_HOUSES).getItems())
+			sharedHouses.add(s.getId());
+
+		for(Operation operation : Operation.values())
+			statistics.put(operation, new Statistics());
+		service.getMetrics().reset();
+	}
+
+	private void run() throws InterruptedException {
+		System.out.printf("Running %d agents for %d s, mix list=%d edit=%d contract=%d, %d%% shared edits%n",
+				agents, duration, mix[0], mix[1], mix[2], shared);
+
+		long start = System.nanoTime();
+		long end = start + duration * 1000000000L;
+		try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for(int i = 0; i < agents; i++) {
+				String login = "agent"+i;
+				executor.submit(() -> simulateAgent(login, end));
+			}
+		}
+		report(System.nanoTime() - start);
+	}
+
+	/**
+	 * Work of one agent, runs on its own virtual thread
+	 */
+	private void simulateAgent(String login, long end) {
+		EstateAgentAuthenticator authenticator = new EstateAgentAuthenticator(service, sessions);
+		String token = measure(Operation.LOGIN, () -> authenticator.login(login, "secret"));
+		AgentPrincipal principal = sessions.get(token);
+		if(principal == null)
+			return;
+		EstateAgent agent = principal.toEstateAgent();
+
+		List<Integer> houses = new ArrayList<Integer>();
+		for(EstateSummary s : service.getHouseSummaryPage(agent, Page.Cursor.first(), PAGE_SIZE).getItems())
+			houses.add(s.getId());
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while(System.nanoTime() < end) {
+			int r = random.nextInt(mix[0] + mix[1] + mix[2]);
+			if(r < mix[0]) {
+				measure(Operation.LIST, () -> list(agent, random));
+			} else if(r < mix[0] + mix[1]) {
+				List<Integer> targets = random.nextInt(100) < shared || houses.isEmpty() ? sharedHouses : houses;
+				int id = targets.get(random.nextInt(targets.size()));
+				measure(Operation.EDIT, () -> edit(id));
+			} else {
+				measure(Operation.CONTRACT, () -> createContract(agent, random));
+			}
+		}
+	}
+
+	private Object list(EstateAgent agent, ThreadLocalRandom random) {
+		switch(random.nextInt(4)) {
+			case 0:
+				return service.getHouseSummaryPage(agent, Page.Cursor.first(), PAGE_SIZE);
+			case 1:
+				return service.getApartmentSummaryPage(agent, Page.Cursor.first(), PAGE_SIZE);
+			case 2:
+				return service.getAllTenancyContractsForEstateAgent(agent);
+			default:
+				return service.searchPersons("person"+random.nextInt(persons), Page.Cursor.first(), PAGE_SIZE);
+		}
+	}
+
+	private Object edit(int houseId) {
+		return service.inTransaction("simulator.edit", () -> {
+			House h = service.getHouseById(houseId);
+			h.setPrice(h.getPrice() + 1);
+			service.updateInstance(h);
+			return h;
+		});
+	}
+
+	//An agent adds an apartment and rents it out
+	private Object createContract(EstateAgent agent, ThreadLocalRandom random) {
+		int partnerId = personIds.get(random.nextInt(personIds.size()));
+		int no = contractNo.incrementAndGet();
+		return service.inTransaction("simulator.contract", () -> {
+			Apartment w = new Apartment();
+			w.setManager(agent);
+			w.setCity("Hamburg");
+			w.setPostalcode(20000 + no % 1000);
+			w.setStreet("Simulated street");
+			w.setStreetnumber(String.valueOf(no));
+			w.setSquareArea(60);
+			w.setRent(800);
+			w.setRooms(2);
+			service.addApartment(w);
+
+			TenancyContract tc = new TenancyContract();
+			tc.setContractNo(no);
+			tc.setDate(new Date());
+			tc.setPlace("Hamburg");
+			tc.setContractPartner(service.getPersonById(partnerId));
+			tc.setApartment(w);
+			tc.setStartDate(new Date());
+			tc.setDuration(12);
+			tc.setAdditionalCosts(100);
+			service.addTenancyContract(tc);
+			return tc;
+		});
+	}
+
+	private <T> T measure(Operation operation, Supplier<T> work) {
+		Statistics stats = statistics.get(operation);
+		long start = System.nanoTime();
+		try {
+			return work.get();
+		} catch (RuntimeException e) {
+			stats.errors.increment();
+			Throwable cause = e;
+			while(cause.getCause() != null)
+				cause = cause.getCause();
+			errors.computeIfAbsent(cause.getClass().getSimpleName()+": "+cause.getMessage(), k -> new LongAdder()).increment();
+			return null;
+		} finally {
+			long nanos = System.nanoTime() - start;
+			stats.latency.record(nanos);
+			stats.count.increment();
+			stats.nanos.add(nanos);
+		}
+	}
+
+	private void report(long elapsedNanos) {
+		double seconds = elapsedNanos / 1e9;
+		System.out.printf("%n%-10s %9s %7s %9s %9s %9s %9s %9s%n",
+				"operation", "count", "errors", "ops/s", "avg ms", "p50 ms", "p99 ms", "p99.9 ms");
+
+		long total = 0;
+		long totalErrors = 0;
+		for(Map.Entry<Operation, Statistics> entry : statistics.entrySet()) {
+			Statistics stats = entry.getValue();
+			long count = stats.count.sum();
+			total += count;
+			totalErrors += stats.errors.sum();
+			System.out.printf("%-10s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey().name().toLowerCase(),
+					count, stats.errors.sum(), count / seconds, count == 0 ? 0 : stats.nanos.sum() / 1e6 / count,
+					stats.latency.getPercentileMillis(50), stats.latency.getPercentileMillis(99),
+					stats.latency.getPercentileMillis(99.9));
+		}
+		System.out.printf("%-10s %9d %7d %9.1f%n", "total", total, totalErrors, total / seconds);
+
+		System.out.printf("%nLock waits: %d transactions retried after lock conflicts%n",
+				service.getMetrics().getTransactionRetries());
+		ConnectionPoolMetrics pool = service.getConnectionPoolMetrics();
+		System.out.println("Connection pool "+pool);
+
+		if(!errors.isEmpty()) {
+			System.out.println("\nErrors:");
+			for(Map.Entry<String, LongAdder> error : errors.entrySet())
+				System.out.printf("%7d x %s%n", error.getValue().sum(), error.getKey());
+		}
+
+		System.out.println("\nSlowest operations of the service:");
+		System.out.print(service.getMetrics().getTextReport());
+	}
+}
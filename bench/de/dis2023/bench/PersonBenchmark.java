@@ -0,0 +1,59 @@
+package de.dis2023.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dis2023.data.Person;
+
+/**
+ * Person operations of the EstateService
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonBenchmark {
+	@Benchmark
+	public Person getPersonById(SeededDatabase db) {
+		return db.service.getPersonById(db.pick(db.personIds));
+	}
+
+	@Benchmark
+	public Person addPerson(SeededDatabase db) {
+		Person p = newPerson(db);
+		db.service.addPerson(p);
+		return p;
+	}
+
+	@Benchmark
+	public Person updatePerson(SeededDatabase db) {
+		db.person.setAddress("Address "+db.unique());
+		db.service.updateInstance(db.person);
+		return db.person;
+	}
+
+	@Benchmark
+	public Person addAndDeletePerson(SeededDatabase db) {
+		Person p = newPerson(db);
+		db.service.addPerson(p);
+		db.service.deletePerson(p);
+		return p;
+	}
+
+	private static Person newPerson(SeededDatabase db) {
+		int i = db.unique();
+		Person p = new Person();
+		p.setFirstname("Bench");
+		p.setName("Person "+i);
+		p.setAddress("Address "+i);
+		return p;
+	}
+}
@@ -0,0 +1,176 @@
+package de.dis2023.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.dis2023.core.EstateService;
+import de.dis2023.core.Page;
+import de.dis2023.data.Apartment;
+import de.dis2023.data.Estate;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+
+/**
+ * EstateService on an embedded H2 database, seeded once per fork. The size
+ * of the data set is set with the JMH parameters, e.g. -p persons=100000.
+ */
+@State(Scope.Benchmark)
+public class SeededDatabase {
+	@Param("10")
+	public int agents;
+
+	@Param("1000")
+	public int estatesPerAgent;
+
+	@Param("10000")
+	public int persons;
+
+	@Param("100")
+	public int contractsPerAgent;
+
+	EstateService service;
+
+	//Ids of the seeded rows, the benchmarks read them round robin
+	int[] agentIds;
+	int[] personIds;
+	int[] houseIds;
+	int[] apartmentIds;
+	int[] tenancyIds;
+	int[] purchaseIds;
+
+	//Detached rows that are changed by the update benchmarks and referenced by new rows
+	EstateAgent agent;
+	Person person;
+	House house;
+	Apartment apartment;
+	TenancyContract tenancy;
+	PurchaseContract purchase;
+
+	//Estates without a contract for the benchmarks that add and delete contracts
+	House freeHouse;
+	Apartment freeApartment;
+
+	private int next;
+	private int unique;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		service = BenchmarkDatabase.open("jmh"+System.nanoTime());
+		BenchmarkDatabase.seed(service, agents, estatesPerAgent, persons);
+		BenchmarkDatabase.seedContracts(service, contractsPerAgent);
+
+		List<Integer> ids = new ArrayList<Integer>();
+		for(EstateAgent a : service.getAllEstateAgents())
+			ids.add(a.getId());
+		agentIds = toArray(ids);
+
+		ids.clear();
+		Page<Person> page = service.getPersonPage(Page.Cursor.first(), 1000);
+		while(true) {
+			for(Person p : page.getItems())
+				ids.add(p.getId());
+			if(!page.hasNext())
+				break;
+			page = service.getPersonPage(page.getNextCursor(), 1000);
+		}
+		personIds = toArray(ids);
+
+		List<Integer> houses = new ArrayList<Integer>();
+		List<Integer> apartments = new ArrayList<Integer>();
+		List<Integer> tenancies = new ArrayList<Integer>();
+		List<Integer> purchases = new ArrayList<Integer>();
+		for(int id : agentIds) {
+			EstateAgent a = service.getEstateAgentByID(id);
+			for(EstateSummary h : service.getHouseSummariesForEstateAgent(a))
+				houses.add(h.getId());
+			for(EstateSummary w : service.getApartmentSummariesForEstateAgent(a))
+				apartments.add(w.getId());
+			for(TenancyContract tc : service.getAllTenancyContractsForEstateAgent(a))
+				tenancies.add(tc.getId());
+			for(PurchaseContract pc : service.getAllPurchaseContractsForEstateAgent(a))
+				purchases.add(pc.getId());
+		}
+		houseIds = toArray(houses);
+		apartmentIds = toArray(apartments);
+		tenancyIds = toArray(tenancies);
+		purchaseIds = toArray(purchases);
+
+		agent = service.getEstateAgentByID(agentIds[0]);
+		person = service.getPersonById(personIds[0]);
+		house = service.getHouseById(houseIds[0]);
+		apartment = service.getApartmentByID(apartmentIds[0]);
+		tenancy = service.getTenancyContractByID(tenancyIds[0]);
+		purchase = service.getPurchaseContractById(purchaseIds[0]);
+
+		freeHouse = newHouse();
+		service.addHouse(freeHouse);
+		freeApartment = newApartment();
+		service.addApartment(freeApartment);
+	}
+
+	/**
+	 * Creates a house of the first agent that is not saved yet
+	 */
+	House newHouse() {
+		House h = new House();
+		fill(h);
+		h.setFloors(2);
+		h.setPrice(350000);
+		h.setGarden(true);
+		return h;
+	}
+
+	/**
+	 * Creates an apartment of the first agent that is not saved yet
+	 */
+	Apartment newApartment() {
+		Apartment w = new Apartment();
+		fill(w);
+		w.setFloor(3);
+		w.setRent(800);
+		w.setRooms(3);
+		w.setKitchen(true);
+		return w;
+	}
+
+	private void fill(Estate e) {
+		e.setCity("Hamburg");
+		e.setPostalcode(22527);
+		e.setStreet("Benchmark street");
+		e.setStreetnumber(String.valueOf(unique()));
+		e.setSquareArea(100);
+		e.setManager(agent);
+	}
+
+	/**
+	 * Returns the next id of the array, one after another
+	 */
+	int pick(int[] ids) {
+		next = (next + 1) % ids.length;
+		return ids[next];
+	}
+
+	/**
+	 * Returns a number that was not returned before, e.g. for logins
+	 */
+	int unique() {
+		return ++unique;
+	}
+
+	private static int[] toArray(List<Integer> ids) {
+		int[] ret = new int[ids.size()];
+		for(int i = 0; i < ret.length; i++)
+			ret[i] = ids.get(i);
+		return ret;
+	}
+}
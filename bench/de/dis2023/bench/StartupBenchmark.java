@@ -0,0 +1,155 @@
+package de.dis2023.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.hibernate.cfg.Configuration;
+
+import de.dis2023.Main;
+import de.dis2023.core.EstateService;
+
+/**
+ * Measures the startup of the application in new JVMs: the time from
+ * starting the JVM until the main menu is printed and until the first
+ * query returned, on an embedded H2 database. Every variant is started
+ * several times after one unmeasured start:
+ *   sync           The EstateService is started before the menu is printed
+ *   async          The EstateService is started in the background, see EstateService.startAsync
+ *   async+appcds   Like async with the classes loaded from an AppCDS archive
+ *
+ * The archive is created by a training run, which starts the application
+ * once with -XX:ArchiveClassesAtExit. It is only valid for the same JDK
+ * and class path, e.g. for target/benchmarks.jar built with
+ * mvn -Pbench,appcds verify
+ * java -XX:SharedArchiveFile=target/startup.jsa -cp target/benchmarks.jar de.dis2023.Main
+ *
+ * java -cp target/benchmarks.jar de.dis2023.bench.StartupBenchmark [options]
+ *   --runs N            Measured starts per variant (default 5)
+ *   --archive FILE      AppCDS archive, async+appcds is skipped if it does not exist (default target/startup.jsa)
+ *   --train FILE        Only creates the archive FILE with a training run
+ *   --probe sync|async  Starts the application once and prints the markers, used by the benchmark
+ */
+public class StartupBenchmark {
+	//Printed by a probe when the menu is shown and when the first query returned
+	private static final String MENU = "startup.menu";
+	private static final String QUERY = "startup.query";
+
+	private int runs = 5;
+	private String archive = "target/startup.jsa";
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length == 2 && args[0].equals("--probe")) {
+			probe(args[1].equals("async"));
+			return;
+		}
+
+		StartupBenchmark benchmark = new StartupBenchmark();
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			switch(args[i]) {
+				case "--runs": benchmark.runs = Integer.parseInt(args[i + 1]); break;
+				case "--archive": benchmark.archive = args[i + 1]; break;
+				case "--train":
+					benchmark.train(args[i + 1]);
+					return;
+				default:
+					throw new IllegalArgumentException("Unknown option "+args[i]);
+			}
+		}
+		if(benchmark.runs < 1)
+			throw new IllegalArgumentException("At least one run is needed");
+		benchmark.run();
+	}
+
+	/**
+	 * Startup of the application in this JVM, the menu is printed before
+	 * or while the service is started
+	 */
+	private static void probe(boolean async) {
+		Supplier<Configuration> configuration = () -> BenchmarkDatabase.configuration("startup", new HashMap<String, String>());
+		CompletableFuture<EstateService> startup = async ? EstateService.startAsync(configuration)
+				: CompletableFuture.completedFuture(new EstateService(configuration.get()));
+
+		Main.createMainMenu().print();
+		System.out.println(MENU);
+
+		startup.join().getEstateAgentByLogin("agent0");
+		System.out.println(QUERY);
+		System.exit(0);
+	}
+
+	private void train(String file) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		start(Arrays.asList("-XX:ArchiveClassesAtExit="+file), "async");
+		System.out.printf("Created %s (%d KB) in %.1f s%n", file, new File(file).length() / 1024, (System.nanoTime() - start) / 1e9);
+	}
+
+	private void run() throws IOException, InterruptedException {
+		List<String> none = new ArrayList<String>();
+		measure("sync", none, "sync");
+		measure("async", none, "async");
+		if(new File(archive).exists())
+			measure("async+appcds", Arrays.asList("-XX:SharedArchiveFile="+archive), "async");
+		else
+			System.out.println("No archive "+archive+", create it with --train "+archive);
+	}
+
+	private void measure(String variant, List<String> jvmOptions, String mode) throws IOException, InterruptedException {
+		start(jvmOptions, mode);
+
+		long[][] times = new long[3][runs];
+		for(int i = 0; i < runs; i++) {
+			long[] t = start(jvmOptions, mode);
+			for(int j = 0; j < 3; j++)
+				times[j][i] = t[j];
+		}
+
+		if(variant.equals("sync"))
+			System.out.printf("%-14s %21s %21s %21s%n", "variant", "first menu ms", "first query ms", "exit ms");
+		StringBuilder line = new StringBuilder(String.format("%-14s", variant));
+		for(long[] t : times) {
+			Arrays.sort(t);
+			line.append(String.format(" %9.0f (min %6.0f)", t[runs / 2] / 1e6, t[0] / 1e6));
+		}
+		System.out.println(line);
+	}
+
+	/**
+	 * Starts a probe in a new JVM
+	 * @return Nanoseconds until the menu was printed, until the first query returned and until the JVM exited
+	 */
+	private long[] start(List<String> jvmOptions, String mode) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(jvmOptions);
+		command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), StartupBenchmark.class.getName(), "--probe", mode));
+
+		long[] ret = {-1, -1, -1};
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).redirectError(Redirect.DISCARD).start();
+		try(BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while((line = out.readLine()) != null) {
+				if(line.equals(MENU))
+					ret[0] = System.nanoTime() - start;
+				else if(line.equals(QUERY))
+					ret[1] = System.nanoTime() - start;
+			}
+		}
+		int exit = process.waitFor();
+		ret[2] = System.nanoTime() - start;
+		if(exit != 0 || ret[0] < 0 || ret[1] < 0)
+			throw new IllegalStateException("The probe failed with exit code "+exit+": "+String.join(" ", command));
+		return ret;
+	}
+}
@@ -1,50 +1,320 @@
 package de.dis2023;
 
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import de.dis2023.authentication.EstateAgentAuthenticator;
 import de.dis2023.authentication.PropertiesFileAuthenticator;
+import de.dis2023.core.BulkImporter;
+import de.dis2023.core.ChangeRelay;
+import de.dis2023.core.EstateRepository;
 import de.dis2023.core.EstateService;
+import de.dis2023.core.ImportResult;
+import de.dis2023.core.InMemoryEstateRepository;
+import de.dis2023.core.ScriptResult;
+import de.dis2023.core.ScriptRunner;
+import de.dis2023.core.ShardedEstateService;
+import de.dis2023.core.TenancyExpiryScheduler;
 import de.dis2023.editor.EstateEditor;
 import de.dis2023.editor.EstateAgentEditor;
 import de.dis2023.editor.PersonEditor;
 import de.dis2023.editor.ContractEditor;
+import de.dis2023.http.EstateHttpServer;
 import de.dis2023.menu.Menu;
+import de.dis2023.util.FormUtil;
+import de.dis2023.util.Helper;
+import de.dis2023.util.RecordReader;
 
 /**
  * Main class showing the main menu
  */
 public class Main {
-	private static EstateService service;
+	//Menu options of the main menu
+	private static final int MENU_ESTATE = 0;
+	private static final int MENU_PERSON= 1;
+	private static final int MENU_AGENT = 2;
+	private static final int MENU_CONTRACT = 3;
+	private static final int QUIT = 4;
+	private static final int LOGOUT = 5;
+
+	//Completed when the EstateService is started in the background
+	private static CompletableFuture<EstateService> startup;
+	//Used instead of the database if started with -Dstore=memory
+	private static EstateRepository memoryStore;
+	//Started instead of the EstateService if started with -Dstore=shards
+	private static CompletableFuture<ShardedEstateService> shardStartup;
+	//Agents log in against the database, created with the service
+	private static EstateAgentAuthenticator agentAuthenticator;
+
 	/**
-	 * Startet die Anwendung
+	 * Startet die Anwendung. With -Dstore=memory the data is kept in memory
+	 * and filled with the test data, e.g. for a demo without a database.
+	 * With -Dstore=shards [-Dshards.file=&lt;file&gt;] the estates are spread over
+	 * the databases described in the file, shards.properties by default,
+	 * see ShardedEstateService.load.
 	 */
 	public static void main(String[] args) {
-		service = new EstateService();
-		showMainMenu();
+		String store = System.getProperty("store", "database");
+		if(store.equals("memory")) {
+			memoryStore = new InMemoryEstateRepository();
+			memoryStore.addTestData();
+		} else if(store.equals("shards")) {
+			shardStartup = startShards(System.getProperty("shards.file", "shards.properties"));
+		} else {
+			startup = EstateService.startAsync();
+			startup.thenRun(Main::startMetricsDump);
+			startup.thenRun(Main::startExpiryScheduler);
+			startup.thenRun(Main::startChangeRelay);
+		}
+
+		if(args.length > 0 && args[0].equals("import")) {
+			runImport(args);
+			System.exit(0);
+		}
+
+		if(args.length > 0 && args[0].equals("script")) {
+			runScript(args);
+			System.exit(0);
+		}
+
+		if(args.length > 0 && args[0].equals("serve")) {
+			//Runs until the process is stopped
+			runServer(args);
+			return;
+		}
+
+		try {
+			showMainMenu();
+		} catch (NoSuchElementException e) {
+			//Piped input is used up
+			System.out.println();
+		}
 		System.exit(0);
 	}
+
+	/**
+	 * Starts the shards described in a properties file on a background thread
+	 */
+	private static CompletableFuture<ShardedEstateService> startShards(String file) {
+		return CompletableFuture.supplyAsync(() -> {
+			Properties properties = new Properties();
+			try (InputStream in = Files.newInputStream(Paths.get(file))) {
+				properties.load(in);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not read "+file, e);
+			}
+			return ShardedEstateService.load(properties);
+		}, task -> {
+			Thread thread = new Thread(task, "estate-shards-startup");
+			thread.setDaemon(true);
+			thread.start();
+		});
+	}
+
+	/**
+	 * Writes the statistics of the EstateService periodically if configured with
+	 * -Dmetrics.period=&lt;seconds&gt; [-Dmetrics.format=text|json] [-Dmetrics.file=&lt;file&gt;]
+	 * Without a file the statistics are written to stderr.
+	 */
+	public static void startMetricsDump() {
+		long period = Long.getLong("metrics.period", 0);
+		if(period <= 0)
+			return;
+
+		boolean json = System.getProperty("metrics.format", "text").equalsIgnoreCase("json");
+		service().getMetrics().startDump(period, json, openOutput(System.getProperty("metrics.file")));
+	}
+
+	/**
+	 * Lists the tenancy contracts ending soon periodically if configured with
+	 * -Dexpiry.period=&lt;seconds&gt; [-Dexpiry.window=&lt;days&gt;] [-Dexpiry.file=&lt;file&gt;]
+	 * Every contract is listed once, see TenancyExpiryScheduler. Without a file 
+	 * the contracts are written to stderr.
+	 */
+	public static void startExpiryScheduler() {
+		long period = Long.getLong("expiry.period", 0);
+		if(period <= 0)
+			return;
+
+		int window = Integer.getInteger("expiry.window", TenancyExpiryScheduler.DEFAULT_WINDOW_DAYS);
+		PrintStream out = openOutput(System.getProperty("expiry.file"));
+		TenancyExpiryScheduler scheduler = new TenancyExpiryScheduler(service(), tc -> out.println(
+				"Tenancy contract "+tc.getContractNo()+" ends on "+Helper.dateToString(tc.getEndDate())+": "+
+				tc.getApartment().getStreet()+" "+tc.getApartment().getStreetnumber()+", "+tc.getApartment().getCity()+
+				", tenant "+tc.getContractPartner().getFirstname()+" "+tc.getContractPartner().getName()),
+				window, TenancyExpiryScheduler.DEFAULT_BATCH_SIZE);
+		scheduler.start(period);
+	}
+
+	/**
+	 * Writes the changes of the entities to a file if the application is started with
+	 * -Dchanges.period=&lt;seconds&gt; [-Dchanges.file=&lt;file&gt;]
+	 * The position is stored as consumer "log", see ChangeRelay. Without a file 
+	 * the changes are written to stderr.
+	 */
+	public static void startChangeRelay() {
+		long period = Long.getLong("changes.period", 0);
+		if(period <= 0)
+			return;
+
+		PrintStream out = openOutput(System.getProperty("changes.file"));
+		ChangeRelay relay = new ChangeRelay(service(), "log", changes -> changes.forEach(out::println),
+				ChangeRelay.DEFAULT_BATCH_SIZE, ChangeRelay.DEFAULT_SETTLE_MILLIS);
+		relay.start(period);
+	}
+
+	//Appends to the file, stderr if there is none or it cannot be opened
+	private static PrintStream openOutput(String file) {
+		if(file == null)
+			return System.err;
+		try {
+			return new PrintStream(new FileOutputStream(file, true), true);
+		} catch (FileNotFoundException e) {
+			System.err.println("Could not open "+file+", writing to stderr: "+e.getMessage());
+			return System.err;
+		}
+	}
+
+	/**
+	 * Bulk import from the command line:
+	 * import &lt;agent|person|house|apartment|tenancy|purchase&gt; &lt;file.csv|file.json|-&gt; [batchSize] [commitInterval]
+	 */
+	public static void runImport(String[] args) {
+		if(args.length < 3) {
+			System.err.println("Usage: import <agent|person|house|apartment|tenancy|purchase> <file> [batchSize] [commitInterval]");
+			return;
+		}
+
+		BulkImporter.Type type = BulkImporter.Type.parse(args[1]);
+		int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : BulkImporter.DEFAULT_BATCH_SIZE;
+		int commitInterval = args.length > 4 ? Integer.parseInt(args[4]) : BulkImporter.DEFAULT_COMMIT_INTERVAL;
+
+		try (RecordReader records = RecordReader.open(args[2])) {
+			ImportResult result = service().bulkImport(type, records, batchSize, commitInterval);
+			System.out.println(result);
+			for(String error : result.getErrors())
+				System.err.println(error);
+		} catch (IOException e) {
+			System.err.println("Could not read "+args[2]+": "+e.getMessage());
+		}
+	}
 	
 	/**
-	 * Shows the main menu
+	 * Executes a command script from the command line, see ScriptRunner for the commands:
+	 * script &lt;file|-&gt; [batchSize]
 	 */
-	public static void showMainMenu() {
-		//Menu options
-		final int MENU_ESTATE = 0;
-		final int MENU_PERSON= 1;
-		final int MENU_AGENT = 2;
-		final int MENU_CONTRACT = 3;
-		final int QUIT = 4;
-		
-		//Create menu
+	public static void runScript(String[] args) {
+		if(args.length < 2) {
+			System.err.println("Usage: script <file|-> [batchSize]");
+			return;
+		}
+
+		int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : ScriptRunner.DEFAULT_BATCH_SIZE;
+		ScriptRunner runner = new ScriptRunner(service(), batchSize, System.out);
+
+		try (BufferedReader script = args[1].equals("-") ? FormUtil.getReader() : Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+			ScriptResult result = runner.run(script);
+			System.out.println(result);
+			for(String error : result.getErrors())
+				System.err.println(error);
+		} catch (IOException e) {
+			System.err.println("Could not read "+args[1]+": "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Serves the HTTP interface from the command line, see EstateHttpServer:
+	 * serve [port]
+	 */
+	public static void runServer(String[] args) {
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+		try {
+			EstateHttpServer server = new EstateHttpServer(repository(), new InetSocketAddress(port));
+			server.start();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+			System.out.println("Listening on http://localhost:"+server.getPort()+"/");
+		} catch (IOException e) {
+			System.err.println("Could not listen on port "+port+": "+e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Returns the EstateService, waits until it is started. The application
+	 * exits if the service could not be started.
+	 */
+	public static EstateService service() {
+		if(startup == null) {
+			System.err.println("This command needs one database, it is not available with -Dstore=memory or -Dstore=shards");
+			System.exit(1);
+		}
+		return started(startup, "EstateService");
+	}
+
+	/**
+	 * Returns the store of the editors, the in-memory store, the shards or the EstateService
+	 */
+	public static EstateRepository repository() {
+		if(memoryStore != null)
+			return memoryStore;
+		return shardStartup != null ? started(shardStartup, "shards") : service();
+	}
+
+	//Waits until the store is started, the application exits if it could not be started
+	private static <T> T started(CompletableFuture<T> startup, String name) {
+		if(!startup.isDone())
+			System.out.println("Connecting to the database...");
+		try {
+			return startup.join();
+		} catch (CompletionException e) {
+			System.err.println("Could not start the "+name+": "+e.getCause());
+			System.exit(1);
+			return null;
+		}
+	}
+
+	private static EstateAgentAuthenticator agentAuthenticator() {
+		if(agentAuthenticator == null)
+			agentAuthenticator = new EstateAgentAuthenticator(repository());
+		return agentAuthenticator;
+	}
+
+	/**
+	 * Creates the main menu, it does not need the database
+	 */
+	public static Menu createMainMenu() {
 		Menu mainMenu = new Menu("Main menu");
 		mainMenu.addEntry("Agent-Management", MENU_ESTATE);
 		mainMenu.addEntry("Person-Management", MENU_PERSON);
 		mainMenu.addEntry("Estate-Management", MENU_AGENT);
 		mainMenu.addEntry("Contract-Menu", MENU_CONTRACT);
+		mainMenu.addEntry("Logout", LOGOUT);
 		mainMenu.addEntry("QUIT", QUIT);
+		return mainMenu;
+	}
+
+	/**
+	 * Shows the main menu, the first action using the database waits until 
+	 * the EstateService is started
+	 */
+	public static void showMainMenu() {
+		Menu mainMenu = createMainMenu();
 		
-		//authentication options
+		//authentication options, agents stay logged in until they log out or are idle for 15 minutes
 		PropertiesFileAuthenticator pfa = new PropertiesFileAuthenticator("admin.properties");
-		EstateAgentAuthenticator ma = new EstateAgentAuthenticator(service);
 		
 		//Test data
 		//service.addTestData();
@@ -56,28 +326,32 @@ public class Main {
 			switch(response) {
 				case MENU_ESTATE:
 					if(pfa.authenticate()) {
-						EstateAgentEditor me = new EstateAgentEditor(service);
+						EstateAgentEditor me = new EstateAgentEditor(repository());
 						me.showEstateAgentMenu();
 					}
 					break;
 				case MENU_PERSON:
-					if(ma.authenticate()) {
-						PersonEditor pe = new PersonEditor(service);
+					if(agentAuthenticator().authenticate()) {
+						PersonEditor pe = new PersonEditor(repository());
 						pe.showPersonMenu();
 					}
 					break;
 				case MENU_AGENT:
-					if(ma.authenticate()) {
-						EstateEditor ie = new EstateEditor(service, ma.getLastAuthenticatedEstateAgent());
+					if(agentAuthenticator().authenticate()) {
+						EstateEditor ie = new EstateEditor(repository(), agentAuthenticator.getPrincipal());
 						ie.showEstateMenu();
 					}
 					break;
 				case MENU_CONTRACT:
-					if(ma.authenticate()) {
-						ContractEditor ve = new ContractEditor(service, ma.getLastAuthenticatedEstateAgent());
+					if(agentAuthenticator().authenticate()) {
+						ContractEditor ve = new ContractEditor(repository(), agentAuthenticator.getPrincipal());
 						ve.showContractMenu();
 					}
 					break;
+				case LOGOUT:
+					if(agentAuthenticator != null)
+						agentAuthenticator.logout();
+					break;
 				case QUIT:
 					return;
 			}
@@ -0,0 +1,47 @@
+package de.dis2023.authentication;
+
+import de.dis2023.data.EstateAgent;
+
+/**
+ * The estate agent who is logged in. Only id, login and name are kept, 
+ * the estates of the agent are not loaded.
+ */
+public final class AgentPrincipal {
+	private final int id;
+	private final String login;
+	private final String name;
+	
+	public AgentPrincipal(int id, String login, String name) {
+		this.id = id;
+		this.login = login;
+		this.name = name;
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public String getLogin() {
+		return login;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns a detached estate agent with the id, login and name of the principal, 
+	 * e.g. to register the agent as manager of a new estate
+	 */
+	public EstateAgent toEstateAgent() {
+		EstateAgent ea = new EstateAgent();
+		ea.setId(id);
+		ea.setLogin(login);
+		ea.setName(name);
+		return ea;
+	}
+	
+	public String toString() {
+		return name+" ("+login+")";
+	}
+}
@@ -1,52 +1,107 @@
 package de.dis2023.authentication;
 
-import de.dis2023.core.EstateService;
-import de.dis2023.data.EstateAgent;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import de.dis2023.core.EstateRepository;
+import de.dis2023.data.AgentCredentials;
 import de.dis2023.util.FormUtil;
 
 /**
- * Authenticates an agent
+ * Authenticates an agent. A successful login opens a session, the agent 
+ * at the console is only asked for the password again when the session 
+ * has expired or the agent has logged out.
  */
 public class EstateAgentAuthenticator implements Authenticator {
-	private EstateService service;
-	private EstateAgent lastAuthenticatedMakler;
+	private EstateRepository service;
+	private LoginSessions sessions;
+	
+	//Session of the agent logged in at the console
+	private String token;
 	
 	/**
 	 * Constructor
 	 * @param service Estate agent service to find the appropriate broker
 	 */
-	public EstateAgentAuthenticator(EstateService service) {
+	public EstateAgentAuthenticator(EstateRepository service) {
+		this(service, new LoginSessions());
+	}
+	
+	/**
+	 * Constructor
+	 * @param service Estate agent service to find the appropriate broker
+	 * @param sessions Sessions of the logged in agents, may be shared by several authenticators.
+	 * They are closed when the agent is deleted or changes login or password.
+	 */
+	public EstateAgentAuthenticator(EstateRepository service, LoginSessions sessions) {
 		this.service = service;
+		this.sessions = sessions;
+		service.addCredentialsListener(sessions);
 	}
 	
 	/**
-	 * Returns the agent object to the last successfully authenticated agent
+	 * Returns the agent logged in at the console
+	 * @return The agent or null if nobody is logged in or the session has expired
 	 */
-	public EstateAgent getLastAuthenticatedEstateAgent() {
-		return this.lastAuthenticatedMakler;
+	public AgentPrincipal getPrincipal() {
+		return sessions.get(token);
+	}
+	
+	public LoginSessions getSessions() {
+		return sessions;
 	}
 	
 	/**
-	 * Requests agent login and password and checks the input
+	 * Checks whether an agent is logged in at the console, 
+	 * otherwise requests login and password and checks the input
 	 */
 	public boolean authenticate() {
-		boolean ret;
+		if(getPrincipal() != null)
+			return true;
 		
 		String login = FormUtil.readString("Username");
 		String password = FormUtil.readPassword("Password");
 		
-		EstateAgent m = service.getEstateAgentByLogin(login);
+		token = login(login, password);
 		
-		if(m == null)
-			ret = false;
-		else
-			ret = password.equals(m.getPassword());
+		if(token == null)
+			FormUtil.showMessage("Wrong username or password!");
 		
-		lastAuthenticatedMakler = m;
+		return token != null;
+	}
+	
+	/**
+	 * Closes the session of the agent logged in at the console
+	 */
+	public void logout() {
+		sessions.close(token);
+		token = null;
+	}
+	
+	/**
+	 * Checks login and password and opens a session
+	 * @return The token of the session or null if login or password are wrong
+	 */
+	public String login(String login, String password) {
+		AgentPrincipal principal = authenticate(login, password);
+		return principal == null ? null : sessions.open(principal);
+	}
+	
+	/**
+	 * Checks login and password without reading them from the console. 
+	 * Only the credential columns of the agent are read.
+	 * @return The agent or null if login or password are wrong
+	 */
+	public AgentPrincipal authenticate(String login, String password) {
+		AgentCredentials c = service.getAgentCredentials(login);
 		
-		if(!ret)
-			FormUtil.showMessage("Wrong username or password!");
+		if(c == null || c.getPassword() == null || password == null)
+			return null;
+		
+		//Takes the same time no matter where the passwords differ
+		boolean ret = MessageDigest.isEqual(c.getPassword().getBytes(StandardCharsets.UTF_8), 
+				password.getBytes(StandardCharsets.UTF_8));
 		
-		return ret;
+		return ret ? new AgentPrincipal(c.getId(), c.getLogin(), c.getName()) : null;
 	}
 }
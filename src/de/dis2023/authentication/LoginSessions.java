@@ -0,0 +1,116 @@
+package de.dis2023.authentication;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import de.dis2023.core.CredentialsListener;
+
+/**
+ * Sessions of logged in estate agents. A login opens a session under a 
+ * random token. As long as the token is used within the idle timeout, 
+ * the agent does not have to enter the password again. The sessions of an
+ * agent are closed when the agent is deleted or its login or password is changed.
+ */
+public class LoginSessions implements CredentialsListener {
+	public static final long DEFAULT_IDLE_TIMEOUT_MINUTES = 15;
+	
+	private static class LoginSession {
+		private AgentPrincipal principal;
+		private volatile long lastAccess;
+		
+		private LoginSession(AgentPrincipal principal) {
+			this.principal = principal;
+			this.lastAccess = System.nanoTime();
+		}
+	}
+	
+	private SecureRandom random = new SecureRandom();
+	private Map<String, LoginSession> sessions = new ConcurrentHashMap<String, LoginSession>();
+	private long idleTimeoutNanos;
+	
+	public LoginSessions() {
+		this(DEFAULT_IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+	}
+	
+	/**
+	 * @param idleTimeout Time after which an unused session is closed
+	 * @param unit Unit of the timeout
+	 */
+	public LoginSessions(long idleTimeout, TimeUnit unit) {
+		if(idleTimeout <= 0)
+			throw new IllegalArgumentException("The idle timeout must be positive");
+		this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+	}
+	
+	/**
+	 * Opens a session for an authenticated agent
+	 * @return The token of the session
+	 */
+	public String open(AgentPrincipal principal) {
+		removeExpired();
+		
+		byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+		sessions.put(token, new LoginSession(principal));
+		return token;
+	}
+	
+	/**
+	 * Returns the agent of a session and resets its idle time
+	 * @param token The token of the session
+	 * @return The agent or null if the token is unknown or the session has expired
+	 */
+	public AgentPrincipal get(String token) {
+		if(token == null)
+			return null;
+		
+		LoginSession session = sessions.get(token);
+		if(session == null)
+			return null;
+		
+		long now = System.nanoTime();
+		if(now - session.lastAccess > idleTimeoutNanos) {
+			sessions.remove(token, session);
+			return null;
+		}
+		session.lastAccess = now;
+		return session.principal;
+	}
+	
+	/**
+	 * Closes a session, the token is not valid anymore
+	 */
+	public void close(String token) {
+		if(token != null)
+			sessions.remove(token);
+	}
+	
+	/**
+	 * Closes all sessions of an agent, e.g. after the password was changed
+	 * @param agentId The id of the agent
+	 */
+	public void closeAll(int agentId) {
+		sessions.values().removeIf(session -> session.principal.getId() == agentId);
+	}
+	
+	public void credentialsChanged(int agentId) {
+		closeAll(agentId);
+	}
+	
+	/**
+	 * Number of sessions that have not expired
+	 */
+	public int size() {
+		removeExpired();
+		return sessions.size();
+	}
+	
+	private void removeExpired() {
+		long now = System.nanoTime();
+		sessions.values().removeIf(session -> now - session.lastAccess > idleTimeoutNanos);
+	}
+}
@@ -1,11 +1,8 @@
 package de.dis2023.authentication;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.io.InputStream;
 import java.util.Properties;
 
 import de.dis2023.util.FormUtil;
@@ -23,12 +20,12 @@ public class PropertiesFileAuthenticator implements Authenticator {
 	 * @param propertiesFile The file name of the properties file containing user data.
 	 */
 	public PropertiesFileAuthenticator(String propertiesFile) {
-		try {
+		//Read as a stream, the file may be packed into a jar
+		try (InputStream stream = ClassLoader.getSystemResourceAsStream(propertiesFile)) {
+			if(stream == null)
+				throw new FileNotFoundException(propertiesFile);
 			Properties properties = new Properties();
-			URL url = ClassLoader.getSystemResource(propertiesFile);
-			FileInputStream stream = new FileInputStream(new File(url.toURI()));
 			properties.load(stream);
-			stream.close();
 			
 			this.username = properties.getProperty("username");
 			this.password = properties.getProperty("password");
@@ -36,8 +33,6 @@ public class PropertiesFileAuthenticator implements Authenticator {
 			e1.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
-		} catch (URISyntaxException e) {
-			e.printStackTrace();
 		}
 	}
 
@@ -0,0 +1,157 @@
+package de.dis2023.core;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import de.dis2023.data.Apartment;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+import de.dis2023.util.TaskExecutors;
+
+/**
+ * Asynchronous access to an EstateRepository. Every task runs on its own
+ * thread (a virtual thread on JDK 21 or newer) in its own session and
+ * transaction, so independent lookups run in parallel and can be combined, e.g.
+ * <pre>
+ * async.getApartmentByID(wid).thenCombine(async.getPersonById(pid), ...)
+ * </pre>
+ * The returned entities are detached. Tasks do not join a transaction
+ * of the calling thread.
+ *
+ * At most as many tasks run at the same time as the connection pool has
+ * connections. When all of them are busy, submitting a task blocks the
+ * caller until a task has finished, instead of letting the tasks time out
+ * while waiting for a connection. Tasks submitted from within a task run
+ * directly in the transaction of that task.
+ */
+public class AsyncEstateService implements AutoCloseable {
+	//Set while a thread executes a task of this service
+	private static final ThreadLocal<AsyncEstateService> running = new ThreadLocal<>();
+
+	private EstateRepository service;
+	private ExecutorService executor = TaskExecutors.newTaskExecutor("estate-async");
+	private Semaphore permits;
+	private int maxConcurrency;
+
+	/**
+	 * Creates the facade, usually obtained with {@link EstateRepository#async()}
+	 * @param service The repository executing the tasks
+	 * @param maxConcurrency Maximum number of tasks running at the same time
+	 */
+	public AsyncEstateService(EstateRepository service, int maxConcurrency) {
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("At least one task must be able to run");
+		this.service = service;
+		this.maxConcurrency = maxConcurrency;
+		this.permits = new Semaphore(maxConcurrency, true);
+	}
+
+	/**
+	 * Runs a unit of work in its own transaction on its own thread,
+	 * blocks while the maximum number of tasks is running
+	 * @param work The work to be done, see {@link EstateRepository#inTransaction(UnitOfWork)}
+	 * @return The result of the work, completed exceptionally if the work failed
+	 */
+	public <T> CompletableFuture<T> submit(UnitOfWork<T> work) {
+		if (running.get() == this) {
+			try {
+				return CompletableFuture.completedFuture(service.inTransaction(work));
+			} catch (RuntimeException e) {
+				return CompletableFuture.failedFuture(e);
+			}
+		}
+
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return CompletableFuture.failedFuture(e);
+		}
+
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				running.set(this);
+				try {
+					return service.inTransaction(work);
+				} finally {
+					running.remove();
+					permits.release();
+				}
+			}, executor);
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Runs a unit of work asynchronously and records it as an operation in the statistics
+	 * @see #submit(UnitOfWork)
+	 */
+	public <T> CompletableFuture<T> submit(String operation, UnitOfWork<T> work) {
+		return submit(() -> service.inTransaction(operation, work));
+	}
+
+	public CompletableFuture<EstateAgent> getEstateAgentByID(int id) {
+		return submit(() -> service.getEstateAgentByID(id));
+	}
+
+	public CompletableFuture<Person> getPersonById(int id) {
+		return submit(() -> service.getPersonById(id));
+	}
+
+	public CompletableFuture<House> getHouseById(int id) {
+		return submit(() -> service.getHouseById(id));
+	}
+
+	public CompletableFuture<Apartment> getApartmentByID(int id) {
+		return submit(() -> service.getApartmentByID(id));
+	}
+
+	public CompletableFuture<TenancyContract> getTenancyContractByID(int id) {
+		return submit(() -> service.getTenancyContractByID(id));
+	}
+
+	public CompletableFuture<PurchaseContract> getPurchaseContractById(int id) {
+		return submit(() -> service.getPurchaseContractById(id));
+	}
+
+	public CompletableFuture<Set<TenancyContract>> getAllTenancyContractsForEstateAgent(EstateAgent ea) {
+		return submit(() -> service.getAllTenancyContractsForEstateAgent(ea));
+	}
+
+	public CompletableFuture<Set<PurchaseContract>> getAllPurchaseContractsForEstateAgent(EstateAgent ea) {
+		return submit(() -> service.getAllPurchaseContractsForEstateAgent(ea));
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * Number of tasks that are running at the moment
+	 */
+	public int getRunningCount() {
+		return maxConcurrency - permits.availablePermits();
+	}
+
+	/**
+	 * Number of callers waiting until they can submit a task
+	 */
+	public int getWaitingCount() {
+		return permits.getQueueLength();
+	}
+
+	/**
+	 * Waits until all submitted tasks are done, no new tasks are accepted afterwards
+	 */
+	public void close() {
+		TaskExecutors.shutdownAndWait(executor);
+	}
+}
@@ -0,0 +1,340 @@
+package de.dis2023.core;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import de.dis2023.data.Apartment;
+import de.dis2023.data.ChangeRecord;
+import de.dis2023.data.Estate;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+import de.dis2023.util.Helper;
+
+/**
+ * Imports large amounts of records through a stateless session.
+ *
+ * Rows are inserted with JDBC batching and the transaction is committed
+ * periodically. References (manager login, contract partner, house and
+ * apartment) are resolved with one query per batch instead of one per row.
+ * Every row is recorded in the change outbox in the same transaction.
+ *
+ * Expected fields (case insensitive):
+ * agent:     name, address, login, password
+ * person:    firstname, name, address
+ * house:     manager (login), city, postalcode, street, streetnumber, squarearea, floors, price, garden
+ * apartment: manager (login), city, postalcode, street, streetnumber, squarearea, floor, rent, rooms, balcony, kitchen
+ * tenancy:   contractno, date, place, partner (person id), apartment (id), startdate, duration, additionalcosts
+ * purchase:  contractno, date, place, partner (person id), house (id), noofinstallments, intrestrate
+ * Dates are written as dd.MM.yyyy or yyyy-MM-dd.
+ */
+public class BulkImporter {
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final int DEFAULT_COMMIT_INTERVAL = 10000;
+
+	/**
+	 * The kinds of records that can be imported
+	 */
+	public enum Type {
+		AGENT, PERSON, HOUSE, APARTMENT, TENANCY, PURCHASE;
+
+		/**
+		 * Parses the type name used on the command line, e.g. "house"
+		 */
+		public static Type parse(String name) {
+			return valueOf(name.trim().toUpperCase());
+		}
+	}
+
+	private SessionFactory sessionFactory;
+	private int batchSize;
+	private int commitInterval;
+
+	//Resolved manager logins, kept for the whole import
+	private Map<String, Integer> agentIds = new HashMap<String, Integer>();
+
+	BulkImporter(SessionFactory sessionFactory, int batchSize, int commitInterval) {
+		if(batchSize < 1 || commitInterval < batchSize)
+			throw new IllegalArgumentException("Batch size must be positive and not larger than the commit interval");
+
+		this.sessionFactory = sessionFactory;
+		this.batchSize = batchSize;
+		this.commitInterval = commitInterval;
+	}
+
+	/**
+	 * Imports all records
+	 * @param type Kind of the records
+	 * @param records The records
+	 * @return Number of imported and rejected rows and the throughput
+	 */
+	public ImportResult importRecords(Type type, Iterator<Map<String, String>> records) {
+		ImportResult result = new ImportResult();
+		long start = System.nanoTime();
+
+		StatelessSession session = sessionFactory.openStatelessSession();
+		session.setJdbcBatchSize(batchSize);
+		Transaction tx = session.beginTransaction();
+
+		try {
+			List<Map<String, String>> batch = new ArrayList<Map<String, String>>(batchSize);
+			long row = 0;
+			long sinceCommit = 0;
+
+			while(records.hasNext()) {
+				batch.add(records.next());
+				row++;
+
+				if(batch.size() == batchSize || !records.hasNext()) {
+					importBatch(session, type, batch, row - batch.size() + 1, result);
+					sinceCommit += batch.size();
+					batch.clear();
+
+					if(sinceCommit >= commitInterval) {
+						tx.commit();
+						tx = session.beginTransaction();
+						sinceCommit = 0;
+					}
+				}
+			}
+			tx.commit();
+		} catch (RuntimeException e) {
+			if(tx.isActive())
+				tx.rollback();
+			throw e;
+		} finally {
+			session.close();
+		}
+
+		result.setElapsedNanos(System.nanoTime() - start);
+		return result;
+	}
+
+	private void importBatch(StatelessSession session, Type type, List<Map<String, String>> batch, long firstRow, ImportResult result) {
+		Set<Integer> partners = new HashSet<Integer>();
+		Set<Integer> estates = new HashSet<Integer>();
+
+		switch(type) {
+			case HOUSE:
+			case APARTMENT:
+				resolveAgents(session, batch);
+				break;
+			case TENANCY:
+			case PURCHASE:
+				String estateField = (type == Type.TENANCY) ? "apartment" : "house";
+				Class<?> estateClass = (type == Type.TENANCY) ? Apartment.class : House.class;
+				partners = existingIds(session, Person.class, collectIds(batch, "partner"));
+				estates = existingIds(session, estateClass, collectIds(batch, estateField));
+				break;
+			default:
+				break;
+		}
+
+		int imported = 0;
+		long row = firstRow;
+		List<ChangeRecord> changes = new ArrayList<ChangeRecord>(batch.size());
+		for(Map<String, String> record : batch) {
+			try {
+				Object entity = toEntity(type, record, partners, estates);
+				session.insert(entity);
+				changes.add(ChangeCapture.record((SharedSessionContractImplementor) session, entity, ChangeRecord.INSERT, null));
+				imported++;
+			} catch (IllegalArgumentException e) {
+				result.addRejected(row, e.getMessage());
+			}
+			row++;
+		}
+		//After the rows, so both kinds of inserts are batched
+		for(ChangeRecord change : changes)
+			session.insert(change);
+		result.addImported(imported);
+	}
+
+	private Object toEntity(Type type, Map<String, String> r, Set<Integer> partners, Set<Integer> estates) {
+		switch(type) {
+			case AGENT:
+				EstateAgent a = new EstateAgent();
+				a.setName(r.get("name"));
+				a.setAddress(r.get("address"));
+				a.setLogin(required(r, "login"));
+				a.setPassword(r.get("password"));
+				return a;
+			case PERSON:
+				Person p = new Person();
+				p.setFirstname(r.get("firstname"));
+				p.setName(r.get("name"));
+				p.setAddress(r.get("address"));
+				return p;
+			case HOUSE:
+				House h = new House();
+				fillEstate(h, r);
+				h.setFloors(toInt(r, "floors"));
+				h.setPrice(toInt(r, "price"));
+				h.setGarden(toBoolean(r, "garden"));
+				return h;
+			case APARTMENT:
+				Apartment w = new Apartment();
+				fillEstate(w, r);
+				w.setFloor(toInt(r, "floor"));
+				w.setRent(toInt(r, "rent"));
+				w.setRooms(toInt(r, "rooms"));
+				w.setBalcony(toBoolean(r, "balcony"));
+				w.setKitchen(toBoolean(r, "kitchen"));
+				return w;
+			case TENANCY:
+				TenancyContract tc = new TenancyContract();
+				tc.setContractNo(toInt(r, "contractno"));
+				tc.setDate(toDate(r, "date"));
+				tc.setPlace(r.get("place"));
+				tc.setContractPartner(personReference(r, partners));
+				Apartment apartment = new Apartment();
+				apartment.setId(reference(r, "apartment", estates));
+				tc.setApartment(apartment);
+				tc.setStartDate(toDate(r, "startdate"));
+				tc.setDuration(toInt(r, "duration"));
+				tc.setAdditionalCosts(toInt(r, "additionalcosts"));
+				return tc;
+			case PURCHASE:
+				PurchaseContract pc = new PurchaseContract();
+				pc.setContractNo(toInt(r, "contractno"));
+				pc.setDate(toDate(r, "date"));
+				pc.setPlace(r.get("place"));
+				pc.setContractPartner(personReference(r, partners));
+				House house = new House();
+				house.setId(reference(r, "house", estates));
+				pc.setHouse(house);
+				pc.setNoOfInstallments(toInt(r, "noofinstallments"));
+				pc.setIntrestRate(toInt(r, "intrestrate"));
+				return pc;
+		}
+		throw new IllegalArgumentException("Unknown type "+type);
+	}
+
+	private void fillEstate(Estate e, Map<String, String> r) {
+		String login = required(r, "manager");
+		Integer managerId = agentIds.get(login);
+		if(managerId == null)
+			throw new IllegalArgumentException("Unknown estate agent \""+login+"\"");
+
+		EstateAgent manager = new EstateAgent();
+		manager.setId(managerId);
+		e.setManager(manager);
+		e.setCity(r.get("city"));
+		e.setPostalcode(toInt(r, "postalcode"));
+		e.setStreet(r.get("street"));
+		e.setStreetnumber(r.get("streetnumber"));
+		e.setSquareArea(toInt(r, "squarearea"));
+	}
+
+	private Person personReference(Map<String, String> r, Set<Integer> partners) {
+		Person p = new Person();
+		p.setId(reference(r, "partner", partners));
+		return p;
+	}
+
+	/**
+	 * Looks up all manager logins of the batch that are not known yet
+	 */
+	private void resolveAgents(StatelessSession session, List<Map<String, String>> batch) {
+		Set<String> logins = new HashSet<String>();
+		for(Map<String, String> r : batch) {
+			String login = r.get("manager");
+			if(login != null && !agentIds.containsKey(login))
+				logins.add(login);
+		}
+		if(logins.isEmpty())
+			return;
+
+		String hql = "select a.login, a.id from EstateAgent a where a.login in (:logins)";
+		for(List<String> chunk : Helper.partition(logins, EstateService.MAX_IN_LIST)) {
+			List<Object[]> rows = session.createQuery(hql, Object[].class).setParameterList("logins", chunk).list();
+			for(Object[] row : rows)
+				agentIds.put((String) row[0], (Integer) row[1]);
+		}
+	}
+
+	/**
+	 * Returns which of the given ids exist for the entity
+	 */
+	private Set<Integer> existingIds(StatelessSession session, Class<?> entity, Collection<Integer> ids) {
+		Set<Integer> ret = new HashSet<Integer>();
+		if(ids.isEmpty())
+			return ret;
+
+		String hql = "select e.id from "+entity.getSimpleName()+" e where e.id in (:ids)";
+		for(List<Integer> chunk : Helper.partition(ids, EstateService.MAX_IN_LIST))
+			ret.addAll(session.createQuery(hql, Integer.class).setParameterList("ids", chunk).list());
+		return ret;
+	}
+
+	private static Set<Integer> collectIds(List<Map<String, String>> batch, String field) {
+		Set<Integer> ids = new HashSet<Integer>();
+		for(Map<String, String> r : batch) {
+			try {
+				ids.add(Integer.parseInt(r.get(field).trim()));
+			} catch (NumberFormatException | NullPointerException e) {
+				//Reported when the row is converted
+			}
+		}
+		return ids;
+	}
+
+	private static int reference(Map<String, String> r, String field, Set<Integer> existing) {
+		int id = toInt(r, field);
+		if(!existing.contains(id))
+			throw new IllegalArgumentException("Unknown "+field+" "+id);
+		return id;
+	}
+
+	static String required(Map<String, String> r, String field) {
+		String value = r.get(field);
+		if(value == null || value.isEmpty())
+			throw new IllegalArgumentException("Missing field "+field);
+		return value;
+	}
+
+	static int toInt(Map<String, String> r, String field) {
+		String value = r.get(field);
+		if(value == null || value.trim().isEmpty())
+			return 0;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Field "+field+" is not a number: "+value);
+		}
+	}
+
+	static boolean toBoolean(Map<String, String> r, String field) {
+		String value = r.get(field);
+		if(value == null)
+			return false;
+		value = value.trim().toLowerCase();
+		return value.equals("true") || value.equals("y") || value.equals("yes") || value.equals("1");
+	}
+
+	static Date toDate(Map<String, String> r, String field) {
+		String value = required(r, field).trim();
+		String pattern = value.contains("-") ? "yyyy-MM-dd" : "dd.MM.yyyy";
+		try {
+			return new SimpleDateFormat(pattern).parse(value);
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Field "+field+" is not a date: "+value);
+		}
+	}
+}
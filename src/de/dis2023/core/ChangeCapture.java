@@ -0,0 +1,97 @@
+package de.dis2023.core;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+
+import de.dis2023.data.ChangeRecord;
+
+/**
+ * Appends the changes of the entities to the outbox table change_outbox
+ * in the transaction of the change, so a change is recorded if and only
+ * if it is committed.
+ *
+ * EstateService and the BulkImporter record what they change themselves,
+ * like the PortfolioAnalytics. Single objects are recorded with their
+ * version and the changed properties, the rows of a bulk statement with
+ * one insert ... select over the affected rows.
+ */
+class ChangeCapture {
+	void inserted(Session session, Object entity) {
+		session.persist(record(session.unwrap(SharedSessionContractImplementor.class), entity, ChangeRecord.INSERT, null));
+	}
+
+	/**
+	 * Records an update, after the flush so the record has the new version
+	 * @param changedFields The changed properties, nothing is recorded if there are none
+	 */
+	void updated(Session session, Object entity, List<String> changedFields) {
+		if (!changedFields.isEmpty())
+			session.persist(record(session.unwrap(SharedSessionContractImplementor.class), entity, ChangeRecord.UPDATE, String.join(",", changedFields)));
+	}
+
+	void deleted(Session session, Object entity) {
+		session.persist(record(session.unwrap(SharedSessionContractImplementor.class), entity, ChangeRecord.DELETE, null));
+	}
+
+	/**
+	 * Records the change of all rows a bulk statement changes, before the statement runs.
+	 * Updates must be versioned, the records get the version after the update.
+	 * @param entity The entity name, e.g. House
+	 * @param changedFields The changed properties of an update, null for deletes
+	 * @param where Condition on the alias e with the parameter :id
+	 * @return The number of records
+	 */
+	int recordAll(Session session, String entity, String operation, String changedFields, String where, int id) {
+		String fields = changedFields == null ? "cast(null as String)" : "'" + changedFields + "'";
+		String version = operation.equals(ChangeRecord.UPDATE) ? "e.version + 1" : "e.version";
+		return session.createMutationQuery("insert into ChangeRecord (entityType, entityId, version, operation, changedFields, recorded) " +
+				"select '" + entity + "', e.id, " + version + ", '" + operation + "', " + fields + ", :now from " + entity + " e where " + where)
+				.setParameter("id", id).setParameter("now", new Date()).executeUpdate();
+	}
+
+	/**
+	 * Returns the names of the properties that an edited object changes, the version
+	 * and collections are skipped
+	 * @param session The session the loaded object belongs to
+	 * @param loaded The object as loaded from the database by the session
+	 * @param edited The new state, a detached copy or the loaded object itself
+	 */
+	static List<String> changedFields(SharedSessionContractImplementor session, Object loaded, Object edited) {
+		EntityPersister persister = session.getEntityPersister(null, loaded);
+		Object[] before = session.getPersistenceContextInternal().getEntry(loaded).getLoadedState();
+		Object[] after = persister.getValues(edited);
+		String[] names = persister.getPropertyNames();
+		Type[] types = persister.getPropertyTypes();
+
+		List<String> ret = new ArrayList<String>();
+		for (int i = 0; i < names.length; i++) {
+			if (i == persister.getVersionProperty() || types[i].isCollectionType())
+				continue;
+			if (types[i].isDirty(before[i], after[i], session))
+				ret.add(names[i]);
+		}
+		return ret;
+	}
+
+	/**
+	 * Creates the record of a change, for sessions and stateless sessions
+	 */
+	static ChangeRecord record(SharedSessionContractImplementor session, Object entity, String operation, String changedFields) {
+		EntityPersister persister = session.getEntityPersister(null, entity);
+		ChangeRecord ret = new ChangeRecord();
+		ret.setEntityType(Hibernate.getClass(entity).getSimpleName());
+		ret.setEntityId((Integer) persister.getIdentifier(entity, session));
+		ret.setVersion(persister.isVersioned() ? (Integer) persister.getVersion(entity) : 0);
+		ret.setOperation(operation);
+		ret.setChangedFields(changedFields);
+		ret.setRecorded(new Date());
+		return ret;
+	}
+}
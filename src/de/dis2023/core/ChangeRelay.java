@@ -0,0 +1,135 @@
+package de.dis2023.core;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import de.dis2023.data.ChangeOffset;
+import de.dis2023.data.ChangeRecord;
+
+/**
+ * Delivers the changes recorded in the outbox to an in-process consumer,
+ * e.g. to update a portal or a reporting database with the deltas instead
+ * of reading the whole tables.
+ *
+ * The relay reads the outbox in the order of the ids, in batches of one
+ * transaction each. The handler gets the batch in the transaction, the
+ * position of the consumer (the id of the last change) is stored in
+ * change_offset in the same transaction. The position is locked while a
+ * batch is processed, so only one relay per consumer delivers at a time.
+ * If the handler or the commit fails, the batch is delivered again: every
+ * change is delivered at least once, the handler has to ignore changes it
+ * has seen before, e.g. by their version.
+ *
+ * The ids are taken from the sequence when a change is recorded, so a
+ * transaction may commit changes with smaller ids after another one. A
+ * batch therefore ends before the first gap in the ids, the position never
+ * passes an id that may still be committed. A gap is only passed once the
+ * change after it is older than the settle time, then the missing ids are
+ * taken as rolled back transactions.
+ */
+public class ChangeRelay implements AutoCloseable {
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final long DEFAULT_SETTLE_MILLIS = 60000;
+
+	private EstateService service;
+	private String consumer;
+	private Consumer<List<ChangeRecord>> handler;
+	private int batchSize;
+	private long settleMillis;
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Creates the relay, the changes are delivered by {@link #start(long)} or {@link #runOnce()}
+	 * @param service The service recording the changes
+	 * @param consumer The name the position is stored under
+	 * @param handler Called with every batch in the transaction of the batch
+	 * @param batchSize Maximum number of changes per batch
+	 * @param settleMillis Time after which a gap in the ids is passed, longer than the transactions recording changes
+	 */
+	public ChangeRelay(EstateService service, String consumer, Consumer<List<ChangeRecord>> handler, int batchSize, long settleMillis) {
+		if (batchSize < 1 || settleMillis < 0)
+			throw new IllegalArgumentException("A batch needs at least one change and the settle time must not be negative");
+		this.service = service;
+		this.consumer = consumer;
+		this.handler = handler;
+		this.batchSize = batchSize;
+		this.settleMillis = settleMillis;
+	}
+
+	/**
+	 * Runs periodically on a background thread until close is called, the first run starts immediately
+	 * @param periodSeconds Time between the end of a run and the start of the next
+	 */
+	public synchronized void start(long periodSeconds) {
+		close();
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "change-relay-" + consumer);
+			t.setDaemon(true);
+			return t;
+		});
+		executor.scheduleWithFixedDelay(() -> {
+			try {
+				runOnce();
+			} catch (RuntimeException e) {
+				//The failed batch is delivered again by the next run
+				System.err.println("Change relay " + consumer + " failed: " + e);
+			}
+		}, 0, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Delivers the changes after the position of the consumer up to the first
+	 * gap in the ids that is not settled yet
+	 * @return The number of delivered changes
+	 */
+	public int runOnce() {
+		int delivered = 0;
+		while (true) {
+			int count = service.inTransaction("relayChanges", () -> {
+				ChangeOffset offset = service.lockChangeOffset(consumer);
+				long settled = System.currentTimeMillis() - settleMillis;
+				List<ChangeRecord> batch = new ArrayList<>();
+				long next = offset.getLastId() + 1;
+				for (ChangeRecord change : service.changesAfter(offset.getLastId(), batchSize)) {
+					//The missing ids may belong to a transaction that has not committed yet
+					if (change.getId() != next && change.getRecorded().getTime() >= settled)
+						break;
+					batch.add(change);
+					next = change.getId() + 1;
+				}
+				if (batch.isEmpty())
+					return 0;
+
+				handler.accept(batch);
+				offset.setLastId(batch.get(batch.size() - 1).getId());
+				offset.setUpdated(new Date());
+				return batch.size();
+			});
+			delivered += count;
+			if (count < batchSize)
+				return delivered;
+		}
+	}
+
+	/**
+	 * Returns the id of the last change the consumer has processed
+	 */
+	public long getPosition() {
+		return service.getChangeOffset(consumer);
+	}
+
+	/**
+	 * Stops the periodic runs, a running batch is interrupted
+	 */
+	public synchronized void close() {
+		if (executor != null)
+			executor.shutdownNow();
+		executor = null;
+	}
+}
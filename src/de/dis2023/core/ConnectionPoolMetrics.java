@@ -0,0 +1,132 @@
+package de.dis2023.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Gauges and counters of the JDBC connection pool. Hikari reports every
+ * connection checkout to this tracker, the gauges are read from the pool.
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory, IMetricsTracker {
+	private volatile PoolStats poolStats;
+	private volatile String poolName;
+
+	private LongAdder acquired = new LongAdder();
+	private LongAdder acquireNanos = new LongAdder();
+	private AtomicLong maxAcquireNanos = new AtomicLong();
+	private LongAdder usageMillis = new LongAdder();
+	private AtomicLong maxUsageMillis = new AtomicLong();
+	private LongAdder timeouts = new LongAdder();
+	private LongAdder created = new LongAdder();
+
+	public IMetricsTracker create(String poolName, PoolStats poolStats) {
+		this.poolName = poolName;
+		this.poolStats = poolStats;
+		return this;
+	}
+
+	public void recordConnectionCreatedMillis(long millis) {
+		created.increment();
+	}
+
+	public void recordConnectionAcquiredNanos(long nanos) {
+		acquired.increment();
+		acquireNanos.add(nanos);
+		maxAcquireNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public void recordConnectionUsageMillis(long millis) {
+		usageMillis.add(millis);
+		maxUsageMillis.accumulateAndGet(millis, Math::max);
+	}
+
+	public void recordConnectionTimeout() {
+		timeouts.increment();
+	}
+
+	public String getPoolName() {
+		return poolName;
+	}
+
+	public int getActiveConnections() {
+		return poolStats == null ? 0 : poolStats.getActiveConnections();
+	}
+
+	public int getIdleConnections() {
+		return poolStats == null ? 0 : poolStats.getIdleConnections();
+	}
+
+	public int getTotalConnections() {
+		return poolStats == null ? 0 : poolStats.getTotalConnections();
+	}
+
+	public int getMaxConnections() {
+		return poolStats == null ? 0 : poolStats.getMaxConnections();
+	}
+
+	/**
+	 * Number of threads waiting for a connection
+	 */
+	public int getPendingThreads() {
+		return poolStats == null ? 0 : poolStats.getPendingThreads();
+	}
+
+	/**
+	 * Share of the maximum pool size that is currently checked out (0..1)
+	 */
+	public double getUtilization() {
+		int max = getMaxConnections();
+		return max == 0 ? 0 : (double) getActiveConnections() / max;
+	}
+
+	public long getAcquiredCount() {
+		return acquired.sum();
+	}
+
+	/**
+	 * Average time a caller waited for a connection in milliseconds
+	 */
+	public double getAverageWaitMillis() {
+		long count = acquired.sum();
+		return count == 0 ? 0 : acquireNanos.sum() / 1e6 / count;
+	}
+
+	public double getMaxWaitMillis() {
+		return maxAcquireNanos.get() / 1e6;
+	}
+
+	/**
+	 * Average time a connection was held by the application in milliseconds
+	 */
+	public double getAverageUsageMillis() {
+		long count = acquired.sum();
+		return count == 0 ? 0 : (double) usageMillis.sum() / count;
+	}
+
+	public long getMaxUsageMillis() {
+		return maxUsageMillis.get();
+	}
+
+	/**
+	 * Number of callers that did not get a connection within the connection timeout
+	 */
+	public long getTimeoutCount() {
+		return timeouts.sum();
+	}
+
+	public long getCreatedCount() {
+		return created.sum();
+	}
+
+	public String toString() {
+		return String.format("%s: %d active, %d idle, %d/%d total, %d waiting, utilization %.0f%%, " +
+				"wait avg %.2f ms max %.2f ms, usage avg %.1f ms max %d ms, %d timeouts",
+				poolName, getActiveConnections(), getIdleConnections(), getTotalConnections(), getMaxConnections(),
+				getPendingThreads(), getUtilization() * 100, getAverageWaitMillis(), getMaxWaitMillis(),
+				getAverageUsageMillis(), getMaxUsageMillis(), getTimeoutCount());
+	}
+}
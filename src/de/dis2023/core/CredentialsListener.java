@@ -0,0 +1,16 @@
+package de.dis2023.core;
+
+/**
+ * Is told when the credentials of an estate agent are not valid anymore,
+ * e.g. to close the sessions of the agent.
+ * See {@link EstateRepository#addCredentialsListener(CredentialsListener)}
+ */
+@FunctionalInterface
+public interface CredentialsListener {
+	/**
+	 * Called after the agent was deleted or its login or password was changed,
+	 * with the EstateService after the commit
+	 * @param agentId The id of the estate agent
+	 */
+	public void credentialsChanged(int agentId);
+}
@@ -0,0 +1,84 @@
+package de.dis2023.core;
+
+/**
+ * Rows affected by a cascading delete
+ */
+public class DeleteResult {
+	private int tenancyContracts;
+	private int purchaseContracts;
+	private int houses;
+	private int apartments;
+	private int reassignedHouses;
+	private int reassignedApartments;
+	private int estateAgents;
+
+	void setTenancyContracts(int tenancyContracts) {
+		this.tenancyContracts = tenancyContracts;
+	}
+
+	void setPurchaseContracts(int purchaseContracts) {
+		this.purchaseContracts = purchaseContracts;
+	}
+
+	void setHouses(int houses) {
+		this.houses = houses;
+	}
+
+	void setApartments(int apartments) {
+		this.apartments = apartments;
+	}
+
+	void setReassignedHouses(int reassignedHouses) {
+		this.reassignedHouses = reassignedHouses;
+	}
+
+	void setReassignedApartments(int reassignedApartments) {
+		this.reassignedApartments = reassignedApartments;
+	}
+
+	void setEstateAgents(int estateAgents) {
+		this.estateAgents = estateAgents;
+	}
+
+	public int getTenancyContracts() {
+		return tenancyContracts;
+	}
+
+	public int getPurchaseContracts() {
+		return purchaseContracts;
+	}
+
+	public int getHouses() {
+		return houses;
+	}
+
+	public int getApartments() {
+		return apartments;
+	}
+
+	/**
+	 * Returns the number of houses handed over to another agent
+	 */
+	public int getReassignedHouses() {
+		return reassignedHouses;
+	}
+
+	/**
+	 * Returns the number of apartments handed over to another agent
+	 */
+	public int getReassignedApartments() {
+		return reassignedApartments;
+	}
+
+	public int getEstateAgents() {
+		return estateAgents;
+	}
+
+	public String toString() {
+		StringBuilder ret = new StringBuilder(String.format("Deleted %d estate agents, %d houses, %d apartments, %d tenancy and %d purchase contracts",
+				estateAgents, houses, apartments, tenancyContracts, purchaseContracts));
+		if(reassignedHouses > 0 || reassignedApartments > 0)
+			ret.append(String.format(", handed over %d houses and %d apartments", reassignedHouses, reassignedApartments));
+		return ret.toString();
+	}
+}
@@ -0,0 +1,33 @@
+package de.dis2023.core;
+
+/**
+ * Thrown when an edited object was changed or deleted by another
+ * transaction since it was loaded. Nothing was written, the caller
+ * can load the current state and apply the changes again.
+ */
+public class EditConflictException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private Class<?> type;
+	private transient Object id;
+
+	public EditConflictException(Class<?> type, Object id, Throwable cause) {
+		super(type.getSimpleName()+" "+id+" was changed or deleted by another user", cause);
+		this.type = type;
+		this.id = id;
+	}
+
+	/**
+	 * Returns the class of the edited object
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the id of the edited object
+	 */
+	public Object getId() {
+		return id;
+	}
+}
@@ -0,0 +1,289 @@
+package de.dis2023.core;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import de.dis2023.data.AgentCredentials;
+import de.dis2023.data.Apartment;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+
+/**
+ * Storage of estate agents, persons, estates and contracts as used by the
+ * editors, the menus, the authentication and the HTTP interface.
+ *
+ * {@link EstateService} keeps the data in the database with hibernate,
+ * {@link InMemoryEstateRepository} in memory, e.g. for a demo without a
+ * database. Both return detached copies: changes of a returned object are
+ * only stored by {@link #updateInstance(Object)}.
+ */
+public interface EstateRepository extends AutoCloseable {
+	/**
+	 * Runs a unit of work, calls of the repository inside the work are
+	 * executed in one transaction if the repository supports transactions
+	 * @param work The work to be done
+	 * @return The result of the work
+	 */
+	public <T> T inTransaction(UnitOfWork<T> work);
+
+	/**
+	 * Runs a unit of work and records it as an operation if the repository
+	 * records operations, see {@link #inTransaction(UnitOfWork)}
+	 * @param operation Name of the operation
+	 */
+	public <T> T inTransaction(String operation, UnitOfWork<T> work);
+
+	public default void inTransaction(Runnable work) {
+		inTransaction(() -> {
+			work.run();
+			return null;
+		});
+	}
+
+	public default void inTransaction(String operation, Runnable work) {
+		inTransaction(operation, () -> {
+			work.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Returns the asynchronous facade of this repository
+	 */
+	public AsyncEstateService async();
+
+	/**
+	 * Waits for the tasks of the asynchronous facade and releases the
+	 * resources of the repository, it cannot be used afterwards
+	 */
+	public void close();
+
+	/**
+	 * Stores the changes of an agent, person, estate or contract
+	 * @param obj The changed object, gets the new version
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
+	 */
+	public void updateInstance(Object obj);
+
+	public EstateAgent getEstateAgentByID(int id);
+
+	public EstateAgent getEstateAgentByLogin(String login);
+
+	/**
+	 * Finds the login data of an estate agent
+	 * @return The credentials or null if there is no agent with the login
+	 */
+	public AgentCredentials getAgentCredentials(String login);
+
+	/**
+	 * Registers a listener that is told when an agent is deleted or its
+	 * login or password is changed, a listener is registered once
+	 */
+	public void addCredentialsListener(CredentialsListener listener);
+
+	public Set<EstateAgent> getAllEstateAgents();
+
+	public void addEstateAgent(EstateAgent ea);
+
+	/**
+	 * Deletes an estate agent with all estates and their contracts
+	 * @param ea The estate agent
+	 * @return The number of deleted rows
+	 */
+	public default DeleteResult deleteEstateAgent(EstateAgent ea) {
+		return deleteEstateAgent(ea, null);
+	}
+
+	/**
+	 * Deletes an estate agent
+	 * @param ea The estate agent
+	 * @param successor Takes over the estates with their contracts, null to delete them
+	 * @return The number of deleted and handed over rows
+	 */
+	public DeleteResult deleteEstateAgent(EstateAgent ea, EstateAgent successor);
+
+	public Person getPersonById(int id);
+
+	public void addPerson(Person p);
+
+	public Set<Person> getAllPersons();
+
+	/**
+	 * Returns one page of all persons ordered by id
+	 */
+	public Page<Person> getPersonPage(Page.Cursor cursor, int pageSize);
+
+	/**
+	 * Searches persons by first name, name and address, every word of the
+	 * term has to match the beginning of a word of the person
+	 * @return One page of the matching persons ordered by id
+	 */
+	public Page<Person> searchPersons(String term, Page.Cursor cursor, int pageSize);
+
+	/**
+	 * Deletes a person that is not partner of a contract
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
+	 */
+	public void deletePerson(Person p);
+
+	public void addHouse(House h);
+
+	public House getHouseById(int id);
+
+	public Set<House> getAllHousesForEstateAgent(EstateAgent ea);
+
+	/**
+	 * Returns id and address of all houses of an estate agent ordered by id
+	 */
+	public List<EstateSummary> getHouseSummariesForEstateAgent(EstateAgent ea);
+
+	public Page<EstateSummary> getHouseSummaryPage(EstateAgent ea, Page.Cursor cursor, int pageSize);
+
+	public Page<EstateSummary> searchHouses(EstateAgent ea, String term, Page.Cursor cursor, int pageSize);
+
+	/**
+	 * Deletes a house with its purchase contract
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
+	 */
+	public DeleteResult deleteHouse(House h);
+
+	public void addApartment(Apartment w);
+
+	public Apartment getApartmentByID(int id);
+
+	public Set<Apartment> getAllApartmentsForEstateAgent(EstateAgent ea);
+
+	/**
+	 * Returns id and address of all apartments of an estate agent ordered by id
+	 */
+	public List<EstateSummary> getApartmentSummariesForEstateAgent(EstateAgent ea);
+
+	public Page<EstateSummary> getApartmentSummaryPage(EstateAgent ea, Page.Cursor cursor, int pageSize);
+
+	public Page<EstateSummary> searchApartments(EstateAgent ea, String term, Page.Cursor cursor, int pageSize);
+
+	/**
+	 * Deletes an apartment with its tenancy contract
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
+	 */
+	public DeleteResult deleteApartment(Apartment w);
+
+	public void addTenancyContract(TenancyContract t);
+
+	public void addPurchaseContract(PurchaseContract p);
+
+	public TenancyContract getTenancyContractByID(int id);
+
+	public PurchaseContract getPurchaseContractById(int id);
+
+	/**
+	 * Returns the tenancy contracts of the apartments of an estate agent including apartment and tenant
+	 */
+	public Set<TenancyContract> getAllTenancyContractsForEstateAgent(EstateAgent ea);
+
+	/**
+	 * Returns the purchase contracts of the houses of an estate agent including house and buyer
+	 */
+	public Set<PurchaseContract> getAllPurchaseContractsForEstateAgent(EstateAgent ea);
+
+	/**
+	 * Deletes a tenancy contract
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
+	 */
+	public void deleteTenancyContract(TenancyContract tc);
+
+	/**
+	 * Deletes a purchase contract
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
+	 */
+	public void deletePurchaseContract(PurchaseContract pc);
+
+	/**
+	 * Adds some test data
+	 */
+	public default void addTestData() {
+		EstateAgent m = new EstateAgent();
+		m.setName("Max Mustermann");
+		m.setAddress("Am Informatikum 9");
+		m.setLogin("max");
+		m.setPassword("max");
+
+		Person p1 = new Person();
+		p1.setAddress("Informatikum");
+		p1.setName("Mustermann");
+		p1.setFirstname("Erika");
+
+		Person p2 = new Person();
+		p2.setAddress("Reeperbahn 9");
+		p2.setName("Albers");
+		p2.setFirstname("Hans");
+
+		House h = new House();
+		h.setCity("Hamburg");
+		h.setPostalcode(22527);
+		h.setStreet("Vogt-Kölln-Street");
+		h.setStreetnumber("2a");
+		h.setSquareArea(384);
+		h.setFloors(5);
+		h.setPrice(10000000);
+		h.setGarden(true);
+		h.setManager(m);
+
+		Apartment w1 = new Apartment();
+		w1.setCity("Hamburg");
+		w1.setPostalcode(22527);
+		w1.setStreet("Vogt-Kölln-Street");
+		w1.setStreetnumber("3");
+		w1.setSquareArea(120);
+		w1.setFloor(4);
+		w1.setRent(790);
+		w1.setKitchen(true);
+		w1.setBalcony(false);
+		w1.setManager(m);
+
+		Apartment w = new Apartment();
+		w.setCity("Berlin");
+		w.setPostalcode(22527);
+		w.setStreet("Vogt-Kölln-Street");
+		w.setStreetnumber("3");
+		w.setSquareArea(120);
+		w.setFloor(4);
+		w.setRent(790);
+		w.setKitchen(true);
+		w.setBalcony(false);
+		w.setManager(m);
+
+		PurchaseContract pc = new PurchaseContract();
+		pc.setHouse(h);
+		pc.setContractPartner(p1);
+		pc.setContractNo(9234);
+		pc.setDate(new Date(System.currentTimeMillis()));
+		pc.setPlace("Hamburg");
+		pc.setNoOfInstallments(5);
+		pc.setIntrestRate(4);
+
+		TenancyContract tc = new TenancyContract();
+		tc.setApartment(w);
+		tc.setContractPartner(p2);
+		tc.setContractNo(23112);
+		tc.setDate(new Date(System.currentTimeMillis()-1000000000));
+		tc.setPlace("Berlin");
+		tc.setStartDate(new Date(System.currentTimeMillis()));
+		tc.setAdditionalCosts(65);
+		tc.setDuration(36);
+
+		addEstateAgent(m);
+		addPerson(p1);
+		addPerson(p2);
+		addHouse(h);
+		addApartment(w1);
+		addApartment(w);
+		addPurchaseContract(pc);
+		addTenancyContract(tc);
+	}
+}
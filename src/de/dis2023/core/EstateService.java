@@ -1,58 +1,474 @@
 package de.dis2023.core;
 
+import java.sql.SQLException;
 import java.util.*;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+import jakarta.persistence.OptimisticLockException;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+
+import org.hibernate.Cache;
+import org.hibernate.LockMode;
+import org.hibernate.PessimisticLockException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.Transaction;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.exception.LockAcquisitionException;
+import org.hibernate.exception.LockTimeoutException;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.MutationQuery;
+import org.hibernate.query.Query;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import com.zaxxer.hikari.HikariDataSource;
 
 import de.dis2023.data.House;
 import de.dis2023.data.Estate;
 import de.dis2023.data.PurchaseContract;
 import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
 import de.dis2023.data.TenancyContract;
 import de.dis2023.data.Person;
+import de.dis2023.data.AgentCredentials;
+import de.dis2023.data.ChangeOffset;
+import de.dis2023.data.ChangeRecord;
+import de.dis2023.data.Contract;
+import de.dis2023.data.ContractVolume;
+import de.dis2023.data.ExpiryRun;
+import de.dis2023.data.PortfolioStatistics;
 import de.dis2023.data.Apartment;
+import de.dis2023.util.Helper;
 
 /**
- *  Class for managing all database entities.
- * 
- * TODO: All data is currently stored in memory. 
- * The aim of the exercise is to gradually outsource data management to the 
- * database. When the work is done, all sets in this class become obsolete!
+ *  Class for managing all database entities with hibernate.
  */
-public class EstateService {
-	//TODO All these sets should be commented out after successful implementation.
-	private Set<EstateAgent> estateAgents = new HashSet<EstateAgent>();
-	private Set<Person> persons = new HashSet<Person>();
-	private Set<House> houses = new HashSet<House>();
-	private Set<Apartment> apartments = new HashSet<Apartment>();
-	private Set<TenancyContract> tenancyContracts = new HashSet<TenancyContract>();
-	private Set<PurchaseContract> purchaseContracts = new HashSet<PurchaseContract>();
+public final class EstateService implements EstateRepository {
+	//Largest IN list sent to the database, Oracle allows 1000 and SQL Server 2100 parameters
+	static final int MAX_IN_LIST = 1000;
+
+	//Cached inverse collection of the estates of an agent
+	private static final String ESTATES_ROLE = EstateAgent.class.getName()+".estates";
 
 	//Hibernate Session
 	private SessionFactory sessionFactory;
 
+	//Latency, rows and statements of the public operations
+	private ServiceMetrics metrics;
+
+	//Gauges and counters of the Hikari pool, null with another connection provider
+	private ConnectionPoolMetrics poolMetrics;
+
+	//Name and address search, built on the first search and updated after every commit
+	private SearchIndex personIndex = new SearchIndex();
+	private SearchIndex houseIndex = new SearchIndex();
+	private SearchIndex apartmentIndex = new SearchIndex();
+
+	//Summary tables of the portfolio analytics
+	private PortfolioAnalytics portfolio = new PortfolioAnalytics();
+
+	//Outbox of the entity changes
+	private ChangeCapture changes = new ChangeCapture();
+
+	//Told when agents are deleted or change their credentials
+	private Set<CredentialsListener> credentialsListeners = new CopyOnWriteArraySet<>();
+
+	//Retries of transactions that failed because of lock conflicts
+	private int maxAttempts = 3;
+	private long backoffMillis = 50;
+
+	//Resets the objects persisted by the transaction of the thread if it is rolled back
+	private final ThreadLocal<List<Runnable>> persisted = new ThreadLocal<>();
+
+	//Asynchronous facade, created on first use
+	private AsyncEstateService async;
+	private static final int DEFAULT_ASYNC_CONCURRENCY = 10;
+
 	public EstateService() {
-		sessionFactory = new Configuration().configure().buildSessionFactory();
+		this(new Configuration().configure());
+	}
+
+	/**
+	 * Starts the service with hibernate.cfg.xml in the background, see {@link #startAsync(Supplier)}
+	 */
+	public static CompletableFuture<EstateService> startAsync() {
+		return startAsync(() -> new Configuration().configure());
+	}
+
+	/**
+	 * Starts the service on a background thread. Parsing the configuration and 
+	 * the mappings, migrating the schema and building the session factory take
+	 * most of the startup time, the caller can e.g. show the first menu meanwhile.
+	 * @param configuration Creates the configuration, called on the background thread
+	 * @return Completed with the started service, or exceptionally if it could not be started
+	 */
+	public static CompletableFuture<EstateService> startAsync(Supplier<Configuration> configuration) {
+		return CompletableFuture.supplyAsync(() -> new EstateService(configuration.get()), task -> {
+			Thread thread = new Thread(task, "estate-service-startup");
+			thread.setDaemon(true);
+			thread.start();
+		});
+	}
+
+	/**
+	 * Creates the service with another hibernate configuration, 
+	 * e.g. an embedded database for benchmarks
+	 * @param configuration The configuration including the mappings
+	 */
+	public EstateService(Configuration configuration) {
+		//The migration uses the connection pool of the session factory
+		StandardServiceRegistry registry = configuration.getStandardServiceRegistryBuilder()
+				.applySettings(configuration.getProperties()).build();
+		try {
+			//The scripts create and upgrade the schema, unless hibernate creates it from the mappings
+			String ddl = configuration.getProperty(AvailableSettings.HBM2DDL_AUTO);
+			if (ddl == null || !ddl.startsWith("create"))
+				new SchemaMigrator(registry.getService(ConnectionProvider.class),
+						registry.getService(JdbcServices.class).getDialect()).migrate();
+
+			configuration.setStatementInspector(new StatementCounter());
+			sessionFactory = configuration.buildSessionFactory(registry);
+		} catch (RuntimeException e) {
+			StandardServiceRegistryBuilder.destroy(registry);
+			throw e;
+		}
+		metrics = new ServiceMetrics(sessionFactory.getStatistics());
+		poolMetrics = trackConnectionPool(sessionFactory);
+
+		//Databases created before the summary tables existed get them filled once
+		inTransaction(() -> {
+			long agents = currentSession().createQuery("select count(a) from EstateAgent a", Long.class).uniqueResult();
+			long rows = currentSession().createQuery("select count(s) from PortfolioStatistics s", Long.class).uniqueResult();
+			if (agents != rows)
+				portfolio.rebuild(currentSession(), null);
+		});
+	}
+
+	/**
+	 * Runs a unit of work in one session and transaction. If a transaction is 
+	 * already active for this thread, the work joins it. Otherwise a new 
+	 * transaction is started and committed when the work is done. On an 
+	 * exception the transaction is rolled back, transactions that failed 
+	 * because of a lock conflict or deadlock are retried with exponential backoff.
+	 * Objects added by the work get back the id and version they had before,
+	 * so a retry adds them again.
+	 * @param work The work to be done
+	 * @return The result of the work
+	 */
+	public <T> T inTransaction(UnitOfWork<T> work) {
+		if (currentSession().getTransaction().isActive())
+			return work.execute();
+
+		for (int attempt = 1; ; attempt++) {
+			Session session = currentSession();
+			Transaction tx = session.beginTransaction();
+			List<Runnable> undo = new ArrayList<>();
+			persisted.set(undo);
+			try {
+				T result = work.execute();
+				tx.commit();
+				return result;
+			} catch (RuntimeException e) {
+				rollback(session, tx);
+				for (int i = undo.size() - 1; i >= 0; i--)
+					undo.get(i).run();
+				if (attempt >= maxAttempts || !isLockConflict(e))
+					throw e;
+				metrics.recordRetry();
+				backoff(attempt);
+			} finally {
+				persisted.remove();
+			}
+		}
+	}
+
+	/**
+	 * Runs work without result in one session and transaction
+	 * @see #inTransaction(UnitOfWork)
+	 */
+	public void inTransaction(Runnable work) {
+		inTransaction(() -> {
+			work.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Runs a unit of work in one transaction and records it as an operation 
+	 * in the statistics, see {@link #getMetrics()}
+	 * @param operation Name of the operation
+	 * @param work The work to be done
+	 * @return The result of the work
+	 * @see #inTransaction(UnitOfWork)
+	 */
+	public <T> T inTransaction(String operation, UnitOfWork<T> work) {
+		return metrics.measure(operation, () -> inTransaction(work));
+	}
+
+	/**
+	 * Runs work without result in one transaction and records it as an operation
+	 * @see #inTransaction(String, UnitOfWork)
+	 */
+	public void inTransaction(String operation, Runnable work) {
+		metrics.measure(operation, () -> inTransaction(work));
+	}
+
+	/**
+	 * Sets how transactions are retried after lock conflicts
+	 * @param maxAttempts Number of attempts including the first one
+	 * @param backoffMillis Wait time before the first retry, doubled for every further retry
+	 */
+	public void setRetryPolicy(int maxAttempts, long backoffMillis) {
+		if (maxAttempts < 1 || backoffMillis < 0)
+			throw new IllegalArgumentException("At least one attempt and a non-negative backoff are required");
+		this.maxAttempts = maxAttempts;
+		this.backoffMillis = backoffMillis;
 	}
 
 	/**
-	 * Updates a detached object in the DB with hibernate
-	 * @param obj The instance to be updated
+	 * Returns the session of the current transaction
+	 */
+	private Session currentSession() {
+		return sessionFactory.getCurrentSession();
+	}
+
+	/**
+	 * Runs an action after the current transaction was committed
+	 */
+	private void afterCommit(Runnable action) {
+		currentSession().getTransaction().registerSynchronization(new Synchronization() {
+			public void beforeCompletion() {
+			}
+
+			public void afterCompletion(int status) {
+				if (status == Status.STATUS_COMMITTED)
+					action.run();
+			}
+		});
+	}
+
+	//Persists a new object, a rollback of the transaction resets its id and version
+	private void persist(Object entity) {
+		SessionImplementor session = currentSession().unwrap(SessionImplementor.class);
+		EntityPersister persister = session.getEntityPersister(null, entity);
+		Object id = persister.getIdentifier(entity, session);
+		Object version = persister.isVersioned() ? persister.getVersion(entity) : null;
+		session.persist(entity);
+		List<Runnable> undo = persisted.get();
+		if (undo != null)
+			undo.add(() -> {
+				persister.setIdentifier(entity, id, session);
+				if (version != null)
+					persister.setValue(entity, persister.getVersionProperty(), version);
+			});
+	}
+
+	//Deletes a detached object, the row must still have the version of the object
+	private void remove(Object entity) {
+		SessionImplementor session = currentSession().unwrap(SessionImplementor.class);
+		Object id = session.getEntityPersister(null, entity).getIdentifier(entity, session);
+		try {
+			session.remove(entity);
+			//The conflict is found before the statistics are changed
+			session.flush();
+		} catch (StaleStateException | OptimisticLockException e) {
+			throw new EditConflictException(entity.getClass(), id, e);
+		}
+	}
+
+	private static void rollback(Session session, Transaction tx) {
+		try {
+			if (tx.getStatus().canRollback())
+				tx.rollback();
+		} catch (RuntimeException e) {
+			//The original exception is more interesting
+		} finally {
+			//Never leave a broken session bound to the thread
+			if (session.isOpen())
+				session.close();
+		}
+	}
+
+	private static boolean isLockConflict(Throwable e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof LockAcquisitionException || t instanceof LockTimeoutException
+					|| t instanceof PessimisticLockException
+					|| t instanceof jakarta.persistence.PessimisticLockException
+					|| t instanceof jakarta.persistence.LockTimeoutException)
+				return true;
+
+			//SQL state class 40: serialization failure or deadlock
+			if (t instanceof SQLException && ((SQLException) t).getSQLState() != null
+					&& ((SQLException) t).getSQLState().startsWith("40"))
+				return true;
+		}
+		return false;
+	}
+
+	private void backoff(int attempt) {
+		long max = backoffMillis << (attempt - 1);
+		try {
+			Thread.sleep(max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting to retry the transaction", e);
+		}
+	}
+
+	/**
+	 * Updates a detached object in the DB with hibernate. The object is merged
+	 * into the session, so only the changed columns are written. If the row was
+	 * changed by another transaction since the object was loaded, its version
+	 * does not match and nothing is written.
+	 * @param obj The instance to be updated, gets the new version after the commit
+	 * @throws EditConflictException If the row was changed or deleted meanwhile
 	 */
 	public void updateInstance(Object obj) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.update(obj);
-		session.getTransaction().commit();
+		inTransaction("updateInstance", () -> {
+			//Rent, price, manager or contract date may have changed, the statistics need the old values
+			Object[] before = (obj instanceof Estate) ? portfolio.valuesBefore(currentSession(), (Estate) obj) : null;
+			Integer contractManager = (obj instanceof Contract) ? managerOf(estateOf((Contract) obj)) : null;
+
+			SessionImplementor session = currentSession().unwrap(SessionImplementor.class);
+			EntityPersister persister = session.getEntityPersister(null, obj);
+			Object id = persister.getIdentifier(obj, session);
+			//Merge would insert a deleted row again, the loaded row is reused by merge
+			Object loaded = currentSession().get(persister.getEntityName(), id);
+			if (loaded == null)
+				throw new EditConflictException(obj.getClass(), id, null);
+			List<String> changedFields = ChangeCapture.changedFields(session, loaded, obj);
+			Object merged;
+			try {
+				merged = currentSession().merge(obj);
+				//The conflict is found before the statistics are changed
+				currentSession().flush();
+			} catch (StaleStateException | OptimisticLockException e) {
+				throw new EditConflictException(obj.getClass(), id, e);
+			}
+			changes.updated(currentSession(), merged, changedFields);
+			//The detached object can be edited and updated again
+			if (persister.isVersioned() && merged != obj)
+				afterCommit(() -> persister.setValue(obj, persister.getVersionProperty(), persister.getVersion(merged)));
+
+			if(before != null)
+				portfolio.estateUpdated(currentSession(), (Estate) obj, before);
+			if(contractManager != null)
+				portfolio.rebuild(currentSession(), contractManager);
+
+			//The manager may have changed, the old one is not known anymore
+			if(obj instanceof Estate) {
+				afterCommit(() -> sessionFactory.getCache().evictCollectionData(ESTATES_ROLE));
+				afterCommit(() -> index((Estate) obj));
+			}
+			if(obj instanceof Person)
+				afterCommit(() -> index((Person) obj));
+			if(obj instanceof EstateAgent && (changedFields.contains("login") || changedFields.contains("password")))
+				afterCommit(() -> credentialsChanged(((EstateAgent) obj).getId()));
+		});
 	}
 
 	public void refreshInstance(Object obj) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.refresh(obj);
-		session.getTransaction().commit();
+		inTransaction("refreshInstance", () -> currentSession().refresh(obj));
+	}
+
+	/**
+	 * Removes the cached estate set of an agent. The set is the inverse side 
+	 * of Estate.manager and is not updated by hibernate when an estate is saved.
+	 * @param ea The estate agent
+	 */
+	private void evictEstates(EstateAgent ea) {
+		if(ea != null)
+			afterCommit(() -> sessionFactory.getCache().evictCollectionData(ESTATES_ROLE, ea.getId()));
+	}
+
+	/**
+	 * Returns hit, miss and put counts of all second-level cache regions
+	 * @return Statistics by region name
+	 */
+	public Map<String, CacheRegionStatistics> getCacheStatistics() {
+		Statistics statistics = sessionFactory.getStatistics();
+		Map<String, CacheRegionStatistics> ret = new TreeMap<>();
+		for (String region : statistics.getSecondLevelCacheRegionNames()) {
+			ret.put(region, statistics.getDomainDataRegionStatistics(region));
+		}
+		if (statistics.isStatisticsEnabled()) {
+			String queryRegion = "default-query-results-region";
+			ret.put(queryRegion, statistics.getQueryRegionStatistics(queryRegion));
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns call counts, latencies, returned rows and executed statements 
+	 * of the operations of this service
+	 */
+	public ServiceMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns utilization, wait times and timeouts of the connection pool
+	 * @return The pool metrics or null if hibernate is not configured with the HikariCPConnectionProvider
+	 */
+	public ConnectionPoolMetrics getConnectionPoolMetrics() {
+		return poolMetrics;
+	}
+
+	//Hikari accepts a metrics tracker of a running pool once, the provider has no setting for it
+	private static ConnectionPoolMetrics trackConnectionPool(SessionFactory sessionFactory) {
+		ConnectionProvider provider = sessionFactory.unwrap(SessionFactoryImplementor.class)
+				.getServiceRegistry().getService(ConnectionProvider.class);
+		if (provider == null || !provider.isUnwrappableAs(HikariDataSource.class))
+			return null;
+		ConnectionPoolMetrics pool = new ConnectionPoolMetrics();
+		provider.unwrap(HikariDataSource.class).setMetricsTrackerFactory(pool);
+		return pool;
+	}
+
+	/**
+	 * Returns the asynchronous facade of this service. At most as many of its
+	 * tasks run at the same time as the connection pool has connections.
+	 */
+	public synchronized AsyncEstateService async() {
+		if (async == null) {
+			ConnectionPoolMetrics pool = getConnectionPoolMetrics();
+			int connections = pool == null ? 0 : pool.getMaxConnections();
+			async = new AsyncEstateService(this, connections > 0 ? connections : DEFAULT_ASYNC_CONCURRENCY);
+		}
+		return async;
+	}
+
+	/**
+	 * Waits for the tasks of the asynchronous facade, then closes the session
+	 * factory with its connection pool and removes the MXBeans of the service.
+	 * The service cannot be used afterwards.
+	 */
+	public void close() {
+		AsyncEstateService facade;
+		synchronized (this) {
+			facade = async;
+			async = null;
+		}
+		if (facade != null)
+			facade.close();
+		metrics.close();
+		sessionFactory.close();
 	}
 
 	/**
@@ -61,11 +477,7 @@ public class EstateService {
 	 * @return Agent with ID or null
 	 */
 	public EstateAgent getEstateAgentByID(int id) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		EstateAgent m = (EstateAgent) session.get(EstateAgent.class, id);
-		session.getTransaction().commit();
-		return m;
+		return inTransaction("getEstateAgentByID", () -> currentSession().get(EstateAgent.class, id));
 	}
 
 	/**
@@ -74,25 +486,32 @@ public class EstateService {
 	 * @return Estate agent with the given ID or null
 	 */
 	public EstateAgent getEstateAgentByLogin(String login) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
 		String hql = "from EstateAgent as agent where agent.login = :a_login";
-		EstateAgent m = (EstateAgent) session.createQuery(hql).setParameter("a_login", login).uniqueResult();
-		session.getTransaction().commit();
-		return m;
+		return inTransaction("getEstateAgentByLogin", () -> currentSession().createQuery(hql, EstateAgent.class)
+				.setParameter("a_login", login).setCacheable(true).uniqueResult());
+	}
+
+	/**
+	 * Finds the login data of an estate agent. Only the credential columns are 
+	 * read, the estates of the agent are not loaded. The result stays in the 
+	 * query cache until the estateagent table is changed.
+	 * @param login The login of the estate agent
+	 * @return The credentials or null if there is no agent with the login
+	 */
+	public AgentCredentials getAgentCredentials(String login) {
+		String hql = "select new de.dis2023.data.AgentCredentials(a.id, a.login, a.name, a.password) " +
+				"from EstateAgent a where a.login = :a_login";
+		return inTransaction("getAgentCredentials", () -> currentSession().createQuery(hql, AgentCredentials.class)
+				.setParameter("a_login", login).setCacheable(true).uniqueResult());
 	}
 
 	/**
 	 * Returns all estateAgents
 	 */
 	public Set<EstateAgent> getAllEstateAgents() {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
 		String hql = "from EstateAgent";
-		List<EstateAgent> agents = (List<EstateAgent>) session.createQuery(hql).list();
-		Set<EstateAgent> agentsSet = new HashSet<>(agents);
-		session.getTransaction().commit();
-		return agentsSet;
+		List<EstateAgent> agents = inTransaction("getAllEstateAgents", () -> currentSession().createQuery(hql, EstateAgent.class).setCacheable(true).list());
+		return new HashSet<>(agents);
 	}
 
 	/**
@@ -101,11 +520,7 @@ public class EstateService {
 	 * @return Person with ID or null
 	 */
 	public Person getPersonById(int id) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		Person p = (Person) session.get(Person.class, id);
-		session.getTransaction().commit();
-		return p;
+		return inTransaction("getPersonById", () -> currentSession().get(Person.class, id));
 	}
 
 	/**
@@ -113,21 +528,102 @@ public class EstateService {
 	 * @param ea The estate agent
 	 */
 	public void addEstateAgent(EstateAgent ea) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.save(ea);
-		session.getTransaction().commit();
+		inTransaction("addEstateAgent", () -> {
+			persist(ea);
+			changes.inserted(currentSession(), ea);
+			portfolio.rebuild(currentSession(), ea.getId());
+		});
 	}
 
 	/**
-	 * Deletes an estate agent
+	 * Deletes an estate agent in one transaction. The estates and contracts
+	 * are deleted or handed over with bulk statements and are not loaded,
+	 * so the time does not depend on the size of the portfolio. Bulk
+	 * statements invalidate the whole estate cache region.
 	 * @param ea The estate agent
+	 * @param successor Takes over the estates with their contracts, null to delete them
+	 * @return The number of deleted and handed over rows
 	 */
-	public void deleteEstateAgent(EstateAgent ea) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.delete(ea);
-		session.getTransaction().commit();
+	public DeleteResult deleteEstateAgent(EstateAgent ea, EstateAgent successor) {
+		if (successor != null && successor.getId() == ea.getId())
+			throw new IllegalArgumentException("An estate agent cannot hand over the estates to itself");
+
+		return inTransaction("deleteEstateAgent", () -> {
+			DeleteResult result = new DeleteResult();
+			int id = ea.getId();
+			//Only the ids, for the search index. Also if it is not built, it may be built before the commit
+			List<Integer> houseIds = estateIds("House", id);
+			List<Integer> apartmentIds = estateIds("Apartment", id);
+
+			if (successor == null) {
+				changes.recordAll(currentSession(), "TenancyContract", ChangeRecord.DELETE, null,
+						"e.apartment.id in (select a.id from Apartment a where a.manager.id = :id)", id);
+				changes.recordAll(currentSession(), "PurchaseContract", ChangeRecord.DELETE, null,
+						"e.house.id in (select h.id from House h where h.manager.id = :id)", id);
+				changes.recordAll(currentSession(), "Apartment", ChangeRecord.DELETE, null, "e.manager.id = :id", id);
+				changes.recordAll(currentSession(), "House", ChangeRecord.DELETE, null, "e.manager.id = :id", id);
+				result.setTenancyContracts(bulk("delete from TenancyContract c where c.apartment.id in " +
+						"(select e.id from Apartment e where e.manager.id = :agent)", id));
+				result.setPurchaseContracts(bulk("delete from PurchaseContract c where c.house.id in " +
+						"(select e.id from House e where e.manager.id = :agent)", id));
+				result.setApartments(bulk("delete from Apartment e where e.manager.id = :agent", id));
+				result.setHouses(bulk("delete from House e where e.manager.id = :agent", id));
+			} else {
+				changes.recordAll(currentSession(), "Apartment", ChangeRecord.UPDATE, "manager", "e.manager.id = :id", id);
+				changes.recordAll(currentSession(), "House", ChangeRecord.UPDATE, "manager", "e.manager.id = :id", id);
+				EstateAgent target = currentSession().getReference(EstateAgent.class, successor.getId());
+				result.setReassignedApartments(currentSession().createMutationQuery("update versioned Apartment e set e.manager = :successor where e.manager.id = :agent")
+						.setParameter("successor", target).setParameter("agent", id).executeUpdate());
+				result.setReassignedHouses(currentSession().createMutationQuery("update versioned House e set e.manager = :successor where e.manager.id = :agent")
+						.setParameter("successor", target).setParameter("agent", id).executeUpdate());
+				portfolio.rebuild(currentSession(), successor.getId());
+				evictEstates(successor);
+			}
+			portfolio.remove(currentSession(), id);
+			changes.recordAll(currentSession(), "EstateAgent", ChangeRecord.DELETE, null, "e.id = :id", id);
+			result.setEstateAgents(bulk("delete from EstateAgent a where a.id = :agent", id));
+			evictEstates(ea);
+
+			afterCommit(() -> {
+				for (int house : houseIds) {
+					if (successor == null)
+						houseIndex.remove(house);
+					else
+						houseIndex.setGroup(house, successor.getId());
+				}
+				for (int apartment : apartmentIds) {
+					if (successor == null)
+						apartmentIndex.remove(apartment);
+					else
+						apartmentIndex.setGroup(apartment, successor.getId());
+				}
+				credentialsChanged(id);
+			});
+			return result;
+		});
+	}
+
+	/**
+	 * Registers a listener that is told after the commit when an agent is
+	 * deleted or its login or password is changed
+	 */
+	public void addCredentialsListener(CredentialsListener listener) {
+		credentialsListeners.add(listener);
+	}
+
+	private void credentialsChanged(int agentId) {
+		for (CredentialsListener listener : credentialsListeners)
+			listener.credentialsChanged(agentId);
+	}
+
+	private List<Integer> estateIds(String entity, int agentId) {
+		return currentSession().createQuery("select e.id from " + entity + " e where e.manager.id = :agent", Integer.class)
+				.setParameter("agent", agentId).list();
+	}
+
+	//Bulk statement with the parameter :agent
+	private int bulk(String hql, int agentId) {
+		return currentSession().createMutationQuery(hql).setParameter("agent", agentId).executeUpdate();
 	}
 
 	/**
@@ -135,34 +631,61 @@ public class EstateService {
 	 * @param p The person
 	 */
 	public void addPerson(Person p) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.save(p);
-		session.getTransaction().commit();
+		inTransaction("addPerson", () -> {
+			persist(p);
+			changes.inserted(currentSession(), p);
+			afterCommit(() -> index(p));
+		});
 	}
 
 	/**
 	 * Returns all persons
 	 */
 	public Set<Person> getAllPersons() {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
 		String hql = "from Person";
-		List<Person> ret = (List<Person>) session.createQuery(hql).list();
-		Set<Person> personSet = new HashSet<>(ret);
-		session.getTransaction().commit();
-		return personSet;
+		List<Person> ret = inTransaction("getAllPersons", () -> currentSession().createQuery(hql, Person.class).setCacheable(true).list());
+		return new HashSet<>(ret);
+	}
+
+	/**
+	 * Returns one page of all persons ordered by id
+	 * @param cursor Position of the page, e.g. {@link Page.Cursor#first()} or the cursor of another page
+	 * @param pageSize Maximum number of persons on the page
+	 */
+	public Page<Person> getPersonPage(Page.Cursor cursor, int pageSize) {
+		return metrics.measure("getPersonPage", () -> {
+			return seek("from Person p", "p.id", Collections.emptyMap(), Person.class, Person::getId, cursor, pageSize);
+		});
+	}
+
+	/**
+	 * Searches persons by first name, name and address. Every word of the 
+	 * search term has to match the beginning of a word of the person, 
+	 * e.g. "er must" finds Erika Mustermann.
+	 * @param term The search term
+	 * @param cursor Position of the page
+	 * @param pageSize Maximum number of persons on the page
+	 * @return One page of the matching persons ordered by id
+	 */
+	public Page<Person> searchPersons(String term, Page.Cursor cursor, int pageSize) {
+		return metrics.measure("searchPersons", () -> {
+			SearchIndex index = built(personIndex, "select p.id, 0, p.firstname, p.name, p.address from Person p");
+			return Page.of((c, limit) -> byIds("from Person p where p.id in (:ids)", Person.class, Person::getId,
+					index.search(term, SearchIndex.ANY_GROUP, c, limit)), Person::getId, cursor, pageSize);
+		});
 	}
 
 	/**
 	 * Deletes a person
 	 * @param p The person
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
 	 */
 	public void deletePerson(Person p) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.delete(p);
-		session.getTransaction().commit();
+		inTransaction("deletePerson", () -> {
+			remove(p);
+			changes.deleted(currentSession(), p);
+			afterCommit(() -> personIndex.remove(p.getId()));
+		});
 	}
 
 	/**
@@ -170,10 +693,13 @@ public class EstateService {
 	 * @param h The house
 	 */
 	public void addHouse(House h) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.save(h);
-		session.getTransaction().commit();
+		inTransaction("addHouse", () -> {
+			persist(h);
+			changes.inserted(currentSession(), h);
+			portfolio.estateAdded(currentSession(), h);
+			evictEstates(h.getManager());
+			afterCommit(() -> index(h));
+		});
 	}
 
 	/**
@@ -182,14 +708,53 @@ public class EstateService {
 	 * @return All houses managed by the estate agent
 	 */
 	public Set<House> getAllHousesForEstateAgent(EstateAgent ea) {
-		Set<House> houses = new HashSet<>();
-		refreshInstance(ea);
-		for (Estate estate : ea.getEstates()) {
-			if (estate instanceof House) {
-				houses.add((House) estate);
-			}
-		}
-		return houses;
+		//Only reads the house table, not the union over all estates
+		String hql = "from House h where h.manager.id = :m_id";
+		List<House> ret = inTransaction("getAllHousesForEstateAgent", () -> currentSession().createQuery(hql, House.class).setParameter("m_id", ea.getId()).list());
+		return new HashSet<>(ret);
+	}
+
+	/**
+	 * Returns the addresses of all houses of an estate agent
+	 * @param ea the estate agent
+	 * @return Id and address of the houses ordered by id
+	 */
+	public List<EstateSummary> getHouseSummariesForEstateAgent(EstateAgent ea) {
+		String hql = "select new de.dis2023.data.EstateSummary(h.id, h.street, h.streetnumber, h.postalcode, h.city) " +
+				"from House h where h.manager.id = :m_id order by h.id";
+		return inTransaction("getHouseSummariesForEstateAgent", () -> currentSession().createQuery(hql, EstateSummary.class).setParameter("m_id", ea.getId()).list());
+	}
+
+	/**
+	 * Returns one page of the addresses of the houses of an estate agent ordered by id
+	 * @param ea The estate agent
+	 * @param cursor Position of the page
+	 * @param pageSize Maximum number of houses on the page
+	 */
+	public Page<EstateSummary> getHouseSummaryPage(EstateAgent ea, Page.Cursor cursor, int pageSize) {
+		return metrics.measure("getHouseSummaryPage", () -> {
+			String hql = "select new de.dis2023.data.EstateSummary(h.id, h.street, h.streetnumber, h.postalcode, h.city) " +
+					"from House h where h.manager.id = :m_id";
+			return seek(hql, "h.id", Map.of("m_id", ea.getId()), EstateSummary.class, EstateSummary::getId, cursor, pageSize);
+		});
+	}
+
+	/**
+	 * Searches the houses of an estate agent by street, city and postal code
+	 * @param ea The estate agent
+	 * @param term The search term, see {@link #searchPersons(String, Page.Cursor, int)}
+	 * @param cursor Position of the page
+	 * @param pageSize Maximum number of houses on the page
+	 * @return One page of the addresses of the matching houses ordered by id
+	 */
+	public Page<EstateSummary> searchHouses(EstateAgent ea, String term, Page.Cursor cursor, int pageSize) {
+		return metrics.measure("searchHouses", () -> {
+			SearchIndex index = built(houseIndex, "select h.id, h.manager.id, h.street, h.city, h.postalcode from House h");
+			String hql = "select new de.dis2023.data.EstateSummary(h.id, h.street, h.streetnumber, h.postalcode, h.city) " +
+					"from House h where h.id in (:ids)";
+			return Page.of((c, limit) -> byIds(hql, EstateSummary.class, EstateSummary::getId,
+					index.search(term, ea.getId(), c, limit)), EstateSummary::getId, cursor, pageSize);
+		});
 	}
 
 	/**
@@ -198,22 +763,29 @@ public class EstateService {
 	 * @return The house or null if not found
 	 */
 	public House getHouseById(int id) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		House h = (House) session.get(House.class, id);
-		session.getTransaction().commit();
-		return h;
+		return inTransaction("getHouseById", () -> currentSession().get(House.class, id));
 	}
 
 	/**
-	 * Deletes a house
+	 * Deletes a house with its purchase contract
 	 * @param h The house
+	 * @return The number of deleted rows
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
 	 */
-	public void deleteHouse(House h) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.delete(h);
-		session.getTransaction().commit();
+	public DeleteResult deleteHouse(House h) {
+		return inTransaction("deleteHouse", () -> {
+			DeleteResult result = new DeleteResult();
+			changes.recordAll(currentSession(), "PurchaseContract", ChangeRecord.DELETE, null, "e.house.id = :id", h.getId());
+			result.setPurchaseContracts(currentSession().createMutationQuery("delete from PurchaseContract c where c.house.id = :id")
+					.setParameter("id", h.getId()).executeUpdate());
+			remove(h);
+			changes.deleted(currentSession(), h);
+			result.setHouses(1);
+			portfolio.rebuild(currentSession(), h.getManager().getId());
+			evictEstates(h.getManager());
+			afterCommit(() -> houseIndex.remove(h.getId()));
+			return result;
+		});
 	}
 
 	/**
@@ -221,10 +793,13 @@ public class EstateService {
 	 * @param w the aparment
 	 */
 	public void addApartment(Apartment w) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.save(w);
-		session.getTransaction().commit();
+		inTransaction("addApartment", () -> {
+			persist(w);
+			changes.inserted(currentSession(), w);
+			portfolio.estateAdded(currentSession(), w);
+			evictEstates(w.getManager());
+			afterCommit(() -> index(w));
+		});
 	}
 
 	/**
@@ -233,14 +808,126 @@ public class EstateService {
 	 * @return All apartments managed by the estate agent
 	 */
 	public Set<Apartment> getAllApartmentsForEstateAgent(EstateAgent ea) {
-		Set<Apartment> apartments = new HashSet<>();
-		refreshInstance(ea);
-		for (Estate estate : ea.getEstates()) {
-			if (estate instanceof Apartment) {
-				apartments.add((Apartment) estate);
-			}
+		//Only reads the apartment table, not the union over all estates
+		String hql = "from Apartment a where a.manager.id = :m_id";
+		List<Apartment> ret = inTransaction("getAllApartmentsForEstateAgent", () -> currentSession().createQuery(hql, Apartment.class).setParameter("m_id", ea.getId()).list());
+		return new HashSet<>(ret);
+	}
+
+	/**
+	 * Returns the addresses of all apartments of an estate agent
+	 * @param ea The estate agent
+	 * @return Id and address of the apartments ordered by id
+	 */
+	public List<EstateSummary> getApartmentSummariesForEstateAgent(EstateAgent ea) {
+		String hql = "select new de.dis2023.data.EstateSummary(a.id, a.street, a.streetnumber, a.postalcode, a.city) " +
+				"from Apartment a where a.manager.id = :m_id order by a.id";
+		return inTransaction("getApartmentSummariesForEstateAgent", () -> currentSession().createQuery(hql, EstateSummary.class).setParameter("m_id", ea.getId()).list());
+	}
+
+	/**
+	 * Returns one page of the addresses of the apartments of an estate agent ordered by id
+	 * @param ea The estate agent
+	 * @param cursor Position of the page
+	 * @param pageSize Maximum number of apartments on the page
+	 */
+	public Page<EstateSummary> getApartmentSummaryPage(EstateAgent ea, Page.Cursor cursor, int pageSize) {
+		return metrics.measure("getApartmentSummaryPage", () -> {
+			String hql = "select new de.dis2023.data.EstateSummary(a.id, a.street, a.streetnumber, a.postalcode, a.city) " +
+					"from Apartment a where a.manager.id = :m_id";
+			return seek(hql, "a.id", Map.of("m_id", ea.getId()), EstateSummary.class, EstateSummary::getId, cursor, pageSize);
+		});
+	}
+
+	/**
+	 * Searches the apartments of an estate agent by street, city and postal code
+	 * @param ea The estate agent
+	 * @param term The search term, see {@link #searchPersons(String, Page.Cursor, int)}
+	 * @param cursor Position of the page
+	 * @param pageSize Maximum number of apartments on the page
+	 * @return One page of the addresses of the matching apartments ordered by id
+	 */
+	public Page<EstateSummary> searchApartments(EstateAgent ea, String term, Page.Cursor cursor, int pageSize) {
+		return metrics.measure("searchApartments", () -> {
+			SearchIndex index = built(apartmentIndex, "select a.id, a.manager.id, a.street, a.city, a.postalcode from Apartment a");
+			String hql = "select new de.dis2023.data.EstateSummary(a.id, a.street, a.streetnumber, a.postalcode, a.city) " +
+					"from Apartment a where a.id in (:ids)";
+			return Page.of((c, limit) -> byIds(hql, EstateSummary.class, EstateSummary::getId,
+					index.search(term, ea.getId(), c, limit)), EstateSummary::getId, cursor, pageSize);
+		});
+	}
+
+	/**
+	 * Reads one page of a query with keyset pagination. One row more than 
+	 * the page size is read to find out whether there is a further page.
+	 * @param hql The query without ordering
+	 * @param id Path of the id the list is ordered by, e.g. "h.id"
+	 * @param parameters Parameters of the query
+	 * @param type Result type of the query
+	 * @param key Returns the id of a result
+	 * @param cursor Position of the page
+	 * @param pageSize Maximum number of results on the page
+	 */
+	private <T> Page<T> seek(String hql, String id, Map<String, Object> parameters, Class<T> type,
+			ToIntFunction<T> key, Page.Cursor cursor, int pageSize) {
+		String where = hql + (hql.contains(" where ") ? " and " : " where ") + id;
+		return Page.of((c, limit) -> inTransaction(() -> {
+			String query = where + (c.isForward() ? " > :key order by " + id + " asc" : " < :key order by " + id + " desc");
+			Query<T> q = currentSession().createQuery(query, type)
+					.setParameter("key", c.getKey()).setMaxResults(limit);
+			parameters.forEach(q::setParameter);
+			return q.list();
+		}), key, cursor, pageSize);
+	}
+
+	/**
+	 * Loads rows by id
+	 * @param hql Query with the parameter ids
+	 * @param ids The ids, at most MAX_IN_LIST
+	 * @return The rows in the order of the ids
+	 */
+	private <T> List<T> byIds(String hql, Class<T> type, ToIntFunction<T> key, List<Integer> ids) {
+		if (ids.isEmpty())
+			return new ArrayList<>();
+
+		Map<Integer, T> rows = new HashMap<>();
+		inTransaction(() -> {
+			for (T row : currentSession().createQuery(hql, type).setParameterList("ids", ids).list())
+				rows.put(key.applyAsInt(row), row);
+		});
+
+		List<T> ret = new ArrayList<>();
+		for (Integer id : ids) {
+			if (rows.containsKey(id))
+				ret.add(rows.get(id));
 		}
-		return apartments;
+		return ret;
+	}
+
+	/**
+	 * Fills a search index from the database if this was not done yet
+	 * @param index The index
+	 * @param hql Query returning the id, the group and the indexed fields of every row
+	 * @return The index
+	 */
+	private SearchIndex built(SearchIndex index, String hql) {
+		index.build(() -> inTransaction(() -> {
+			try (Stream<Object[]> rows = currentSession().createQuery(hql, Object[].class).setFetchSize(1000).stream()) {
+				rows.forEach(row -> index.put((Integer) row[0], ((Number) row[1]).intValue(),
+						Arrays.copyOfRange(row, 2, row.length)));
+			}
+		}));
+		return index;
+	}
+
+	private void index(Person p) {
+		personIndex.put(p.getId(), SearchIndex.ANY_GROUP, p.getFirstname(), p.getName(), p.getAddress());
+	}
+
+	private void index(Estate e) {
+		SearchIndex index = (e instanceof House) ? houseIndex : apartmentIndex;
+		int group = (e.getManager() == null) ? SearchIndex.ANY_GROUP : e.getManager().getId();
+		index.put(e.getId(), group, e.getStreet(), e.getCity(), e.getPostalcode());
 	}
 
 	/**
@@ -249,22 +936,29 @@ public class EstateService {
 	 * @return The apartment or zero, if not found
 	 */
 	public Apartment getApartmentByID(int id) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		Apartment a = (Apartment) session.get(Apartment.class, id);
-		session.getTransaction().commit();
-		return a;
+		return inTransaction("getApartmentByID", () -> currentSession().get(Apartment.class, id));
 	}
 
 	/**
-	 * Deletes an apartment
+	 * Deletes an apartment with its tenancy contract
 	 * @param p The apartment
+	 * @return The number of deleted rows
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
 	 */
-	public void deleteApartment(Apartment w) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.delete(w);
-		session.getTransaction().commit();
+	public DeleteResult deleteApartment(Apartment w) {
+		return inTransaction("deleteApartment", () -> {
+			DeleteResult result = new DeleteResult();
+			changes.recordAll(currentSession(), "TenancyContract", ChangeRecord.DELETE, null, "e.apartment.id = :id", w.getId());
+			result.setTenancyContracts(currentSession().createMutationQuery("delete from TenancyContract c where c.apartment.id = :id")
+					.setParameter("id", w.getId()).executeUpdate());
+			remove(w);
+			changes.deleted(currentSession(), w);
+			result.setApartments(1);
+			portfolio.rebuild(currentSession(), w.getManager().getId());
+			evictEstates(w.getManager());
+			afterCommit(() -> apartmentIndex.remove(w.getId()));
+			return result;
+		});
 	}
 
 
@@ -273,10 +967,11 @@ public class EstateService {
 	 * @param t The tenancy contract
 	 */
 	public void addTenancyContract(TenancyContract t) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.save(t);
-		session.getTransaction().commit();
+		inTransaction("addTenancyContract", () -> {
+			persist(t);
+			changes.inserted(currentSession(), t);
+			portfolio.contractAdded(currentSession(), currentSession().get(Apartment.class, t.getApartment().getId()), t.getDate());
+		});
 	}
 
 	/**
@@ -284,10 +979,11 @@ public class EstateService {
 	 * @param p The purchase contract
 	 */
 	public void addPurchaseContract(PurchaseContract p) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.save(p);
-		session.getTransaction().commit();
+		inTransaction("addPurchaseContract", () -> {
+			persist(p);
+			changes.inserted(currentSession(), p);
+			portfolio.contractAdded(currentSession(), currentSession().get(House.class, p.getHouse().getId()), p.getDate());
+		});
 	}
 
 	/**
@@ -296,11 +992,7 @@ public class EstateService {
 	 * @return The tenancy contract or zero if not found
 	 */
 	public TenancyContract getTenancyContractByID(int id) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		TenancyContract c = (TenancyContract) session.get(TenancyContract.class, id);
-		session.getTransaction().commit();
-		return c;
+		return inTransaction("getTenancyContractByID", () -> currentSession().get(TenancyContract.class, id));
 	}
 
 	/**
@@ -309,11 +1001,7 @@ public class EstateService {
 	 * @return The purchase contract or null if not found
 	 */
 	public PurchaseContract getPurchaseContractById(int id) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		PurchaseContract c = (PurchaseContract) session.get(PurchaseContract.class, id);
-		session.getTransaction().commit();
-		return c;
+		return inTransaction("getPurchaseContractById", () -> currentSession().get(PurchaseContract.class, id));
 	}
 
 	/**
@@ -322,27 +1010,146 @@ public class EstateService {
 	 * @return All contracts belonging to apartments managed by the estate agent
 	 */
 	public Set<TenancyContract> getAllTenancyContractsForEstateAgent(EstateAgent ea) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		String sql = "SELECT tc.id FROM TenancyContract tc JOIN apartment ap ON tc.apartment_id = ap.id WHERE ap.manager = :m_id";
-		List<Integer> ret = (List<Integer>) session.createNativeQuery(sql).setParameter("m_id", ea.getId()).list();
-        		session.getTransaction().commit();
-		Set<TenancyContract> contractSet = getAllTenancyContractsForIdList(ret);
-		return contractSet;
+		//Apartment and tenant are fetched with the contracts in one query
+		String hql = "select tc from TenancyContract tc join fetch tc.apartment a join fetch tc.contractPartner " +
+				"where a.manager.id = :m_id";
+		List<TenancyContract> ret = inTransaction("getAllTenancyContractsForEstateAgent", () -> currentSession().createQuery(hql, TenancyContract.class)
+				.setParameter("m_id", ea.getId()).list());
+		return new HashSet<>(ret);
 	}
 
+	/**
+	 * Returns the tenancy contracts with the given ids including apartment and tenant
+	 * @param ids The ids of the contracts
+	 * @return The contracts that were found
+	 */
 	public Set<TenancyContract> getAllTenancyContractsForIdList(List<Integer> ids) {
-		Set<TenancyContract> contractSet = new HashSet<>();
-		if (ids == null || ids.isEmpty()) {
+		return metrics.measure("getAllTenancyContractsForIdList", () -> {
+			Set<TenancyContract> contractSet = new HashSet<>();
+			if (ids == null || ids.isEmpty()) {
+				return contractSet;
+			}
+			String hql = "select tc from TenancyContract tc join fetch tc.apartment join fetch tc.contractPartner " +
+					"where tc.id in (:c_ids)";
+			inTransaction(() -> {
+				for (List<Integer> chunk : Helper.partition(ids, MAX_IN_LIST)) {
+					contractSet.addAll(currentSession().createQuery(hql, TenancyContract.class).setParameterList("c_ids", chunk).list());
+				}
+			});
 			return contractSet;
-		}
-			Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		String hql = "from TenancyContract where id in = (:c_ids)";
-		List<TenancyContract> ret = (List<TenancyContract>) session.createQuery(hql).setParameterList("c_id", ids).list();
-		session.getTransaction().commit();
-		contractSet.addAll(ret);
-		return contractSet;
+		});
+	}
+
+	/**
+	 * Returns the tenancy contracts ending in a period including apartment and tenant,
+	 * ordered by end date and id. Only the index entries of the period are read.
+	 * @param from First end date
+	 * @param to Last end date
+	 * @param limit Maximum number of contracts
+	 */
+	public List<TenancyContract> getTenancyContractsEndingBetween(Date from, Date to, int limit) {
+		return inTransaction("getTenancyContractsEndingBetween", () -> tenancyContractsEnding(from, Integer.MIN_VALUE, to, limit));
+	}
+
+	/**
+	 * Returns the next tenancy contracts ending in a period, see {@link #getTenancyContractsEndingBetween(Date, Date, int)}
+	 * @param after The last contract of the previous call
+	 */
+	public List<TenancyContract> getTenancyContractsEndingBetween(TenancyContract after, Date to, int limit) {
+		return inTransaction("getTenancyContractsEndingBetween", () -> tenancyContractsEnding(after.getEndDate(), after.getId(), to, limit));
+	}
+
+	//Contracts after (endDate, id) in the order of the index on both columns
+	List<TenancyContract> tenancyContractsEnding(Date afterDate, int afterId, Date to, int limit) {
+		String hql = "select tc from TenancyContract tc join fetch tc.apartment join fetch tc.contractPartner " +
+				"where tc.endDate >= :d and tc.endDate <= :to and (tc.endDate > :d or tc.id > :id) order by tc.endDate, tc.id";
+		return inTransaction(() -> currentSession().createQuery(hql, TenancyContract.class).setParameter("d", afterDate)
+				.setParameter("to", to).setParameter("id", afterId).setMaxResults(limit).list());
+	}
+
+	/**
+	 * Returns the last run of the TenancyExpiryScheduler
+	 * @return The run or null if there was none
+	 */
+	public ExpiryRun getLastExpiryRun() {
+		return inTransaction("getLastExpiryRun", () -> currentSession().createQuery("from ExpiryRun r order by r.id desc", ExpiryRun.class)
+				.setMaxResults(1).uniqueResult());
+	}
+
+	/**
+	 * Returns the latest runs of the TenancyExpiryScheduler, the newest first
+	 * @param limit Maximum number of runs
+	 */
+	public List<ExpiryRun> getExpiryRuns(int limit) {
+		return inTransaction("getExpiryRuns", () -> currentSession().createQuery("from ExpiryRun r order by r.id desc", ExpiryRun.class)
+				.setMaxResults(limit).list());
+	}
+
+	//Stores a new run or the progress of a run, joins the transaction of the batch
+	void saveExpiryRun(ExpiryRun run) {
+		inTransaction(() -> {
+			if (run.getId() == -1)
+				persist(run);
+			else
+				currentSession().merge(run);
+		});
+	}
+
+	/**
+	 * Returns the recorded changes of the entities in the order they were recorded
+	 * @param afterId Only changes with a larger id are returned, 0 for all
+	 * @param limit Maximum number of changes
+	 */
+	public List<ChangeRecord> getChanges(long afterId, int limit) {
+		return inTransaction("getChanges", () -> changesAfter(afterId, limit));
+	}
+
+	//Committed changes after the id in the order of the ids
+	List<ChangeRecord> changesAfter(long afterId, int limit) {
+		return inTransaction(() -> currentSession().createQuery("from ChangeRecord c where c.id > :id order by c.id", ChangeRecord.class)
+				.setParameter("id", afterId).setMaxResults(limit).list());
+	}
+
+	/**
+	 * Returns the id of the last change a consumer of the ChangeRelay has processed
+	 * @param consumer The name of the consumer
+	 * @return The id or 0 if the consumer has not processed any change
+	 */
+	public long getChangeOffset(String consumer) {
+		return inTransaction("getChangeOffset", () -> {
+			ChangeOffset offset = currentSession().get(ChangeOffset.class, consumer);
+			return offset == null ? 0L : offset.getLastId();
+		});
+	}
+
+	//Position of a consumer, locked until the end of the transaction of the relay
+	ChangeOffset lockChangeOffset(String consumer) {
+		return inTransaction(() -> {
+			ChangeOffset offset = currentSession().get(ChangeOffset.class, consumer, LockMode.PESSIMISTIC_WRITE);
+			if (offset == null) {
+				offset = new ChangeOffset();
+				offset.setConsumer(consumer);
+				offset.setUpdated(new Date());
+				currentSession().persist(offset);
+				//A second relay of the consumer fails here instead of after its batch
+				currentSession().flush();
+			}
+			return offset;
+		});
+	}
+
+	/**
+	 * Deletes the recorded changes that are older than the given time and were
+	 * processed by all consumers of the ChangeRelay
+	 * @param before Only changes recorded before this time are deleted
+	 * @return The number of deleted changes
+	 */
+	public int purgeChanges(Date before) {
+		return inTransaction("purgeChanges", () -> {
+			Long processed = currentSession().createQuery("select min(o.lastId) from ChangeOffset o", Long.class).uniqueResult();
+			return currentSession().createMutationQuery("delete from ChangeRecord c where c.recorded < :before and c.id <= :id")
+					.setParameter("before", before).setParameter("id", processed == null ? Long.MAX_VALUE : processed).executeUpdate();
+		});
 	}
 
 	/**
@@ -351,209 +1158,248 @@ public class EstateService {
 	 * @return All purchase contracts belonging to houses managed by the given estate agent
 	 */
 	public Set<PurchaseContract> getAllPurchaseContractsForEstateAgent(EstateAgent ea) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		String sql = "SELECT pc.id FROM PurchaseContract pc JOIN house h ON pc.house_id = h.id WHERE h.manager = :m_id";
-		List<Integer> ret = (List<Integer>) session.createNativeQuery(sql).setParameter("m_id", ea.getId()).list();
-		session.getTransaction().commit();
-		Set<PurchaseContract> contractSet = getAllPurchaseContractsForIdList(ret);
-		return contractSet;
+		//House and buyer are fetched with the contracts in one query
+		String hql = "select pc from PurchaseContract pc join fetch pc.house h join fetch pc.contractPartner " +
+				"where h.manager.id = :m_id";
+		List<PurchaseContract> ret = inTransaction("getAllPurchaseContractsForEstateAgent", () -> currentSession().createQuery(hql, PurchaseContract.class)
+				.setParameter("m_id", ea.getId()).list());
+		return new HashSet<>(ret);
 	}
 
+	/**
+	 * Returns the purchase contracts with the given ids including house and buyer
+	 * @param ids The ids of the contracts
+	 * @return The contracts that were found
+	 */
 	public Set<PurchaseContract> getAllPurchaseContractsForIdList(List<Integer> ids) {
-		Set<PurchaseContract> contractSet = new HashSet<>();
-		if (ids == null || ids.isEmpty()) {
+		return metrics.measure("getAllPurchaseContractsForIdList", () -> {
+			Set<PurchaseContract> contractSet = new HashSet<>();
+			if (ids == null || ids.isEmpty()) {
+				return contractSet;
+			}
+			String hql = "select pc from PurchaseContract pc join fetch pc.house join fetch pc.contractPartner " +
+					"where pc.id in (:c_ids)";
+			inTransaction(() -> {
+				for (List<Integer> chunk : Helper.partition(ids, MAX_IN_LIST)) {
+					contractSet.addAll(currentSession().createQuery(hql, PurchaseContract.class).setParameterList("c_ids", chunk).list());
+				}
+			});
 			return contractSet;
-		}
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		String hql = "from PurchaseContract where id in (:c_ids)";
-		List<PurchaseContract> ret = (List<PurchaseContract>) session.createQuery(hql).setParameterList("c_ids", ids).list();
-		session.getTransaction().commit();
-		contractSet.addAll(ret);
-		return contractSet;
+		});
 	}
 
 
 	/**
-	 * Finds all tenancy contracts relating to the apartments of a given estate agent
-	 * @param ea The estate agent
-	 * @return set of tenancy contracts
+	 * Deletes a tenancy contract
+	 * @param tc the tenancy contract
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
 	 */
-	public Set<TenancyContract> getTenancyContractByEstateAgent(EstateAgent ea) {
-		Set<TenancyContract> ret = new HashSet<TenancyContract>();
-		Iterator<TenancyContract> it = tenancyContracts.iterator();
+	public void deleteTenancyContract(TenancyContract tc) {
+		inTransaction("deleteTenancyContract", () -> {
+			Integer manager = managerOf(tc.getApartment());
+			remove(tc);
+			changes.deleted(currentSession(), tc);
+			if(manager != null)
+				portfolio.rebuild(currentSession(), manager);
+		});
+	}
 
-		while(it.hasNext()) {
-			TenancyContract mv = it.next();
+	/**
+	 * Deletes a purchase contract
+	 * @param tc the purchase contract
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
+	 */
+	public void deletePurchaseContract(PurchaseContract pc) {
+		inTransaction("deletePurchaseContract", () -> {
+			Integer manager = managerOf(pc.getHouse());
+			remove(pc);
+			changes.deleted(currentSession(), pc);
+			if(manager != null)
+				portfolio.rebuild(currentSession(), manager);
+		});
+	}
 
-			if(mv.getApartment().getManager().getId() == ea.getId())
-				ret.add(mv);
-		}
+	/**
+	 * Writes a person or estate agent with its id and version as given, e.g. a
+	 * copy from another shard. The row is inserted if it does not exist yet.
+	 * Nothing is recorded in the outbox, the change was recorded where it was made.
+	 * @param entity A person or estate agent, its collections are not written
+	 */
+	void replicate(Object entity) {
+		inTransaction("replicate", () -> {
+			SessionImplementor session = currentSession().unwrap(SessionImplementor.class);
+			EntityPersister persister = session.getEntityPersister(null, entity);
+			Object id = persister.getIdentifier(entity, session);
+			Object[] values = persister.getValues(entity);
+			String[] names = persister.getPropertyNames();
+
+			List<String> columns = new ArrayList<>();
+			List<Object> parameters = new ArrayList<>();
+			for (int i = 0; i < names.length; i++) {
+				if (persister.getPropertyTypes()[i].isCollectionType())
+					continue;
+				columns.add(names[i]);
+				parameters.add(values[i]);
+			}
 
-		return ret;
+			StringBuilder update = new StringBuilder("update " + persister.getEntityName() + " e set ");
+			StringBuilder insert = new StringBuilder("insert into " + persister.getEntityName() + " (id");
+			StringBuilder insertValues = new StringBuilder(" values (:id");
+			for (int i = 0; i < columns.size(); i++) {
+				update.append(i == 0 ? "" : ", ").append("e.").append(columns.get(i)).append(" = :p").append(i);
+				insert.append(", ").append(columns.get(i));
+				insertValues.append(", :p").append(i);
+			}
+			update.append(" where e.id = :id");
+
+			if (mutation(update.toString(), id, parameters).executeUpdate() == 0) {
+				mutation(insert + ")" + insertValues + ")", id, parameters).executeUpdate();
+				if (entity instanceof EstateAgent)
+					portfolio.rebuild(currentSession(), (Integer) id);
+			}
+			if (entity instanceof Person)
+				afterCommit(() -> index((Person) entity));
+		});
+	}
+
+	private MutationQuery mutation(String hql, Object id, List<Object> parameters) {
+		MutationQuery query = currentSession().createMutationQuery(hql).setParameter("id", id);
+		for (int i = 0; i < parameters.size(); i++)
+			query.setParameter("p" + i, parameters.get(i));
+		return query;
 	}
 
 	/**
-	 * Finds all purchase contracts relating to the houses of a given estate agent
-	 * @param  ea The estate agent
-	 * @return set of purchase contracts
+	 * Makes sure that the ids of new estates and contracts are not smaller than
+	 * the given id, the sequences are restarted there if they are behind
+	 * @param start The first id of the range of this database
 	 */
-	public Set<PurchaseContract> getPurchaseContractByEstateAgent(EstateAgent ea) {
-		Set<PurchaseContract> ret = new HashSet<PurchaseContract>();
-		Iterator<PurchaseContract> it = purchaseContracts.iterator();
+	void reserveIds(long start) {
+		inTransaction(() -> {
+			Dialect dialect = sessionFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+			for (String sequence : new String[] { "estate_seq", "contract_seq" }) {
+				String next = dialect.getSequenceSupport().getSequenceNextValString(sequence);
+				long value = ((Number) currentSession().createNativeQuery(next, Object.class).uniqueResult()).longValue();
+				if (value < start)
+					currentSession().createNativeMutationQuery("alter sequence " + sequence + " restart with " + start).executeUpdate();
+			}
+		});
+	}
 
-		while(it.hasNext()) {
-			PurchaseContract k = it.next();
+	/**
+	 * Imports many records at once through a stateless session with JDBC batching
+	 * @param type Kind of the records
+	 * @param records The records, see {@link BulkImporter} for the expected fields
+	 * @param batchSize Number of rows per JDBC batch
+	 * @param commitInterval Number of rows after which the transaction is committed
+	 * @return Number of imported and rejected rows and the throughput
+	 */
+	public ImportResult bulkImport(BulkImporter.Type type, Iterator<Map<String, String>> records, int batchSize, int commitInterval) {
+		return metrics.measure("bulkImport", () -> {
+			BulkImporter importer = new BulkImporter(sessionFactory, batchSize, commitInterval);
+			try {
+				return importer.importRecords(type, records);
+			} finally {
+				//The imported rows are not added to the statistics one by one
+				if (type != BulkImporter.Type.PERSON)
+					inTransaction(() -> portfolio.rebuild(currentSession(), null));
+
+				//The imported rows are not indexed one by one, the index is built again on the next search
+				if (type == BulkImporter.Type.PERSON)
+					personIndex.clear();
+				else if (type == BulkImporter.Type.HOUSE)
+					houseIndex.clear();
+				else if (type == BulkImporter.Type.APARTMENT)
+					apartmentIndex.clear();
+				evictImported(type);
+			}
+		});
+	}
 
-			if(k.getHouse().getManager().getId() == ea.getId())
-				ret.add(k);
+	/**
+	 * Removes the cached query results and rows the imported rows make stale.
+	 * The stateless session of the import bypasses the second-level cache and
+	 * does not update the timestamps of the query cache.
+	 */
+	private void evictImported(BulkImporter.Type type) {
+		Cache cache = sessionFactory.getCache();
+		cache.evictQueryRegions();
+		if (type == BulkImporter.Type.AGENT) {
+			cache.evictEntityData(EstateAgent.class);
+		} else if (type == BulkImporter.Type.PERSON) {
+			cache.evictEntityData(Person.class);
+		} else if (type == BulkImporter.Type.HOUSE || type == BulkImporter.Type.APARTMENT) {
+			cache.evictEntityData(Estate.class);
+			cache.evictCollectionData(ESTATES_ROLE);
 		}
+	}
 
-		return ret;
+	/**
+	 * Returns the id of the manager of an estate as stored in the database
+	 * @return The id or null if the estate does not exist
+	 */
+	private Integer managerOf(Estate e) {
+		if(e == null)
+			return null;
+		String entity = (e instanceof House) ? "House" : "Apartment";
+		return currentSession().createQuery("select e.manager.id from "+entity+" e where e.id = :id", Integer.class)
+				.setParameter("id", e.getId()).uniqueResult();
 	}
 
+	private static Estate estateOf(Contract c) {
+		if(c instanceof TenancyContract)
+			return ((TenancyContract) c).getApartment();
+		return ((PurchaseContract) c).getHouse();
+	}
 
 	/**
-	 * Deletes a tenancy contract
-	 * @param tc the tenancy contract
+	 * Returns the key figures of the estates of an estate agent. They are read 
+	 * from a summary table that is kept up to date with every change.
+	 * @param ea The estate agent
+	 * @return Number of houses and apartments, prices, rents and occupancy
 	 */
-	public void deleteTenancyContract(TenancyContract tc) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.delete(tc);
-		session.getTransaction().commit();
+	public PortfolioStatistics getPortfolioStatistics(EstateAgent ea) {
+		String hql = "from PortfolioStatistics s where s.agentId = :m_id";
+		return inTransaction("getPortfolioStatistics", () -> {
+			PortfolioStatistics ret = currentSession().createQuery(hql, PortfolioStatistics.class).setParameter("m_id", ea.getId()).uniqueResult();
+			if(ret == null) {
+				portfolio.rebuild(currentSession(), ea.getId());
+				ret = currentSession().createQuery(hql, PortfolioStatistics.class).setParameter("m_id", ea.getId()).uniqueResult();
+			}
+			return ret;
+		});
 	}
 
 	/**
-	 * Deletes a purchase contract
-	 * @param tc the purchase contract
+	 * Returns the key figures of all estate agents ordered by agent id
 	 */
-	public void deletePurchaseContract(PurchaseContract pc) {
-		Session session = sessionFactory.getCurrentSession();
-		session.beginTransaction();
-		session.delete(pc);
-		session.getTransaction().commit();
+	public List<PortfolioStatistics> getAllPortfolioStatistics() {
+		String hql = "from PortfolioStatistics s order by s.agentId";
+		return inTransaction("getAllPortfolioStatistics", () -> currentSession().createQuery(hql, PortfolioStatistics.class).list());
 	}
 
 	/**
-	 * Adds some test data
+	 * Returns number and value of the contracts of an estate agent per month
+	 * @param ea The estate agent
+	 * @return One entry per month with contracts, ordered by month
+	 */
+	public List<ContractVolume> getContractVolumes(EstateAgent ea) {
+		String hql = "from ContractVolume v where v.agentId = :m_id order by v.month";
+		return inTransaction("getContractVolumes", () -> currentSession().createQuery(hql, ContractVolume.class).setParameter("m_id", ea.getId()).list());
+	}
+
+	/**
+	 * Computes the summary tables of the analytics again from all estates and 
+	 * contracts, e.g. after the tables were changed without the EstateService
+	 */
+	public void rebuildPortfolioStatistics() {
+		inTransaction("rebuildPortfolioStatistics", () -> portfolio.rebuild(currentSession(), null));
+	}
+
+	/**
+	 * Adds some test data in one transaction
 	 */
 	public void addTestData() {
-		//Hibernate Session erzeugen
-		Session session = sessionFactory.openSession();
-
-		session.beginTransaction();
-
-		EstateAgent m = new EstateAgent();
-		m.setName("Max Mustermann");
-		m.setAddress("Am Informatikum 9");
-		m.setLogin("max");
-		m.setPassword("max");
-
-		//TODO: This estate agent is kept in memory and the DB
-		this.addEstateAgent(m);
-		session.save(m);
-		session.getTransaction().commit();
-
-		session.beginTransaction();
-
-		Person p1 = new Person();
-		p1.setAddress("Informatikum");
-		p1.setName("Mustermann");
-		p1.setFirstname("Erika");
-
-
-		Person p2 = new Person();
-		p2.setAddress("Reeperbahn 9");
-		p2.setName("Albers");
-		p2.setFirstname("Hans");
-
-		session.save(p1);
-		session.save(p2);
-
-		//TODO: These persons are kept in memory and the DB
-		this.addPerson(p1);
-		this.addPerson(p2);
-		session.getTransaction().commit();
-
-
-		session.beginTransaction();
-		House h = new House();
-		h.setCity("Hamburg");
-		h.setPostalcode(22527);
-		h.setStreet("Vogt-Kölln-Street");
-		h.setStreetnumber("2a");
-		h.setSquareArea(384);
-		h.setFloors(5);
-		h.setPrice(10000000);
-		h.setGarden(true);
-		h.setManager(m);
-
-		session.save(h);
-
-		//TODO: This house is held in memory and the DB
-		this.addHouse(h);
-		session.getTransaction().commit();
-
-		// Create Hibernate Session
-		session = sessionFactory.openSession();
-		session.beginTransaction();
-		EstateAgent m2 = (EstateAgent)session.get(EstateAgent.class, m.getId());
-		Set<Estate> immos = m2.getEstates();
-		Iterator<Estate> it = immos.iterator();
-
-		while(it.hasNext()) {
-			Estate i = it.next();
-			System.out.println("Estate: "+i.getCity());
-		}
-		session.close();
-
-		Apartment w = new Apartment();
-		w.setCity("Hamburg");
-		w.setPostalcode(22527);
-		w.setStreet("Vogt-Kölln-Street");
-		w.setStreetnumber("3");
-		w.setSquareArea(120);
-		w.setFloor(4);
-		w.setRent(790);
-		w.setKitchen(true);
-		w.setBalcony(false);
-		w.setManager(m);
-		this.addApartment(w);
-
-		w = new Apartment();
-		w.setCity("Berlin");
-		w.setPostalcode(22527);
-		w.setStreet("Vogt-Kölln-Street");
-		w.setStreetnumber("3");
-		w.setSquareArea(120);
-		w.setFloor(4);
-		w.setRent(790);
-		w.setKitchen(true);
-		w.setBalcony(false);
-		w.setManager(m);
-		this.addApartment(w);
-
-		PurchaseContract pc = new PurchaseContract();
-		pc.setHouse(h);
-		pc.setContractPartner(p1);
-		pc.setContractNo(9234);
-		pc.setDate(new Date(System.currentTimeMillis()));
-		pc.setPlace("Hamburg");
-		pc.setNoOfInstallments(5);
-		pc.setIntrestRate(4);
-		this.addPurchaseContract(pc);
-
-		TenancyContract tc = new TenancyContract();
-		tc.setApartment(w);
-		tc.setContractPartner(p2);
-		tc.setContractNo(23112);
-		tc.setDate(new Date(System.currentTimeMillis()-1000000000));
-		tc.setPlace("Berlin");
-		tc.setStartDate(new Date(System.currentTimeMillis()));
-		tc.setAdditionalCosts(65);
-		tc.setDuration(36);
-		this.addTenancyContract(tc);
+		inTransaction(EstateRepository.super::addTestData);
 	}
 }
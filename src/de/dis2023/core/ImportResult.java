@@ -0,0 +1,64 @@
+package de.dis2023.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import
+ */
+public class ImportResult {
+	//Only the first errors are kept, a broken file should not fill the heap
+	private static final int MAX_ERRORS = 100;
+
+	private long imported;
+	private long rejected;
+	private long elapsedNanos;
+	private List<String> errors = new ArrayList<String>();
+
+	void addImported(int rows) {
+		imported += rows;
+	}
+
+	void addRejected(long row, String reason) {
+		rejected++;
+		if(errors.size() < MAX_ERRORS)
+			errors.add("Row "+row+": "+reason);
+	}
+
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public long getImported() {
+		return imported;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1000000;
+	}
+
+	/**
+	 * Returns the throughput of the import
+	 */
+	public double getRowsPerSecond() {
+		if(elapsedNanos == 0)
+			return 0;
+		return (imported + rejected) * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * Returns the reasons for the first rejected rows
+	 */
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	public String toString() {
+		return String.format("%d rows imported, %d rejected in %d ms (%.0f rows/s)",
+				imported, rejected, getElapsedMillis(), getRowsPerSecond());
+	}
+}
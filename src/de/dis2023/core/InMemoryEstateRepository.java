@@ -0,0 +1,714 @@
+package de.dis2023.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+import de.dis2023.data.AgentCredentials;
+import de.dis2023.data.Apartment;
+import de.dis2023.data.Contract;
+import de.dis2023.data.Estate;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+
+/**
+ * Keeps all data in memory, e.g. for a demo or for tests without a database.
+ *
+ * Every kind of object is kept in a concurrent map by id. Secondary indexes
+ * lead from an agent to its estates, from an estate to its contract and from
+ * a person to the contracts of the person, so no lookup scans all objects.
+ * Reads take no lock and return copies, like the detached objects of the
+ * EstateService, references are resolved to the current state of the
+ * referenced object. Writes are serialized by one lock, so the indexes and
+ * references stay consistent; a read running at the same time sees every
+ * single object either before or after the write.
+ *
+ * The constraints of the database schema are checked, a violation throws an
+ * IntegrityViolationException. There are no transactions, every operation
+ * is applied on its own and nothing is rolled back. The estates of a
+ * returned agent are not filled.
+ */
+public class InMemoryEstateRepository implements EstateRepository {
+	private Map<Integer, EstateAgent> agents = new ConcurrentHashMap<>();
+	//Ordered by id for the pages of all persons
+	private ConcurrentSkipListMap<Integer, Person> persons = new ConcurrentSkipListMap<>();
+	private Map<Integer, House> houses = new ConcurrentHashMap<>();
+	private Map<Integer, Apartment> apartments = new ConcurrentHashMap<>();
+	private Map<Integer, TenancyContract> tenancyContracts = new ConcurrentHashMap<>();
+	private Map<Integer, PurchaseContract> purchaseContracts = new ConcurrentHashMap<>();
+
+	//Secondary indexes, the estates of an agent are ordered by id for paging
+	private Map<String, Integer> agentByLogin = new ConcurrentHashMap<>();
+	private Map<Integer, NavigableSet<Integer>> housesByManager = new ConcurrentHashMap<>();
+	private Map<Integer, NavigableSet<Integer>> apartmentsByManager = new ConcurrentHashMap<>();
+	//Houses and apartments share the ids like in the database, so do the contracts
+	private Map<Integer, Integer> contractByEstate = new ConcurrentHashMap<>();
+	private Map<Integer, Set<Integer>> contractsByPartner = new ConcurrentHashMap<>();
+
+	//Name and address search
+	private SearchIndex personIndex = new SearchIndex();
+	private SearchIndex houseIndex = new SearchIndex();
+	private SearchIndex apartmentIndex = new SearchIndex();
+
+	private AtomicInteger agentIds = new AtomicInteger();
+	private AtomicInteger personIds = new AtomicInteger();
+	private AtomicInteger estateIds = new AtomicInteger();
+	private AtomicInteger contractIds = new AtomicInteger();
+
+	//Serializes the writes, a ReentrantLock does not pin virtual threads
+	private ReentrantLock writes = new ReentrantLock();
+
+	//Told when agents are deleted or change their credentials
+	private Set<CredentialsListener> credentialsListeners = new CopyOnWriteArraySet<>();
+
+	//Asynchronous facade, created on first use
+	private AsyncEstateService async;
+
+	public InMemoryEstateRepository() {
+		//Every object is indexed when it is written
+		personIndex.setBuilt();
+		houseIndex.setBuilt();
+		apartmentIndex.setBuilt();
+	}
+
+	/**
+	 * Runs the work directly, there are no transactions. The work is not
+	 * atomic: every call of the repository inside the work is applied on its
+	 * own and other threads see it at once, the changes made before an
+	 * exception of the work stay.
+	 */
+	public <T> T inTransaction(UnitOfWork<T> work) {
+		return work.execute();
+	}
+
+	/**
+	 * Runs the work like {@link #inTransaction(UnitOfWork)}, the operation
+	 * is not recorded
+	 */
+	public <T> T inTransaction(String operation, UnitOfWork<T> work) {
+		return work.execute();
+	}
+
+	/**
+	 * Returns the asynchronous facade, at most as many tasks as there are
+	 * processors run at the same time
+	 */
+	public synchronized AsyncEstateService async() {
+		if (async == null)
+			async = new AsyncEstateService(this, Runtime.getRuntime().availableProcessors());
+		return async;
+	}
+
+	/**
+	 * Waits for the tasks of the asynchronous facade, the data is kept
+	 */
+	public void close() {
+		AsyncEstateService facade;
+		synchronized (this) {
+			facade = async;
+			async = null;
+		}
+		if (facade != null)
+			facade.close();
+	}
+
+	private <T> T write(UnitOfWork<T> work) {
+		writes.lock();
+		try {
+			return work.execute();
+		} finally {
+			writes.unlock();
+		}
+	}
+
+	private void write(Runnable work) {
+		write(() -> {
+			work.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Stores the changes of a detached object if it has the version of the stored one
+	 * @param obj The changed object, gets the new version
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
+	 */
+	public void updateInstance(Object obj) {
+		write(() -> {
+			if (obj instanceof EstateAgent)
+				updateEstateAgent((EstateAgent) obj);
+			else if (obj instanceof Person)
+				updatePerson((Person) obj);
+			else if (obj instanceof House)
+				updateEstate(houses, housesByManager, houseIndex, (House) obj, this::copy);
+			else if (obj instanceof Apartment)
+				updateEstate(apartments, apartmentsByManager, apartmentIndex, (Apartment) obj, this::copy);
+			else if (obj instanceof TenancyContract)
+				updateContract(tenancyContracts, (TenancyContract) obj, ((TenancyContract) obj).getApartment(), apartments, this::copy);
+			else if (obj instanceof PurchaseContract)
+				updateContract(purchaseContracts, (PurchaseContract) obj, ((PurchaseContract) obj).getHouse(), houses, this::copy);
+			else
+				throw new IllegalArgumentException("Not stored in the repository: "+obj.getClass().getName());
+		});
+	}
+
+	//Returns the stored object if the edited object has its version
+	private static <T> T stored(Map<Integer, T> map, Object obj, int id, int version, ToIntFunction<T> storedVersion) {
+		T stored = map.get(id);
+		if (stored == null || storedVersion.applyAsInt(stored) != version)
+			throw new EditConflictException(obj.getClass(), id, null);
+		return stored;
+	}
+
+	private void updateEstateAgent(EstateAgent ea) {
+		EstateAgent stored = stored(agents, ea, ea.getId(), ea.getVersion(), EstateAgent::getVersion);
+		if (!Objects.equals(stored.getLogin(), ea.getLogin())) {
+			reserveLogin(ea.getLogin(), ea.getId());
+			if (stored.getLogin() != null)
+				agentByLogin.remove(stored.getLogin());
+		}
+		ea.setVersion(stored.getVersion() + 1);
+		agents.put(ea.getId(), copy(ea));
+		if (!Objects.equals(stored.getLogin(), ea.getLogin()) || !Objects.equals(stored.getPassword(), ea.getPassword()))
+			credentialsChanged(ea.getId());
+	}
+
+	private void updatePerson(Person p) {
+		Person stored = stored(persons, p, p.getId(), p.getVersion(), Person::getVersion);
+		p.setVersion(stored.getVersion() + 1);
+		persons.put(p.getId(), copy(p));
+		index(p);
+	}
+
+	private <T extends Estate> void updateEstate(Map<Integer, T> estates, Map<Integer, NavigableSet<Integer>> byManager,
+			SearchIndex index, T e, UnaryOperator<T> copy) {
+		T stored = stored(estates, e, e.getId(), e.getVersion(), Estate::getVersion);
+		int manager = checkManager(e);
+		if (manager != stored.getManager().getId()) {
+			byManager.get(stored.getManager().getId()).remove(e.getId());
+			estatesOf(byManager, manager).add(e.getId());
+		}
+		e.setVersion(stored.getVersion() + 1);
+		estates.put(e.getId(), copy.apply(e));
+		index(index, e);
+	}
+
+	private <T extends Contract> void updateContract(Map<Integer, T> contracts, T c, Estate estate,
+			Map<Integer, ? extends Estate> estates, UnaryOperator<T> copy) {
+		T stored = stored(contracts, c, c.getId(), c.getVersion(), Contract::getVersion);
+		checkReferences(c, estate, estates);
+		int storedEstate = estateOf(stored).getId();
+		if (estate.getId() != storedEstate) {
+			reserveEstate(estate.getId(), c.getId());
+			contractByEstate.remove(storedEstate);
+		}
+		int storedPartner = stored.getContractPartner().getId();
+		if (c.getContractPartner().getId() != storedPartner) {
+			contractsByPartner.get(storedPartner).remove(c.getId());
+			partnerContracts(c.getContractPartner().getId()).add(c.getId());
+		}
+		c.setVersion(stored.getVersion() + 1);
+		contracts.put(c.getId(), copy.apply(c));
+	}
+
+	public EstateAgent getEstateAgentByID(int id) {
+		EstateAgent stored = agents.get(id);
+		return stored == null ? null : copy(stored);
+	}
+
+	public EstateAgent getEstateAgentByLogin(String login) {
+		Integer id = (login == null) ? null : agentByLogin.get(login);
+		return id == null ? null : getEstateAgentByID(id);
+	}
+
+	public AgentCredentials getAgentCredentials(String login) {
+		Integer id = (login == null) ? null : agentByLogin.get(login);
+		EstateAgent stored = (id == null) ? null : agents.get(id);
+		return stored == null ? null : new AgentCredentials(stored.getId(), stored.getLogin(), stored.getName(), stored.getPassword());
+	}
+
+	public void addCredentialsListener(CredentialsListener listener) {
+		credentialsListeners.add(listener);
+	}
+
+	private void credentialsChanged(int agentId) {
+		for (CredentialsListener listener : credentialsListeners)
+			listener.credentialsChanged(agentId);
+	}
+
+	public Set<EstateAgent> getAllEstateAgents() {
+		Set<EstateAgent> ret = new HashSet<>();
+		for (EstateAgent stored : agents.values())
+			ret.add(copy(stored));
+		return ret;
+	}
+
+	public void addEstateAgent(EstateAgent ea) {
+		write(() -> {
+			int id = agentIds.incrementAndGet();
+			reserveLogin(ea.getLogin(), id);
+			ea.setId(id);
+			ea.setVersion(0);
+			agents.put(id, copy(ea));
+		});
+	}
+
+	public DeleteResult deleteEstateAgent(EstateAgent ea, EstateAgent successor) {
+		if (successor != null && successor.getId() == ea.getId())
+			throw new IllegalArgumentException("An estate agent cannot hand over the estates to itself");
+
+		return write(() -> {
+			DeleteResult result = new DeleteResult();
+			if (!agents.containsKey(ea.getId()))
+				return result;
+			if (successor != null && !agents.containsKey(successor.getId()))
+				throw new IntegrityViolationException("Estate agent "+successor.getId()+" does not exist");
+
+			Set<Integer> houseIds = housesByManager.getOrDefault(ea.getId(), Collections.emptyNavigableSet());
+			Set<Integer> apartmentIds = apartmentsByManager.getOrDefault(ea.getId(), Collections.emptyNavigableSet());
+			if (successor == null) {
+				int contracts = 0;
+				for (int id : houseIds)
+					contracts += removeEstate(houses, purchaseContracts, houseIndex, id);
+				result.setPurchaseContracts(contracts);
+				result.setHouses(houseIds.size());
+
+				contracts = 0;
+				for (int id : apartmentIds)
+					contracts += removeEstate(apartments, tenancyContracts, apartmentIndex, id);
+				result.setTenancyContracts(contracts);
+				result.setApartments(apartmentIds.size());
+			} else {
+				result.setReassignedHouses(reassign(houses, houseIds, housesByManager, houseIndex, successor.getId(), this::copy));
+				result.setReassignedApartments(reassign(apartments, apartmentIds, apartmentsByManager, apartmentIndex, successor.getId(), this::copy));
+			}
+			housesByManager.remove(ea.getId());
+			apartmentsByManager.remove(ea.getId());
+
+			EstateAgent stored = agents.remove(ea.getId());
+			if (stored.getLogin() != null)
+				agentByLogin.remove(stored.getLogin());
+			result.setEstateAgents(1);
+			credentialsChanged(ea.getId());
+			return result;
+		});
+	}
+
+	//Hands the estates over to another agent, returns the number of handed over estates
+	private <T extends Estate> int reassign(Map<Integer, T> estates, Set<Integer> ids, Map<Integer, NavigableSet<Integer>> byManager,
+			SearchIndex index, int successor, UnaryOperator<T> copy) {
+		EstateAgent manager = agents.get(successor);
+		int ret = 0;
+		for (int id : ids) {
+			T moved = copy.apply(estates.get(id));
+			moved.setManager(manager);
+			moved.setVersion(moved.getVersion() + 1);
+			estates.put(id, moved);
+			estatesOf(byManager, successor).add(id);
+			index.setGroup(id, successor);
+			ret++;
+		}
+		return ret;
+	}
+
+	public Person getPersonById(int id) {
+		Person stored = persons.get(id);
+		return stored == null ? null : copy(stored);
+	}
+
+	public void addPerson(Person p) {
+		write(() -> {
+			p.setId(personIds.incrementAndGet());
+			p.setVersion(0);
+			persons.put(p.getId(), copy(p));
+			index(p);
+		});
+	}
+
+	public Set<Person> getAllPersons() {
+		Set<Person> ret = new HashSet<>();
+		for (Person stored : persons.values())
+			ret.add(copy(stored));
+		return ret;
+	}
+
+	public Page<Person> getPersonPage(Page.Cursor cursor, int pageSize) {
+		return Page.of((c, limit) -> load(from(persons.navigableKeySet(), c, limit), this::getPersonById),
+				Person::getId, cursor, pageSize);
+	}
+
+	public Page<Person> searchPersons(String term, Page.Cursor cursor, int pageSize) {
+		return Page.of((c, limit) -> load(personIndex.search(term, SearchIndex.ANY_GROUP, c, limit), this::getPersonById),
+				Person::getId, cursor, pageSize);
+	}
+
+	/**
+	 * Deletes a person
+	 * @throws IntegrityViolationException If the person is partner of a contract
+	 * @throws EditConflictException If the person was changed or deleted meanwhile
+	 */
+	public void deletePerson(Person p) {
+		write(() -> {
+			stored(persons, p, p.getId(), p.getVersion(), Person::getVersion);
+			if (!contractsByPartner.getOrDefault(p.getId(), Collections.emptySet()).isEmpty())
+				throw new IntegrityViolationException("Person "+p.getId()+" is partner of a contract");
+			persons.remove(p.getId());
+			contractsByPartner.remove(p.getId());
+			personIndex.remove(p.getId());
+		});
+	}
+
+	public void addHouse(House h) {
+		write(() -> addEstate(houses, housesByManager, houseIndex, h, copy(h)));
+	}
+
+	public House getHouseById(int id) {
+		House stored = houses.get(id);
+		return stored == null ? null : copy(stored);
+	}
+
+	public Set<House> getAllHousesForEstateAgent(EstateAgent ea) {
+		return new HashSet<>(load(housesByManager.getOrDefault(ea.getId(), Collections.emptyNavigableSet()), this::getHouseById));
+	}
+
+	public List<EstateSummary> getHouseSummariesForEstateAgent(EstateAgent ea) {
+		return summaries(houses, housesByManager.getOrDefault(ea.getId(), Collections.emptyNavigableSet()));
+	}
+
+	public Page<EstateSummary> getHouseSummaryPage(EstateAgent ea, Page.Cursor cursor, int pageSize) {
+		NavigableSet<Integer> ids = housesByManager.getOrDefault(ea.getId(), Collections.emptyNavigableSet());
+		return Page.of((c, limit) -> summaries(houses, from(ids, c, limit)), EstateSummary::getId, cursor, pageSize);
+	}
+
+	public Page<EstateSummary> searchHouses(EstateAgent ea, String term, Page.Cursor cursor, int pageSize) {
+		return Page.of((c, limit) -> summaries(houses, houseIndex.search(term, ea.getId(), c, limit)),
+				EstateSummary::getId, cursor, pageSize);
+	}
+
+	public DeleteResult deleteHouse(House h) {
+		return write(() -> {
+			DeleteResult result = new DeleteResult();
+			House stored = stored(houses, h, h.getId(), h.getVersion(), House::getVersion);
+			result.setPurchaseContracts(removeEstate(houses, purchaseContracts, houseIndex, h.getId()));
+			result.setHouses(1);
+			housesByManager.get(stored.getManager().getId()).remove(h.getId());
+			return result;
+		});
+	}
+
+	public void addApartment(Apartment w) {
+		write(() -> addEstate(apartments, apartmentsByManager, apartmentIndex, w, copy(w)));
+	}
+
+	public Apartment getApartmentByID(int id) {
+		Apartment stored = apartments.get(id);
+		return stored == null ? null : copy(stored);
+	}
+
+	public Set<Apartment> getAllApartmentsForEstateAgent(EstateAgent ea) {
+		return new HashSet<>(load(apartmentsByManager.getOrDefault(ea.getId(), Collections.emptyNavigableSet()), this::getApartmentByID));
+	}
+
+	public List<EstateSummary> getApartmentSummariesForEstateAgent(EstateAgent ea) {
+		return summaries(apartments, apartmentsByManager.getOrDefault(ea.getId(), Collections.emptyNavigableSet()));
+	}
+
+	public Page<EstateSummary> getApartmentSummaryPage(EstateAgent ea, Page.Cursor cursor, int pageSize) {
+		NavigableSet<Integer> ids = apartmentsByManager.getOrDefault(ea.getId(), Collections.emptyNavigableSet());
+		return Page.of((c, limit) -> summaries(apartments, from(ids, c, limit)), EstateSummary::getId, cursor, pageSize);
+	}
+
+	public Page<EstateSummary> searchApartments(EstateAgent ea, String term, Page.Cursor cursor, int pageSize) {
+		return Page.of((c, limit) -> summaries(apartments, apartmentIndex.search(term, ea.getId(), c, limit)),
+				EstateSummary::getId, cursor, pageSize);
+	}
+
+	public DeleteResult deleteApartment(Apartment w) {
+		return write(() -> {
+			DeleteResult result = new DeleteResult();
+			Apartment stored = stored(apartments, w, w.getId(), w.getVersion(), Apartment::getVersion);
+			result.setTenancyContracts(removeEstate(apartments, tenancyContracts, apartmentIndex, w.getId()));
+			result.setApartments(1);
+			apartmentsByManager.get(stored.getManager().getId()).remove(w.getId());
+			return result;
+		});
+	}
+
+	private <T extends Estate> void addEstate(Map<Integer, T> estates, Map<Integer, NavigableSet<Integer>> byManager,
+			SearchIndex index, T e, T copy) {
+		int manager = checkManager(e);
+		e.setId(estateIds.incrementAndGet());
+		e.setVersion(0);
+		copy.setId(e.getId());
+		copy.setVersion(0);
+		estates.put(e.getId(), copy);
+		estatesOf(byManager, manager).add(e.getId());
+		index(index, e);
+	}
+
+	/**
+	 * Removes an estate with its contract from the maps and the search index.
+	 * The caller removes it from the estates of the manager.
+	 * @return The number of removed contracts
+	 */
+	private int removeEstate(Map<Integer, ? extends Estate> estates, Map<Integer, ? extends Contract> contracts,
+			SearchIndex index, int id) {
+		int ret = 0;
+		Integer contract = contractByEstate.remove(id);
+		if (contract != null) {
+			Contract stored = contracts.remove(contract);
+			contractsByPartner.get(stored.getContractPartner().getId()).remove(contract);
+			ret++;
+		}
+		estates.remove(id);
+		index.remove(id);
+		return ret;
+	}
+
+	public void addTenancyContract(TenancyContract t) {
+		write(() -> addContract(tenancyContracts, t, t.getApartment(), apartments, copy(t)));
+	}
+
+	public void addPurchaseContract(PurchaseContract p) {
+		write(() -> addContract(purchaseContracts, p, p.getHouse(), houses, copy(p)));
+	}
+
+	public TenancyContract getTenancyContractByID(int id) {
+		TenancyContract stored = tenancyContracts.get(id);
+		return stored == null ? null : copy(stored);
+	}
+
+	public PurchaseContract getPurchaseContractById(int id) {
+		PurchaseContract stored = purchaseContracts.get(id);
+		return stored == null ? null : copy(stored);
+	}
+
+	public Set<TenancyContract> getAllTenancyContractsForEstateAgent(EstateAgent ea) {
+		return contractsOf(apartmentsByManager.get(ea.getId()), this::getTenancyContractByID);
+	}
+
+	public Set<PurchaseContract> getAllPurchaseContractsForEstateAgent(EstateAgent ea) {
+		return contractsOf(housesByManager.get(ea.getId()), this::getPurchaseContractById);
+	}
+
+	public void deleteTenancyContract(TenancyContract tc) {
+		write(() -> removeContract(tenancyContracts, tc));
+	}
+
+	public void deletePurchaseContract(PurchaseContract pc) {
+		write(() -> removeContract(purchaseContracts, pc));
+	}
+
+	private <T extends Contract> void addContract(Map<Integer, T> contracts, T c, Estate estate,
+			Map<Integer, ? extends Estate> estates, T copy) {
+		checkReferences(c, estate, estates);
+		int id = contractIds.incrementAndGet();
+		reserveEstate(estate.getId(), id);
+		c.setId(id);
+		c.setVersion(0);
+		copy.setId(id);
+		copy.setVersion(0);
+		contracts.put(id, copy);
+		partnerContracts(c.getContractPartner().getId()).add(id);
+	}
+
+	private void removeContract(Map<Integer, ? extends Contract> contracts, Contract c) {
+		Contract stored = stored(contracts, c, c.getId(), c.getVersion(), Contract::getVersion);
+		contracts.remove(c.getId());
+		contractByEstate.remove(estateOf(stored).getId());
+		contractsByPartner.get(stored.getContractPartner().getId()).remove(c.getId());
+	}
+
+	//Contracts of the given estates
+	private <T> Set<T> contractsOf(Collection<Integer> estates, IntFunction<T> load) {
+		Set<T> ret = new HashSet<>();
+		if (estates == null)
+			return ret;
+		for (int estate : estates) {
+			Integer contract = contractByEstate.get(estate);
+			T c = (contract == null) ? null : load.apply(contract);
+			if (c != null)
+				ret.add(c);
+		}
+		return ret;
+	}
+
+	private Set<Integer> partnerContracts(int partner) {
+		return contractsByPartner.computeIfAbsent(partner, k -> ConcurrentHashMap.newKeySet());
+	}
+
+	private static NavigableSet<Integer> estatesOf(Map<Integer, NavigableSet<Integer>> byManager, int manager) {
+		return byManager.computeIfAbsent(manager, k -> new ConcurrentSkipListSet<>());
+	}
+
+	private static Estate estateOf(Contract c) {
+		if (c instanceof TenancyContract)
+			return ((TenancyContract) c).getApartment();
+		return ((PurchaseContract) c).getHouse();
+	}
+
+	//Unique like the login column
+	private void reserveLogin(String login, int agent) {
+		if (login != null && agentByLogin.putIfAbsent(login, agent) != null)
+			throw new IntegrityViolationException("The login "+login+" is already used");
+	}
+
+	//An estate has at most one contract, like the unique estate column of the contract tables
+	private void reserveEstate(int estate, int contract) {
+		if (contractByEstate.putIfAbsent(estate, contract) != null)
+			throw new IntegrityViolationException("Estate "+estate+" already has a contract");
+	}
+
+	//Returns the id of the manager of an estate if the manager exists
+	private int checkManager(Estate e) {
+		if (e.getManager() == null || !agents.containsKey(e.getManager().getId()))
+			throw new IntegrityViolationException("The manager of an estate must be an existing estate agent");
+		return e.getManager().getId();
+	}
+
+	private void checkReferences(Contract c, Estate estate, Map<Integer, ? extends Estate> estates) {
+		if (estate == null || !estates.containsKey(estate.getId()))
+			throw new IntegrityViolationException("The estate of a contract must exist");
+		if (c.getContractPartner() == null || !persons.containsKey(c.getContractPartner().getId()))
+			throw new IntegrityViolationException("The partner of a contract must be an existing person");
+	}
+
+	//Ids after or before the cursor, in the direction of the cursor
+	private static List<Integer> from(NavigableSet<Integer> ids, Page.Cursor cursor, int limit) {
+		Iterator<Integer> it = cursor.isForward() ? ids.tailSet(cursor.getKey(), false).iterator()
+				: ids.headSet(cursor.getKey(), false).descendingIterator();
+		List<Integer> ret = new ArrayList<>();
+		while (it.hasNext() && ret.size() < limit)
+			ret.add(it.next());
+		return ret;
+	}
+
+	//Objects with the given ids in the same order, deleted ones are skipped
+	private static <T> List<T> load(Collection<Integer> ids, IntFunction<T> load) {
+		List<T> ret = new ArrayList<>();
+		for (int id : ids) {
+			T obj = load.apply(id);
+			if (obj != null)
+				ret.add(obj);
+		}
+		return ret;
+	}
+
+	private static List<EstateSummary> summaries(Map<Integer, ? extends Estate> estates, Collection<Integer> ids) {
+		List<EstateSummary> ret = new ArrayList<>();
+		for (int id : ids) {
+			Estate e = estates.get(id);
+			if (e != null)
+				ret.add(new EstateSummary(e.getId(), e.getStreet(), e.getStreetnumber(), e.getPostalcode(), e.getCity()));
+		}
+		return ret;
+	}
+
+	private void index(Person p) {
+		personIndex.put(p.getId(), SearchIndex.ANY_GROUP, p.getFirstname(), p.getName(), p.getAddress());
+	}
+
+	private static void index(SearchIndex index, Estate e) {
+		index.put(e.getId(), e.getManager().getId(), e.getStreet(), e.getCity(), e.getPostalcode());
+	}
+
+	//The copies resolve the references to the current state of the referenced objects
+
+	private EstateAgent copy(EstateAgent ea) {
+		EstateAgent ret = new EstateAgent();
+		ret.setId(ea.getId());
+		ret.setVersion(ea.getVersion());
+		ret.setName(ea.getName());
+		ret.setAddress(ea.getAddress());
+		ret.setLogin(ea.getLogin());
+		ret.setPassword(ea.getPassword());
+		return ret;
+	}
+
+	private Person copy(Person p) {
+		Person ret = new Person();
+		ret.setId(p.getId());
+		ret.setVersion(p.getVersion());
+		ret.setFirstname(p.getFirstname());
+		ret.setName(p.getName());
+		ret.setAddress(p.getAddress());
+		return ret;
+	}
+
+	private House copy(House h) {
+		House ret = copyEstate(h, new House());
+		ret.setFloors(h.getFloors());
+		ret.setPrice(h.getPrice());
+		ret.setGarden(h.isGarden());
+		return ret;
+	}
+
+	private Apartment copy(Apartment w) {
+		Apartment ret = copyEstate(w, new Apartment());
+		ret.setFloor(w.getFloor());
+		ret.setRent(w.getRent());
+		ret.setRooms(w.getRooms());
+		ret.setBalcony(w.isBalcony());
+		ret.setKitchen(w.isKitchen());
+		return ret;
+	}
+
+	private <T extends Estate> T copyEstate(Estate e, T ret) {
+		ret.setId(e.getId());
+		ret.setVersion(e.getVersion());
+		ret.setCity(e.getCity());
+		ret.setPostalcode(e.getPostalcode());
+		ret.setStreet(e.getStreet());
+		ret.setStreetnumber(e.getStreetnumber());
+		ret.setSquareArea(e.getSquareArea());
+		ret.setManager(e.getManager() == null ? null : getEstateAgentByID(e.getManager().getId()));
+		return ret;
+	}
+
+	private TenancyContract copy(TenancyContract t) {
+		TenancyContract ret = copyContract(t, new TenancyContract());
+		ret.setStartDate(t.getStartDate());
+		ret.setDuration(t.getDuration());
+		ret.setAdditionalCosts(t.getAdditionalCosts());
+		ret.setApartment(t.getApartment() == null ? null : getApartmentByID(t.getApartment().getId()));
+		return ret;
+	}
+
+	private PurchaseContract copy(PurchaseContract p) {
+		PurchaseContract ret = copyContract(p, new PurchaseContract());
+		ret.setNoOfInstallments(p.getNoOfInstallments());
+		ret.setIntrestRate(p.getIntrestRate());
+		ret.setHouse(p.getHouse() == null ? null : getHouseById(p.getHouse().getId()));
+		return ret;
+	}
+
+	private <T extends Contract> T copyContract(Contract c, T ret) {
+		ret.setId(c.getId());
+		ret.setVersion(c.getVersion());
+		ret.setContractNo(c.getContractNo());
+		ret.setDate(c.getDate());
+		ret.setPlace(c.getPlace());
+		ret.setContractPartner(c.getContractPartner() == null ? null : getPersonById(c.getContractPartner().getId()));
+		return ret;
+	}
+}
@@ -0,0 +1,15 @@
+package de.dis2023.core;
+
+/**
+ * Thrown by the InMemoryEstateRepository when a change would break a
+ * constraint of the database schema, e.g. a duplicate login, a reference
+ * to a missing row or a person who is still partner of a contract.
+ * Nothing was changed.
+ */
+public class IntegrityViolationException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public IntegrityViolationException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,70 @@
+package de.dis2023.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations. Every power of two of microseconds is
+ * split into 8 buckets, so a percentile is off by at most 12.5%. Durations
+ * from 1 µs up to several hours are recorded in 512 counters.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+
+	/**
+	 * Records a duration
+	 * @param nanos The duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		counts.incrementAndGet(bucket(Math.max(nanos / 1000, 0)));
+	}
+
+	/**
+	 * Returns the duration below which the given share of the recorded durations lies
+	 * @param percentile Between 0 and 100, e.g. 99 for the p99
+	 * @return The duration in milliseconds or 0 if nothing was recorded
+	 */
+	public double getPercentileMillis(double percentile) {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		if (total == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= Math.max(rank, 1))
+				return upperBound(i) / 1000.0;
+		}
+		return upperBound(counts.length() - 1) / 1000.0;
+	}
+
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	//Bucket of a duration: exponent of the power of two and the next three bits
+	private static int bucket(long micros) {
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	//Largest duration in microseconds that falls into the bucket
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
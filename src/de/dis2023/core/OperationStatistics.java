@@ -0,0 +1,97 @@
+package de.dis2023.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, latency, returned rows and executed statements of one 
+ * EstateService operation
+ */
+public class OperationStatistics implements OperationStatisticsMXBean {
+	private String operation;
+	private LongAdder calls = new LongAdder();
+	private LongAdder errors = new LongAdder();
+	private LongAdder nanos = new LongAdder();
+	private AtomicLong maxNanos = new AtomicLong();
+	private LongAdder rows = new LongAdder();
+	private LongAdder statements = new LongAdder();
+	private LatencyHistogram latency = new LatencyHistogram();
+
+	OperationStatistics(String operation) {
+		this.operation = operation;
+	}
+
+	void record(long elapsedNanos, long rowCount, long statementCount, boolean failed) {
+		calls.increment();
+		if (failed)
+			errors.increment();
+		nanos.add(elapsedNanos);
+		maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+		rows.add(rowCount);
+		statements.add(statementCount);
+		latency.record(elapsedNanos);
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public long getCalls() {
+		return calls.sum();
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	public double getMeanMillis() {
+		long count = calls.sum();
+		return count == 0 ? 0 : nanos.sum() / 1e6 / count;
+	}
+
+	public double getP50Millis() {
+		return latency.getPercentileMillis(50);
+	}
+
+	public double getP99Millis() {
+		return latency.getPercentileMillis(99);
+	}
+
+	public double getMaxMillis() {
+		return maxNanos.get() / 1e6;
+	}
+
+	public long getRows() {
+		return rows.sum();
+	}
+
+	public double getRowsPerCall() {
+		long count = calls.sum();
+		return count == 0 ? 0 : (double) rows.sum() / count;
+	}
+
+	public long getStatements() {
+		return statements.sum();
+	}
+
+	public double getStatementsPerCall() {
+		long count = calls.sum();
+		return count == 0 ? 0 : (double) statements.sum() / count;
+	}
+
+	public void reset() {
+		calls.reset();
+		errors.reset();
+		nanos.reset();
+		maxNanos.set(0);
+		rows.reset();
+		statements.reset();
+		latency.reset();
+	}
+
+	public String toString() {
+		return String.format("%s: %d calls, %d errors, mean %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms, " +
+				"%.1f rows/call, %.1f statements/call", operation, getCalls(), getErrors(), getMeanMillis(),
+				getP50Millis(), getP99Millis(), getMaxMillis(), getRowsPerCall(), getStatementsPerCall());
+	}
+}
@@ -0,0 +1,32 @@
+package de.dis2023.core;
+
+/**
+ * JMX view of the statistics of one EstateService operation
+ */
+public interface OperationStatisticsMXBean {
+	public String getOperation();
+
+	public long getCalls();
+
+	public long getErrors();
+
+	public double getMeanMillis();
+
+	public double getP50Millis();
+
+	public double getP99Millis();
+
+	public double getMaxMillis();
+
+	/**
+	 * Average number of entities or rows returned per call
+	 */
+	public double getRowsPerCall();
+
+	/**
+	 * Average number of SQL statements executed per call
+	 */
+	public double getStatementsPerCall();
+
+	public void reset();
+}
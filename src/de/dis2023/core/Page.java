@@ -0,0 +1,156 @@
+package de.dis2023.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * One page of a list that is read with keyset pagination. Instead of an
+ * offset the page remembers the ids of its first and last entry, the
+ * neighbouring pages are read with "id > last" or "id < first". This way
+ * the database only reads the rows of the requested page, no matter how
+ * far the user has paged.
+ */
+public class Page<T> {
+	private List<T> items;
+	private int firstKey;
+	private int lastKey;
+	private boolean hasPrevious;
+	private boolean hasNext;
+
+	/**
+	 * Position in a list from which a page is read
+	 */
+	public static class Cursor {
+		private int key;
+		private boolean forward;
+
+		private Cursor(int key, boolean forward) {
+			this.key = key;
+			this.forward = forward;
+		}
+
+		/**
+		 * The first page of the list
+		 */
+		public static Cursor first() {
+			return new Cursor(Integer.MIN_VALUE, true);
+		}
+
+		/**
+		 * The last page of the list
+		 */
+		public static Cursor last() {
+			return new Cursor(Integer.MAX_VALUE, false);
+		}
+
+		/**
+		 * The page starting with the first entry with an id greater than the given one
+		 */
+		public static Cursor after(int key) {
+			return new Cursor(key, true);
+		}
+
+		/**
+		 * The page ending with the last entry with an id less than the given one
+		 */
+		public static Cursor before(int key) {
+			return new Cursor(key, false);
+		}
+
+		public int getKey() {
+			return key;
+		}
+
+		public boolean isForward() {
+			return forward;
+		}
+
+		boolean isFirst() {
+			return forward && key == Integer.MIN_VALUE;
+		}
+
+		boolean isLast() {
+			return !forward && key == Integer.MAX_VALUE;
+		}
+	}
+
+	Page(List<T> items, int firstKey, int lastKey, boolean hasPrevious, boolean hasNext) {
+		this.items = items;
+		this.firstKey = firstKey;
+		this.lastKey = lastKey;
+		this.hasPrevious = hasPrevious;
+		this.hasNext = hasNext;
+	}
+
+	/**
+	 * Builds a page from the rows after or before the cursor, used by the repositories
+	 * @param rows Returns at most the given number of rows after or before a cursor, in the direction of the cursor
+	 * @param key Returns the id of a row
+	 * @param cursor Position of the page
+	 * @param pageSize Maximum number of rows on the page
+	 */
+	static <T> Page<T> of(BiFunction<Cursor, Integer, List<T>> rows, ToIntFunction<T> key,
+			Cursor cursor, int pageSize) {
+		if (pageSize < 1)
+			throw new IllegalArgumentException("Page size must be positive");
+
+		List<T> items = new ArrayList<>(rows.apply(cursor, pageSize + 1));
+		boolean more = items.size() > pageSize;
+		if (more)
+			items = items.subList(0, pageSize);
+
+		//Paged past the start or the end: show the first or last complete page instead
+		if (!cursor.isForward() && !more && !cursor.isLast())
+			return of(rows, key, Cursor.first(), pageSize);
+		if (cursor.isForward() && items.isEmpty() && !cursor.isFirst())
+			return of(rows, key, Cursor.last(), pageSize);
+
+		items = new ArrayList<>(items);
+		if (!cursor.isForward())
+			Collections.reverse(items);
+
+		int first = items.isEmpty() ? 0 : key.applyAsInt(items.get(0));
+		int last = items.isEmpty() ? 0 : key.applyAsInt(items.get(items.size() - 1));
+		if (cursor.isForward())
+			return new Page<>(items, first, last, !cursor.isFirst(), more);
+		return new Page<>(items, first, last, more, !cursor.isLast());
+	}
+
+	/**
+	 * Returns the entries of the page ordered by id
+	 */
+	public List<T> getItems() {
+		return Collections.unmodifiableList(items);
+	}
+
+	public boolean isEmpty() {
+		return items.isEmpty();
+	}
+
+	public boolean hasPrevious() {
+		return hasPrevious;
+	}
+
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	/**
+	 * Returns the cursor of the following page
+	 * @return The cursor or null if this is the last page
+	 */
+	public Cursor getNextCursor() {
+		return hasNext ? Cursor.after(lastKey) : null;
+	}
+
+	/**
+	 * Returns the cursor of the preceding page
+	 * @return The cursor or null if this is the first page
+	 */
+	public Cursor getPreviousCursor() {
+		return hasPrevious ? Cursor.before(firstKey) : null;
+	}
+}
@@ -0,0 +1,244 @@
+package de.dis2023.core;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.query.MutationQuery;
+import org.hibernate.query.Query;
+
+import de.dis2023.data.Apartment;
+import de.dis2023.data.Estate;
+import de.dis2023.data.House;
+
+/**
+ * Maintains the summary tables of the PortfolioStatistics and the
+ * ContractVolume in the transaction of the change.
+ *
+ * New and changed estates and new contracts are added to the sums with
+ * one update statement. After deletes, changed contracts and a change of
+ * the manager the rows of the agent are computed again with aggregate
+ * queries over the house, apartment and contract tables. The same queries
+ * compute all rows after a bulk import.
+ */
+class PortfolioAnalytics {
+	private static final String[] PORTFOLIO_COLUMNS = {"houses", "housePriceTotal", "soldHouses",
+			"apartments", "apartmentArea", "apartmentRentTotal", "rentedApartments"};
+
+	/**
+	 * Adds a new estate to the statistics of its manager
+	 */
+	void estateAdded(Session session, Estate e) {
+		int agentId = e.getManager().getId();
+		if (e instanceof House) {
+			House h = (House) e;
+			add(session, agentId, "houses", 1, "housePriceTotal", h.getPrice());
+		} else {
+			Apartment w = (Apartment) e;
+			add(session, agentId, "apartments", 1, "apartmentArea", w.getSquareArea(), "apartmentRentTotal", w.getRent());
+		}
+	}
+
+	/**
+	 * Adds a new contract to the statistics of the manager of its estate
+	 * @param estate The rented apartment or the sold house, loaded in the session
+	 * @param date The date of the contract
+	 */
+	void contractAdded(Session session, Estate estate, Date date) {
+		int agentId = estate.getManager().getId();
+		boolean tenancy = estate instanceof Apartment;
+		long value = tenancy ? ((Apartment) estate).getRent() : ((House) estate).getPrice();
+
+		if (tenancy)
+			add(session, agentId, "rentedApartments", 1);
+		else
+			add(session, agentId, "soldHouses", 1);
+
+		if (date == null)
+			return;
+		int month = month(date);
+		String count = tenancy ? "tenancyContracts" : "purchaseContracts";
+		String volume = tenancy ? "rentVolume" : "purchaseVolume";
+		int updated = session.createMutationQuery("update ContractVolume v set v." + count + " = v." + count + " + 1, v."
+				+ volume + " = v." + volume + " + :value where v.agentId = :agent and v.month = :month")
+				.setParameter("value", value).setParameter("agent", agentId).setParameter("month", month).executeUpdate();
+		if (updated == 0)
+			insertVolume(session, agentId, month, tenancy ? 1 : 0, tenancy ? value : 0, tenancy ? 0 : 1, tenancy ? 0 : value);
+	}
+
+	/**
+	 * Reads the manager and the summed up values of an estate as stored in the
+	 * database, before the estate is updated. Changes of the estate in the
+	 * session are not flushed for this.
+	 * @return Manager id, price or area and rent, null if the estate is not stored
+	 */
+	Object[] valuesBefore(Session session, Estate e) {
+		String hql = (e instanceof House) ? "select e.manager.id, e.price, 0 from House e where e.id = :id"
+				: "select e.manager.id, e.squareArea, e.rent from Apartment e where e.id = :id";
+		return session.createQuery(hql, Object[].class).setParameter("id", e.getId())
+				.setHibernateFlushMode(FlushMode.MANUAL).uniqueResult();
+	}
+
+	/**
+	 * Adds the differences to the values before the update to the statistics
+	 * @param before The result of {@link #valuesBefore(Session, Estate)}
+	 */
+	void estateUpdated(Session session, Estate e, Object[] before) {
+		int agentId = e.getManager().getId();
+		int oldAgentId = (Integer) before[0];
+		if (agentId != oldAgentId) {
+			//The contracts of the estate move to the other agent as well
+			rebuild(session, oldAgentId);
+			rebuild(session, agentId);
+			return;
+		}
+
+		if (e instanceof House) {
+			long price = ((House) e).getPrice() - ((Number) before[1]).longValue();
+			if (price != 0) {
+				add(session, agentId, "housePriceTotal", price);
+				addToVolume(session, agentId, "select c.date from PurchaseContract c where c.house.id = :id", e.getId(), "purchaseVolume", price);
+			}
+		} else {
+			Apartment w = (Apartment) e;
+			long area = w.getSquareArea() - ((Number) before[1]).longValue();
+			long rent = w.getRent() - ((Number) before[2]).longValue();
+			if (area != 0 || rent != 0)
+				add(session, agentId, "apartmentArea", area, "apartmentRentTotal", rent);
+			if (rent != 0)
+				addToVolume(session, agentId, "select c.date from TenancyContract c where c.apartment.id = :id", e.getId(), "rentVolume", rent);
+		}
+	}
+
+	//Adds a value to the month of the contract of an estate, if there is one
+	private void addToVolume(Session session, int agentId, String contractDate, int estateId, String column, long value) {
+		Date date = session.createQuery(contractDate, Date.class).setParameter("id", estateId).uniqueResult();
+		if (date == null)
+			return;
+		session.createMutationQuery("update ContractVolume v set v." + column + " = v." + column + " + :value " +
+				"where v.agentId = :agent and v.month = :month").setParameter("value", value)
+				.setParameter("agent", agentId).setParameter("month", month(date)).executeUpdate();
+	}
+
+	//Adds the values to the columns of the agent's row, computes the row if it does not exist yet
+	private void add(Session session, int agentId, Object... columnsAndValues) {
+		StringBuilder hql = new StringBuilder("update PortfolioStatistics s set ");
+		for (int i = 0; i < columnsAndValues.length; i += 2) {
+			String column = (String) columnsAndValues[i];
+			hql.append(i == 0 ? "" : ", ").append("s.").append(column).append(" = s.").append(column).append(" + :v").append(i);
+		}
+		MutationQuery update = session.createMutationQuery(hql.append(" where s.agentId = :agent").toString());
+		for (int i = 0; i < columnsAndValues.length; i += 2)
+			update.setParameter("v" + i, ((Number) columnsAndValues[i + 1]).longValue());
+		if (update.setParameter("agent", agentId).executeUpdate() == 0)
+			rebuild(session, agentId);
+	}
+
+	/**
+	 * Removes the rows of an agent
+	 */
+	void remove(Session session, int agentId) {
+		session.createMutationQuery("delete from PortfolioStatistics s where s.agentId = :agent").setParameter("agent", agentId).executeUpdate();
+		session.createMutationQuery("delete from ContractVolume v where v.agentId = :agent").setParameter("agent", agentId).executeUpdate();
+	}
+
+	/**
+	 * Computes the rows of all agents or of one agent with aggregate queries
+	 * @param agentId The id of the agent or null for all agents
+	 */
+	void rebuild(Session session, Integer agentId) {
+		String agents = agentId == null ? "" : " where a.id = :agent";
+		String estates = agentId == null ? "" : " where e.manager.id = :agent";
+
+		if (agentId == null) {
+			session.createMutationQuery("delete from PortfolioStatistics").executeUpdate();
+			session.createMutationQuery("delete from ContractVolume").executeUpdate();
+		} else {
+			remove(session, agentId);
+		}
+
+		Map<Integer, long[]> portfolios = new LinkedHashMap<Integer, long[]>();
+		for (Integer id : query(session, Integer.class, "select a.id from EstateAgent a" + agents, agentId))
+			portfolios.put(id, new long[PORTFOLIO_COLUMNS.length]);
+
+		//Order of PORTFOLIO_COLUMNS: houses, price, sold, apartments, area, rent, rented
+		sum(portfolios, 0, query(session, Object[].class, "select e.manager.id, count(e), coalesce(sum(e.price), 0) " +
+				"from House e" + estates + " group by e.manager.id", agentId));
+		sum(portfolios, 2, query(session, Object[].class, "select e.manager.id, count(c) " +
+				"from PurchaseContract c join c.house e" + estates + " group by e.manager.id", agentId));
+		sum(portfolios, 3, query(session, Object[].class, "select e.manager.id, count(e), coalesce(sum(e.squareArea), 0), coalesce(sum(e.rent), 0) " +
+				"from Apartment e" + estates + " group by e.manager.id", agentId));
+		sum(portfolios, 6, query(session, Object[].class, "select e.manager.id, count(c) " +
+				"from TenancyContract c join c.apartment e" + estates + " group by e.manager.id", agentId));
+
+		for (Map.Entry<Integer, long[]> portfolio : portfolios.entrySet()) {
+			long[] v = portfolio.getValue();
+			session.createMutationQuery("insert into PortfolioStatistics (agentId, " + String.join(", ", PORTFOLIO_COLUMNS) + ") " +
+					"values (:agent, :v0, :v1, :v2, :v3, :v4, :v5, :v6)").setParameter("agent", portfolio.getKey())
+					.setParameter("v0", v[0]).setParameter("v1", v[1]).setParameter("v2", v[2]).setParameter("v3", v[3])
+					.setParameter("v4", v[4]).setParameter("v5", v[5]).setParameter("v6", v[6]).executeUpdate();
+		}
+
+		//Tenancy count, rent, purchase count and price per agent and month
+		Map<Long, long[]> volumes = new LinkedHashMap<Long, long[]>();
+		String month = "year(c.date) * 100 + month(c.date)";
+		sumVolumes(volumes, 0, query(session, Object[].class, "select e.manager.id, " + month + ", count(c), coalesce(sum(e.rent), 0) " +
+				"from TenancyContract c join c.apartment e" + estates + (estates.isEmpty() ? " where" : " and") +
+				" c.date is not null group by e.manager.id, " + month, agentId));
+		sumVolumes(volumes, 2, query(session, Object[].class, "select e.manager.id, " + month + ", count(c), coalesce(sum(e.price), 0) " +
+				"from PurchaseContract c join c.house e" + estates + (estates.isEmpty() ? " where" : " and") +
+				" c.date is not null group by e.manager.id, " + month, agentId));
+
+		for (Map.Entry<Long, long[]> volume : volumes.entrySet()) {
+			long[] v = volume.getValue();
+			insertVolume(session, (int) (volume.getKey() >> 32), (int) (long) volume.getKey(), v[0], v[1], v[2], v[3]);
+		}
+	}
+
+	private static void insertVolume(Session session, int agentId, int month, long tenancies, long rent, long purchases, long price) {
+		session.createMutationQuery("insert into ContractVolume (agentId, month, tenancyContracts, rentVolume, purchaseContracts, purchaseVolume) " +
+				"values (:agent, :month, :tenancies, :rent, :purchases, :price)").setParameter("agent", agentId)
+				.setParameter("month", month).setParameter("tenancies", tenancies).setParameter("rent", rent)
+				.setParameter("purchases", purchases).setParameter("price", price).executeUpdate();
+	}
+
+	private static <T> List<T> query(Session session, Class<T> type, String hql, Integer agentId) {
+		Query<T> query = session.createQuery(hql, type);
+		if (agentId != null)
+			query.setParameter("agent", agentId);
+		return query.list();
+	}
+
+	//Copies the aggregates of each row (agent id first) into the columns starting at offset
+	private static void sum(Map<Integer, long[]> portfolios, int offset, List<Object[]> rows) {
+		for (Object[] row : rows) {
+			long[] v = portfolios.get((Integer) row[0]);
+			if (v == null)
+				continue;
+			for (int i = 1; i < row.length; i++)
+				v[offset + i - 1] = ((Number) row[i]).longValue();
+		}
+	}
+
+	private static void sumVolumes(Map<Long, long[]> volumes, int offset, List<Object[]> rows) {
+		for (Object[] row : rows) {
+			long key = ((long) (Integer) row[0] << 32) | ((Number) row[1]).intValue();
+			long[] v = volumes.computeIfAbsent(key, k -> new long[4]);
+			v[offset] = ((Number) row[2]).longValue();
+			v[offset + 1] = ((Number) row[3]).longValue();
+		}
+	}
+
+	/**
+	 * Returns the month of a date as yyyyMM
+	 */
+	static int month(Date date) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(date);
+		return calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH) + 1;
+	}
+}
@@ -0,0 +1,322 @@
+package de.dis2023.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.hibernate.HibernateException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+
+/**
+ * Creates and upgrades the database schema with versioned SQL scripts.
+ *
+ * The scripts are read from de/dis2023/data/migration/&lt;database&gt;/,
+ * one directory per dialect, in the order of {@link #MIGRATIONS}. Applied
+ * versions are recorded with a checksum in the table schema_version, so
+ * every start only runs the scripts that are new. Scripts must not be
+ * changed after they were applied, a new version is added instead.
+ *
+ * A database created by hbm2ddl before the scripts existed has no
+ * schema_version table. If its tables have the layout of the first
+ * mappings (the contract number is the primary key of the contracts), they
+ * are upgraded to version 1 by {@link #HBM2DDL_UPGRADE} and the missing
+ * sequences are created. Tables that already have the layout of version 1
+ * are taken as the baseline. Any other layout is refused, the later scripts
+ * only create what is missing.
+ */
+public class SchemaMigrator {
+	//Version n is MIGRATIONS[n - 1], only append new versions
+	public static final String[] MIGRATIONS = {
+			"V1__initial_schema",
+			"V2__indexes_and_unique_logins",
+			"V3__portfolio_statistics",
+			"V4__tenancy_end_date",
+			"V5__optimistic_locking",
+			"V6__change_outbox"
+	};
+	//Replaces V1 for the tables hbm2ddl created from the first mappings
+	public static final String HBM2DDL_UPGRADE = "V1__from_hbm2ddl_schema";
+	private static final String LOCATION = "de/dis2023/data/migration/";
+
+	private ConnectionProvider connections;
+	private String database;
+
+	/**
+	 * Creates the migrator for a database
+	 * @param connections Connections to the database, e.g. the pool of the session factory
+	 * @param dialect The dialect of the database
+	 */
+	public SchemaMigrator(ConnectionProvider connections, Dialect dialect) {
+		this.connections = connections;
+		if (dialect instanceof PostgreSQLDialect)
+			database = "postgresql";
+		else if (dialect instanceof H2Dialect)
+			database = "h2";
+		else
+			throw new HibernateException("No migration scripts for the dialect " + dialect);
+	}
+
+	/**
+	 * Applies the scripts that are not applied yet, each in its own transaction
+	 * @return The number of applied scripts
+	 */
+	public int migrate() {
+		Connection connection = null;
+		try {
+			connection = connections.getConnection();
+			connection.setAutoCommit(false);
+			Map<Integer, Long> applied = appliedVersions(connection);
+
+			for (int version = 1; version <= MIGRATIONS.length; version++) {
+				String script = read(MIGRATIONS[version - 1]);
+				long checksum = checksum(script);
+				Long recorded = applied.get(version);
+				if (recorded != null && recorded != 0 && recorded != checksum)
+					throw new HibernateException("Migration " + MIGRATIONS[version - 1] + " was changed after it was applied");
+			}
+
+			int count = 0;
+			for (int version = applied.size() + 1; version <= MIGRATIONS.length; version++) {
+				String script = read(MIGRATIONS[version - 1]);
+				long start = System.nanoTime();
+				try {
+					execute(connection, script);
+					record(connection, version, MIGRATIONS[version - 1], checksum(script), (System.nanoTime() - start) / 1000000);
+					connection.commit();
+				} catch (SQLException e) {
+					connection.rollback();
+					throw new HibernateException("Migration " + MIGRATIONS[version - 1] + " failed: " + e.getMessage(), e);
+				}
+				count++;
+			}
+			return count;
+		} catch (SQLException e) {
+			throw new HibernateException("Could not migrate the schema", e);
+		} finally {
+			close(connection);
+		}
+	}
+
+	/**
+	 * Returns the version of the schema, 0 if it has not been created yet
+	 */
+	public int getCurrentVersion() {
+		Connection connection = null;
+		try {
+			connection = connections.getConnection();
+			if (!tableExists(connection.getMetaData(), "schema_version"))
+				return 0;
+			try (Statement statement = connection.createStatement();
+					ResultSet rs = statement.executeQuery("select max(version) from schema_version")) {
+				return rs.next() ? rs.getInt(1) : 0;
+			}
+		} catch (SQLException e) {
+			throw new HibernateException("Could not read the schema version", e);
+		} finally {
+			close(connection);
+		}
+	}
+
+	//Checksums of the applied versions, 0 if version 1 was not created by its script, creates schema_version if needed
+	private Map<Integer, Long> appliedVersions(Connection connection) throws SQLException {
+		Map<Integer, Long> ret = new HashMap<Integer, Long>();
+		DatabaseMetaData meta = connection.getMetaData();
+		if (!tableExists(meta, "schema_version")) {
+			boolean existing = tableExists(meta, "estateagent");
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("create table schema_version (version integer not null, script varchar(255) not null, " +
+						"checksum bigint not null, installed_on timestamp not null, execution_ms bigint not null, primary key (version))");
+			}
+			try {
+				if (existing)
+					adoptSchema(connection);
+				connection.commit();
+			} catch (SQLException | RuntimeException e) {
+				connection.rollback();
+				try (Statement statement = connection.createStatement()) {
+					statement.execute("drop table if exists schema_version");
+				}
+				connection.commit();
+				throw e;
+			}
+		}
+
+		try (Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery("select version, checksum from schema_version order by version")) {
+			while (rs.next()) {
+				ret.put(rs.getInt(1), rs.getLong(2));
+			}
+		}
+		if (ret.size() > MIGRATIONS.length)
+			throw new HibernateException("The database has version " + ret.size() + ", this application only knows " + MIGRATIONS.length);
+		return ret;
+	}
+
+	//Records the tables hbm2ddl created as version 1, upgrades them first if they have the layout of the first mappings
+	private void adoptSchema(Connection connection) throws SQLException {
+		DatabaseMetaData meta = connection.getMetaData();
+		String script = "baseline";
+		long start = System.nanoTime();
+		if (primaryKey(meta, "purchasecontract").equalsIgnoreCase("contractNo")
+				&& primaryKey(meta, "tenancycontract").equalsIgnoreCase("contractNo")) {
+			//Both contract tables share the ids, H2 cannot roll back the changes of the script
+			if (count(connection, "select count(*) from purchasecontract p join tenancycontract t on p.contractNo = t.contractNo") > 0)
+				throw new HibernateException("The database was created by hbm2ddl and cannot be upgraded: " +
+						"purchase and tenancy contracts have the same contract numbers");
+			script = HBM2DDL_UPGRADE;
+			execute(connection, read(script));
+			createSequence(connection, "estate_seq", 50, 1, "house", "apartment");
+			createSequence(connection, "contract_seq", 50, 1, "purchasecontract", "tenancycontract");
+			//Hibernate reserves the block below the value of these sequences
+			if (database.equals("postgresql")) {
+				createSequence(connection, "estateagent_seq", 50, 50, "estateagent");
+				createSequence(connection, "person_seq", 50, 50, "person");
+			}
+		}
+
+		List<String> missing = new ArrayList<String>();
+		for (String table : new String[] {"purchasecontract", "tenancycontract"}) {
+			if (!primaryKey(meta, table).equalsIgnoreCase("id"))
+				missing.add("the primary key id of " + table);
+		}
+		List<String> sequences = new ArrayList<String>(List.of("estate_seq", "contract_seq"));
+		if (database.equals("postgresql"))
+			sequences.addAll(List.of("estateagent_seq", "person_seq"));
+		for (String sequence : sequences) {
+			if (count(connection, "select count(*) from information_schema.sequences where lower(sequence_name) = '" + sequence + "'") == 0)
+				missing.add("the sequence " + sequence);
+		}
+		if (!missing.isEmpty())
+			throw new HibernateException("The tables of the database are not version 1 of the schema and were not changed, missing: " +
+					String.join(", ", missing));
+
+		record(connection, 1, script, 0, (System.nanoTime() - start) / 1000000);
+	}
+
+	//Creates a sequence unless it exists, it starts at the largest id of the tables plus the offset
+	private void createSequence(Connection connection, String sequence, int increment, int offset, String... tables) throws SQLException {
+		long max = 0;
+		for (String table : tables)
+			max = Math.max(max, count(connection, "select coalesce(max(id), 0) from " + table));
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create sequence if not exists " + sequence + " start with " + (max + offset) + " increment by " + increment);
+		}
+	}
+
+	private void record(Connection connection, int version, String script, long checksum, long millis) throws SQLException {
+		try (PreparedStatement insert = connection.prepareStatement(
+				"insert into schema_version (version, script, checksum, installed_on, execution_ms) values (?, ?, ?, ?, ?)")) {
+			insert.setInt(1, version);
+			insert.setString(2, script);
+			insert.setLong(3, checksum);
+			insert.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+			insert.setLong(5, millis);
+			insert.executeUpdate();
+		}
+	}
+
+	private static void execute(Connection connection, String script) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			for (String sql : statements(script))
+				statement.execute(sql);
+		}
+	}
+
+	private static long count(Connection connection, String sql) throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery(sql)) {
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+
+	private void close(Connection connection) {
+		if (connection == null)
+			return;
+		try {
+			connections.closeConnection(connection);
+		} catch (SQLException e) {
+			throw new HibernateException("Could not close the connection", e);
+		}
+	}
+
+	//Unquoted names are stored in upper case by H2 and in lower case by PostgreSQL
+	private static boolean tableExists(DatabaseMetaData meta, String table) throws SQLException {
+		for (String name : new String[] {table, table.toUpperCase()}) {
+			try (ResultSet rs = meta.getTables(null, null, name, new String[] {"TABLE"})) {
+				if (rs.next())
+					return true;
+			}
+		}
+		return false;
+	}
+
+	//Columns of the primary key separated by commas, empty if the table has none
+	private static String primaryKey(DatabaseMetaData meta, String table) throws SQLException {
+		for (String name : new String[] {table, table.toUpperCase()}) {
+			List<String> columns = new ArrayList<String>();
+			try (ResultSet rs = meta.getPrimaryKeys(null, null, name)) {
+				while (rs.next())
+					columns.add(rs.getString("COLUMN_NAME"));
+			}
+			if (!columns.isEmpty())
+				return String.join(",", columns);
+		}
+		return "";
+	}
+
+	private String read(String migration) {
+		String resource = LOCATION + database + "/" + migration + ".sql";
+		try (InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(resource)) {
+			if (in == null)
+				throw new HibernateException("Migration script " + resource + " not found");
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new HibernateException("Could not read " + resource, e);
+		}
+	}
+
+	/**
+	 * Splits a script into its statements, separated by semicolons at the end of a line.
+	 * Lines starting with -- are comments.
+	 */
+	static List<String> statements(String script) {
+		List<String> ret = new ArrayList<String>();
+		StringBuilder sql = new StringBuilder();
+		for (String line : script.split("\r?\n")) {
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("--"))
+				continue;
+			sql.append(sql.length() == 0 ? "" : " ").append(trimmed);
+			if (trimmed.endsWith(";")) {
+				sql.setLength(sql.length() - 1);
+				ret.add(sql.toString());
+				sql.setLength(0);
+			}
+		}
+		if (sql.length() > 0)
+			ret.add(sql.toString());
+		return ret;
+	}
+
+	//Line endings do not change the checksum
+	private static long checksum(String script) {
+		CRC32 crc = new CRC32();
+		crc.update(String.join("\n", statements(script)).getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,73 @@
+package de.dis2023.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a script run
+ */
+public class ScriptResult {
+	//Only the first errors are kept, a broken script should not fill the heap
+	private static final int MAX_ERRORS = 100;
+
+	private long executed;
+	private long failed;
+	private long transactions;
+	private long elapsedNanos;
+	private List<String> errors = new ArrayList<String>();
+
+	void addExecuted(int commands) {
+		executed += commands;
+		transactions++;
+	}
+
+	void addFailed(long line, String reason) {
+		failed++;
+		if(errors.size() < MAX_ERRORS)
+			errors.add("Line "+line+": "+reason);
+	}
+
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public long getExecuted() {
+		return executed;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Returns the number of committed transactions
+	 */
+	public long getTransactions() {
+		return transactions;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1000000;
+	}
+
+	/**
+	 * Returns the throughput of the script
+	 */
+	public double getCommandsPerSecond() {
+		if(elapsedNanos == 0)
+			return 0;
+		return (executed + failed) * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * Returns the reasons for the first failed commands
+	 */
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	public String toString() {
+		return String.format("%d commands executed in %d transactions, %d failed in %d ms (%.0f commands/s)",
+				executed, transactions, failed, getElapsedMillis(), getCommandsPerSecond());
+	}
+}
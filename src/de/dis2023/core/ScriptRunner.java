@@ -0,0 +1,327 @@
+package de.dis2023.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.dis2023.data.AgentCredentials;
+import de.dis2023.data.Apartment;
+import de.dis2023.data.Estate;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+import de.dis2023.util.Helper;
+
+/**
+ * Executes a script of commands, e.g. to apply thousands of changes in one
+ * run instead of typing them into the menus.
+ *
+ * Every line holds a command followed by its fields written as name=value,
+ * values containing spaces are quoted with "...". Empty lines and lines
+ * starting with # are skipped. The fields are those of the BulkImporter:
+ *
+ * create-agent:     name, address, login, password
+ * create-person:    firstname, name, address
+ * create-house:     manager (login), city, postalcode, street, streetnumber, squarearea, floors, price, garden
+ * create-apartment: manager (login), city, postalcode, street, streetnumber, squarearea, floor, rent, rooms, balcony, kitchen
+ * create-tenancy:   contractno, date, place, partner (person id), apartment (id), startdate, duration, additionalcosts
+ * create-purchase:  contractno, date, place, partner (person id), house (id), noofinstallments, intrestrate
+ * list-estates:     manager (login)
+ * list-contracts:   manager (login)
+ * commit:           ends the current batch
+ *
+ * The commands are executed in batches of one transaction each. When a
+ * batch fails, it is rolled back and its commands are executed again one
+ * by one, so only the failing commands are rejected. The output of the
+ * list commands is printed after their transaction was committed.
+ */
+public class ScriptRunner {
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	private static final Set<String> COMMANDS = new HashSet<String>(Arrays.asList(
+			"create-agent", "create-person", "create-house", "create-apartment", "create-tenancy",
+			"create-purchase", "list-estates", "list-contracts", "commit"));
+
+	//One line of the script
+	private static class Command {
+		private long line;
+		private String name;
+		private Map<String, String> fields = new HashMap<String, String>();
+	}
+
+	private EstateService service;
+	private int batchSize;
+	private PrintStream out;
+
+	/**
+	 * @param service The service executing the commands
+	 * @param batchSize Number of commands per transaction
+	 * @param out Output of the list commands
+	 */
+	public ScriptRunner(EstateService service, int batchSize, PrintStream out) {
+		if(batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+
+		this.service = service;
+		this.batchSize = batchSize;
+		this.out = out;
+	}
+
+	/**
+	 * Executes all commands of a script, the script is read line by line
+	 * @param script The script
+	 * @return Number of executed and failed commands and the throughput
+	 */
+	public ScriptResult run(BufferedReader script) throws IOException {
+		ScriptResult result = new ScriptResult();
+		long start = System.nanoTime();
+
+		List<Command> batch = new ArrayList<Command>(batchSize);
+		long row = 0;
+		String line;
+		while((line = script.readLine()) != null) {
+			row++;
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			Command command;
+			try {
+				command = parse(row, line);
+			} catch (IllegalArgumentException e) {
+				result.addFailed(row, e.getMessage());
+				continue;
+			}
+
+			if(command.name.equals("commit")) {
+				executeBatch(batch, result);
+				continue;
+			}
+
+			batch.add(command);
+			if(batch.size() == batchSize)
+				executeBatch(batch, result);
+		}
+		executeBatch(batch, result);
+
+		result.setElapsedNanos(System.nanoTime() - start);
+		return result;
+	}
+
+	private void executeBatch(List<Command> batch, ScriptResult result) {
+		if(batch.isEmpty())
+			return;
+
+		try {
+			out.print(service.inTransaction("script", () -> {
+				StringBuilder output = new StringBuilder();
+				for(Command command : batch)
+					execute(command, output);
+				return output;
+			}));
+			result.addExecuted(batch.size());
+		} catch (RuntimeException e) {
+			//Finds the failing commands, the others are executed in their own transactions
+			for(Command command : batch) {
+				try {
+					out.print(service.inTransaction("script", () -> {
+						StringBuilder output = new StringBuilder();
+						execute(command, output);
+						return output;
+					}));
+					result.addExecuted(1);
+				} catch (RuntimeException e2) {
+					result.addFailed(command.line, reason(e2));
+				}
+			}
+		}
+		batch.clear();
+	}
+
+	private void execute(Command c, StringBuilder output) {
+		Map<String, String> f = c.fields;
+		switch(c.name) {
+			case "create-agent":
+				EstateAgent a = new EstateAgent();
+				a.setName(f.get("name"));
+				a.setAddress(f.get("address"));
+				a.setLogin(BulkImporter.required(f, "login"));
+				a.setPassword(f.get("password"));
+				service.addEstateAgent(a);
+				break;
+			case "create-person":
+				Person p = new Person();
+				p.setFirstname(f.get("firstname"));
+				p.setName(f.get("name"));
+				p.setAddress(f.get("address"));
+				service.addPerson(p);
+				break;
+			case "create-house":
+				House h = new House();
+				fillEstate(h, f);
+				h.setFloors(BulkImporter.toInt(f, "floors"));
+				h.setPrice(BulkImporter.toInt(f, "price"));
+				h.setGarden(BulkImporter.toBoolean(f, "garden"));
+				service.addHouse(h);
+				break;
+			case "create-apartment":
+				Apartment w = new Apartment();
+				fillEstate(w, f);
+				w.setFloor(BulkImporter.toInt(f, "floor"));
+				w.setRent(BulkImporter.toInt(f, "rent"));
+				w.setRooms(BulkImporter.toInt(f, "rooms"));
+				w.setBalcony(BulkImporter.toBoolean(f, "balcony"));
+				w.setKitchen(BulkImporter.toBoolean(f, "kitchen"));
+				service.addApartment(w);
+				break;
+			case "create-tenancy":
+				TenancyContract tc = new TenancyContract();
+				tc.setContractNo(BulkImporter.toInt(f, "contractno"));
+				tc.setDate(BulkImporter.toDate(f, "date"));
+				tc.setPlace(f.get("place"));
+				tc.setContractPartner(partner(f));
+				tc.setApartment(existing(service.getApartmentByID(BulkImporter.toInt(f, "apartment")), f, "apartment"));
+				tc.setStartDate(BulkImporter.toDate(f, "startdate"));
+				tc.setDuration(BulkImporter.toInt(f, "duration"));
+				tc.setAdditionalCosts(BulkImporter.toInt(f, "additionalcosts"));
+				service.addTenancyContract(tc);
+				break;
+			case "create-purchase":
+				PurchaseContract pc = new PurchaseContract();
+				pc.setContractNo(BulkImporter.toInt(f, "contractno"));
+				pc.setDate(BulkImporter.toDate(f, "date"));
+				pc.setPlace(f.get("place"));
+				pc.setContractPartner(partner(f));
+				pc.setHouse(existing(service.getHouseById(BulkImporter.toInt(f, "house")), f, "house"));
+				pc.setNoOfInstallments(BulkImporter.toInt(f, "noofinstallments"));
+				pc.setIntrestRate(BulkImporter.toInt(f, "intrestrate"));
+				service.addPurchaseContract(pc);
+				break;
+			case "list-estates":
+				EstateAgent manager = manager(f);
+				for(EstateSummary s : service.getHouseSummariesForEstateAgent(manager))
+					output.append("House ").append(s.getId()).append(": ").append(s).append('\n');
+				for(EstateSummary s : service.getApartmentSummariesForEstateAgent(manager))
+					output.append("Apartment ").append(s.getId()).append(": ").append(s).append('\n');
+				break;
+			case "list-contracts":
+				EstateAgent agent = manager(f);
+				for(TenancyContract t : service.getAllTenancyContractsForEstateAgent(agent))
+					output.append("Tenancy contract ").append(t.getContractNo()).append(" of ")
+							.append(Helper.dateToString(t.getDate())).append(": apartment ").append(t.getApartment().getId())
+							.append(", tenant ").append(t.getContractPartner().getId()).append('\n');
+				for(PurchaseContract k : service.getAllPurchaseContractsForEstateAgent(agent))
+					output.append("Purchase contract ").append(k.getContractNo()).append(" of ")
+							.append(Helper.dateToString(k.getDate())).append(": house ").append(k.getHouse().getId())
+							.append(", buyer ").append(k.getContractPartner().getId()).append('\n');
+				break;
+		}
+	}
+
+	private void fillEstate(Estate e, Map<String, String> f) {
+		e.setManager(manager(f));
+		e.setCity(f.get("city"));
+		e.setPostalcode(BulkImporter.toInt(f, "postalcode"));
+		e.setStreet(f.get("street"));
+		e.setStreetnumber(f.get("streetnumber"));
+		e.setSquareArea(BulkImporter.toInt(f, "squarearea"));
+	}
+
+	/**
+	 * Returns a reference to the agent with the login of the manager field
+	 */
+	private EstateAgent manager(Map<String, String> f) {
+		String login = BulkImporter.required(f, "manager");
+		AgentCredentials c = service.getAgentCredentials(login);
+		if(c == null)
+			throw new IllegalArgumentException("Unknown estate agent \""+login+"\"");
+
+		EstateAgent ea = new EstateAgent();
+		ea.setId(c.getId());
+		ea.setLogin(c.getLogin());
+		ea.setName(c.getName());
+		return ea;
+	}
+
+	private Person partner(Map<String, String> f) {
+		return existing(service.getPersonById(BulkImporter.toInt(f, "partner")), f, "partner");
+	}
+
+	private static <T> T existing(T entity, Map<String, String> f, String field) {
+		if(entity == null)
+			throw new IllegalArgumentException("Unknown "+field+" "+f.get(field));
+		return entity;
+	}
+
+	/**
+	 * Splits a line into the command and its name=value fields
+	 */
+	private static Command parse(long row, String line) {
+		Command c = new Command();
+		c.line = row;
+
+		int i = 0;
+		int n = line.length();
+		while(i < n && !Character.isWhitespace(line.charAt(i)))
+			i++;
+		c.name = line.substring(0, i).toLowerCase();
+		if(!COMMANDS.contains(c.name))
+			throw new IllegalArgumentException("Unknown command "+c.name);
+
+		while(true) {
+			while(i < n && Character.isWhitespace(line.charAt(i)))
+				i++;
+			if(i == n)
+				break;
+
+			int eq = line.indexOf('=', i);
+			if(eq < 0)
+				throw new IllegalArgumentException("Expected name=value at \""+line.substring(i)+"\"");
+			String key = line.substring(i, eq).trim().toLowerCase();
+			i = eq + 1;
+
+			StringBuilder value = new StringBuilder();
+			if(i < n && line.charAt(i) == '"') {
+				i++;
+				while(true) {
+					if(i >= n)
+						throw new IllegalArgumentException("Unterminated quote in field "+key);
+					char ch = line.charAt(i++);
+					if(ch == '"' && i < n && line.charAt(i) == '"') {
+						value.append('"');
+						i++;
+					} else if(ch == '"') {
+						break;
+					} else {
+						value.append(ch);
+					}
+				}
+			} else {
+				while(i < n && !Character.isWhitespace(line.charAt(i)))
+					value.append(line.charAt(i++));
+			}
+			c.fields.put(key, value.toString());
+		}
+		return c;
+	}
+
+	//Message of the innermost exception, e.g. the constraint violation reported by the database
+	private static String reason(Throwable e) {
+		Throwable t = e;
+		while(t.getCause() != null)
+			t = t.getCause();
+		if(t.getMessage() == null)
+			return t.getClass().getSimpleName();
+		return t.getMessage().split("\n")[0];
+	}
+}
@@ -0,0 +1,324 @@
+package de.dis2023.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory inverted index from the words of some text fields to the ids
+ * of the rows containing them.
+ *
+ * The words are kept in a sorted map, so all words starting with a search
+ * term are found with one range lookup. Every term of a search has to match
+ * the beginning of a word of the row, e.g. "ham vog" finds
+ * "Vogt-Kölln-Street, 22527 Hamburg". The ids of a word are kept in id
+ * order, a search reads them from the cursor on and stops when the page
+ * is full, so common terms do not read all matching rows.
+ *
+ * Rows can be assigned to a group (e.g. the manager of an estate) to limit
+ * a search to the rows of that group. Every group has its own words, a
+ * search in a group only reads the ids of that group.
+ *
+ * Changes are serialized by a lock, the words and the group of a row are
+ * replaced as a whole. Searches do not wait for changes.
+ */
+public class SearchIndex {
+	//Group of rows that do not belong to a group, searching it returns all rows
+	public static final int ANY_GROUP = 0;
+
+	private static class Entry {
+		private int group;
+		private String[] words;
+
+		private Entry(int group, String[] words) {
+			this.group = group;
+			this.words = words;
+		}
+
+		private boolean matches(String term) {
+			for (String word : words) {
+				if (word.startsWith(term))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	//Ids of the rows containing a word, ordered by id
+	private static class Postings {
+		private ConcurrentSkipListSet<Integer> ids = new ConcurrentSkipListSet<>();
+		private AtomicInteger size = new AtomicInteger();
+
+		private void add(int id) {
+			if (ids.add(id))
+				size.incrementAndGet();
+		}
+
+		private boolean remove(int id) {
+			if (ids.remove(id))
+				size.decrementAndGet();
+			return ids.isEmpty();
+		}
+
+		private Iterator<Integer> from(Page.Cursor cursor) {
+			if (cursor.isForward())
+				return ids.tailSet(cursor.getKey(), false).iterator();
+			return ids.headSet(cursor.getKey(), false).descendingIterator();
+		}
+	}
+
+	//Words of the rows of every group
+	private Map<Integer, ConcurrentSkipListMap<String, Postings>> groups = new ConcurrentHashMap<>();
+	private Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+	private volatile boolean built;
+
+	//Serializes the changes and the build, a ReentrantLock does not pin virtual threads
+	private ReentrantLock changes = new ReentrantLock();
+
+	/**
+	 * Adds a row or replaces the words of an indexed row
+	 * @param id The id of the row
+	 * @param group The group of the row or ANY_GROUP
+	 * @param fields The text fields, null values are skipped
+	 */
+	public void put(int id, int group, Object... fields) {
+		StringBuilder text = new StringBuilder();
+		for (Object field : fields) {
+			if (field != null)
+				text.append(field).append(' ');
+		}
+
+		Entry entry = new Entry(group, tokenize(text.toString()));
+		changes.lock();
+		try {
+			Entry old = entries.put(id, entry);
+			if (old != null)
+				unlink(id, old);
+			link(id, entry);
+		} finally {
+			changes.unlock();
+		}
+	}
+
+	/**
+	 * Removes a row from the index
+	 * @param id The id of the row
+	 */
+	public void remove(int id) {
+		changes.lock();
+		try {
+			Entry old = entries.remove(id);
+			if (old != null)
+				unlink(id, old);
+		} finally {
+			changes.unlock();
+		}
+	}
+
+	/**
+	 * Moves an indexed row to another group, the words are kept
+	 * @param id The id of the row
+	 * @param group The new group
+	 */
+	public void setGroup(int id, int group) {
+		changes.lock();
+		try {
+			Entry old = entries.get(id);
+			if (old == null || old.group == group)
+				return;
+			Entry entry = new Entry(group, old.words);
+			entries.put(id, entry);
+			unlink(id, old);
+			link(id, entry);
+		} finally {
+			changes.unlock();
+		}
+	}
+
+	private void link(int id, Entry entry) {
+		ConcurrentSkipListMap<String, Postings> words = groups.computeIfAbsent(entry.group, g -> new ConcurrentSkipListMap<>());
+		for (String word : entry.words) {
+			words.computeIfAbsent(word, w -> new Postings()).add(id);
+		}
+	}
+
+	private void unlink(int id, Entry entry) {
+		ConcurrentSkipListMap<String, Postings> words = groups.get(entry.group);
+		if (words == null)
+			return;
+		for (String word : entry.words) {
+			words.computeIfPresent(word, (w, postings) -> postings.remove(id) ? null : postings);
+		}
+		if (words.isEmpty())
+			groups.remove(entry.group);
+	}
+
+	/**
+	 * Removes all rows, the index has to be built again before it is used
+	 */
+	public void clear() {
+		changes.lock();
+		try {
+			built = false;
+			entries.clear();
+			groups.clear();
+		} finally {
+			changes.unlock();
+		}
+	}
+
+	/**
+	 * Fills the index once unless it is built already. The changes of other
+	 * threads wait until all rows are added, so a row that is removed or
+	 * changed meanwhile is not added again with its old words.
+	 * @param rows Adds all rows with {@link #put(int, int, Object...)}
+	 */
+	public void build(Runnable rows) {
+		if (built)
+			return;
+
+		changes.lock();
+		try {
+			if (!built) {
+				rows.run();
+				built = true;
+			}
+		} finally {
+			changes.unlock();
+		}
+	}
+
+	/**
+	 * Returns whether all rows were added since the index was created or cleared
+	 */
+	public boolean isBuilt() {
+		return built;
+	}
+
+	void setBuilt() {
+		built = true;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Finds the rows matching all terms of the query
+	 * @param query Search terms separated by spaces or punctuation
+	 * @param group Only rows of this group are returned, ANY_GROUP for all rows
+	 * @param cursor Only ids after or before the key of the cursor are returned
+	 * @param limit Maximum number of ids
+	 * @return The ids ordered in the direction of the cursor
+	 */
+	public List<Integer> search(String query, int group, Page.Cursor cursor, int limit) {
+		String[] terms = tokenize(query);
+		List<Integer> ret = new ArrayList<>();
+		if (terms.length == 0)
+			return ret;
+
+		Collection<ConcurrentSkipListMap<String, Postings>> searched;
+		if (group == ANY_GROUP) {
+			searched = groups.values();
+		} else {
+			ConcurrentSkipListMap<String, Postings> words = groups.get(group);
+			if (words == null)
+				return ret;
+			searched = List.of(words);
+		}
+
+		//The rows of the rarest term are read in id order, the other terms are checked per row
+		List<Postings> rarest = null;
+		long rarestCount = Long.MAX_VALUE;
+		for (String term : terms) {
+			List<Postings> range = new ArrayList<>();
+			long count = 0;
+			for (ConcurrentSkipListMap<String, Postings> words : searched) {
+				for (Postings postings : words.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+					range.add(postings);
+					count += postings.size.get();
+				}
+			}
+			if (count < rarestCount) {
+				rarest = range;
+				rarestCount = count;
+			}
+		}
+
+		//Merges the id lists of all words starting with the term, stops as soon as the limit is reached
+		Comparator<Integer> order = cursor.isForward() ? Comparator.naturalOrder() : Comparator.reverseOrder();
+		PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> order.compare(a.id, b.id));
+		for (Postings postings : rarest) {
+			Head head = new Head(postings.from(cursor));
+			if (head.next())
+				heads.add(head);
+		}
+
+		Integer previous = null;
+		while (!heads.isEmpty() && ret.size() < limit) {
+			Head head = heads.poll();
+			Integer id = head.id;
+			if (head.next())
+				heads.add(head);
+
+			//The same row may contain several words starting with the term
+			if (id.equals(previous))
+				continue;
+			previous = id;
+
+			//The postings may still contain a row that is being changed
+			Entry entry = entries.get(id);
+			if (entry == null || (group != ANY_GROUP && entry.group != group))
+				continue;
+
+			boolean all = true;
+			for (String term : terms) {
+				all &= entry.matches(term);
+			}
+			if (all)
+				ret.add(id);
+		}
+		return ret;
+	}
+
+	//Current position in the id list of one word
+	private static class Head {
+		private Iterator<Integer> ids;
+		private Integer id;
+
+		private Head(Iterator<Integer> ids) {
+			this.ids = ids;
+		}
+
+		private boolean next() {
+			if (!ids.hasNext())
+				return false;
+			id = ids.next();
+			return true;
+		}
+	}
+
+	/**
+	 * Splits a text into lower case words
+	 */
+	static String[] tokenize(String text) {
+		Set<String> ret = new LinkedHashSet<>();
+		for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+			if (!word.isEmpty())
+				ret.add(word);
+		}
+		return ret.toArray(new String[0]);
+	}
+}
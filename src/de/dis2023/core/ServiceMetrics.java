@@ -0,0 +1,301 @@
+package de.dis2023.core;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Collects call counts, latencies, returned rows and executed SQL statements
+ * of the EstateService operations.
+ *
+ * The statistics are registered as MXBeans under de.dis2023:type=EstateService
+ * and can be written periodically as text or JSON, so show_sql does not have
+ * to be enabled to see what the application does.
+ */
+public class ServiceMetrics implements ServiceMetricsMXBean {
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	//Number of queries listed in the reports
+	private static final int SLOWEST_QUERIES = 5;
+
+	private Statistics statistics;
+	private String name = String.valueOf(INSTANCES.incrementAndGet());
+	private Map<String, OperationStatistics> operations = new ConcurrentHashMap<>();
+	private LongAdder retries = new LongAdder();
+	private volatile Instant since = Instant.now();
+	private ScheduledExecutorService dumper;
+
+	ServiceMetrics(Statistics statistics) {
+		this.statistics = statistics;
+		register(objectName(null), this);
+	}
+
+	/**
+	 * Runs an operation and records its latency, the rows it returned and 
+	 * the statements it executed
+	 * @param operation Name of the operation, usually the method name
+	 * @param work The operation
+	 * @return The result of the operation
+	 */
+	<T> T measure(String operation, UnitOfWork<T> work) {
+		OperationStatistics stats = get(operation);
+		long statements = StatementCounter.current();
+		long start = System.nanoTime();
+		try {
+			T result = work.execute();
+			stats.record(System.nanoTime() - start, rows(result), StatementCounter.current() - statements, false);
+			return result;
+		} catch (RuntimeException e) {
+			stats.record(System.nanoTime() - start, 0, StatementCounter.current() - statements, true);
+			throw e;
+		}
+	}
+
+	void measure(String operation, Runnable work) {
+		measure(operation, () -> {
+			work.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Counts a transaction that is repeated after a lock conflict
+	 */
+	void recordRetry() {
+		retries.increment();
+	}
+
+	public long getTransactionRetries() {
+		return retries.sum();
+	}
+
+	/**
+	 * Returns the statistics of an operation
+	 * @param operation Name of the operation
+	 */
+	public OperationStatistics get(String operation) {
+		OperationStatistics stats = operations.get(operation);
+		if (stats != null)
+			return stats;
+
+		return operations.computeIfAbsent(operation, op -> {
+			OperationStatistics created = new OperationStatistics(op);
+			register(objectName(op), created);
+			return created;
+		});
+	}
+
+	/**
+	 * Returns the statistics of all operations ordered by name
+	 */
+	public Collection<OperationStatistics> getAll() {
+		return new TreeMap<>(operations).values();
+	}
+
+	public String[] getOperations() {
+		return new TreeMap<>(operations).keySet().toArray(new String[0]);
+	}
+
+	public long getStatementCount() {
+		return statistics.getPrepareStatementCount();
+	}
+
+	public long getQueryExecutionCount() {
+		return statistics.getQueryExecutionCount();
+	}
+
+	public long getQueryExecutionMaxTimeMillis() {
+		return statistics.getQueryExecutionMaxTime();
+	}
+
+	public String getSlowestQuery() {
+		return statistics.getQueryExecutionMaxTimeQueryString();
+	}
+
+	public double getSecondLevelCacheHitRatio() {
+		long hits = statistics.getSecondLevelCacheHitCount();
+		long total = hits + statistics.getSecondLevelCacheMissCount();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	public void reset() {
+		for (OperationStatistics stats : operations.values()) {
+			stats.reset();
+		}
+		retries.reset();
+		statistics.clear();
+		since = Instant.now();
+	}
+
+	public String getTextReport() {
+		StringBuilder ret = new StringBuilder();
+		ret.append(String.format("EstateService statistics since %s%n", since));
+		ret.append(String.format("%-36s %8s %6s %9s %9s %9s %9s %9s %9s%n", "operation", "calls", "errors",
+				"mean ms", "p50 ms", "p99 ms", "max ms", "rows", "stmts"));
+		for (OperationStatistics s : getAll()) {
+			ret.append(String.format("%-36s %8d %6d %9.2f %9.2f %9.2f %9.2f %9.1f %9.1f%n", s.getOperation(),
+					s.getCalls(), s.getErrors(), s.getMeanMillis(), s.getP50Millis(), s.getP99Millis(),
+					s.getMaxMillis(), s.getRowsPerCall(), s.getStatementsPerCall()));
+		}
+		ret.append(String.format("Hibernate: %d statements, %d queries, %d transactions (%d retried after lock conflicts), " +
+				"2nd level cache hit ratio %.0f%%%n", getStatementCount(), getQueryExecutionCount(),
+				statistics.getTransactionCount(), getTransactionRetries(), getSecondLevelCacheHitRatio() * 100));
+		for (String query : slowestQueries()) {
+			QueryStatistics q = statistics.getQueryStatistics(query);
+			ret.append(String.format("  %6d x avg %5d ms max %5d ms %8d rows  %s%n", q.getExecutionCount(),
+					q.getExecutionAvgTime(), q.getExecutionMaxTime(), q.getExecutionRowCount(), query));
+		}
+		return ret.toString();
+	}
+
+	public String getJsonReport() {
+		StringBuilder ret = new StringBuilder();
+		ret.append("{\"since\":").append(quote(since.toString())).append(",\"operations\":[");
+		String separator = "";
+		for (OperationStatistics s : getAll()) {
+			ret.append(separator).append(String.format(Locale.ROOT,
+					"{\"operation\":%s,\"calls\":%d,\"errors\":%d,\"meanMillis\":%.3f,\"p50Millis\":%.3f," +
+					"\"p99Millis\":%.3f,\"maxMillis\":%.3f,\"rows\":%d,\"statements\":%d}",
+					quote(s.getOperation()), s.getCalls(), s.getErrors(), s.getMeanMillis(), s.getP50Millis(),
+					s.getP99Millis(), s.getMaxMillis(), s.getRows(), s.getStatements()));
+			separator = ",";
+		}
+		ret.append(String.format(Locale.ROOT,
+				"],\"hibernate\":{\"statements\":%d,\"queries\":%d,\"transactions\":%d,\"retries\":%d,\"cacheHitRatio\":%.3f,\"slowestQueries\":[",
+				getStatementCount(), getQueryExecutionCount(), statistics.getTransactionCount(), getTransactionRetries(),
+				getSecondLevelCacheHitRatio()));
+		separator = "";
+		for (String query : slowestQueries()) {
+			QueryStatistics q = statistics.getQueryStatistics(query);
+			ret.append(separator).append(String.format("{\"query\":%s,\"executions\":%d,\"avgMillis\":%d,\"maxMillis\":%d,\"rows\":%d}",
+					quote(query), q.getExecutionCount(), q.getExecutionAvgTime(), q.getExecutionMaxTime(),
+					q.getExecutionRowCount()));
+			separator = ",";
+		}
+		ret.append("]}}");
+		return ret.toString();
+	}
+
+	/**
+	 * Writes a report periodically until stopDump is called
+	 * @param periodSeconds Time between two reports
+	 * @param json Whether the report is written as one line of JSON instead of a table
+	 * @param out Stream the reports are written to
+	 */
+	public synchronized void startDump(long periodSeconds, boolean json, PrintStream out) {
+		stopDump();
+		dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "estate-metrics-"+name);
+			t.setDaemon(true);
+			return t;
+		});
+		dumper.scheduleAtFixedRate(() -> {
+			out.println(json ? getJsonReport() : getTextReport());
+			out.flush();
+		}, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	public synchronized void stopDump() {
+		if (dumper != null)
+			dumper.shutdownNow();
+		dumper = null;
+	}
+
+	/**
+	 * Stops the periodic report and removes the MXBeans, called when the
+	 * EstateService is closed
+	 */
+	synchronized void close() {
+		stopDump();
+		unregister(objectName(null));
+		for (String operation : operations.keySet())
+			unregister(objectName(operation));
+	}
+
+	//The HQL of the queries with the longest execution time
+	private List<String> slowestQueries() {
+		List<String> ret = new ArrayList<>(Arrays.asList(statistics.getQueries()));
+		ret.sort(Comparator.comparingLong((String query) -> statistics.getQueryStatistics(query).getExecutionMaxTime()).reversed());
+		return ret.size() > SLOWEST_QUERIES ? ret.subList(0, SLOWEST_QUERIES) : ret;
+	}
+
+	//Number of entities or rows in the result of an operation, ids returned by save are not counted
+	private static long rows(Object result) {
+		if (result == null || result instanceof Number)
+			return 0;
+		if (result instanceof Collection)
+			return ((Collection<?>) result).size();
+		if (result instanceof Page)
+			return ((Page<?>) result).getItems().size();
+		if (result instanceof ImportResult)
+			return ((ImportResult) result).getImported();
+		return 1;
+	}
+
+	private ObjectName objectName(String operation) {
+		try {
+			String objectName = "de.dis2023:type=EstateService,name="+name;
+			if (operation != null)
+				objectName += ",operation="+ObjectName.quote(operation);
+			return new ObjectName(objectName);
+		} catch (JMException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static void register(ObjectName objectName, Object bean) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (!server.isRegistered(objectName))
+				server.registerMBean(bean, objectName);
+		} catch (JMException e) {
+			//Statistics are still collected and reported without JMX
+		}
+	}
+
+	private static void unregister(ObjectName objectName) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			//Already removed
+		}
+	}
+
+	private static String quote(String value) {
+		if (value == null)
+			return "null";
+		StringBuilder ret = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\')
+				ret.append('\\').append(c);
+			else if (c < ' ')
+				ret.append(String.format("\\u%04x", (int) c));
+			else
+				ret.append(c);
+		}
+		return ret.append('"').toString();
+	}
+}
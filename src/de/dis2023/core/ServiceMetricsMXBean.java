@@ -0,0 +1,38 @@
+package de.dis2023.core;
+
+/**
+ * JMX view of the statistics of all EstateService operations and of hibernate
+ */
+public interface ServiceMetricsMXBean {
+	/**
+	 * Names of the operations that were called so far
+	 */
+	public String[] getOperations();
+
+	/**
+	 * Number of JDBC statements hibernate prepared
+	 */
+	public long getStatementCount();
+
+	/**
+	 * Number of transactions that were repeated after a lock conflict or deadlock
+	 */
+	public long getTransactionRetries();
+
+	public long getQueryExecutionCount();
+
+	public long getQueryExecutionMaxTimeMillis();
+
+	public String getSlowestQuery();
+
+	public double getSecondLevelCacheHitRatio();
+
+	public String getTextReport();
+
+	public String getJsonReport();
+
+	/**
+	 * Resets the statistics of all operations and of hibernate
+	 */
+	public void reset();
+}
@@ -0,0 +1,88 @@
+package de.dis2023.core;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns every estate agent to the shard that stores the estates and
+ * contracts of the agent. Agents listed explicitly stay on their shard,
+ * e.g. agents with a large portfolio that got a shard of their own, the
+ * others are spread by their id. All nodes must use the same map, and an
+ * agent must not be assigned to another shard once it has estates.
+ *
+ * Every shard generates the ids of its estates and contracts in its own
+ * range of 2^27 ids, so the ids are unique across the shards and the shard
+ * of an estate or contract is known from its id.
+ *
+ * The map can be read from properties:
+ *   shards=4
+ *   agent.17=3
+ */
+public class ShardMap {
+	public static final int MAX_SHARDS = 16;
+	private static final int ID_BITS = 27;
+
+	private int shards;
+	private Map<Integer, Integer> agents = new ConcurrentHashMap<Integer, Integer>();
+
+	/**
+	 * Creates a map that spreads the agents by their id
+	 * @param shards The number of shards
+	 */
+	public ShardMap(int shards) {
+		if (shards < 1 || shards > MAX_SHARDS)
+			throw new IllegalArgumentException("Between 1 and " + MAX_SHARDS + " shards are supported");
+		this.shards = shards;
+	}
+
+	/**
+	 * Reads the number of shards from "shards" and the agents assigned explicitly from "agent.&lt;id&gt;"
+	 */
+	public static ShardMap load(Properties properties) {
+		ShardMap ret = new ShardMap(Integer.parseInt(properties.getProperty("shards", "1").trim()));
+		for (String name : properties.stringPropertyNames()) {
+			if (name.startsWith("agent."))
+				ret.assign(Integer.parseInt(name.substring(6)), Integer.parseInt(properties.getProperty(name).trim()));
+		}
+		return ret;
+	}
+
+	/**
+	 * Assigns an estate agent to a shard explicitly
+	 */
+	public void assign(int agentId, int shard) {
+		if (shard < 0 || shard >= shards)
+			throw new IllegalArgumentException("There is no shard " + shard);
+		agents.put(agentId, shard);
+	}
+
+	/**
+	 * Returns the shard storing the estates and contracts of an agent
+	 */
+	public int shardOf(int agentId) {
+		Integer ret = agents.get(agentId);
+		return ret != null ? ret : Math.floorMod(agentId, shards);
+	}
+
+	/**
+	 * Returns the shard that generated the id of an estate or contract
+	 */
+	public int shardOfId(int id) {
+		int ret = id >>> ID_BITS;
+		if (ret >= shards)
+			throw new IllegalArgumentException("The id " + id + " does not belong to any shard");
+		return ret;
+	}
+
+	/**
+	 * Returns the first id of the estates and contracts of a shard
+	 */
+	public static int firstId(int shard) {
+		return shard == 0 ? 1 : shard << ID_BITS;
+	}
+
+	public int getShardCount() {
+		return shards;
+	}
+}
@@ -0,0 +1,591 @@
+package de.dis2023.core;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.cache.Caching;
+
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.ehcache.xml.XmlConfiguration;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.Configuration;
+
+import de.dis2023.data.AgentCredentials;
+import de.dis2023.data.Apartment;
+import de.dis2023.data.Contract;
+import de.dis2023.data.ContractVolume;
+import de.dis2023.data.Estate;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.PortfolioStatistics;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+import de.dis2023.util.TaskExecutors;
+
+/**
+ * Spreads the estates and contracts over several databases, the shards.
+ * Every shard is an EstateService with its own session factory, connection
+ * pool and second-level cache. The ShardMap assigns every estate agent to
+ * the shard that stores the estates of the agent and their contracts, so
+ * all work on one portfolio runs in one transaction on one database.
+ *
+ * Persons and estate agents are referenced by the estates and contracts of
+ * every shard. They are written to the first shard, the primary, which
+ * assigns their ids, and are copied to all other shards afterwards. They
+ * are read from the primary. Writes of persons and agents are not atomic
+ * across the shards: if a shard fails, the shards written before keep the
+ * change and the write has to be repeated.
+ *
+ * Reads over all agents, e.g. the portfolio statistics or the expiring
+ * tenancy contracts, are sent to all shards in parallel and the results
+ * are merged.
+ *
+ * The editors and the HTTP interface use it like the EstateService. A unit
+ * of work is not one transaction, every call runs in a transaction on its
+ * shard.
+ */
+public class ShardedEstateService implements EstateRepository {
+	private ShardMap shardMap;
+	private List<EstateService> shards = new ArrayList<EstateService>();
+
+	//Runs the scatter-gather reads, one thread per shard and read
+	private ExecutorService executor;
+
+	//Asynchronous facade, created on first use
+	private AsyncEstateService async;
+
+	/**
+	 * Starts one service per configuration, in parallel. The schema of every
+	 * shard is migrated, and its sequences are moved to the id range of the shard.
+	 * @param shardMap Assigns the agents to the shards
+	 * @param configurations One configuration per shard, the first one is the primary
+	 */
+	public ShardedEstateService(ShardMap shardMap, List<Configuration> configurations) {
+		if (configurations.size() != shardMap.getShardCount())
+			throw new IllegalArgumentException("The shard map has " + shardMap.getShardCount()
+					+ " shards, but " + configurations.size() + " configurations were given");
+		this.shardMap = shardMap;
+
+		AtomicInteger threads = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "estate-shard-" + threads.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+
+		List<CompletableFuture<EstateService>> started = new ArrayList<>();
+		for (int k = 0; k < configurations.size(); k++) {
+			Configuration configuration = isolate(configurations.get(k), k);
+			int shard = k;
+			started.add(CompletableFuture.supplyAsync(() -> {
+				EstateService service = new EstateService(configuration);
+				service.reserveIds(ShardMap.firstId(shard));
+				return service;
+			}, executor));
+		}
+		RuntimeException failure = null;
+		for (CompletableFuture<EstateService> service : started) {
+			try {
+				shards.add(join(service));
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+		}
+		//The shards that did start are closed again
+		if (failure != null) {
+			for (EstateService shard : shards)
+				shard.close();
+			executor.shutdownNow();
+			throw failure;
+		}
+	}
+
+	/**
+	 * Starts the shards described by properties, e.g. read from a file:
+	 *   shards=2
+	 *   agent.17=1
+	 *   shard.0.hibernate.connection.url=jdbc:h2:./data/estatedb
+	 *   shard.1.hibernate.connection.url=jdbc:h2:./data/estatedb-shard1
+	 * The ShardMap is read by {@link ShardMap#load(Properties)}. Every shard k
+	 * is configured by the file shard.k.config, hibernate.cfg.xml by default,
+	 * the other properties shard.k.&lt;name&gt; replace its setting &lt;name&gt;.
+	 */
+	public static ShardedEstateService load(Properties properties) {
+		ShardMap shardMap = ShardMap.load(properties);
+		List<Configuration> configurations = new ArrayList<>();
+		for (int k = 0; k < shardMap.getShardCount(); k++) {
+			String prefix = "shard." + k + ".";
+			Configuration configuration = new Configuration().configure(properties.getProperty(prefix + "config", "hibernate.cfg.xml"));
+			for (String name : properties.stringPropertyNames()) {
+				if (name.startsWith(prefix) && !name.equals(prefix + "config"))
+					configuration.setProperty(name.substring(prefix.length()), properties.getProperty(name).trim());
+			}
+			configurations.add(configuration);
+		}
+		return new ShardedEstateService(shardMap, configurations);
+	}
+
+	/**
+	 * Gives the shard its own pool name and cache manager. The regions of the
+	 * second-level cache have the same names on all shards, with the shared
+	 * default cache manager the shards would read the cached rows of each other.
+	 */
+	private static Configuration isolate(Configuration configuration, int shard) {
+		String pool = configuration.getProperty("hibernate.hikari.poolName");
+		if (pool != null)
+			configuration.setProperty("hibernate.hikari.poolName", pool + "-shard" + shard);
+
+		String provider = configuration.getProperty(ConfigSettings.PROVIDER);
+		String uri = configuration.getProperty(ConfigSettings.CONFIG_URI);
+		if (EhcacheCachingProvider.class.getName().equals(provider) && uri != null) {
+			URL url = ShardedEstateService.class.getClassLoader().getResource(uri);
+			if (url == null)
+				throw new IllegalArgumentException("The cache configuration " + uri + " was not found");
+			EhcacheCachingProvider ehcache = (EhcacheCachingProvider) Caching.getCachingProvider(provider);
+			configuration.getProperties().put(ConfigSettings.CACHE_MANAGER, ehcache.getCacheManager(
+					URI.create("urn:estate-shard-" + shard + "-" + System.identityHashCode(configuration)),
+					new XmlConfiguration(url)));
+		}
+		return configuration;
+	}
+
+	/**
+	 * Returns the service of a shard, e.g. for its metrics or a bulk import
+	 * @param shard The number of the shard, 0 is the primary
+	 */
+	public EstateService getShard(int shard) {
+		return shards.get(shard);
+	}
+
+	/**
+	 * Returns the service of the shard storing the estates of an agent
+	 */
+	public EstateService getShard(EstateAgent ea) {
+		return shards.get(shardMap.shardOf(ea.getId()));
+	}
+
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	public ShardMap getShardMap() {
+		return shardMap;
+	}
+
+	private EstateService primary() {
+		return shards.get(0);
+	}
+
+	/**
+	 * Runs the work, the calls inside it run in their own transactions on their shards
+	 */
+	public <T> T inTransaction(UnitOfWork<T> work) {
+		return work.execute();
+	}
+
+	/**
+	 * Runs the work like {@link #inTransaction(UnitOfWork)}, the operation
+	 * is recorded by the shards of the calls
+	 */
+	public <T> T inTransaction(String operation, UnitOfWork<T> work) {
+		return work.execute();
+	}
+
+	/**
+	 * Returns the asynchronous facade, at most as many tasks run at the same
+	 * time as the connection pools of the shards have connections
+	 */
+	public synchronized AsyncEstateService async() {
+		if (async == null) {
+			int connections = 0;
+			for (EstateService shard : shards) {
+				ConnectionPoolMetrics pool = shard.getConnectionPoolMetrics();
+				connections += pool == null ? 0 : pool.getMaxConnections();
+			}
+			async = new AsyncEstateService(this, connections > 0 ? connections : Runtime.getRuntime().availableProcessors());
+		}
+		return async;
+	}
+
+	/**
+	 * Waits for the tasks of the asynchronous facade and the running reads,
+	 * then closes the shards
+	 */
+	public void close() {
+		AsyncEstateService facade;
+		synchronized (this) {
+			facade = async;
+			async = null;
+		}
+		if (facade != null)
+			facade.close();
+		TaskExecutors.shutdownAndWait(executor);
+		for (EstateService shard : shards)
+			shard.close();
+	}
+
+	/**
+	 * Registers the listener with the primary, every agent is changed and deleted there
+	 */
+	public void addCredentialsListener(CredentialsListener listener) {
+		primary().addCredentialsListener(listener);
+	}
+
+	private EstateService byId(int id) {
+		return shards.get(shardMap.shardOfId(id));
+	}
+
+	/**
+	 * Runs a read on all shards in parallel
+	 * @return The results in the order of the shards
+	 */
+	private <T> List<T> gather(Function<EstateService, T> read) {
+		List<CompletableFuture<T>> futures = new ArrayList<>();
+		for (EstateService shard : shards)
+			futures.add(CompletableFuture.supplyAsync(() -> read.apply(shard), executor));
+
+		List<T> ret = new ArrayList<>();
+		for (CompletableFuture<T> future : futures)
+			ret.add(join(future));
+		return ret;
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes a person or agent to the primary, which assigns the id, and copies it to the other shards
+	 */
+	private void writeReplicated(Object entity, Runnable add) {
+		add.run();
+		for (int k = 1; k < shards.size(); k++)
+			shards.get(k).replicate(entity);
+	}
+
+	/**
+	 * Updates an object on the shard that stores it. Persons and agents are updated
+	 * on the primary, where the version is checked, and copied to the other shards.
+	 * @throws EditConflictException If the object was changed or deleted meanwhile
+	 * @throws IllegalArgumentException If an estate is given to an agent on another shard
+	 */
+	public void updateInstance(Object obj) {
+		if (obj instanceof Person || obj instanceof EstateAgent) {
+			writeReplicated(obj, () -> primary().updateInstance(obj));
+			return;
+		}
+
+		EstateService shard;
+		if (obj instanceof Estate) {
+			Estate estate = (Estate) obj;
+			shard = byId(estate.getId());
+			if (estate.getManager() != null && getShard(estate.getManager()) != shard)
+				throw new IllegalArgumentException("Estate " + estate.getId() + " cannot be moved to an agent on another shard");
+		} else if (obj instanceof Contract) {
+			shard = byId(((Contract) obj).getId());
+		} else {
+			shard = primary();
+		}
+		shard.updateInstance(obj);
+	}
+
+	public EstateAgent getEstateAgentByID(int id) {
+		return primary().getEstateAgentByID(id);
+	}
+
+	public EstateAgent getEstateAgentByLogin(String login) {
+		return primary().getEstateAgentByLogin(login);
+	}
+
+	public AgentCredentials getAgentCredentials(String login) {
+		return primary().getAgentCredentials(login);
+	}
+
+	/**
+	 * Returns all estate agents, read from the primary, which has all of them
+	 */
+	public Set<EstateAgent> getAllEstateAgents() {
+		return primary().getAllEstateAgents();
+	}
+
+	/**
+	 * Adds an estate agent on all shards
+	 */
+	public void addEstateAgent(EstateAgent ea) {
+		writeReplicated(ea, () -> primary().addEstateAgent(ea));
+	}
+
+	/**
+	 * Deletes an estate agent with all estates and their contracts
+	 * @see #deleteEstateAgent(EstateAgent, EstateAgent)
+	 */
+	public DeleteResult deleteEstateAgent(EstateAgent ea) {
+		return deleteEstateAgent(ea, null);
+	}
+
+	/**
+	 * Deletes an estate agent on all shards. The estates are deleted or handed
+	 * over on the shard of the agent first, the primary is the last shard.
+	 * @param successor Takes over the estates, must be on the same shard as the agent, null to delete them
+	 * @return The deleted and handed over rows of the shard of the agent
+	 */
+	public DeleteResult deleteEstateAgent(EstateAgent ea, EstateAgent successor) {
+		EstateService home = getShard(ea);
+		if (successor != null && getShard(successor) != home)
+			throw new IllegalArgumentException("The estates can only be handed over to an agent on the same shard");
+
+		DeleteResult result = home.deleteEstateAgent(ea, successor);
+		for (int k = shards.size() - 1; k >= 0; k--) {
+			if (shards.get(k) != home)
+				shards.get(k).deleteEstateAgent(ea);
+		}
+		return result;
+	}
+
+	public Person getPersonById(int id) {
+		return primary().getPersonById(id);
+	}
+
+	/**
+	 * Adds a person on all shards
+	 */
+	public void addPerson(Person p) {
+		writeReplicated(p, () -> primary().addPerson(p));
+	}
+
+	/**
+	 * Returns all persons, read from the primary, which has all of them
+	 */
+	public Set<Person> getAllPersons() {
+		return primary().getAllPersons();
+	}
+
+	public Page<Person> getPersonPage(Page.Cursor cursor, int pageSize) {
+		return primary().getPersonPage(cursor, pageSize);
+	}
+
+	public Page<Person> searchPersons(String term, Page.Cursor cursor, int pageSize) {
+		return primary().searchPersons(term, cursor, pageSize);
+	}
+
+	/**
+	 * Deletes a person on all shards, the primary last. A shard with a contract
+	 * of the person rejects the delete, the shards deleted before get the
+	 * person back.
+	 */
+	public void deletePerson(Person p) {
+		int k = shards.size() - 1;
+		try {
+			for (; k >= 0; k--)
+				shards.get(k).deletePerson(p);
+		} catch (RuntimeException e) {
+			for (int restored = shards.size() - 1; restored > k; restored--)
+				shards.get(restored).replicate(p);
+			throw e;
+		}
+	}
+
+	public void addHouse(House h) {
+		getShard(h.getManager()).addHouse(h);
+	}
+
+	public House getHouseById(int id) {
+		return byId(id).getHouseById(id);
+	}
+
+	public Set<House> getAllHousesForEstateAgent(EstateAgent ea) {
+		return getShard(ea).getAllHousesForEstateAgent(ea);
+	}
+
+	public List<EstateSummary> getHouseSummariesForEstateAgent(EstateAgent ea) {
+		return getShard(ea).getHouseSummariesForEstateAgent(ea);
+	}
+
+	public Page<EstateSummary> getHouseSummaryPage(EstateAgent ea, Page.Cursor cursor, int pageSize) {
+		return getShard(ea).getHouseSummaryPage(ea, cursor, pageSize);
+	}
+
+	public Page<EstateSummary> searchHouses(EstateAgent ea, String term, Page.Cursor cursor, int pageSize) {
+		return getShard(ea).searchHouses(ea, term, cursor, pageSize);
+	}
+
+	public DeleteResult deleteHouse(House h) {
+		return byId(h.getId()).deleteHouse(h);
+	}
+
+	public void addApartment(Apartment w) {
+		getShard(w.getManager()).addApartment(w);
+	}
+
+	public Apartment getApartmentByID(int id) {
+		return byId(id).getApartmentByID(id);
+	}
+
+	public Set<Apartment> getAllApartmentsForEstateAgent(EstateAgent ea) {
+		return getShard(ea).getAllApartmentsForEstateAgent(ea);
+	}
+
+	public List<EstateSummary> getApartmentSummariesForEstateAgent(EstateAgent ea) {
+		return getShard(ea).getApartmentSummariesForEstateAgent(ea);
+	}
+
+	public Page<EstateSummary> getApartmentSummaryPage(EstateAgent ea, Page.Cursor cursor, int pageSize) {
+		return getShard(ea).getApartmentSummaryPage(ea, cursor, pageSize);
+	}
+
+	public Page<EstateSummary> searchApartments(EstateAgent ea, String term, Page.Cursor cursor, int pageSize) {
+		return getShard(ea).searchApartments(ea, term, cursor, pageSize);
+	}
+
+	public DeleteResult deleteApartment(Apartment w) {
+		return byId(w.getId()).deleteApartment(w);
+	}
+
+	/**
+	 * Adds a tenancy contract on the shard of its apartment
+	 */
+	public void addTenancyContract(TenancyContract t) {
+		byId(t.getApartment().getId()).addTenancyContract(t);
+	}
+
+	/**
+	 * Adds a purchase contract on the shard of its house
+	 */
+	public void addPurchaseContract(PurchaseContract p) {
+		byId(p.getHouse().getId()).addPurchaseContract(p);
+	}
+
+	public TenancyContract getTenancyContractByID(int id) {
+		return byId(id).getTenancyContractByID(id);
+	}
+
+	public PurchaseContract getPurchaseContractById(int id) {
+		return byId(id).getPurchaseContractById(id);
+	}
+
+	public Set<TenancyContract> getAllTenancyContractsForEstateAgent(EstateAgent ea) {
+		return getShard(ea).getAllTenancyContractsForEstateAgent(ea);
+	}
+
+	public Set<PurchaseContract> getAllPurchaseContractsForEstateAgent(EstateAgent ea) {
+		return getShard(ea).getAllPurchaseContractsForEstateAgent(ea);
+	}
+
+	/**
+	 * Returns the tenancy contracts with the given ids, every shard is asked for its own ids
+	 */
+	public Set<TenancyContract> getAllTenancyContractsForIdList(List<Integer> ids) {
+		Set<TenancyContract> ret = new HashSet<TenancyContract>();
+		byShard(ids).forEach((shard, shardIds) -> ret.addAll(shards.get(shard).getAllTenancyContractsForIdList(shardIds)));
+		return ret;
+	}
+
+	/**
+	 * Returns the purchase contracts with the given ids, every shard is asked for its own ids
+	 */
+	public Set<PurchaseContract> getAllPurchaseContractsForIdList(List<Integer> ids) {
+		Set<PurchaseContract> ret = new HashSet<PurchaseContract>();
+		byShard(ids).forEach((shard, shardIds) -> ret.addAll(shards.get(shard).getAllPurchaseContractsForIdList(shardIds)));
+		return ret;
+	}
+
+	private Map<Integer, List<Integer>> byShard(List<Integer> ids) {
+		Map<Integer, List<Integer>> ret = new TreeMap<>();
+		if (ids != null) {
+			for (Integer id : ids)
+				ret.computeIfAbsent(shardMap.shardOfId(id), k -> new ArrayList<>()).add(id);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the tenancy contracts ending in a period on all shards, ordered by end date and id
+	 * @see EstateService#getTenancyContractsEndingBetween(Date, Date, int)
+	 */
+	public List<TenancyContract> getTenancyContractsEndingBetween(Date from, Date to, int limit) {
+		return merge(gather(shard -> shard.getTenancyContractsEndingBetween(from, to, limit)), limit);
+	}
+
+	/**
+	 * Returns the next tenancy contracts ending in a period on all shards
+	 * @param after The last contract of the previous call
+	 */
+	public List<TenancyContract> getTenancyContractsEndingBetween(TenancyContract after, Date to, int limit) {
+		return merge(gather(shard -> shard.getTenancyContractsEndingBetween(after, to, limit)), limit);
+	}
+
+	//The first contracts of the sorted lists of the shards, the ids are unique across the shards
+	private static List<TenancyContract> merge(List<List<TenancyContract>> lists, int limit) {
+		List<TenancyContract> ret = new ArrayList<>();
+		for (List<TenancyContract> list : lists)
+			ret.addAll(list);
+		ret.sort(Comparator.comparing(TenancyContract::getEndDate).thenComparingInt(TenancyContract::getId));
+		return ret.size() > limit ? new ArrayList<>(ret.subList(0, limit)) : ret;
+	}
+
+	public void deleteTenancyContract(TenancyContract tc) {
+		byId(tc.getId()).deleteTenancyContract(tc);
+	}
+
+	public void deletePurchaseContract(PurchaseContract pc) {
+		byId(pc.getId()).deletePurchaseContract(pc);
+	}
+
+	public PortfolioStatistics getPortfolioStatistics(EstateAgent ea) {
+		return getShard(ea).getPortfolioStatistics(ea);
+	}
+
+	/**
+	 * Returns the key figures of all estate agents ordered by agent id. Every shard
+	 * has a row for every agent, only the rows of the agents of the shard are used.
+	 */
+	public List<PortfolioStatistics> getAllPortfolioStatistics() {
+		List<List<PortfolioStatistics>> lists = gather(EstateService::getAllPortfolioStatistics);
+		List<PortfolioStatistics> ret = new ArrayList<>();
+		for (int k = 0; k < lists.size(); k++) {
+			for (PortfolioStatistics statistics : lists.get(k)) {
+				if (shardMap.shardOf(statistics.getAgentId()) == k)
+					ret.add(statistics);
+			}
+		}
+		ret.sort(Comparator.comparingInt(PortfolioStatistics::getAgentId));
+		return ret;
+	}
+
+	public List<ContractVolume> getContractVolumes(EstateAgent ea) {
+		return getShard(ea).getContractVolumes(ea);
+	}
+
+	/**
+	 * Computes the summary tables of all shards again
+	 */
+	public void rebuildPortfolioStatistics() {
+		gather(shard -> {
+			shard.rebuildPortfolioStatistics();
+			return null;
+		});
+	}
+}
@@ -0,0 +1,26 @@
+package de.dis2023.core;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements hibernate prepares on each thread. The 
+ * difference of the count before and after a call is the number of 
+ * statements the call executed.
+ */
+public class StatementCounter implements StatementInspector {
+	private static final long serialVersionUID = 1L;
+
+	private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+	public String inspect(String sql) {
+		COUNT.get()[0]++;
+		return sql;
+	}
+
+	/**
+	 * Returns the number of statements prepared by the current thread so far
+	 */
+	public static long current() {
+		return COUNT.get()[0];
+	}
+}
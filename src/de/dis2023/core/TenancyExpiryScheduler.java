@@ -0,0 +1,176 @@
+package de.dis2023.core;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import de.dis2023.data.ExpiryRun;
+import de.dis2023.data.TenancyContract;
+
+/**
+ * Processes the tenancy contracts that end within the next days, e.g. to
+ * remind the agents of renewals.
+ *
+ * Every run reads the contracts in the order of their end date from the
+ * index on tenancycontract.endDate, in batches of one transaction each.
+ * The handler runs in the transaction of the batch, the progress of the
+ * run (the last processed contract) is stored in expiry_run in the same
+ * transaction. The next run continues after that contract, so every
+ * contract is processed once per end date, no matter how many contracts
+ * there are. A contract that is extended beyond the processed position is
+ * processed again when its new end date comes into the window, an end date
+ * moved into the processed part of the window is not processed again. The
+ * first run starts with the contracts ending today.
+ *
+ * If a batch fails, the run is stored with the error and the next run
+ * repeats the batch. Only one scheduler may run per database.
+ */
+public class TenancyExpiryScheduler implements AutoCloseable {
+	public static final int DEFAULT_WINDOW_DAYS = 90;
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	private EstateService service;
+	private Consumer<TenancyContract> handler;
+	private int windowDays;
+	private int batchSize;
+
+	private ScheduledExecutorService executor;
+	private volatile ExpiryRun lastRun;
+
+	/**
+	 * Creates the scheduler, the runs are started with {@link #start(long)} or {@link #runOnce()}
+	 * @param service The service with the contracts
+	 * @param handler Called for every contract in the transaction of its batch
+	 * @param windowDays Contracts ending until today plus this number of days are processed
+	 * @param batchSize Number of contracts per transaction
+	 */
+	public TenancyExpiryScheduler(EstateService service, Consumer<TenancyContract> handler, int windowDays, int batchSize) {
+		if (windowDays < 0 || batchSize < 1)
+			throw new IllegalArgumentException("The window must not be negative and a batch needs at least one contract");
+		this.service = service;
+		this.handler = handler;
+		this.windowDays = windowDays;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Runs periodically on a background thread until close is called, the first run starts immediately
+	 * @param periodSeconds Time between the end of a run and the start of the next
+	 */
+	public synchronized void start(long periodSeconds) {
+		close();
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "tenancy-expiry");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.scheduleWithFixedDelay(() -> {
+			try {
+				runOnce();
+			} catch (RuntimeException e) {
+				//The run could not be stored, the next run starts at the last stored position
+				System.err.println("Tenancy expiry run failed: "+e);
+			}
+		}, 0, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Processes the contracts that end until today plus the window and were not processed yet
+	 * @return The stored run
+	 */
+	public ExpiryRun runOnce() {
+		Date today = day(new Date(), 0);
+		ExpiryRun last = service.getLastExpiryRun();
+
+		ExpiryRun run = new ExpiryRun();
+		run.setStarted(new Date());
+		run.setWindowEnd(day(today, windowDays));
+		if (last != null && last.getLastEndDate() != null) {
+			run.setLastEndDate(last.getLastEndDate());
+			run.setLastContractId(last.getLastContractId());
+		} else {
+			run.setLastEndDate(today);
+			run.setLastContractId(Integer.MIN_VALUE);
+		}
+		service.saveExpiryRun(run);
+
+		try {
+			while (true) {
+				ExpiryRun current = run;
+				ExpiryRun next = service.inTransaction("processExpiringTenancies", () -> {
+					List<TenancyContract> batch = service.tenancyContractsEnding(current.getLastEndDate(),
+							current.getLastContractId(), current.getWindowEnd(), batchSize);
+					if (batch.isEmpty())
+						return null;
+					for (TenancyContract contract : batch)
+						handler.accept(contract);
+
+					//A copy, so a retried or rolled back batch starts from the stored position again
+					TenancyContract lastContract = batch.get(batch.size() - 1);
+					ExpiryRun progress = copy(current);
+					progress.setLastEndDate(lastContract.getEndDate());
+					progress.setLastContractId(lastContract.getId());
+					progress.setProcessed(current.getProcessed() + batch.size());
+					progress.setBatches(current.getBatches() + 1);
+					service.saveExpiryRun(progress);
+					return progress;
+				});
+				if (next == null)
+					break;
+				run = next;
+			}
+			run.setFinished(new Date());
+		} catch (RuntimeException e) {
+			run.setError(String.valueOf(e.getMessage()));
+		}
+		service.saveExpiryRun(run);
+		lastRun = run;
+		return run;
+	}
+
+	/**
+	 * Returns the last run of this scheduler, null if it has not run yet
+	 */
+	public ExpiryRun getLastRun() {
+		return lastRun;
+	}
+
+	/**
+	 * Stops the periodic runs, a running batch is interrupted
+	 */
+	public synchronized void close() {
+		if (executor != null)
+			executor.shutdownNow();
+		executor = null;
+	}
+
+	private static ExpiryRun copy(ExpiryRun run) {
+		ExpiryRun ret = new ExpiryRun();
+		ret.setId(run.getId());
+		ret.setStarted(run.getStarted());
+		ret.setFinished(run.getFinished());
+		ret.setWindowEnd(run.getWindowEnd());
+		ret.setProcessed(run.getProcessed());
+		ret.setBatches(run.getBatches());
+		ret.setLastEndDate(run.getLastEndDate());
+		ret.setLastContractId(run.getLastContractId());
+		ret.setError(run.getError());
+		return ret;
+	}
+
+	//Midnight of the day the given number of days after the date
+	private static Date day(Date date, int days) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(date);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		calendar.add(Calendar.DAY_OF_MONTH, days);
+		return calendar.getTime();
+	}
+}
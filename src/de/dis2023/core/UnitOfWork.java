@@ -0,0 +1,22 @@
+package de.dis2023.core;
+
+/**
+ * A piece of work that runs in a single session and transaction of the
+ * EstateService, see {@link EstateService#inTransaction(UnitOfWork)}.
+ *
+ * Calls of EstateService methods inside the work join its transaction.
+ * The work may be executed more than once if the transaction is retried
+ * after a lock conflict, so it should not read user input and must have the
+ * same effect when it is executed again. Objects added by the EstateService
+ * get back their id and version on the rollback and are added again, other
+ * state the work changes, e.g. counters or objects changed in memory, is
+ * not reset.
+ */
+@FunctionalInterface
+public interface UnitOfWork<T> {
+	/**
+	 * Executes the work
+	 * @return Result of the work, is returned by inTransaction
+	 */
+	public T execute();
+}
@@ -0,0 +1,32 @@
+package de.dis2023.data;
+
+/**
+ * Login data of an estate agent without the other columns and the 
+ * estates of the agent. Used to check a login.
+ */
+public class AgentCredentials {
+	private int id;
+	private String login;
+	private String name;
+	private String password;
+	
+	public AgentCredentials(int id, String login, String name, String password) {
+		this.id = id;
+		this.login = login;
+		this.name = name;
+		this.password = password;
+	}
+	
+	public int getId() {
+		return id;
+	}
+	public String getLogin() {
+		return login;
+	}
+	public String getName() {
+		return name;
+	}
+	public String getPassword() {
+		return password;
+	}
+}
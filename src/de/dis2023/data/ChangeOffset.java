@@ -0,0 +1,37 @@
+package de.dis2023.data;
+
+import java.util.Date;
+
+/**
+ * Position of a consumer of the change outbox
+ */
+public class ChangeOffset {
+	private String consumer;
+	private long lastId;
+	private Date updated;
+
+	public ChangeOffset() {
+	}
+
+	public String getConsumer() {
+		return consumer;
+	}
+	public void setConsumer(String consumer) {
+		this.consumer = consumer;
+	}
+	/**
+	 * Returns the id of the last change the consumer has processed
+	 */
+	public long getLastId() {
+		return lastId;
+	}
+	public void setLastId(long lastId) {
+		this.lastId = lastId;
+	}
+	public Date getUpdated() {
+		return updated;
+	}
+	public void setUpdated(Date updated) {
+		this.updated = updated;
+	}
+}
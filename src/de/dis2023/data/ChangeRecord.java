@@ -0,0 +1,84 @@
+package de.dis2023.data;
+
+import java.util.Date;
+
+/**
+ * One change of an entity in the outbox, written in the transaction of the
+ * change and read by the ChangeRelay in the order of the ids
+ */
+public class ChangeRecord {
+	public static final String INSERT = "insert";
+	public static final String UPDATE = "update";
+	public static final String DELETE = "delete";
+
+	private long id;
+	private String entityType;
+	private int entityId;
+	private int version;
+	private String operation;
+	private String changedFields;
+	private Date recorded;
+
+	public ChangeRecord() {
+	}
+
+	public long getId() {
+		return id;
+	}
+	public void setId(long id) {
+		this.id = id;
+	}
+	/**
+	 * Returns the name of the entity class, e.g. House
+	 */
+	public String getEntityType() {
+		return entityType;
+	}
+	public void setEntityType(String entityType) {
+		this.entityType = entityType;
+	}
+	public int getEntityId() {
+		return entityId;
+	}
+	public void setEntityId(int entityId) {
+		this.entityId = entityId;
+	}
+	/**
+	 * Returns the version of the entity after the change, before it for deletes
+	 */
+	public int getVersion() {
+		return version;
+	}
+	public void setVersion(int version) {
+		this.version = version;
+	}
+	/**
+	 * Returns INSERT, UPDATE or DELETE
+	 */
+	public String getOperation() {
+		return operation;
+	}
+	public void setOperation(String operation) {
+		this.operation = operation;
+	}
+	/**
+	 * Returns the names of the changed properties separated by commas, null for inserts and deletes
+	 */
+	public String getChangedFields() {
+		return changedFields;
+	}
+	public void setChangedFields(String changedFields) {
+		this.changedFields = changedFields;
+	}
+	public Date getRecorded() {
+		return recorded;
+	}
+	public void setRecorded(Date recorded) {
+		this.recorded = recorded;
+	}
+
+	public String toString() {
+		return "Change "+id+": "+operation+" "+entityType+" "+entityId+" version "+version+
+				(changedFields == null ? "" : " ("+changedFields+")")+String.format(" at %tF %<tT", recorded);
+	}
+}
@@ -11,12 +11,11 @@ public abstract class Contract {
 	private int contractNo = -1;
 	private Date date;
 	private String place;
-	static int currentId = 0;
 	int id;
+	private int version;
 	Person contractPartner;
 	
 	public Contract() {
-		this.id = currentId++;
 	}
 	
 	public int getContractNo() {
@@ -45,6 +44,15 @@ public abstract class Contract {
 	public void setId(int id) {
 		this.id = id;
 	}
+	/**
+	 * Returns the version of the row, hibernate increments it on every update
+	 */
+	public int getVersion() {
+		return version;
+	}
+	public void setVersion(int version) {
+		this.version = version;
+	}
 
 	public Person getContractPartner() {
 		return contractPartner;
@@ -58,6 +66,8 @@ public abstract class Contract {
 		final int prime = 31;
 		int result = 1;
 		
+		//Contract numbers, dates and places are not unique
+		result = prime * result + getId();
 		result = prime * result + ((getDate() == null) ? 0 : getDate().hashCode());
 		result = prime * result + ((getPlace() == null) ? 0 : getPlace().hashCode());
 		
@@ -73,7 +83,8 @@ public abstract class Contract {
 	
 		Contract other = (Contract)obj;
 	
-		if(other.getContractNo() != getContractNo() ||
+		if(other.getId() != getId() ||
+				other.getContractNo() != getContractNo() ||
 				!Helper.compareObjects(this.getDate(), other.getDate()) ||
 				!Helper.compareObjects(this.getPlace(), other.getPlace()))
 		{
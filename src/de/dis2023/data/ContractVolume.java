@@ -0,0 +1,87 @@
+package de.dis2023.data;
+
+import java.io.Serializable;
+
+/**
+ * Number and value of the contracts an estate agent concluded in one 
+ * month. Stored in a summary table like the PortfolioStatistics.
+ */
+public class ContractVolume implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	private int agentId;
+	private int month;
+	private long tenancyContracts;
+	private long rentVolume;
+	private long purchaseContracts;
+	private long purchaseVolume;
+	
+	public ContractVolume() {
+	}
+	
+	public int getAgentId() {
+		return agentId;
+	}
+	public void setAgentId(int agentId) {
+		this.agentId = agentId;
+	}
+	/**
+	 * Returns the month as yyyyMM, e.g. 202304 for April 2023
+	 */
+	public int getMonth() {
+		return month;
+	}
+	public void setMonth(int month) {
+		this.month = month;
+	}
+	public long getTenancyContracts() {
+		return tenancyContracts;
+	}
+	public void setTenancyContracts(long tenancyContracts) {
+		this.tenancyContracts = tenancyContracts;
+	}
+	/**
+	 * Returns the sum of the monthly rents of the rented apartments
+	 */
+	public long getRentVolume() {
+		return rentVolume;
+	}
+	public void setRentVolume(long rentVolume) {
+		this.rentVolume = rentVolume;
+	}
+	public long getPurchaseContracts() {
+		return purchaseContracts;
+	}
+	public void setPurchaseContracts(long purchaseContracts) {
+		this.purchaseContracts = purchaseContracts;
+	}
+	/**
+	 * Returns the sum of the prices of the sold houses
+	 */
+	public long getPurchaseVolume() {
+		return purchaseVolume;
+	}
+	public void setPurchaseVolume(long purchaseVolume) {
+		this.purchaseVolume = purchaseVolume;
+	}
+	
+	public int hashCode() {
+		return 31 * agentId + month;
+	}
+	
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		
+		if (obj == null || !(obj instanceof ContractVolume))
+			return false;
+		
+		ContractVolume other = (ContractVolume)obj;
+		return other.getAgentId() == getAgentId() && other.getMonth() == getMonth();
+	}
+	
+	public String toString() {
+		return String.format("%d-%02d: %d tenancy contracts (%d Euro rent), %d purchase contracts (%d Euro)",
+				month / 100, month % 100, tenancyContracts, rentVolume, purchaseContracts, purchaseVolume);
+	}
+}
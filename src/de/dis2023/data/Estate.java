@@ -7,16 +7,15 @@ import de.dis2023.util.Helper;
  */
 public abstract class Estate {
 	private int id = -1;
+	private int version;
 	private String city;
 	private int postalcode;
 	private String street;
 	private String streetnumber;
 	private int squareArea;
 	private EstateAgent manager;
-	static int currentId = 0;
 	
 	public Estate() {
-		this.id = currentId++;
 	}
 	
 	public int getId() {
@@ -25,6 +24,15 @@ public abstract class Estate {
 	public void setId(int id) {
 		this.id = id;
 	}
+	/**
+	 * Returns the version of the row, hibernate increments it on every update
+	 */
+	public int getVersion() {
+		return version;
+	}
+	public void setVersion(int version) {
+		this.version = version;
+	}
 	public String getCity() {
 		return city;
 	}
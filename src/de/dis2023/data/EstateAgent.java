@@ -9,6 +9,7 @@ import de.dis2023.util.Helper;
  */
 public class EstateAgent {
 	private int id;
+	private int version;
 	private String name;
 	private String address;
 	private String login;
@@ -26,6 +27,15 @@ public class EstateAgent {
 	public void setId(int id) {
 		this.id = id;
 	}
+	/**
+	 * Returns the version of the row, hibernate increments it on every update
+	 */
+	public int getVersion() {
+		return version;
+	}
+	public void setVersion(int version) {
+		this.version = version;
+	}
 	
 	public String getName() {
 		return name;
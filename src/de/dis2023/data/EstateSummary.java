@@ -0,0 +1,41 @@
+package de.dis2023.data;
+
+/**
+ * Address of an estate without its other columns. Used where only a 
+ * list of estates is shown, e.g. in selection menus.
+ */
+public class EstateSummary {
+	private int id;
+	private String street;
+	private String streetnumber;
+	private int postalcode;
+	private String city;
+	
+	public EstateSummary(int id, String street, String streetnumber, int postalcode, String city) {
+		this.id = id;
+		this.street = street;
+		this.streetnumber = streetnumber;
+		this.postalcode = postalcode;
+		this.city = city;
+	}
+	
+	public int getId() {
+		return id;
+	}
+	public String getStreet() {
+		return street;
+	}
+	public String getStreetnumber() {
+		return streetnumber;
+	}
+	public int getPostalcode() {
+		return postalcode;
+	}
+	public String getCity() {
+		return city;
+	}
+	
+	public String toString() {
+		return street+" "+streetnumber+", "+postalcode+" "+city;
+	}
+}
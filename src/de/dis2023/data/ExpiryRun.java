@@ -0,0 +1,100 @@
+package de.dis2023.data;
+
+import java.util.Date;
+
+import de.dis2023.util.Helper;
+
+/**
+ * One run of the TenancyExpiryScheduler. The run is updated after every
+ * batch, the last processed contract is where the next run continues.
+ */
+public class ExpiryRun {
+	private int id = -1;
+	private Date started;
+	private Date finished;
+	private Date windowEnd;
+	private int processed;
+	private int batches;
+	private Date lastEndDate;
+	private int lastContractId;
+	private String error;
+
+	public ExpiryRun() {
+	}
+
+	public int getId() {
+		return id;
+	}
+	public void setId(int id) {
+		this.id = id;
+	}
+	public Date getStarted() {
+		return started;
+	}
+	public void setStarted(Date started) {
+		this.started = started;
+	}
+	/**
+	 * Returns when the run ended, null while it is running or if it was aborted
+	 */
+	public Date getFinished() {
+		return finished;
+	}
+	public void setFinished(Date finished) {
+		this.finished = finished;
+	}
+	/**
+	 * Returns the last end date of the contracts processed by this run
+	 */
+	public Date getWindowEnd() {
+		return windowEnd;
+	}
+	public void setWindowEnd(Date windowEnd) {
+		this.windowEnd = windowEnd;
+	}
+	public int getProcessed() {
+		return processed;
+	}
+	public void setProcessed(int processed) {
+		this.processed = processed;
+	}
+	public int getBatches() {
+		return batches;
+	}
+	public void setBatches(int batches) {
+		this.batches = batches;
+	}
+	/**
+	 * Returns the end date of the last processed contract
+	 */
+	public Date getLastEndDate() {
+		return lastEndDate;
+	}
+	public void setLastEndDate(Date lastEndDate) {
+		this.lastEndDate = lastEndDate;
+	}
+	/**
+	 * Returns the id of the last processed contract
+	 */
+	public int getLastContractId() {
+		return lastContractId;
+	}
+	public void setLastContractId(int lastContractId) {
+		this.lastContractId = lastContractId;
+	}
+	/**
+	 * Returns why the run stopped before reaching the end of the window, null if it did not fail
+	 */
+	public String getError() {
+		return error;
+	}
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	public String toString() {
+		return "Expiry run "+id+": "+processed+" contracts ending until "+
+				(windowEnd == null ? "-" : Helper.dateToString(windowEnd))+" in "+batches+" batches"+
+				(error == null ? "" : ", failed: "+error);
+	}
+}
@@ -7,6 +7,7 @@ import de.dis2023.util.Helper;
  */
 public class Person {
 	private int id;
+	private int version;
 	private String firstname;
 	private String name;
 	private String address;
@@ -20,6 +21,15 @@ public class Person {
 	public void setId(int id) {
 		this.id = id;
 	}
+	/**
+	 * Returns the version of the row, hibernate increments it on every update
+	 */
+	public int getVersion() {
+		return version;
+	}
+	public void setVersion(int version) {
+		this.version = version;
+	}
 	public String getFirstname() {
 		return firstname;
 	}
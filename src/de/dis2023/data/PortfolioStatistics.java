@@ -0,0 +1,89 @@
+package de.dis2023.data;
+
+/**
+ * Key figures of the estates of one estate agent. Stored in a summary 
+ * table that is updated with every change of the estates and contracts, 
+ * so reading it does not depend on the size of the portfolio.
+ */
+public class PortfolioStatistics {
+	private int agentId;
+	private long houses;
+	private long housePriceTotal;
+	private long soldHouses;
+	private long apartments;
+	private long apartmentArea;
+	private long apartmentRentTotal;
+	private long rentedApartments;
+	
+	public PortfolioStatistics() {
+	}
+	
+	public int getAgentId() {
+		return agentId;
+	}
+	public void setAgentId(int agentId) {
+		this.agentId = agentId;
+	}
+	public long getHouses() {
+		return houses;
+	}
+	public void setHouses(long houses) {
+		this.houses = houses;
+	}
+	public long getHousePriceTotal() {
+		return housePriceTotal;
+	}
+	public void setHousePriceTotal(long housePriceTotal) {
+		this.housePriceTotal = housePriceTotal;
+	}
+	public long getSoldHouses() {
+		return soldHouses;
+	}
+	public void setSoldHouses(long soldHouses) {
+		this.soldHouses = soldHouses;
+	}
+	public long getApartments() {
+		return apartments;
+	}
+	public void setApartments(long apartments) {
+		this.apartments = apartments;
+	}
+	public long getApartmentArea() {
+		return apartmentArea;
+	}
+	public void setApartmentArea(long apartmentArea) {
+		this.apartmentArea = apartmentArea;
+	}
+	public long getApartmentRentTotal() {
+		return apartmentRentTotal;
+	}
+	public void setApartmentRentTotal(long apartmentRentTotal) {
+		this.apartmentRentTotal = apartmentRentTotal;
+	}
+	public long getRentedApartments() {
+		return rentedApartments;
+	}
+	public void setRentedApartments(long rentedApartments) {
+		this.rentedApartments = rentedApartments;
+	}
+	
+	/**
+	 * Returns the rent per square meter over all apartments, 
+	 * i.e. the total rent divided by the total area
+	 */
+	public double getAverageRentPerSquareMeter() {
+		return apartmentArea == 0 ? 0 : (double) apartmentRentTotal / apartmentArea;
+	}
+	
+	/**
+	 * Returns the share of the apartments with a tenancy contract (0..1)
+	 */
+	public double getOccupancy() {
+		return apartments == 0 ? 0 : (double) rentedApartments / apartments;
+	}
+	
+	public String toString() {
+		return String.format("%d houses (%d sold, total price %d Euro), %d apartments (%d rented, occupancy %.0f%%, %.2f Euro/m²)",
+				houses, soldHouses, housePriceTotal, apartments, rentedApartments, getOccupancy() * 100, getAverageRentPerSquareMeter());
+	}
+}
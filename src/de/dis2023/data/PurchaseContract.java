@@ -54,7 +54,8 @@ public class PurchaseContract extends Contract {
 	
 		PurchaseContract other = (PurchaseContract)obj;
 	
-		if(other.getContractNo() != getContractNo() ||
+		if(other.getId() != getId() ||
+				other.getContractNo() != getContractNo() ||
 				!Helper.compareObjects(this.getDate(), other.getDate()) ||
 				!Helper.compareObjects(this.getPlace(), other.getPlace()) ||
 				other.getNoOfInstallments() != getNoOfInstallments() ||
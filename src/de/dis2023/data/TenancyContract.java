@@ -1,5 +1,6 @@
 package de.dis2023.data;
 
+import java.util.Calendar;
 import java.util.Date;
 
 import de.dis2023.util.Helper;
@@ -12,6 +13,8 @@ public class TenancyContract extends Contract {
 	private int duration;
 	private int additionalCosts;
 	private Apartment apartment;
+	//Computed from start date and duration, stored so the contracts ending in a period are found by an index
+	private Date endDate;
 
 	public TenancyContract() {
 		super();
@@ -22,12 +25,33 @@ public class TenancyContract extends Contract {
 	}
 	public void setStartDate(Date startDate) {
 		this.startDate = startDate;
+		updateEndDate();
 	}
 	public int getDuration() {
 		return duration;
 	}
 	public void setDuration(int duration) {
 		this.duration = duration;
+		updateEndDate();
+	}
+
+	/**
+	 * Returns the day the tenancy ends, start date plus duration in months
+	 * @return The end date or null if there is no start date or duration
+	 */
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	private void updateEndDate() {
+		if(startDate == null || duration <= 0) {
+			endDate = null;
+			return;
+		}
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(startDate);
+		calendar.add(Calendar.MONTH, duration);
+		endDate = calendar.getTime();
 	}
 	public int getAdditionalCosts() {
 		return additionalCosts;
@@ -64,7 +88,8 @@ public class TenancyContract extends Contract {
 	
 		TenancyContract other = (TenancyContract)obj;
 	
-		if(other.getContractNo() != getContractNo() ||
+		if(other.getId() != getId() ||
+				other.getContractNo() != getContractNo() ||
 				!Helper.compareObjects(this.getDate(), other.getDate()) ||
 				!Helper.compareObjects(this.getPlace(), other.getPlace()) ||
 				other.getDuration() != getDuration() ||
@@ -0,0 +1,3 @@
+-- Summary tables of the portfolio statistics, filled by EstateService on the next start
+create table if not exists portfolio_statistics (agent_id integer not null, houses bigint not null, house_price_total bigint not null, sold_houses bigint not null, apartments bigint not null, apartment_area bigint not null, apartment_rent_total bigint not null, rented_apartments bigint not null, primary key (agent_id));
+create table if not exists contract_volume (agent_id integer not null, contract_month integer not null, tenancy_contracts bigint not null, rent_volume bigint not null, purchase_contracts bigint not null, purchase_volume bigint not null, primary key (agent_id, contract_month));
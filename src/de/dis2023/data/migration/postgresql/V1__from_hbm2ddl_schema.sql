@@ -0,0 +1,14 @@
+-- Upgrades the tables hbm2ddl created from the first mappings to version 1, instead of V1__initial_schema.
+-- The contract number was the primary key, the contracts keep it as their id.
+-- SchemaMigrator creates the missing sequences afterwards, starting after the existing ids.
+update purchasecontract set id = contractNo;
+alter table purchasecontract drop constraint purchasecontract_pkey;
+alter table purchasecontract alter column id set not null;
+alter table purchasecontract alter column contractNo drop not null;
+alter table purchasecontract add primary key (id);
+
+update tenancycontract set id = contractNo;
+alter table tenancycontract drop constraint tenancycontract_pkey;
+alter table tenancycontract alter column id set not null;
+alter table tenancycontract alter column contractNo drop not null;
+alter table tenancycontract add primary key (id);
@@ -0,0 +1,21 @@
+-- Tables of the estate agents, persons, estates and contracts
+create sequence estate_seq start with 1 increment by 50;
+create sequence contract_seq start with 1 increment by 50;
+create sequence estateagent_seq start with 1 increment by 50;
+create sequence person_seq start with 1 increment by 50;
+
+create table estateagent (id integer not null, name varchar(255), address varchar(255), login varchar(255), password varchar(255), primary key (id));
+create table person (id integer not null, firstname varchar(255), name varchar(255), address varchar(255), primary key (id));
+
+create table house (id integer not null, city varchar(255), postalcode integer, street varchar(255), streetnumber varchar(255), squareArea integer, manager integer not null, floors integer, price integer, garden boolean, primary key (id));
+create table apartment (id integer not null, city varchar(255), postalcode integer, street varchar(255), streetnumber varchar(255), squareArea integer, manager integer not null, floor integer, rent integer, rooms integer, balcony boolean, kitchen boolean, primary key (id));
+
+create table purchasecontract (id integer not null, contractNo integer, date date, place varchar(255), contractPartner integer not null, noOfInstallments integer, intrestRate integer, house_id integer not null unique, primary key (id));
+create table tenancycontract (id integer not null, contractNo integer, date date, place varchar(255), contractPartner integer not null, startDate date, duration integer, additionalCosts integer, apartment_id integer not null unique, primary key (id));
+
+alter table house add constraint fk_house_manager foreign key (manager) references estateagent;
+alter table apartment add constraint fk_apartment_manager foreign key (manager) references estateagent;
+alter table purchasecontract add constraint fk_purchasecontract_partner foreign key (contractPartner) references person;
+alter table purchasecontract add constraint fk_purchasecontract_house foreign key (house_id) references house;
+alter table tenancycontract add constraint fk_tenancycontract_partner foreign key (contractPartner) references person;
+alter table tenancycontract add constraint fk_tenancycontract_apartment foreign key (apartment_id) references apartment;
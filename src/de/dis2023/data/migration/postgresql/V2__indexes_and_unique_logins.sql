@@ -0,0 +1,10 @@
+-- Logins are unique, the login looks up the agent by the index
+create unique index if not exists uk_estateagent_login on estateagent (login);
+
+-- The estates of an agent are read per table in id order (keyset pages)
+create index if not exists idx_house_manager on house (manager, id);
+create index if not exists idx_apartment_manager on apartment (manager, id);
+
+-- Contracts of a person, house_id and apartment_id are indexed by their unique constraints
+create index if not exists idx_purchasecontract_partner on purchasecontract (contractPartner);
+create index if not exists idx_tenancycontract_partner on tenancycontract (contractPartner);
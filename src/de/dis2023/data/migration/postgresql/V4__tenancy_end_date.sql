@@ -0,0 +1,8 @@
+-- End date of the tenancy contracts (start date plus duration in months), maintained by TenancyContract
+alter table tenancycontract add column if not exists endDate date;
+update tenancycontract set endDate = cast(startDate + duration * interval '1' month as date) where startDate is not null and duration > 0;
+create index if not exists idx_tenancycontract_enddate on tenancycontract (endDate, id);
+
+-- Runs of the TenancyExpiryScheduler, the last run holds the position of the next one
+create sequence if not exists expiry_run_seq start with 1 increment by 1;
+create table if not exists expiry_run (id integer not null, started timestamp not null, finished timestamp, window_end date not null, processed integer not null, batches integer not null, last_end_date date, last_contract_id integer not null, error varchar(1000), primary key (id));
@@ -0,0 +1,7 @@
+-- Version columns for optimistic locking, existing rows start with version 0
+alter table estateagent add column if not exists version integer default 0 not null;
+alter table person add column if not exists version integer default 0 not null;
+alter table house add column if not exists version integer default 0 not null;
+alter table apartment add column if not exists version integer default 0 not null;
+alter table purchasecontract add column if not exists version integer default 0 not null;
+alter table tenancycontract add column if not exists version integer default 0 not null;
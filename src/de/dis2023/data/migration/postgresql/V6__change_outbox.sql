@@ -0,0 +1,6 @@
+-- Outbox of the entity changes, read by the ChangeRelay in the order of the ids
+create sequence if not exists change_outbox_seq start with 1 increment by 1;
+create table if not exists change_outbox (id bigint not null, entity_type varchar(40) not null, entity_id integer not null, version integer not null, operation varchar(6) not null, changed_fields varchar(1000), recorded timestamp not null, primary key (id));
+
+-- Read position of every consumer
+create table if not exists change_offset (consumer varchar(100) not null, last_id bigint not null, updated timestamp not null, primary key (consumer));
@@ -2,14 +2,13 @@ package de.dis2023.editor;
 
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
-import de.dis2023.core.EstateService;
-import de.dis2023.data.House;
+import de.dis2023.authentication.AgentPrincipal;
+import de.dis2023.core.EstateRepository;
 import de.dis2023.data.PurchaseContract;
 import de.dis2023.data.EstateAgent;
 import de.dis2023.data.TenancyContract;
-import de.dis2023.data.Person;
-import de.dis2023.data.Apartment;
 import de.dis2023.menu.AppartmentSelectionMenu;
 import de.dis2023.menu.HouseSelectionMenu;
 import de.dis2023.menu.Menu;
@@ -22,14 +21,18 @@ import de.dis2023.util.Helper;
  */
 public class ContractEditor {
 	//Estate service to be used
-	private EstateService service;
+	private EstateRepository service;
 	
 	//Estate agents who manage estates for which contracts may be concluded.
 	private EstateAgent manager;
 	
-	public ContractEditor(EstateService service, EstateAgent manager) {
+	/**
+	 * @param service Estate service to be used
+	 * @param principal The logged in agent
+	 */
+	public ContractEditor(EstateRepository service, AgentPrincipal principal) {
 		this.service = service;
-		this.manager = manager;
+		this.manager = principal.toEstateAgent();
 	}
 	
 	/**
@@ -71,9 +74,13 @@ public class ContractEditor {
 	}
 	
 	public void showContracts() {
+		//Both lists are loaded at the same time
+		CompletableFuture<Set<TenancyContract>> tenancyContracts = service.async().getAllTenancyContractsForEstateAgent(manager);
+		CompletableFuture<Set<PurchaseContract>> purchaseContracts = service.async().getAllPurchaseContractsForEstateAgent(manager);
+		
 		//Show tenancy contracts
 		System.out.println("Tenancy contracts\n-----------------");
-		Set<TenancyContract> mvs = service.getAllTenancyContractsForEstateAgent(manager);
+		Set<TenancyContract> mvs = tenancyContracts.join();
 		Iterator<TenancyContract> itmv = mvs.iterator();
 		while(itmv.hasNext()) {
 			TenancyContract mv = itmv.next();
@@ -82,7 +89,8 @@ public class ContractEditor {
 							"\tTenant :  "+mv.getContractPartner().getFirstname()+" "+mv.getContractPartner().getName()+"\n"+
 							"\tApartment:"+mv.getApartment().getStreet()+" "+mv.getApartment().getStreetnumber()+", "+mv.getApartment().getPostalcode()+" "+mv.getApartment().getCity()+"\n"+
 							"\tPrice:    "+mv.getApartment().getRent()+" Euro, additional costs : "+mv.getAdditionalCosts()+" Euro\n" +
-							"\tStart date: "+Helper.dateToString(mv.getStartDate())+", duration: "+mv.getDuration()+" months\n");
+							"\tStart date: "+Helper.dateToString(mv.getStartDate())+", duration: "+mv.getDuration()+" months"+
+							(mv.getEndDate() == null ? "" : ", ends on "+Helper.dateToString(mv.getEndDate()))+"\n");
 							
 		}
 		
@@ -90,7 +98,7 @@ public class ContractEditor {
 		
 		//Show purchase contracts
 		System.out.println("Purchase contracts\n-----------------");
-		Set<PurchaseContract> kvs = service.getAllPurchaseContractsForEstateAgent(manager);
+		Set<PurchaseContract> kvs = purchaseContracts.join();
 		Iterator<PurchaseContract> itkv = kvs.iterator();
 		while(itkv.hasNext()) {
 			PurchaseContract kv = itkv.next();
@@ -108,28 +116,20 @@ public class ContractEditor {
 	 * Menu for creating a new tenancy contract
 	 */
 	public void newTenancyContract() {
-		//Find all the estate agent's apartments
-		Set<Apartment> apartments = service.getAllApartmentsForEstateAgent(manager);
-		
-		//Selection menu for the apartments  
-		AppartmentSelectionMenu asm = new AppartmentSelectionMenu("Select apartment for contract", apartments);
+		//Selection menu for the estate agent's apartments
+		AppartmentSelectionMenu asm = new AppartmentSelectionMenu("Select apartment for contract", service, manager);
 		int wid = asm.show();
 		
 		//If no abort: Selection of the person
 		if(wid != AppartmentSelectionMenu.BACK) {
-			//Load all persons
-			Set<Person> personen = service.getAllPersons();
-			
-			//Menu to select the person
-			PersonSelectionMenu psm = new PersonSelectionMenu("Select person for contract", personen);
+			//Menu to select the person, loads the persons page by page
+			PersonSelectionMenu psm = new PersonSelectionMenu("Select person for contract", service);
 			int pid = psm.show();
 			
 			//If no abort: Request contract data and create contract
 			if(pid != PersonSelectionMenu.BACK) {
 				TenancyContract m = new TenancyContract();
 		
-				m.setApartment(service.getApartmentByID(wid));
-				m.setContractPartner(service.getPersonById(pid));
 				m.setContractNo(FormUtil.readInt("Contract No"));
 				m.setDate(FormUtil.readDate("Date (dd.MM.yyyy)"));
 				m.setPlace(FormUtil.readString("City"));
@@ -137,9 +137,23 @@ public class ContractEditor {
 				m.setDuration(FormUtil.readInt("Duration in months"));
 				m.setAdditionalCosts(FormUtil.readInt("Additional Costs"));
 				
-				service.addTenancyContract(m);
+				//Load apartment and tenant and save the contract in one transaction
+				String missing = service.inTransaction(() -> {
+					m.setApartment(service.getApartmentByID(wid));
+					m.setContractPartner(service.getPersonById(pid));
+					if(m.getApartment() == null)
+						return "apartment";
+					if(m.getContractPartner() == null)
+						return "tenant";
+					service.addTenancyContract(m);
+					return null;
+				});
+				if(missing != null) {
+					FormUtil.showMessage("The "+missing+" was deleted by another user.");
+					return;
+				}
 				
-				System.out.println("Tenancy contract with the ID \"+k.getId()+\" was created");
+				System.out.println("Tenancy contract with the ID "+m.getId()+" was created");
 			}
 		}
 	}
@@ -148,35 +162,41 @@ public class ContractEditor {
 	 * Menu for creating a new purchase contract
 	 */
 	public void newPurchaseContract() {
-		//Find all the estate agent's houses
-		Set<House> houses = service.getAllHousesForEstateAgent(manager);
-		
-		//Selection menu for the House
-		HouseSelectionMenu asm = new HouseSelectionMenu("Select house for contract.", houses);
+		//Selection menu for the estate agent's houses
+		HouseSelectionMenu asm = new HouseSelectionMenu("Select house for contract.", service, manager);
 		int hid = asm.show();
 		
 		//If no abort: Selection of the person
 		if(hid != AppartmentSelectionMenu.BACK) {
-			//Load all persons
-			Set<Person> personen = service.getAllPersons();
-			
-			//Menu to select the person
-			PersonSelectionMenu psm = new PersonSelectionMenu("Select person for contract", personen);
+			//Menu to select the person, loads the persons page by page
+			PersonSelectionMenu psm = new PersonSelectionMenu("Select person for contract", service);
 			int pid = psm.show();
 			
 			//If no abort: Request contract data and create contract
 			if(pid != PersonSelectionMenu.BACK) {
 				PurchaseContract k = new PurchaseContract();
 		
-				k.setHouse(service.getHouseById(hid));
-				k.setContractPartner(service.getPersonById(pid));
 				k.setContractNo(FormUtil.readInt("Contract No"));
 				k.setDate(FormUtil.readDate("Date (dd.MM.yyyy)"));
 				k.setPlace(FormUtil.readString("City"));
 				k.setNoOfInstallments(FormUtil.readInt("No Of Installments"));
 				k.setIntrestRate(FormUtil.readInt("Intrest Rate"));
 				
-				service.addPurchaseContract(k);
+				//Load house and buyer and save the contract in one transaction
+				String missing = service.inTransaction(() -> {
+					k.setHouse(service.getHouseById(hid));
+					k.setContractPartner(service.getPersonById(pid));
+					if(k.getHouse() == null)
+						return "house";
+					if(k.getContractPartner() == null)
+						return "buyer";
+					service.addPurchaseContract(k);
+					return null;
+				});
+				if(missing != null) {
+					FormUtil.showMessage("The "+missing+" was deleted by another user.");
+					return;
+				}
 				
 				System.out.println("Purchase contract with the ID "+k.getId()+" was created.");
 			}
@@ -1,6 +1,9 @@
 package de.dis2023.editor;
 
-import de.dis2023.core.EstateService;
+import java.util.Set;
+
+import de.dis2023.core.EditConflictException;
+import de.dis2023.core.EstateRepository;
 import de.dis2023.data.EstateAgent;
 import de.dis2023.menu.EstateAgentSelectionMenu;
 import de.dis2023.menu.Menu;
@@ -11,9 +14,9 @@ import de.dis2023.util.FormUtil;
  */
 public class EstateAgentEditor {
 	///Estate service, to be used
-	private EstateService service;
+	private EstateRepository service;
 	
-	public EstateAgentEditor(EstateService service) {
+	public EstateAgentEditor(EstateRepository service) {
 		this.service = service;
 	}
 	
@@ -80,43 +83,71 @@ public class EstateAgentEditor {
 		
 		//If not selected "back", edit estate agent
 		if(id != EstateAgentSelectionMenu.BACK) {
-			//Load estate agent
-			EstateAgent m = service.getEstateAgentByID(id);
-			System.out.println("Estate agent "+m.getName()+"  is being edited. Empty fields remain unchanged.");
-			
-			//Get the new data
-			String new_name = FormUtil.readString("Name ("+m.getName()+")");
-			String new_address = FormUtil.readString("Addresss ("+m.getAddress()+")");
-			String new_login = FormUtil.readString("Login ("+m.getLogin()+")");
-			String new_password = FormUtil.readString("Password ("+m.getPassword()+")");
-			
-			//Set new data
-			if(!new_name.equals(""))
-				m.setName(new_name);
-			if(!new_address.equals(""))
-				m.setAddress(new_address);
-			if(!new_login.equals(""))
-				m.setLogin(new_login);
-			if(!new_password.equals(""))
-				m.setPassword(new_password);
+			editEstateAgent(id);
+		}
+	}
+	
+	/**
+	 * Edits the estate agent with the given id, again with the current data if
+	 * another user changed it meanwhile
+	 */
+	private void editEstateAgent(int id) {
+		//Load estate agent
+		EstateAgent m = service.getEstateAgentByID(id);
+		if(m == null) {
+			FormUtil.showMessage("The estate agent was deleted by another user.");
+			return;
+		}
+		System.out.println("Estate agent "+m.getName()+"  is being edited. Empty fields remain unchanged.");
+		
+		//Get the new data
+		String new_name = FormUtil.readString("Name ("+m.getName()+")");
+		String new_address = FormUtil.readString("Addresss ("+m.getAddress()+")");
+		String new_login = FormUtil.readString("Login ("+m.getLogin()+")");
+		String new_password = FormUtil.readString("Password ("+m.getPassword()+")");
+		
+		//Set new data
+		if(!new_name.equals(""))
+			m.setName(new_name);
+		if(!new_address.equals(""))
+			m.setAddress(new_address);
+		if(!new_login.equals(""))
+			m.setLogin(new_login);
+		if(!new_password.equals(""))
+			m.setPassword(new_password);
 
-			// Update the detached object in hibernate
+		// Update the detached object in hibernate
+		try {
 			service.updateInstance(m);
+		} catch(EditConflictException e) {
+			//Nothing was saved, the changes are entered again on the current data
+			FormUtil.showMessage(e.getMessage()+", please enter your changes again.");
+			editEstateAgent(id);
 		}
 	}
 	
 	/**
-	 *  Deletes an estate agent after the user has selected it.
+	 *  Deletes an estate agent after the user has selected it. The estates 
+	 *  and their contracts are handed over to another agent or deleted.
 	 */
 	public void deleteEstateAgent() {
 		//Menu for selecting the estate agent
-		Menu maklerSelectionMenu = new EstateAgentSelectionMenu("Delete estate agent", service.getAllEstateAgents());
+		Set<EstateAgent> agents = service.getAllEstateAgents();
+		Menu maklerSelectionMenu = new EstateAgentSelectionMenu("Delete estate agent", agents);
 		int id = maklerSelectionMenu.show();
 		
 		//If not selected "back", delete estate agent
 		if(id != EstateAgentSelectionMenu.BACK) {
 			EstateAgent m = service.getEstateAgentByID(id);
-			service.deleteEstateAgent(m);
+			EstateAgent successor = null;
+			if(FormUtil.readBoolean("Hand over the estates to another agent")) {
+				agents.removeIf(a -> a.getId() == id);
+				int successorId = new EstateAgentSelectionMenu("Hand over the estates to", agents).show();
+				if(successorId == EstateAgentSelectionMenu.BACK)
+					return;
+				successor = service.getEstateAgentByID(successorId);
+			}
+			FormUtil.showMessage(service.deleteEstateAgent(m, successor).toString());
 		}
 	}
 }
@@ -1,8 +1,8 @@
 package de.dis2023.editor;
 
-import java.util.Set;
-
-import de.dis2023.core.EstateService;
+import de.dis2023.authentication.AgentPrincipal;
+import de.dis2023.core.EditConflictException;
+import de.dis2023.core.EstateRepository;
 import de.dis2023.data.House;
 import de.dis2023.data.EstateAgent;
 import de.dis2023.data.Apartment;
@@ -16,14 +16,18 @@ import de.dis2023.util.FormUtil;
  */
 public class EstateEditor {
 	//Estate service to be used
-	private EstateService service;
+	private EstateRepository service;
 	
 	///Will be registered as manager for the estates
 	private EstateAgent manager;
 	
-	public EstateEditor(EstateService service, EstateAgent manager) {
+	/**
+	 * @param service Estate service to be used
+	 * @param principal The logged in agent
+	 */
+	public EstateEditor(EstateRepository service, AgentPrincipal principal) {
 		this.service = service;
-		this.manager = manager;
+		this.manager = principal.toEstateAgent();
 	}
 	
 	/**
@@ -103,55 +107,70 @@ public class EstateEditor {
 	 * Edits a house after the user has selected it
 	 */
 	public void editHouse() {
-		//Search all houses managed by the estate agent
-		Set<House> haeuser = service.getAllHousesForEstateAgent(manager);
-		
-		//Selection menu for the house to be edited
-		HouseSelectionMenu hsm = new HouseSelectionMenu("List of managed houses", haeuser);
+		//Selection menu for the house, pages through the houses managed by the estate agent
+		HouseSelectionMenu hsm = new HouseSelectionMenu("List of managed houses", service, manager);
 		int id = hsm.show();
 		
 		//If the entry "back" was not selected, edit house
 		if(id != HouseSelectionMenu.BACK) {
-			//Load selected house
-			House h = service.getHouseById(id);
-			
-			System.out.println("House "+h.getStreet()+" "+h.getStreetnumber()+", "+h.getPostalcode()+" "+h.getCity()+
-					" is being edited. Empty fields or input of 0 leaves field unchanged");
-			
-			//Retrieve new data
-			String newCity = FormUtil.readString("City ("+h.getCity()+")");
-			int newPostalcode = FormUtil.readInt("Postalcode ("+h.getPostalcode()+")");
-			String newStreet = FormUtil.readString("Street ("+h.getStreet()+")");
-			String newHouseNummer = FormUtil.readString("Streetnumber ("+h.getStreetnumber()+")");
-			int newSquareArea = FormUtil.readInt("SquareArea ("+h.getSquareArea()+")");
-			int newFloors = FormUtil.readInt("Floors ("+h.getFloors()+")");
-			int newPrice = FormUtil.readInt("Price ("+h.getPrice()+")");
-			boolean newGarden = FormUtil.readBoolean("Garden ("+(h.isGarden() ? "y" : "n")+")");
-			
-			//Neue Daten setzen
-			if(!newCity.equals(""))
-				h.setCity(newCity);
-			
-			if(!newStreet.equals(""))
-				h.setStreet(newStreet);
-			
-			if(!newHouseNummer.equals(""))
-				h.setStreetnumber(newHouseNummer);
-			
-			if(newPostalcode != 0)
-				h.setPostalcode(newPostalcode);
-			
-			if(newSquareArea != 0)
-				h.setSquareArea(newSquareArea);
-			
-			if(newFloors != 0)
-				h.setFloors(newFloors);
-			
-			if(newPrice != 0)
-				h.setPrice(newPrice);
-			
-			h.setGarden(newGarden);
+			editHouse(id);
+		}
+	}
+	
+	/**
+	 * Edits the house with the given id, again with the current data if
+	 * another user changed it meanwhile
+	 */
+	private void editHouse(int id) {
+		//Load selected house
+		House h = service.getHouseById(id);
+		if(h == null) {
+			FormUtil.showMessage("The house was deleted by another user.");
+			return;
+		}
+		
+		System.out.println("House "+h.getStreet()+" "+h.getStreetnumber()+", "+h.getPostalcode()+" "+h.getCity()+
+				" is being edited. Empty fields or input of 0 leaves field unchanged");
+		
+		//Retrieve new data
+		String newCity = FormUtil.readString("City ("+h.getCity()+")");
+		int newPostalcode = FormUtil.readInt("Postalcode ("+h.getPostalcode()+")");
+		String newStreet = FormUtil.readString("Street ("+h.getStreet()+")");
+		String newHouseNummer = FormUtil.readString("Streetnumber ("+h.getStreetnumber()+")");
+		int newSquareArea = FormUtil.readInt("SquareArea ("+h.getSquareArea()+")");
+		int newFloors = FormUtil.readInt("Floors ("+h.getFloors()+")");
+		int newPrice = FormUtil.readInt("Price ("+h.getPrice()+")");
+		boolean newGarden = FormUtil.readBoolean("Garden ("+(h.isGarden() ? "y" : "n")+")");
+		
+		//Neue Daten setzen
+		if(!newCity.equals(""))
+			h.setCity(newCity);
+		
+		if(!newStreet.equals(""))
+			h.setStreet(newStreet);
+		
+		if(!newHouseNummer.equals(""))
+			h.setStreetnumber(newHouseNummer);
+		
+		if(newPostalcode != 0)
+			h.setPostalcode(newPostalcode);
+		
+		if(newSquareArea != 0)
+			h.setSquareArea(newSquareArea);
+		
+		if(newFloors != 0)
+			h.setFloors(newFloors);
+		
+		if(newPrice != 0)
+			h.setPrice(newPrice);
+		
+		h.setGarden(newGarden);
+		try {
 			service.updateInstance(h);
+		} catch(EditConflictException e) {
+			//Nothing was saved, the changes are entered again on the current data
+			FormUtil.showMessage(e.getMessage()+", please enter your changes again.");
+			editHouse(id);
 		}
 	}
 	
@@ -160,17 +179,18 @@ public class EstateEditor {
 	 * house after selection
 	 */
 	public void deleteHouse() {
-		//Search all houses managed by the estate agent
-		Set<House> haeuser = service.getAllHousesForEstateAgent(manager);
-		
-		//Selection menu for the house to be edited
-		HouseSelectionMenu hsm = new HouseSelectionMenu("List of managed houses", haeuser);
+		//Selection menu for the house, pages through the houses managed by the estate agent
+		HouseSelectionMenu hsm = new HouseSelectionMenu("List of managed houses", service, manager);
 		int id = hsm.show();
 		
 		//If the entry "back" was not selected, delete House
 		if(id != HouseSelectionMenu.BACK) {
 			House h = service.getHouseById(id);
-			service.deleteHouse(h);
+			try {
+				service.deleteHouse(h);
+			} catch(EditConflictException e) {
+				FormUtil.showMessage(e.getMessage()+", it was not deleted.");
+			}
 		}
 	}
 	
@@ -198,11 +218,8 @@ public class EstateEditor {
 	 * Edits an appartment after the user has selected it
 	 */
 	public void editApartment() {
-		//Search all apartments managed by the estate agent
-		Set<Apartment> apartmenten = service.getAllApartmentsForEstateAgent(manager);
-		
-		//Selection menu for the apartment to be edited
-		AppartmentSelectionMenu asm = new AppartmentSelectionMenu("List of managed apartments", apartmenten);
+		//Selection menu for the apartment, pages through the apartments managed by the estate agent
+		AppartmentSelectionMenu asm = new AppartmentSelectionMenu("List of managed apartments", service, manager);
 		int id = asm.show();
 		
 		//If the entry "back" was not selected, edit apartment
@@ -256,17 +273,18 @@ public class EstateEditor {
 	 * corresponding apartment after selection.
 	 */
 	public void deleteApartment() {
-		//Search all apartments managed by the estate agent
-		Set<Apartment> apartments = service.getAllApartmentsForEstateAgent(manager);
-		
-		//Selection menu for the apartment to be edited
-		AppartmentSelectionMenu asm = new AppartmentSelectionMenu("List of managed apartments", apartments);
+		//Selection menu for the apartment, pages through the apartments managed by the estate agent
+		AppartmentSelectionMenu asm = new AppartmentSelectionMenu("List of managed apartments", service, manager);
 		int id = asm.show();
 		
 		//If the entry "back" was not selected, delete apartment
 		if(id != HouseSelectionMenu.BACK) {
 			Apartment w = service.getApartmentByID(id);
-			service.deleteApartment(w);
+			try {
+				service.deleteApartment(w);
+			} catch(EditConflictException e) {
+				FormUtil.showMessage(e.getMessage()+", it was not deleted.");
+			}
 		}
 	}
 }
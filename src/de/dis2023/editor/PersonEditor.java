@@ -1,6 +1,7 @@
 package de.dis2023.editor;
 
-import de.dis2023.core.EstateService;
+import de.dis2023.core.EditConflictException;
+import de.dis2023.core.EstateRepository;
 import de.dis2023.data.Person;
 import de.dis2023.menu.Menu;
 import de.dis2023.menu.PersonSelectionMenu;
@@ -11,9 +12,9 @@ import de.dis2023.util.FormUtil;
  */
 public class PersonEditor {
 	//Estate service to be used
-	private EstateService service;
+	private EstateRepository service;
 	
-	public PersonEditor(EstateService service) {
+	public PersonEditor(EstateRepository service) {
 		this.service = service;
 	}
 	
@@ -74,30 +75,48 @@ public class PersonEditor {
 	 */
 	public void editPerson() {
 		//Person selection menu
-		Menu personSelectionMenu = new PersonSelectionMenu("Edit Person", service.getAllPersons());
+		Menu personSelectionMenu = new PersonSelectionMenu("Edit Person", service);
 		int id = personSelectionMenu.show();
 		
 		//Edit person?
 		if(id != PersonSelectionMenu.BACK) {
-			//Load person
-			Person p = service.getPersonById(id);
-			System.out.println(p.getFirstname()+" "+p.getName()+" is being edited. Empty fields remain unchanged.");
-			
-			//Reading in new data
-			String newFirstname = FormUtil.readString("Firstname ("+p.getFirstname()+")");
-			String newName = FormUtil.readString("Name ("+p.getName()+")");
-			String newAddresss = FormUtil.readString("Address ("+p.getAddress()+")");
-			
-			//Set new data
-			if(!newFirstname.equals(""))
-				p.setFirstname(newFirstname);
-			if(!newName.equals(""))
-				p.setName(newName);
-			if(!newAddresss.equals(""))
-				p.setAddress(newAddresss);
+			editPerson(id);
+		}
+	}
+	
+	/**
+	 * Edits the person with the given id, again with the current data if
+	 * another user changed it meanwhile
+	 */
+	private void editPerson(int id) {
+		//Load person
+		Person p = service.getPersonById(id);
+		if(p == null) {
+			FormUtil.showMessage("The person was deleted by another user.");
+			return;
+		}
+		System.out.println(p.getFirstname()+" "+p.getName()+" is being edited. Empty fields remain unchanged.");
+		
+		//Reading in new data
+		String newFirstname = FormUtil.readString("Firstname ("+p.getFirstname()+")");
+		String newName = FormUtil.readString("Name ("+p.getName()+")");
+		String newAddresss = FormUtil.readString("Address ("+p.getAddress()+")");
+		
+		//Set new data
+		if(!newFirstname.equals(""))
+			p.setFirstname(newFirstname);
+		if(!newName.equals(""))
+			p.setName(newName);
+		if(!newAddresss.equals(""))
+			p.setAddress(newAddresss);
 
-			//update instance
+		//update instance
+		try {
 			service.updateInstance(p);
+		} catch(EditConflictException e) {
+			//Nothing was saved, the changes are entered again on the current data
+			FormUtil.showMessage(e.getMessage()+", please enter your changes again.");
+			editPerson(id);
 		}
 	}
 	
@@ -107,13 +126,17 @@ public class PersonEditor {
 	 */
 	public void deletePerson() {
 		//Selection of the person
-		Menu personSelectionMenu = new PersonSelectionMenu("Delete Person", service.getAllPersons());
+		Menu personSelectionMenu = new PersonSelectionMenu("Delete Person", service);
 		int id = personSelectionMenu.show();
 		
 		//Delete, if "back" has not been selected
 		if(id != PersonSelectionMenu.BACK) {
 			Person p = service.getPersonById(id);
-			service.deletePerson(p);
+			try {
+				service.deletePerson(p);
+			} catch(EditConflictException e) {
+				FormUtil.showMessage(e.getMessage()+", it was not deleted.");
+			}
 		}
 	}
 }
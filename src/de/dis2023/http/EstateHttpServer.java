@@ -0,0 +1,682 @@
+package de.dis2023.http;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.dis2023.authentication.AgentPrincipal;
+import de.dis2023.authentication.EstateAgentAuthenticator;
+import de.dis2023.core.EditConflictException;
+import de.dis2023.core.EstateRepository;
+import de.dis2023.core.IntegrityViolationException;
+import de.dis2023.core.Page;
+import de.dis2023.data.Apartment;
+import de.dis2023.data.Contract;
+import de.dis2023.data.Estate;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+import de.dis2023.util.RecordReader;
+import de.dis2023.util.TaskExecutors;
+
+/**
+ * HTTP interface of an EstateRepository for many clients at the same time,
+ * e.g. a web frontend. On JDK 21 or newer every request runs on its own
+ * virtual thread, a request waiting for the database does not block a
+ * platform thread.
+ * Connections are kept open between the requests of a client (HTTP/1.1).
+ *
+ * Clients log in with POST /login {"login": ..., "password": ...} and send
+ * the returned token as "Authorization: Bearer &lt;token&gt;" with all other
+ * requests. Estates and their contracts can only be changed by their
+ * manager, agents can only change their own account.
+ *
+ *   GET    /agents, /persons
+ *   GET    /agents/{id}/houses, /agents/{id}/apartments
+ *   GET    /agents/{id}/tenancy-contracts, /agents/{id}/purchase-contracts
+ *   POST   /{collection}
+ *   GET, PUT, DELETE /{collection}/{id}
+ * with the collections agents, persons, houses, apartments, tenancy-contracts
+ * and purchase-contracts.
+ *
+ * Bodies are flat JSON objects with the fields of the responses, references
+ * are given by id ("partner", "apartment", "house"). PUT changes only the
+ * given fields; if "version" is given and the object has changed since that
+ * version, nothing is changed and the status is 409. Every request runs in
+ * one session and transaction, except the lists of persons and estates:
+ * they are read and written page by page, so they may be longer than fits
+ * into memory, and can be paged with ?after=&lt;id&gt;&amp;limit=&lt;n&gt;.
+ */
+public class EstateHttpServer {
+	//Rows per page of the streamed lists
+	private static final int PAGE_SIZE = 500;
+
+	private EstateRepository service;
+	private EstateAgentAuthenticator authenticator;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	static {
+		//Read once by the JDK server. With Nagle's algorithm the body of a response waits
+		//for the delayed ACK of the headers, about 40 ms per request on a kept-alive connection.
+		if(System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	//Writes one element of a list
+	private interface Format<T> {
+		void write(JsonWriter json, T item) throws IOException;
+	}
+
+	//Ends a request with a status code and an error message
+	private static class HttpError extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private int status;
+
+		HttpError(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Creates the server, it accepts requests after {@link #start()}
+	 * @param service The service the requests are executed with
+	 * @param address Address and port to listen on, port 0 for any free port
+	 */
+	public EstateHttpServer(EstateRepository service, InetSocketAddress address) throws IOException {
+		this.service = service;
+		this.authenticator = new EstateAgentAuthenticator(service);
+		server = HttpServer.create(address, 0);
+		server.createContext("/", this::handle);
+	}
+
+	public void start() {
+		executor = TaskExecutors.newTaskExecutor("estate-http");
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests
+	 * @param delaySeconds Maximum time to wait for the running requests
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		if(executor != null)
+			executor.shutdown();
+	}
+
+	/**
+	 * Returns the port the server listens on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			List<String> path = new ArrayList<String>();
+			for(String segment : exchange.getRequestURI().getPath().split("/")) {
+				if(!segment.isEmpty())
+					path.add(segment);
+			}
+
+			if(path.size() == 1 && path.get(0).equals("login")) {
+				login(exchange);
+				return;
+			}
+			AgentPrincipal principal = authenticator.getSessions().get(token(exchange));
+			if(principal == null)
+				throw new HttpError(401, "Log in with POST /login first");
+			route(exchange, path, principal);
+		} catch (HttpError e) {
+			error(exchange, e.status, e.getMessage());
+		} catch (EditConflictException e) {
+			error(exchange, 409, e.getMessage());
+		} catch (IllegalArgumentException e) {
+			error(exchange, 400, e.getMessage());
+		} catch (UncheckedIOException e) {
+			error(exchange, 400, "Invalid JSON: "+e.getCause().getMessage());
+		} catch (RuntimeException e) {
+			if(isConstraintViolation(e)) {
+				error(exchange, 409, "The change conflicts with other data, e.g. a duplicate login or existing contracts");
+			} else {
+				System.err.println(exchange.getRequestMethod()+" "+exchange.getRequestURI()+" failed: "+e);
+				error(exchange, 500, "Internal error");
+			}
+		} finally {
+			//Reads the rest of the request, so the connection can be used for the next one
+			exchange.close();
+		}
+	}
+
+	private void route(HttpExchange exchange, List<String> path, AgentPrincipal principal) throws IOException {
+		String method = exchange.getRequestMethod();
+		if(path.isEmpty())
+			throw new HttpError(404, "Not found");
+		String collection = path.get(0);
+		String operation = method+" /"+collection;
+
+		if(path.size() == 1) {
+			if(method.equals("POST")) {
+				Map<String, String> body = readBody(exchange);
+				Object created = service.inTransaction(operation, () -> create(collection, body, principal));
+				exchange.getResponseHeaders().set("Location", "/"+collection+"/"+id(created));
+				send(exchange, 201, created);
+			} else if(method.equals("GET") && collection.equals("agents")) {
+				stream(exchange, sorted(service.getAllEstateAgents(), EstateAgent::getId), EstateHttpServer::write);
+			} else if(method.equals("GET") && collection.equals("persons")) {
+				streamPages(exchange, service::getPersonPage, Person::getId, EstateHttpServer::write);
+			} else {
+				throw new HttpError(405, method+" is not supported for /"+collection);
+			}
+			return;
+		}
+
+		int id = parseId(path.get(1));
+		if(path.size() == 3 && collection.equals("agents") && method.equals("GET")) {
+			listOfAgent(exchange, id, path.get(2));
+			return;
+		}
+		if(path.size() != 2)
+			throw new HttpError(404, "Not found");
+
+		switch(method) {
+			case "GET":
+				send(exchange, 200, service.inTransaction(operation, () -> find(collection, id)));
+				break;
+			case "PUT":
+				Map<String, String> body = readBody(exchange);
+				send(exchange, 200, service.inTransaction(operation, () -> update(collection, id, body, principal)));
+				break;
+			case "DELETE":
+				service.inTransaction(operation, () -> delete(collection, id, principal));
+				exchange.sendResponseHeaders(204, -1);
+				break;
+			default:
+				throw new HttpError(405, method+" is not supported for /"+collection+"/{id}");
+		}
+	}
+
+	private void listOfAgent(HttpExchange exchange, int agentId, String list) throws IOException {
+		EstateAgent agent = new EstateAgent();
+		agent.setId(agentId);
+		switch(list) {
+			case "houses":
+				streamPages(exchange, (cursor, size) -> service.getHouseSummaryPage(agent, cursor, size),
+						EstateSummary::getId, EstateHttpServer::write);
+				break;
+			case "apartments":
+				streamPages(exchange, (cursor, size) -> service.getApartmentSummaryPage(agent, cursor, size),
+						EstateSummary::getId, EstateHttpServer::write);
+				break;
+			case "tenancy-contracts":
+				stream(exchange, sorted(service.getAllTenancyContractsForEstateAgent(agent), TenancyContract::getId),
+						EstateHttpServer::write);
+				break;
+			case "purchase-contracts":
+				stream(exchange, sorted(service.getAllPurchaseContractsForEstateAgent(agent), PurchaseContract::getId),
+						EstateHttpServer::write);
+				break;
+			default:
+				throw new HttpError(404, "Not found");
+		}
+	}
+
+	private void login(HttpExchange exchange) throws IOException {
+		if(!exchange.getRequestMethod().equals("POST"))
+			throw new HttpError(405, "Log in with POST");
+		Map<String, String> body = readBody(exchange);
+		String token = authenticator.login(body.get("login"), body.get("password"));
+		if(token == null)
+			throw new HttpError(401, "Wrong username or password");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(JsonWriter json = writer(bytes)) {
+			json.beginObject().field("token", token).field("agent", authenticator.getSessions().get(token).getId()).endObject();
+		}
+		send(exchange, 200, bytes.toByteArray());
+	}
+
+	private Object find(String collection, int id) {
+		Object ret;
+		switch(collection) {
+			case "agents": ret = service.getEstateAgentByID(id); break;
+			case "persons": ret = service.getPersonById(id); break;
+			case "houses": ret = service.getHouseById(id); break;
+			case "apartments": ret = service.getApartmentByID(id); break;
+			case "tenancy-contracts": ret = service.getTenancyContractByID(id); break;
+			case "purchase-contracts": ret = service.getPurchaseContractById(id); break;
+			default: throw new HttpError(404, "Not found");
+		}
+		if(ret == null)
+			throw new HttpError(404, "/"+collection+"/"+id+" does not exist");
+		return ret;
+	}
+
+	private Object create(String collection, Map<String, String> body, AgentPrincipal principal) {
+		switch(collection) {
+			case "agents":
+				required(body, "login");
+				EstateAgent agent = new EstateAgent();
+				apply(body, agent, principal);
+				service.addEstateAgent(agent);
+				return agent;
+			case "persons":
+				Person person = new Person();
+				apply(body, person, principal);
+				service.addPerson(person);
+				return person;
+			case "houses":
+				House house = new House();
+				house.setManager(principal.toEstateAgent());
+				apply(body, house, principal);
+				service.addHouse(house);
+				return house;
+			case "apartments":
+				Apartment apartment = new Apartment();
+				apartment.setManager(principal.toEstateAgent());
+				apply(body, apartment, principal);
+				service.addApartment(apartment);
+				return apartment;
+			case "tenancy-contracts":
+				required(body, "partner", "apartment", "date", "startdate");
+				TenancyContract tenancy = new TenancyContract();
+				apply(body, tenancy, principal);
+				service.addTenancyContract(tenancy);
+				return tenancy;
+			case "purchase-contracts":
+				required(body, "partner", "house", "date");
+				PurchaseContract purchase = new PurchaseContract();
+				apply(body, purchase, principal);
+				service.addPurchaseContract(purchase);
+				return purchase;
+			default:
+				throw new HttpError(404, "Not found");
+		}
+	}
+
+	private Object update(String collection, int id, Map<String, String> body, AgentPrincipal principal) {
+		Object entity = find(collection, id);
+		checkAllowed(entity, principal);
+		if(body.containsKey("version") && toInt(body, "version") != version(entity))
+			throw new EditConflictException(entity.getClass(), id, null);
+		apply(body, entity, principal);
+		service.updateInstance(entity);
+		return entity;
+	}
+
+	private void delete(String collection, int id, AgentPrincipal principal) {
+		Object entity = find(collection, id);
+		checkAllowed(entity, principal);
+		if(entity instanceof EstateAgent)
+			service.deleteEstateAgent((EstateAgent) entity);
+		else if(entity instanceof Person)
+			service.deletePerson((Person) entity);
+		else if(entity instanceof House)
+			service.deleteHouse((House) entity);
+		else if(entity instanceof Apartment)
+			service.deleteApartment((Apartment) entity);
+		else if(entity instanceof TenancyContract)
+			service.deleteTenancyContract((TenancyContract) entity);
+		else
+			service.deletePurchaseContract((PurchaseContract) entity);
+	}
+
+	/**
+	 * Checks that the agent may change an object: an agent only its own account,
+	 * estates and contracts only their manager
+	 */
+	private static void checkAllowed(Object entity, AgentPrincipal principal) {
+		if(entity instanceof EstateAgent && ((EstateAgent) entity).getId() != principal.getId())
+			throw new HttpError(403, "Agents can only change their own account");
+
+		Estate estate = null;
+		if(entity instanceof Estate)
+			estate = (Estate) entity;
+		else if(entity instanceof TenancyContract)
+			estate = ((TenancyContract) entity).getApartment();
+		else if(entity instanceof PurchaseContract)
+			estate = ((PurchaseContract) entity).getHouse();
+		if(estate != null && (estate.getManager() == null || estate.getManager().getId() != principal.getId()))
+			throw new HttpError(403, "Only the manager of the estate can change it");
+	}
+
+	/**
+	 * Sets the fields given in a request body, references are loaded and checked
+	 */
+	private void apply(Map<String, String> r, Object entity, AgentPrincipal principal) {
+		if(entity instanceof EstateAgent) {
+			EstateAgent a = (EstateAgent) entity;
+			text(r, "name", a::setName);
+			text(r, "address", a::setAddress);
+			text(r, "login", a::setLogin);
+			text(r, "password", a::setPassword);
+		} else if(entity instanceof Person) {
+			Person p = (Person) entity;
+			text(r, "firstname", p::setFirstname);
+			text(r, "name", p::setName);
+			text(r, "address", p::setAddress);
+		} else if(entity instanceof Estate) {
+			Estate e = (Estate) entity;
+			text(r, "city", e::setCity);
+			number(r, "postalcode", e::setPostalcode);
+			text(r, "street", e::setStreet);
+			text(r, "streetnumber", e::setStreetnumber);
+			number(r, "squarearea", e::setSquareArea);
+			if(e instanceof House) {
+				House h = (House) e;
+				number(r, "floors", h::setFloors);
+				number(r, "price", h::setPrice);
+				bool(r, "garden", h::setGarden);
+			} else {
+				Apartment w = (Apartment) e;
+				number(r, "floor", w::setFloor);
+				number(r, "rent", w::setRent);
+				number(r, "rooms", w::setRooms);
+				bool(r, "balcony", w::setBalcony);
+				bool(r, "kitchen", w::setKitchen);
+			}
+		} else if(entity instanceof Contract) {
+			Contract c = (Contract) entity;
+			number(r, "contractno", c::setContractNo);
+			date(r, "date", c::setDate);
+			text(r, "place", c::setPlace);
+			if(r.containsKey("partner"))
+				c.setContractPartner(reference(service.getPersonById(toInt(r, "partner")), "partner", r));
+			if(c instanceof TenancyContract) {
+				TenancyContract tc = (TenancyContract) c;
+				date(r, "startdate", tc::setStartDate);
+				number(r, "duration", tc::setDuration);
+				number(r, "additionalcosts", tc::setAdditionalCosts);
+				if(r.containsKey("apartment")) {
+					Apartment apartment = reference(service.getApartmentByID(toInt(r, "apartment")), "apartment", r);
+					checkAllowed(apartment, principal);
+					tc.setApartment(apartment);
+				}
+			} else {
+				PurchaseContract pc = (PurchaseContract) c;
+				number(r, "noofinstallments", pc::setNoOfInstallments);
+				number(r, "intrestrate", pc::setIntrestRate);
+				if(r.containsKey("house")) {
+					House house = reference(service.getHouseById(toInt(r, "house")), "house", r);
+					checkAllowed(house, principal);
+					pc.setHouse(house);
+				}
+			}
+		}
+	}
+
+	private static <T> T reference(T found, String field, Map<String, String> r) {
+		if(found == null)
+			throw new IllegalArgumentException("Unknown "+field+" "+r.get(field));
+		return found;
+	}
+
+	private static void required(Map<String, String> r, String... fields) {
+		for(String field : fields) {
+			if(r.get(field) == null || r.get(field).isEmpty())
+				throw new IllegalArgumentException("Missing field "+field);
+		}
+	}
+
+	private static void text(Map<String, String> r, String field, Consumer<String> setter) {
+		if(r.containsKey(field))
+			setter.accept(r.get(field));
+	}
+
+	private static void number(Map<String, String> r, String field, IntConsumer setter) {
+		if(r.containsKey(field))
+			setter.accept(toInt(r, field));
+	}
+
+	private static void bool(Map<String, String> r, String field, Consumer<Boolean> setter) {
+		if(r.containsKey(field))
+			setter.accept("true".equalsIgnoreCase(r.get(field)));
+	}
+
+	private static void date(Map<String, String> r, String field, Consumer<Date> setter) {
+		if(!r.containsKey(field))
+			return;
+		try {
+			setter.accept(new SimpleDateFormat("yyyy-MM-dd").parse(r.get(field)));
+		} catch (ParseException | NullPointerException e) {
+			throw new IllegalArgumentException("Field "+field+" is not a date (yyyy-MM-dd): "+r.get(field));
+		}
+	}
+
+	private static int toInt(Map<String, String> r, String field) {
+		try {
+			return Integer.parseInt(r.get(field).trim());
+		} catch (NumberFormatException | NullPointerException e) {
+			throw new IllegalArgumentException("Field "+field+" is not a number: "+r.get(field));
+		}
+	}
+
+	private static int parseId(String id) {
+		try {
+			return Integer.parseInt(id);
+		} catch (NumberFormatException e) {
+			throw new HttpError(404, "Not found");
+		}
+	}
+
+	private static int id(Object entity) {
+		if(entity instanceof EstateAgent)
+			return ((EstateAgent) entity).getId();
+		if(entity instanceof Person)
+			return ((Person) entity).getId();
+		if(entity instanceof Estate)
+			return ((Estate) entity).getId();
+		return ((Contract) entity).getId();
+	}
+
+	private static int version(Object entity) {
+		if(entity instanceof EstateAgent)
+			return ((EstateAgent) entity).getVersion();
+		if(entity instanceof Person)
+			return ((Person) entity).getVersion();
+		if(entity instanceof Estate)
+			return ((Estate) entity).getVersion();
+		return ((Contract) entity).getVersion();
+	}
+
+	/**
+	 * Writes an object, references are written as ids. The password of an agent is never written.
+	 */
+	private static void write(JsonWriter json, Object entity) throws IOException {
+		json.beginObject().field("id", id(entity)).field("version", version(entity));
+		if(entity instanceof EstateAgent) {
+			EstateAgent a = (EstateAgent) entity;
+			json.field("name", a.getName()).field("address", a.getAddress()).field("login", a.getLogin());
+		} else if(entity instanceof Person) {
+			Person p = (Person) entity;
+			json.field("firstname", p.getFirstname()).field("name", p.getName()).field("address", p.getAddress());
+		} else if(entity instanceof Estate) {
+			Estate e = (Estate) entity;
+			if(e.getManager() != null)
+				json.field("manager", e.getManager().getId());
+			json.field("city", e.getCity()).field("postalcode", e.getPostalcode()).field("street", e.getStreet())
+					.field("streetnumber", e.getStreetnumber()).field("squareArea", e.getSquareArea());
+			if(e instanceof House) {
+				House h = (House) e;
+				json.field("floors", h.getFloors()).field("price", h.getPrice()).field("garden", h.isGarden());
+			} else {
+				Apartment w = (Apartment) e;
+				json.field("floor", w.getFloor()).field("rent", w.getRent()).field("rooms", w.getRooms())
+						.field("balcony", w.isBalcony()).field("kitchen", w.isKitchen());
+			}
+		} else {
+			Contract c = (Contract) entity;
+			json.field("contractNo", c.getContractNo()).field("date", c.getDate()).field("place", c.getPlace())
+					.field("partner", c.getContractPartner().getId());
+			if(c instanceof TenancyContract) {
+				TenancyContract tc = (TenancyContract) c;
+				json.field("apartment", tc.getApartment().getId()).field("startDate", tc.getStartDate())
+						.field("duration", tc.getDuration()).field("endDate", tc.getEndDate())
+						.field("additionalCosts", tc.getAdditionalCosts());
+			} else {
+				PurchaseContract pc = (PurchaseContract) c;
+				json.field("house", pc.getHouse().getId()).field("noOfInstallments", pc.getNoOfInstallments())
+						.field("intrestRate", pc.getIntrestRate());
+			}
+		}
+		json.endObject();
+	}
+
+	private static void write(JsonWriter json, EstateSummary s) throws IOException {
+		json.beginObject().field("id", s.getId()).field("street", s.getStreet()).field("streetnumber", s.getStreetnumber())
+				.field("postalcode", s.getPostalcode()).field("city", s.getCity()).endObject();
+	}
+
+	private static void send(HttpExchange exchange, int status, Object entity) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(JsonWriter json = writer(bytes)) {
+			write(json, entity);
+		}
+		send(exchange, status, bytes.toByteArray());
+	}
+
+	private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		exchange.getResponseBody().write(body);
+	}
+
+	private static void error(HttpExchange exchange, int status, String message) throws IOException {
+		//A list that fails while it is written is cut off, the status was sent already
+		if(exchange.getResponseCode() != -1)
+			return;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(JsonWriter json = writer(bytes)) {
+			json.beginObject().field("error", message).endObject();
+		}
+		send(exchange, status, bytes.toByteArray());
+	}
+
+	//Starts a response of unknown length, sent in chunks while it is written
+	private static JsonWriter begin(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(200, 0);
+		return writer(exchange.getResponseBody());
+	}
+
+	private static JsonWriter writer(OutputStream out) {
+		return new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+	}
+
+	private static <T> List<T> sorted(Collection<T> items, ToIntFunction<T> id) {
+		List<T> ret = new ArrayList<T>(items);
+		ret.sort(Comparator.comparingInt(id));
+		return ret;
+	}
+
+	private static <T> void stream(HttpExchange exchange, List<T> items, Format<T> format) throws IOException {
+		try(JsonWriter json = begin(exchange)) {
+			json.beginArray();
+			for(T item : items)
+				format.write(json, item);
+			json.endArray();
+		}
+	}
+
+	/**
+	 * Writes a list that is read page by page, each page in its own transaction
+	 * @param pages Reads the page at a cursor with at most the given number of rows
+	 * @param key Returns the id the pages are ordered by
+	 */
+	private static <T> void streamPages(HttpExchange exchange, BiFunction<Page.Cursor, Integer, Page<T>> pages,
+			ToIntFunction<T> key, Format<T> format) throws IOException {
+		Map<String, String> query = query(exchange);
+		int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : Integer.MAX_VALUE;
+		if(limit < 1)
+			throw new IllegalArgumentException("The limit must be positive");
+		int last = query.containsKey("after") ? Integer.parseInt(query.get("after")) : Integer.MIN_VALUE;
+
+		//The first page is read before the status is sent, so its errors get a status code
+		Page<T> page = pages.apply(query.containsKey("after") ? Page.Cursor.after(last) : Page.Cursor.first(),
+				Math.min(limit, PAGE_SIZE));
+		int written = 0;
+		try(JsonWriter json = begin(exchange)) {
+			json.beginArray();
+			while(true) {
+				for(T item : page.getItems()) {
+					//Paging past the end returns the last page again
+					if(key.applyAsInt(item) <= last || written >= limit)
+						continue;
+					format.write(json, item);
+					last = key.applyAsInt(item);
+					written++;
+				}
+				if(!page.hasNext() || written >= limit)
+					break;
+				page = pages.apply(page.getNextCursor(), Math.min(limit - written, PAGE_SIZE));
+			}
+			json.endArray();
+		}
+	}
+
+	private static Map<String, String> query(HttpExchange exchange) {
+		Map<String, String> ret = new HashMap<String, String>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if(query == null)
+			return ret;
+		for(String parameter : query.split("&")) {
+			int eq = parameter.indexOf('=');
+			if(eq > 0)
+				ret.put(URLDecoder.decode(parameter.substring(0, eq), StandardCharsets.UTF_8),
+						URLDecoder.decode(parameter.substring(eq + 1), StandardCharsets.UTF_8));
+		}
+		return ret;
+	}
+
+	private static Map<String, String> readBody(HttpExchange exchange) {
+		RecordReader records = RecordReader.json(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+		if(!records.hasNext())
+			throw new HttpError(400, "The request needs a JSON object");
+		return records.next();
+	}
+
+	private static String token(HttpExchange exchange) {
+		String header = exchange.getRequestHeaders().getFirst("Authorization");
+		if(header == null || !header.startsWith("Bearer "))
+			return null;
+		return header.substring(7).trim();
+	}
+
+	private static boolean isConstraintViolation(Throwable e) {
+		for(Throwable t = e; t != null; t = t.getCause()) {
+			if(t instanceof org.hibernate.exception.ConstraintViolationException || t instanceof IntegrityViolationException)
+				return true;
+		}
+		return false;
+	}
+}
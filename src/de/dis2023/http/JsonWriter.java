@@ -0,0 +1,135 @@
+package de.dis2023.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Writes JSON to a stream while it is generated, so a long list is never
+ * held in memory as a whole. The caller is responsible for the nesting,
+ * the writer only inserts the commas.
+ */
+public class JsonWriter implements Closeable {
+	private Writer out;
+	//Whether the next value is the first one of its object or array, or follows a name
+	private boolean first = true;
+
+	public JsonWriter(Writer out) {
+		this.out = out;
+	}
+
+	public JsonWriter beginObject() throws IOException {
+		separator();
+		out.write('{');
+		first = true;
+		return this;
+	}
+
+	public JsonWriter endObject() throws IOException {
+		out.write('}');
+		first = false;
+		return this;
+	}
+
+	public JsonWriter beginArray() throws IOException {
+		separator();
+		out.write('[');
+		first = true;
+		return this;
+	}
+
+	public JsonWriter endArray() throws IOException {
+		out.write(']');
+		first = false;
+		return this;
+	}
+
+	/**
+	 * Writes the name of the next field of an object
+	 */
+	public JsonWriter name(String name) throws IOException {
+		separator();
+		string(name);
+		out.write(':');
+		first = true;
+		return this;
+	}
+
+	public JsonWriter value(String value) throws IOException {
+		separator();
+		if(value == null)
+			out.write("null");
+		else
+			string(value);
+		first = false;
+		return this;
+	}
+
+	public JsonWriter value(long value) throws IOException {
+		separator();
+		out.write(Long.toString(value));
+		first = false;
+		return this;
+	}
+
+	public JsonWriter value(boolean value) throws IOException {
+		separator();
+		out.write(value ? "true" : "false");
+		first = false;
+		return this;
+	}
+
+	/**
+	 * Writes a date as yyyy-MM-dd, the format the request bodies use
+	 */
+	public JsonWriter value(Date value) throws IOException {
+		return value(value == null ? null : new SimpleDateFormat("yyyy-MM-dd").format(value));
+	}
+
+	public JsonWriter field(String name, String value) throws IOException {
+		return name(name).value(value);
+	}
+
+	public JsonWriter field(String name, long value) throws IOException {
+		return name(name).value(value);
+	}
+
+	public JsonWriter field(String name, boolean value) throws IOException {
+		return name(name).value(value);
+	}
+
+	public JsonWriter field(String name, Date value) throws IOException {
+		return name(name).value(value);
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void separator() throws IOException {
+		if(!first)
+			out.write(',');
+	}
+
+	private void string(String value) throws IOException {
+		out.write('"');
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == '"' || c == '\\') {
+				out.write('\\');
+				out.write(c);
+			} else if(c < ' ') {
+				out.write(String.format("\\u%04x", (int) c));
+			} else {
+				out.write(c);
+			}
+		}
+		out.write('"');
+	}
+}
@@ -1,24 +1,34 @@
 package de.dis2023.menu;
 
-import java.util.Iterator;
-import java.util.Set;
-
-import de.dis2023.data.Apartment;
+import de.dis2023.core.EstateRepository;
+import de.dis2023.core.Page;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
 
 /**
- * A small menu showing all apartments from a set for selection
+ *  A small menu showing the apartments of an estate agent page by page for selection
  */
-public class AppartmentSelectionMenu extends Menu {
-	public static final int BACK = -1;
+public class AppartmentSelectionMenu extends PagedSelectionMenu<EstateSummary> {
+	private EstateRepository service;
+	private EstateAgent manager;
 	
-	public AppartmentSelectionMenu(String title, Set<Apartment> apartmenten) {
+	public AppartmentSelectionMenu(String title, EstateRepository service, EstateAgent manager) {
 		super(title);
-		
-		Iterator<Apartment> it = apartmenten.iterator();
-		while(it.hasNext()) {
-			Apartment w = it.next();
-			addEntry(w.getStreet()+" "+w.getStreetnumber()+", "+w.getPostalcode()+" "+w.getCity(), w.getId());
-		}
-		addEntry("Back", BACK);
+		this.service = service;
+		this.manager = manager;
+	}
+	
+	protected Page<EstateSummary> loadPage(String searchTerm, Page.Cursor cursor, int pageSize) {
+		if(searchTerm != null)
+			return service.searchApartments(manager, searchTerm, cursor, pageSize);
+		return service.getApartmentSummaryPage(manager, cursor, pageSize);
+	}
+	
+	protected String getLabel(EstateSummary w) {
+		return w.getStreet()+" "+w.getStreetnumber()+", "+w.getPostalcode()+" "+w.getCity();
+	}
+	
+	protected int getId(EstateSummary w) {
+		return w.getId();
 	}
 }
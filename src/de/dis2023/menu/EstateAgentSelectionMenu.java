@@ -8,7 +8,7 @@ import de.dis2023.data.EstateAgent;
 /**
  *  A small menu showing all estate agents from a set for selection
  */
-public class EstateAgentSelectionMenu extends Menu {
+public final class EstateAgentSelectionMenu extends Menu {
 	public static final int BACK = -1;
 	
 	public EstateAgentSelectionMenu(String title, Set<EstateAgent> makler) {
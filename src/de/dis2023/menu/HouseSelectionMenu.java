@@ -1,24 +1,34 @@
 package de.dis2023.menu;
 
-import java.util.Iterator;
-import java.util.Set;
-
-import de.dis2023.data.House;
+import de.dis2023.core.EstateRepository;
+import de.dis2023.core.Page;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
 
 /**
- *  A small menu showing all houses from a set for selection
+ *  A small menu showing the houses of an estate agent page by page for selection
  */
-public class HouseSelectionMenu extends Menu {
-	public static final int BACK = -1;
+public class HouseSelectionMenu extends PagedSelectionMenu<EstateSummary> {
+	private EstateRepository service;
+	private EstateAgent manager;
 	
-	public HouseSelectionMenu(String title, Set<House> haeuser) {
+	public HouseSelectionMenu(String title, EstateRepository service, EstateAgent manager) {
 		super(title);
-		
-		Iterator<House> it = haeuser.iterator();
-		while(it.hasNext()) {
-			House h = it.next();
-			addEntry(h.getStreet()+" "+h.getStreetnumber()+", "+h.getPostalcode()+" "+h.getCity(), h.getId());
-		}
-		addEntry("Back", BACK);
+		this.service = service;
+		this.manager = manager;
+	}
+	
+	protected Page<EstateSummary> loadPage(String searchTerm, Page.Cursor cursor, int pageSize) {
+		if(searchTerm != null)
+			return service.searchHouses(manager, searchTerm, cursor, pageSize);
+		return service.getHouseSummaryPage(manager, cursor, pageSize);
+	}
+	
+	protected String getLabel(EstateSummary h) {
+		return h.getStreet()+" "+h.getStreetnumber()+", "+h.getPostalcode()+" "+h.getCity();
+	}
+	
+	protected int getId(EstateSummary h) {
+		return h.getId();
 	}
 }
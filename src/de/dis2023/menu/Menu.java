@@ -1,10 +1,9 @@
 package de.dis2023.menu;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 
+import de.dis2023.util.FormUtil;
+
 /**
  * Small helper class for menus Previously, menu options must be 
  * added using addEntry. The show() method displays the menu and 
@@ -48,7 +47,26 @@ public class Menu {
 	 */
 	public void addEntry(String label, int returnValue) {
 		this.labels.add(label);
-		this.returnValues.add(new Integer(returnValue));
+		this.returnValues.add(Integer.valueOf(returnValue));
+	}
+	
+	/**
+	 * Removes all entries, e.g. before the entries of the next page are added
+	 */
+	protected void clearEntries() {
+		this.labels.clear();
+		this.returnValues.clear();
+	}
+	
+	/**
+	 * Prints the title and the entries without waiting for a selection
+	 */
+	public void print() {
+		System.out.println(title+":");
+		
+		for(int i = 0; i < labels.size(); ++i) {
+			System.out.println("["+(i+1)+"] "+labels.get(i));
+		}
 	}
 	
 	/**
@@ -59,22 +77,15 @@ public class Menu {
 		int selection = -1;
 		
 		System.out.println();
-		BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
 		
 		while(selection == -1) {
-			System.out.println(title+":");
-			
-			for(int i = 0; i < labels.size(); ++i) {
-				System.out.println("["+(i+1)+"] "+labels.get(i));
-			}
+			print();
 			
 			System.out.print("-- ");
 			try {
-				selection = Integer.parseInt(stdin.readLine());
+				selection = Integer.parseInt(FormUtil.readLine().trim());
 			} catch (NumberFormatException e) {
 			
-			} catch (IOException e) {
-				
 			}
 			
 			if(selection < 1 || selection > returnValues.size()) {
@@ -0,0 +1,104 @@
+package de.dis2023.menu;
+
+import de.dis2023.core.Page;
+import de.dis2023.util.FormUtil;
+
+/**
+ * A selection menu that shows a long list page by page. Only the entries 
+ * of the current page are loaded, further pages are loaded when the user 
+ * selects "Next page", "Previous page" or jumps to an id. With "Search"
+ * only the entries matching a search term are shown.
+ */
+public abstract class PagedSelectionMenu<T> extends Menu {
+	public static final int BACK = -1;
+	public static final int PAGE_SIZE = 20;
+	
+	private static final int NEXT = -2;
+	private static final int PREVIOUS = -3;
+	private static final int JUMP = -4;
+	private static final int SEARCH = -5;
+	private static final int SHOW_ALL = -6;
+	
+	private int pageSize;
+	
+	public PagedSelectionMenu(String title) {
+		this(title, PAGE_SIZE);
+	}
+	
+	public PagedSelectionMenu(String title, int pageSize) {
+		super(title);
+		this.pageSize = pageSize;
+	}
+	
+	/**
+	 * Loads a page of the list
+	 * @param searchTerm Only entries matching the term are loaded, null for all entries
+	 * @param cursor Position of the page
+	 * @param pageSize Maximum number of entries
+	 */
+	protected abstract Page<T> loadPage(String searchTerm, Page.Cursor cursor, int pageSize);
+	
+	/**
+	 * Returns the text of an entry
+	 */
+	protected abstract String getLabel(T item);
+	
+	/**
+	 * Returns the id of an entry, it is returned by show() when the entry is selected
+	 */
+	protected abstract int getId(T item);
+	
+	/**
+	 * Displays the pages until an entry or "Back" is selected
+	 * @return The id of the selected entry or BACK
+	 */
+	public int show() {
+		Page.Cursor cursor = Page.Cursor.first();
+		String searchTerm = null;
+		
+		while(true) {
+			Page<T> page = loadPage(searchTerm, cursor, pageSize);
+			
+			clearEntries();
+			for(T item : page.getItems()) {
+				addEntry(getLabel(item), getId(item));
+			}
+			if(page.hasNext())
+				addEntry("Next page", NEXT);
+			if(page.hasPrevious())
+				addEntry("Previous page", PREVIOUS);
+			if(page.hasNext() || page.hasPrevious())
+				addEntry("Jump to id", JUMP);
+			addEntry("Search", SEARCH);
+			if(searchTerm != null)
+				addEntry("Show all (search: "+searchTerm+")", SHOW_ALL);
+			addEntry("Back", BACK);
+			
+			int selection = super.show();
+			switch(selection) {
+				case NEXT:
+					cursor = page.getNextCursor();
+					break;
+				case PREVIOUS:
+					cursor = page.getPreviousCursor();
+					break;
+				case JUMP:
+					//The page starts with the given id or the next larger one
+					cursor = Page.Cursor.after(FormUtil.readInt("Id") - 1);
+					break;
+				case SEARCH:
+					searchTerm = FormUtil.readString("Search for");
+					if(searchTerm == null || searchTerm.trim().isEmpty())
+						searchTerm = null;
+					cursor = Page.Cursor.first();
+					break;
+				case SHOW_ALL:
+					searchTerm = null;
+					cursor = Page.Cursor.first();
+					break;
+				default:
+					return selection;
+			}
+		}
+	}
+}
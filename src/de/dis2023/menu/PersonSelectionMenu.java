@@ -1,24 +1,31 @@
 package de.dis2023.menu;
 
-import java.util.Iterator;
-import java.util.Set;
-
+import de.dis2023.core.EstateRepository;
+import de.dis2023.core.Page;
 import de.dis2023.data.Person;
 
 /**
- *  A small menu showing all persons from a set for selection
+ *  A small menu showing all persons page by page for selection
  */
-public class PersonSelectionMenu extends Menu {
-	public static final int BACK = -1;
+public class PersonSelectionMenu extends PagedSelectionMenu<Person> {
+	private EstateRepository service;
 	
-	public PersonSelectionMenu(String title, Set<Person> personen) {
+	public PersonSelectionMenu(String title, EstateRepository service) {
 		super(title);
-		
-		Iterator<Person> it = personen.iterator();
-		while(it.hasNext()) {
-			Person p = it.next();
-			addEntry(p.getFirstname()+" "+p.getName(), p.getId());
-		}
-		addEntry("Back", BACK);
+		this.service = service;
+	}
+	
+	protected Page<Person> loadPage(String searchTerm, Page.Cursor cursor, int pageSize) {
+		if(searchTerm != null)
+			return service.searchPersons(searchTerm, cursor, pageSize);
+		return service.getPersonPage(cursor, pageSize);
+	}
+	
+	protected String getLabel(Person p) {
+		return p.getFirstname()+" "+p.getName();
+	}
+	
+	protected int getId(Person p) {
+		return p.getId();
 	}
 }
@@ -6,46 +6,59 @@ import java.io.InputStreamReader;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.NoSuchElementException;
 
 /**
  * Small helper class for reading in form data
  */
 public class FormUtil {
+	//One reader for all input, a new reader per call would lose the lines it has buffered ahead
+	private static BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
+	
 	/**
-	 * Reads a string from the standard input
-	 * @param label Line that is displayed before the input.
+	 * Returns the reader of the standard input that is shared by all forms and menus
+	 */
+	public static BufferedReader getReader() {
+		return stdin;
+	}
+	
+	/**
+	 * Reads the next line of the standard input
 	 * @return read line
+	 * @throws NoSuchElementException At the end of the input, e.g. when piped input is used up
 	 */
-	public static String readString(String label) {
+	public static String readLine() {
 		String ret = null;
-		BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
-
+		
 		try {
-			System.out.print(label+": ");
 			ret = stdin.readLine();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		
+		if(ret == null)
+			throw new NoSuchElementException("End of input");
 		return ret;
 	}
 	
+	/**
+	 * Reads a string from the standard input
+	 * @param label Line that is displayed before the input.
+	 * @return read line
+	 */
+	public static String readString(String label) {
+		System.out.print(label+": ");
+		return readLine();
+	}
+	
 	/**
 	 * Reads a password from the standard input
 	 * @param label Line that is displayed before the input.
 	 * @return read-in line
 	 */
 	public static String readPassword(String label) {
-		String ret = null;
-		BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
-		
-		try {
-			System.out.print(label+": ");
-			ret = stdin.readLine();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return ret;
+		System.out.print(label+": ");
+		return readLine();
 	}
 	
 	/**
@@ -53,14 +66,8 @@ public class FormUtil {
 	 * @param msg message
 	 */
 	public static void showMessage(String msg) {
-		BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
-		
-		try {
-			System.out.print(msg);
-			stdin.readLine();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		System.out.print(msg);
+		readLine();
 	}
 	
 	/**
@@ -121,25 +128,20 @@ public class FormUtil {
 		String line = null;
 		boolean finished = false;
 		boolean ret = false;
-		BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
 
-		try {
-			while(!finished) {
-				System.out.print(label+" [y/n]: ");
-				line = stdin.readLine().toLowerCase();
-				
-				if(line.equals("y") || line.equals("yes")) {
-					ret = true;
-					finished = true;
-				} else if(line.equals("n") || line.equals("no")) {
-					ret = false;
-					finished = true;
-				} else {
-					System.err.println("Please enter yes or no or y or n!");
-				}
+		while(!finished) {
+			System.out.print(label+" [y/n]: ");
+			line = readLine().toLowerCase();
+			
+			if(line.equals("y") || line.equals("yes")) {
+				ret = true;
+				finished = true;
+			} else if(line.equals("n") || line.equals("no")) {
+				ret = false;
+				finished = true;
+			} else {
+				System.err.println("Please enter yes or no or y or n!");
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
 		
 		return ret;
@@ -1,7 +1,10 @@
 package de.dis2023.util;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 public class Helper {
 	/**
@@ -35,4 +38,29 @@ public class Helper {
 		StringBuilder sb = new StringBuilder(dateFormatter.format(date));
 		return sb.toString();
 	}
+	
+	/**
+	 * Splits a collection into lists of at most the given size, 
+	 * e.g. to keep IN lists below the parameter limit of the database
+	 * @param values The values to split
+	 * @param size Maximum size of a part
+	 * @return The parts in the iteration order of the collection
+	 */
+	public static <T> List<List<T>> partition(Collection<T> values, int size) {
+		List<List<T>> parts = new ArrayList<List<T>>();
+		List<T> part = new ArrayList<T>(Math.min(size, values.size()));
+		
+		for(T value : values) {
+			if(part.size() == size) {
+				parts.add(part);
+				part = new ArrayList<T>(size);
+			}
+			part.add(value);
+		}
+		
+		if(!part.isEmpty())
+			parts.add(part);
+		
+		return parts;
+	}
 }
@@ -0,0 +1,273 @@
+package de.dis2023.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams flat records from a CSV or JSON file. Every record is returned as
+ * a map from the lower-cased field name to its value, so the importer does
+ * not need to care about the input format.
+ *
+ * CSV files need a header line, fields may be quoted with "..." (embedded
+ * quotes are written as ""). JSON files contain either a top-level array
+ * of flat objects or one object per line. Only one record is held in memory
+ * at a time.
+ */
+public abstract class RecordReader implements Iterator<Map<String, String>>, Closeable {
+	protected final Reader in;
+	private Map<String, String> next;
+	private boolean finished = false;
+
+	protected RecordReader(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * Opens a file, the format is chosen by the file extension (.json or .jsonl
+	 * for JSON, everything else is read as CSV). "-" reads CSV from stdin.
+	 * @param file Path of the file
+	 * @return A reader for the records of the file
+	 */
+	public static RecordReader open(String file) throws IOException {
+		Reader reader;
+		if(file.equals("-"))
+			reader = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+		else
+			reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+
+		String lower = file.toLowerCase();
+		if(lower.endsWith(".json") || lower.endsWith(".jsonl"))
+			return new JsonRecordReader(reader);
+		return new CsvRecordReader(reader);
+	}
+
+	/**
+	 * Reads JSON records from a stream, e.g. the body of a HTTP request
+	 * @param in The JSON, one flat object, an array of them or one per line
+	 */
+	public static RecordReader json(Reader in) {
+		return new JsonRecordReader(in);
+	}
+
+	/**
+	 * Reads the next record
+	 * @return The record or null at the end of the input
+	 */
+	protected abstract Map<String, String> readRecord() throws IOException;
+
+	public boolean hasNext() {
+		if(next == null && !finished) {
+			try {
+				next = readRecord();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			finished = (next == null);
+		}
+		return next != null;
+	}
+
+	public Map<String, String> next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+
+		Map<String, String> ret = next;
+		next = null;
+		return ret;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * CSV with header line
+	 */
+	private static class CsvRecordReader extends RecordReader {
+		private BufferedReader lines;
+		private List<String> header;
+
+		CsvRecordReader(Reader in) {
+			super(in);
+			this.lines = new BufferedReader(in);
+		}
+
+		protected Map<String, String> readRecord() throws IOException {
+			String line;
+			if(header == null) {
+				line = lines.readLine();
+				if(line == null)
+					return null;
+				header = new ArrayList<String>();
+				for(String column : split(line))
+					header.add(column.trim().toLowerCase());
+			}
+
+			//Skip empty lines
+			do {
+				line = lines.readLine();
+			} while(line != null && line.trim().isEmpty());
+
+			if(line == null)
+				return null;
+
+			List<String> fields = split(line);
+			Map<String, String> record = new HashMap<String, String>();
+			for(int i = 0; i < header.size() && i < fields.size(); ++i)
+				record.put(header.get(i), fields.get(i));
+			return record;
+		}
+
+		private static List<String> split(String line) {
+			List<String> fields = new ArrayList<String>();
+			StringBuilder field = new StringBuilder();
+			boolean quoted = false;
+
+			for(int i = 0; i < line.length(); ++i) {
+				char c = line.charAt(i);
+				if(quoted) {
+					if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						field.append('"');
+						++i;
+					} else if(c == '"') {
+						quoted = false;
+					} else {
+						field.append(c);
+					}
+				} else if(c == '"') {
+					quoted = true;
+				} else if(c == ',') {
+					fields.add(field.toString());
+					field.setLength(0);
+				} else {
+					field.append(c);
+				}
+			}
+			fields.add(field.toString());
+			return fields;
+		}
+	}
+
+	/**
+	 * JSON array of flat objects or one object per line
+	 */
+	private static class JsonRecordReader extends RecordReader {
+		private int peeked = -2;
+
+		JsonRecordReader(Reader in) {
+			super(in.markSupported() ? in : new BufferedReader(in));
+		}
+
+		protected Map<String, String> readRecord() throws IOException {
+			int c = skipSeparators();
+			if(c == -1)
+				return null;
+			if(c != '{')
+				throw new IOException("Expected '{' but found '"+(char) c+"'");
+
+			Map<String, String> record = new HashMap<String, String>();
+			c = skipWhitespace();
+			while(c != '}') {
+				if(c != '"')
+					throw new IOException("Expected field name");
+				String key = readString().toLowerCase();
+				if(skipWhitespace() != ':')
+					throw new IOException("Expected ':' after \""+key+"\"");
+				record.put(key, readValue());
+
+				c = skipWhitespace();
+				if(c == ',')
+					c = skipWhitespace();
+				else if(c != '}')
+					throw new IOException("Expected ',' or '}' in object");
+			}
+			return record;
+		}
+
+		private String readValue() throws IOException {
+			int c = skipWhitespace();
+			if(c == '"')
+				return readString();
+			if(c == '{' || c == '[')
+				throw new IOException("Nested values are not supported");
+
+			StringBuilder sb = new StringBuilder();
+			while(c != -1 && c != ',' && c != '}' && !Character.isWhitespace(c)) {
+				sb.append((char) c);
+				c = read();
+			}
+			peeked = c;
+
+			String value = sb.toString();
+			return value.equals("null") ? null : value;
+		}
+
+		private String readString() throws IOException {
+			StringBuilder sb = new StringBuilder();
+			int c;
+			while((c = read()) != '"') {
+				if(c == -1)
+					throw new IOException("Unterminated string");
+				if(c == '\\') {
+					c = read();
+					switch(c) {
+						case 'n': sb.append('\n'); break;
+						case 't': sb.append('\t'); break;
+						case 'r': sb.append('\r'); break;
+						case 'b': sb.append('\b'); break;
+						case 'f': sb.append('\f'); break;
+						case 'u':
+							char[] hex = new char[4];
+							for(int i = 0; i < 4; ++i)
+								hex[i] = (char) read();
+							sb.append((char) Integer.parseInt(new String(hex), 16));
+							break;
+						default: sb.append((char) c);
+					}
+				} else {
+					sb.append((char) c);
+				}
+			}
+			return sb.toString();
+		}
+
+		private int read() throws IOException {
+			if(peeked != -2) {
+				int c = peeked;
+				peeked = -2;
+				return c;
+			}
+			return in.read();
+		}
+
+		private int skipWhitespace() throws IOException {
+			int c;
+			do {
+				c = read();
+			} while(c != -1 && Character.isWhitespace(c));
+			return c;
+		}
+
+		//Skips whitespace and the array brackets and commas between objects
+		private int skipSeparators() throws IOException {
+			int c;
+			do {
+				c = skipWhitespace();
+			} while(c == '[' || c == ']' || c == ',');
+			return c;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package de.dis2023.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for tasks that mostly wait for the database or the network.
+ * On JDK 21 or newer every task runs on its own virtual thread, on older
+ * JDKs the tasks run on a cached pool of daemon threads. The application
+ * is built for JDK 17, so the virtual threads are looked up at runtime.
+ */
+public class TaskExecutors {
+	private static final MethodHandle VIRTUAL_THREAD_EXECUTOR = virtualThreadExecutor();
+
+	/**
+	 * Creates an executor that starts a thread for every task
+	 * @param name Name of the threads if they are platform threads
+	 */
+	public static ExecutorService newTaskExecutor(String name) {
+		if(VIRTUAL_THREAD_EXECUTOR != null) {
+			try {
+				return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invokeExact();
+			} catch (Throwable e) {
+				throw new IllegalStateException("Virtual threads could not be started", e);
+			}
+		}
+
+		AtomicInteger threads = new AtomicInteger();
+		return Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(task, name + "-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Stops accepting tasks and waits until all submitted tasks are done
+	 */
+	public static void shutdownAndWait(ExecutorService executor) {
+		executor.shutdown();
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					if(executor.awaitTermination(1, TimeUnit.DAYS))
+						return;
+				} catch (InterruptedException e) {
+					if(!interrupted)
+						executor.shutdownNow();
+					interrupted = true;
+				}
+			}
+		} finally {
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private static MethodHandle virtualThreadExecutor() {
+		try {
+			return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+					MethodType.methodType(ExecutorService.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+}
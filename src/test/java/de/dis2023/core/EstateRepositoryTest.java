@@ -0,0 +1,478 @@
+package de.dis2023.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.dis2023.authentication.EstateAgentAuthenticator;
+import de.dis2023.authentication.LoginSessions;
+import de.dis2023.data.Apartment;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.EstateSummary;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+
+/**
+ * Behaviour every EstateRepository shares, the subclasses run it against
+ * one implementation each
+ */
+abstract class EstateRepositoryTest {
+	protected EstateRepository repository;
+
+	/**
+	 * Creates an empty repository
+	 */
+	protected abstract EstateRepository createRepository();
+
+	@BeforeEach
+	void create() {
+		repository = createRepository();
+	}
+
+	@AfterEach
+	void close() {
+		repository.close();
+	}
+
+	protected EstateAgent agent(String login) {
+		EstateAgent ea = new EstateAgent();
+		ea.setName("Agent " + login);
+		ea.setAddress("Am Informatikum 9");
+		ea.setLogin(login);
+		ea.setPassword("secret");
+		repository.addEstateAgent(ea);
+		return ea;
+	}
+
+	protected Person person(String name) {
+		Person p = new Person();
+		p.setFirstname("Erika");
+		p.setName(name);
+		p.setAddress("Informatikum");
+		repository.addPerson(p);
+		return p;
+	}
+
+	protected House house(EstateAgent manager, String city) {
+		House h = new House();
+		h.setCity(city);
+		h.setPostalcode(22527);
+		h.setStreet("Vogt-Kölln-Street");
+		h.setStreetnumber("2a");
+		h.setPrice(100000);
+		h.setManager(manager);
+		repository.addHouse(h);
+		return h;
+	}
+
+	protected Apartment apartment(EstateAgent manager) {
+		Apartment w = new Apartment();
+		w.setCity("Berlin");
+		w.setPostalcode(10115);
+		w.setStreet("Invalidenstraße");
+		w.setStreetnumber("3");
+		w.setRent(790);
+		w.setManager(manager);
+		repository.addApartment(w);
+		return w;
+	}
+
+	protected PurchaseContract purchaseContract(House h, Person p) {
+		PurchaseContract pc = new PurchaseContract();
+		pc.setHouse(h);
+		pc.setContractPartner(p);
+		pc.setContractNo(9234);
+		pc.setDate(new Date());
+		pc.setPlace("Hamburg");
+		pc.setNoOfInstallments(5);
+		pc.setIntrestRate(4);
+		repository.addPurchaseContract(pc);
+		return pc;
+	}
+
+	protected TenancyContract tenancyContract(Apartment w, Person p) {
+		TenancyContract tc = new TenancyContract();
+		tc.setApartment(w);
+		tc.setContractPartner(p);
+		tc.setContractNo(23112);
+		tc.setDate(new Date());
+		tc.setPlace("Berlin");
+		tc.setStartDate(new Date());
+		tc.setDuration(36);
+		tc.setAdditionalCosts(65);
+		repository.addTenancyContract(tc);
+		return tc;
+	}
+
+	@Test
+	void findsAgentsByIdAndLogin() {
+		EstateAgent ea = agent("max");
+
+		assertEquals("max", repository.getEstateAgentByID(ea.getId()).getLogin());
+		assertEquals(ea.getId(), repository.getEstateAgentByLogin("max").getId());
+		assertEquals("secret", repository.getAgentCredentials("max").getPassword());
+		assertNull(repository.getEstateAgentByLogin("eva"));
+		assertNull(repository.getAgentCredentials("eva"));
+		assertEquals(1, repository.getAllEstateAgents().size());
+	}
+
+	@Test
+	void loginIsUnique() {
+		agent("max");
+		assertThrows(RuntimeException.class, () -> agent("max"));
+		assertEquals(1, repository.getAllEstateAgents().size());
+	}
+
+	@Test
+	void returnsDetachedCopies() {
+		House h = house(agent("max"), "Hamburg");
+		House copy = repository.getHouseById(h.getId());
+		copy.setPrice(5);
+
+		assertEquals(100000, repository.getHouseById(h.getId()).getPrice());
+	}
+
+	@Test
+	void updateChecksTheVersion() {
+		Person p = person("Mustermann");
+		Person first = repository.getPersonById(p.getId());
+		Person second = repository.getPersonById(p.getId());
+
+		first.setName("Albers");
+		repository.updateInstance(first);
+		assertEquals(first.getVersion(), repository.getPersonById(p.getId()).getVersion());
+		assertNotEquals(second.getVersion(), first.getVersion());
+
+		second.setName("Other");
+		assertThrows(EditConflictException.class, () -> repository.updateInstance(second));
+		assertEquals("Albers", repository.getPersonById(p.getId()).getName());
+	}
+
+	@Test
+	void updateOfADeletedRowConflicts() {
+		House h = house(agent("max"), "Hamburg");
+		repository.deleteHouse(h);
+		h.setPrice(5);
+		assertThrows(EditConflictException.class, () -> repository.updateInstance(h));
+	}
+
+	@Test
+	void deleteChecksTheVersion() {
+		Person p = person("Mustermann");
+		Person changed = repository.getPersonById(p.getId());
+		changed.setName("Albers");
+		repository.updateInstance(changed);
+
+		assertThrows(EditConflictException.class, () -> repository.deletePerson(p));
+		assertEquals("Albers", repository.getPersonById(p.getId()).getName());
+		repository.deletePerson(changed);
+		assertNull(repository.getPersonById(p.getId()));
+		assertThrows(EditConflictException.class, () -> repository.deletePerson(changed));
+	}
+
+	@Test
+	void deleteOfAChangedEstateOrContractConflicts() {
+		EstateAgent max = agent("max");
+		Person p = person("Albers");
+		House h = house(max, "Hamburg");
+		PurchaseContract pc = purchaseContract(h, p);
+		Apartment w = apartment(max);
+		TenancyContract tc = tenancyContract(w, p);
+
+		House changedHouse = repository.getHouseById(h.getId());
+		changedHouse.setPrice(5);
+		repository.updateInstance(changedHouse);
+		assertThrows(EditConflictException.class, () -> repository.deleteHouse(h));
+		//The contract of the house is kept as well
+		assertEquals(1, repository.getAllPurchaseContractsForEstateAgent(max).size());
+
+		Apartment changedApartment = repository.getApartmentByID(w.getId());
+		changedApartment.setRent(5);
+		repository.updateInstance(changedApartment);
+		assertThrows(EditConflictException.class, () -> repository.deleteApartment(w));
+		assertEquals(1, repository.getAllTenancyContractsForEstateAgent(max).size());
+
+		PurchaseContract changedPurchase = repository.getPurchaseContractById(pc.getId());
+		changedPurchase.setPlace("Kiel");
+		repository.updateInstance(changedPurchase);
+		assertThrows(EditConflictException.class, () -> repository.deletePurchaseContract(pc));
+
+		TenancyContract changedTenancy = repository.getTenancyContractByID(tc.getId());
+		changedTenancy.setPlace("Kiel");
+		repository.updateInstance(changedTenancy);
+		assertThrows(EditConflictException.class, () -> repository.deleteTenancyContract(tc));
+
+		repository.deleteTenancyContract(changedTenancy);
+		assertThrows(EditConflictException.class, () -> repository.deleteTenancyContract(changedTenancy));
+		repository.deletePurchaseContract(changedPurchase);
+		assertEquals(1, repository.deleteHouse(changedHouse).getHouses());
+		assertThrows(EditConflictException.class, () -> repository.deleteHouse(changedHouse));
+	}
+
+	@Test
+	void pagesThePersons() {
+		for (int i = 0; i < 25; i++)
+			person("Name" + i);
+
+		Page<Person> page = repository.getPersonPage(Page.Cursor.first(), 10);
+		assertEquals(10, page.getItems().size());
+		assertFalse(page.hasPrevious());
+		page = repository.getPersonPage(page.getNextCursor(), 10);
+		page = repository.getPersonPage(page.getNextCursor(), 10);
+		assertEquals(5, page.getItems().size());
+		assertFalse(page.hasNext());
+		assertEquals(10, repository.getPersonPage(page.getPreviousCursor(), 10).getItems().size());
+	}
+
+	@Test
+	void searchesPersonsAndEstates() {
+		EstateAgent max = agent("max");
+		EstateAgent eva = agent("eva");
+		person("Mustermann");
+		person("Albers");
+		house(max, "Hamburg");
+		house(eva, "Hamburg");
+		house(max, "Kiel");
+
+		assertEquals(1, repository.searchPersons("erika must", Page.Cursor.first(), 10).getItems().size());
+		assertEquals(2, repository.searchPersons("erika", Page.Cursor.first(), 10).getItems().size());
+		assertEquals(1, repository.searchHouses(max, "hamburg vogt", Page.Cursor.first(), 10).getItems().size());
+		assertEquals(1, repository.searchHouses(max, "kiel", Page.Cursor.first(), 10).getItems().size());
+		assertTrue(repository.searchHouses(eva, "kiel", Page.Cursor.first(), 10).isEmpty());
+	}
+
+	@Test
+	void listsTheEstatesOfAnAgentInIdOrder() {
+		EstateAgent max = agent("max");
+		for (int i = 0; i < 5; i++)
+			house(max, "Hamburg");
+		apartment(max);
+		house(agent("eva"), "Kiel");
+
+		List<EstateSummary> houses = repository.getHouseSummariesForEstateAgent(max);
+		assertEquals(5, houses.size());
+		for (int i = 1; i < houses.size(); i++)
+			assertTrue(houses.get(i - 1).getId() < houses.get(i).getId());
+		assertEquals(5, repository.getAllHousesForEstateAgent(max).size());
+		assertEquals(1, repository.getAllApartmentsForEstateAgent(max).size());
+
+		Page<EstateSummary> page = repository.getHouseSummaryPage(max, Page.Cursor.first(), 3);
+		assertEquals(houses.subList(0, 3).get(2).getId(), page.getItems().get(2).getId());
+		assertEquals(2, repository.getHouseSummaryPage(max, page.getNextCursor(), 3).getItems().size());
+	}
+
+	@Test
+	void contractsReferenceTheirEstateAndPartner() {
+		EstateAgent max = agent("max");
+		Person p = person("Albers");
+		Apartment w = apartment(max);
+		TenancyContract tc = tenancyContract(w, p);
+		purchaseContract(house(max, "Hamburg"), p);
+
+		TenancyContract stored = repository.getTenancyContractByID(tc.getId());
+		assertEquals(w.getId(), stored.getApartment().getId());
+		assertEquals("Albers", stored.getContractPartner().getName());
+		assertEquals(1, repository.getAllTenancyContractsForEstateAgent(max).size());
+		assertEquals(1, repository.getAllPurchaseContractsForEstateAgent(max).size());
+	}
+
+	@Test
+	void contractsWithTheSameNumberAreDistinct() {
+		EstateAgent max = agent("max");
+		Person p = person("Albers");
+		Date date = new Date(1700000000000L);
+		TenancyContract first = tenancyContract(apartment(max), p);
+		TenancyContract second = tenancyContract(apartment(max), p);
+		for (TenancyContract tc : List.of(first, second)) {
+			TenancyContract stored = repository.getTenancyContractByID(tc.getId());
+			stored.setContractNo(0);
+			stored.setDate(date);
+			repository.updateInstance(stored);
+		}
+
+		assertEquals(2, repository.getAllTenancyContractsForEstateAgent(max).size());
+		assertNotEquals(repository.getTenancyContractByID(first.getId()), repository.getTenancyContractByID(second.getId()));
+	}
+
+	@Test
+	void anEstateHasOneContract() {
+		EstateAgent max = agent("max");
+		House h = house(max, "Hamburg");
+		purchaseContract(h, person("Mustermann"));
+
+		assertThrows(RuntimeException.class, () -> purchaseContract(h, person("Albers")));
+		assertEquals(1, repository.getAllPurchaseContractsForEstateAgent(max).size());
+	}
+
+	@Test
+	void aPartnerOfAContractIsKept() {
+		Person p = person("Albers");
+		TenancyContract tc = tenancyContract(apartment(agent("max")), p);
+
+		assertThrows(RuntimeException.class, () -> repository.deletePerson(p));
+		repository.deleteTenancyContract(tc);
+		repository.deletePerson(p);
+		assertNull(repository.getPersonById(p.getId()));
+	}
+
+	@Test
+	void deletesAnAgentWithItsEstatesAndContracts() {
+		EstateAgent max = agent("max");
+		Person p = person("Albers");
+		House h = house(max, "Hamburg");
+		purchaseContract(h, p);
+		tenancyContract(apartment(max), p);
+		apartment(max);
+
+		DeleteResult result = repository.deleteEstateAgent(max);
+		assertEquals(1, result.getEstateAgents());
+		assertEquals(1, result.getHouses());
+		assertEquals(2, result.getApartments());
+		assertEquals(1, result.getPurchaseContracts());
+		assertEquals(1, result.getTenancyContracts());
+		assertNull(repository.getEstateAgentByLogin("max"));
+		assertNull(repository.getHouseById(h.getId()));
+		assertTrue(repository.searchHouses(max, "hamburg", Page.Cursor.first(), 10).isEmpty());
+		assertEquals(1, repository.getAllPersons().size());
+	}
+
+	@Test
+	void deletingAnEstateCountsItsContract() {
+		EstateAgent max = agent("max");
+		Person p = person("Albers");
+		House h = house(max, "Hamburg");
+		purchaseContract(h, p);
+		Apartment rented = apartment(max);
+		tenancyContract(rented, p);
+		Apartment empty = apartment(max);
+
+		DeleteResult result = repository.deleteHouse(h);
+		assertEquals(1, result.getHouses());
+		assertEquals(1, result.getPurchaseContracts());
+		assertEquals(0, result.getApartments());
+		result = repository.deleteApartment(rented);
+		assertEquals(1, result.getApartments());
+		assertEquals(1, result.getTenancyContracts());
+		assertEquals(0, repository.deleteApartment(empty).getTenancyContracts());
+
+		assertTrue(repository.getAllPurchaseContractsForEstateAgent(max).isEmpty());
+		assertTrue(repository.getAllTenancyContractsForEstateAgent(max).isEmpty());
+		assertEquals(1, repository.getAllPersons().size());
+	}
+
+	@Test
+	void bulkDeleteCountsOnlyTheRowsOfTheAgent() {
+		EstateAgent max = agent("max");
+		EstateAgent eva = agent("eva");
+		Person p = person("Albers");
+		for (int i = 0; i < 3; i++) {
+			House h = house(max, "Hamburg");
+			if (i > 0)
+				purchaseContract(h, p);
+		}
+		tenancyContract(apartment(max), p);
+		apartment(max);
+		purchaseContract(house(eva, "Kiel"), p);
+		tenancyContract(apartment(eva), p);
+
+		DeleteResult result = repository.deleteEstateAgent(max);
+		assertEquals(1, result.getEstateAgents());
+		assertEquals(3, result.getHouses());
+		assertEquals(2, result.getPurchaseContracts());
+		assertEquals(2, result.getApartments());
+		assertEquals(1, result.getTenancyContracts());
+		assertEquals(0, result.getReassignedHouses() + result.getReassignedApartments());
+
+		assertEquals(1, repository.getAllHousesForEstateAgent(eva).size());
+		assertEquals(1, repository.getAllApartmentsForEstateAgent(eva).size());
+		assertEquals(1, repository.getAllPurchaseContractsForEstateAgent(eva).size());
+		assertEquals(1, repository.getAllTenancyContractsForEstateAgent(eva).size());
+
+		EstateAgent successor = agent("successor");
+		result = repository.deleteEstateAgent(eva, successor);
+		assertEquals(1, result.getEstateAgents());
+		assertEquals(1, result.getReassignedHouses());
+		assertEquals(1, result.getReassignedApartments());
+		assertEquals(0, result.getHouses() + result.getApartments() + result.getPurchaseContracts() + result.getTenancyContracts());
+		assertEquals(1, repository.getAllPurchaseContractsForEstateAgent(successor).size());
+	}
+
+	@Test
+	void handsTheEstatesOverToASuccessor() {
+		EstateAgent max = agent("max");
+		EstateAgent eva = agent("eva");
+		House h = house(max, "Hamburg");
+		tenancyContract(apartment(max), person("Albers"));
+
+		DeleteResult result = repository.deleteEstateAgent(max, eva);
+		assertEquals(1, result.getReassignedHouses());
+		assertEquals(1, result.getReassignedApartments());
+		assertEquals(eva.getId(), repository.getHouseById(h.getId()).getManager().getId());
+		assertEquals(1, repository.getAllTenancyContractsForEstateAgent(eva).size());
+		assertEquals(1, repository.searchHouses(eva, "hamburg", Page.Cursor.first(), 10).getItems().size());
+		assertThrows(IllegalArgumentException.class, () -> repository.deleteEstateAgent(eva, eva));
+	}
+
+	@Test
+	void changedCredentialsCloseTheSessionsOfTheAgent() {
+		EstateAgent max = agent("max");
+		EstateAgent eva = agent("eva");
+		LoginSessions sessions = new LoginSessions();
+		EstateAgentAuthenticator authenticator = new EstateAgentAuthenticator(repository, sessions);
+		String maxToken = authenticator.login("max", "secret");
+		String evaToken = authenticator.login("eva", "secret");
+
+		EstateAgent stored = repository.getEstateAgentByID(max.getId());
+		stored.setName("Max Mustermann");
+		repository.updateInstance(stored);
+		assertEquals(max.getId(), sessions.get(maxToken).getId());
+
+		stored.setPassword("changed");
+		repository.updateInstance(stored);
+		assertNull(sessions.get(maxToken));
+		assertNull(authenticator.login("max", "secret"));
+
+		maxToken = authenticator.login("max", "changed");
+		stored.setLogin("maximilian");
+		repository.updateInstance(stored);
+		assertNull(sessions.get(maxToken));
+
+		repository.deleteEstateAgent(eva);
+		assertNull(sessions.get(evaToken));
+	}
+
+	@Test
+	void inTransactionReturnsTheResultOfTheWork() {
+		EstateAgent max = agent("max");
+		int houses = repository.inTransaction("addHouses", () -> {
+			house(max, "Hamburg");
+			house(max, "Kiel");
+			return repository.getAllHousesForEstateAgent(max).size();
+		});
+		assertEquals(2, houses);
+	}
+
+	@Test
+	void addsTheTestData() {
+		repository.addTestData();
+
+		EstateAgent max = repository.getEstateAgentByLogin("max");
+		assertEquals(1, repository.getAllHousesForEstateAgent(max).size());
+		assertEquals(2, repository.getAllApartmentsForEstateAgent(max).size());
+		assertEquals(1, repository.getAllTenancyContractsForEstateAgent(max).size());
+		assertEquals(1, repository.getAllPurchaseContractsForEstateAgent(max).size());
+		assertEquals(2, repository.getAllPersons().size());
+	}
+}
@@ -0,0 +1,395 @@
+package de.dis2023.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.exception.LockAcquisitionException;
+import org.junit.jupiter.api.Test;
+
+import de.dis2023.data.Apartment;
+import de.dis2023.data.ChangeRecord;
+import de.dis2023.data.ContractVolume;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.ExpiryRun;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+import de.dis2023.data.PortfolioStatistics;
+import de.dis2023.data.PurchaseContract;
+import de.dis2023.data.TenancyContract;
+
+/**
+ * Runs the tests of the repositories against the EstateService, every test
+ * gets its own in-memory H2 database
+ */
+class EstateServiceTest extends EstateRepositoryTest {
+	//Database of the current test, also opened without the service
+	private String url;
+
+	protected EstateRepository createRepository() {
+		url = "jdbc:h2:mem:test" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+		return openService();
+	}
+
+	//Another service on the database of the test
+	private EstateService openService() {
+		Configuration configuration = new Configuration().configure("hibernate.h2.cfg.xml");
+		configuration.setProperty(AvailableSettings.URL, url);
+		configuration.setProperty(AvailableSettings.SHOW_SQL, "false");
+		return new EstateService(configuration);
+	}
+
+	private EstateService service() {
+		return (EstateService) repository;
+	}
+
+	private ImportResult bulkImport(BulkImporter.Type type, List<Map<String, String>> records) {
+		return service().bulkImport(type, records.iterator(), BulkImporter.DEFAULT_BATCH_SIZE, BulkImporter.DEFAULT_COMMIT_INTERVAL);
+	}
+
+	//Changes the database without the service
+	private void execute(String sql) throws SQLException {
+		try (Connection connection = DriverManager.getConnection(url, "sa", "");
+				Statement statement = connection.createStatement()) {
+			statement.executeUpdate(sql);
+		}
+	}
+
+	private String query(String sql) throws SQLException {
+		try (Connection connection = DriverManager.getConnection(url, "sa", "");
+				Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery(sql)) {
+			return rs.next() ? rs.getString(1) : null;
+		}
+	}
+
+	private void assertPortfolio(EstateAgent ea, long houses, long priceTotal, long sold, long apartments, long rentTotal, long rented) {
+		PortfolioStatistics stats = service().getPortfolioStatistics(ea);
+		assertEquals(houses, stats.getHouses());
+		assertEquals(priceTotal, stats.getHousePriceTotal());
+		assertEquals(sold, stats.getSoldHouses());
+		assertEquals(apartments, stats.getApartments());
+		assertEquals(rentTotal, stats.getApartmentRentTotal());
+		assertEquals(rented, stats.getRentedApartments());
+	}
+
+	@Test
+	void bulkImportInvalidatesTheCachedQueries() {
+		person("Mustermann");
+		agent("max");
+		//Cached query results
+		assertEquals(1, repository.getAllPersons().size());
+		assertEquals(1, repository.getAllEstateAgents().size());
+
+		List<Map<String, String>> persons = new ArrayList<>();
+		for (int i = 0; i < 3; i++)
+			persons.add(Map.of("firstname", "Hans", "name", "Albers" + i, "address", "Reeperbahn " + i));
+		bulkImport(BulkImporter.Type.PERSON, persons);
+		bulkImport(BulkImporter.Type.AGENT, List.of(Map.of("name", "Eva", "address", "Street", "login", "eva", "password", "secret")));
+
+		assertEquals(4, repository.getAllPersons().size());
+		assertEquals(2, repository.getAllEstateAgents().size());
+		assertEquals(1, repository.searchPersons("albers2", Page.Cursor.first(), 10).getItems().size());
+	}
+
+	@Test
+	void closeReleasesTheConnectionPool() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName pool = new ObjectName("com.zaxxer.hikari:type=Pool (estate-pool)");
+		assertTrue(server.isRegistered(pool));
+
+		repository.close();
+		assertFalse(server.isRegistered(pool));
+		assertTrue(server.queryNames(new ObjectName("de.dis2023:type=EstateService,*"), null).isEmpty());
+		//Closed again after the test
+		repository = createRepository();
+	}
+
+	@Test
+	void aRetriedUnitOfWorkAddsItsObjectsAgain() {
+		EstateAgent max = agent("max");
+		House h = new House();
+		h.setCity("Hamburg");
+		h.setStreet("Vogt-Kölln-Street");
+		h.setManager(max);
+		service().setRetryPolicy(3, 0);
+
+		AtomicInteger attempts = new AtomicInteger();
+		repository.inTransaction(() -> {
+			repository.addHouse(h);
+			if (attempts.incrementAndGet() == 1)
+				throw new LockAcquisitionException("Deadlock", new SQLException("Deadlock", "40001"));
+			return null;
+		});
+
+		assertEquals(2, attempts.get());
+		assertEquals(1, repository.getAllHousesForEstateAgent(max).size());
+		assertEquals("Hamburg", repository.getHouseById(h.getId()).getCity());
+	}
+
+	@Test
+	void keepsTheSummaryRowsUpToDate() {
+		EstateAgent max = agent("max");
+		EstateAgent eva = agent("eva");
+		Person p = person("Albers");
+		House h = house(max, "Hamburg");
+		house(max, "Kiel");
+		Apartment w = apartment(max);
+		tenancyContract(w, p);
+		assertPortfolio(max, 2, 200000, 0, 1, 790, 1);
+		assertPortfolio(eva, 0, 0, 0, 0, 0, 0);
+
+		House stored = repository.getHouseById(h.getId());
+		stored.setPrice(150000);
+		repository.updateInstance(stored);
+		purchaseContract(stored, p);
+		assertPortfolio(max, 2, 250000, 1, 1, 790, 1);
+		List<ContractVolume> volumes = service().getContractVolumes(max);
+		assertEquals(1, volumes.size());
+		assertEquals(1, volumes.get(0).getPurchaseContracts());
+		assertEquals(150000, volumes.get(0).getPurchaseVolume());
+		assertEquals(1, volumes.get(0).getTenancyContracts());
+
+		Apartment handedOver = repository.getApartmentByID(w.getId());
+		handedOver.setManager(eva);
+		repository.updateInstance(handedOver);
+		assertPortfolio(max, 2, 250000, 1, 0, 0, 0);
+		assertPortfolio(eva, 0, 0, 0, 1, 790, 1);
+
+		repository.deleteHouse(stored);
+		assertPortfolio(max, 1, 100000, 0, 0, 0, 0);
+		repository.deleteEstateAgent(eva);
+		assertEquals(1, service().getAllPortfolioStatistics().size());
+	}
+
+	@Test
+	void rebuildComputesTheSummaryRowsFromTheEstates() throws SQLException {
+		EstateAgent max = agent("max");
+		House h = house(max, "Hamburg");
+		purchaseContract(h, person("Albers"));
+		tenancyContract(apartment(max), person("Mustermann"));
+		execute("update portfolio_statistics set houses = 7, house_price_total = 0, rented_apartments = 0");
+		execute("delete from contract_volume");
+		assertPortfolio(max, 7, 0, 1, 1, 790, 0);
+
+		service().rebuildPortfolioStatistics();
+		assertPortfolio(max, 1, 100000, 1, 1, 790, 1);
+		assertEquals(1, service().getContractVolumes(max).size());
+		assertEquals(1, service().getContractVolumes(max).get(0).getTenancyContracts());
+	}
+
+	@Test
+	void upgradesTheTablesOfTheFirstMappings() throws SQLException {
+		repository.close();
+		url = "jdbc:h2:mem:hbm2ddl" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+		//Created by hbm2ddl from the first mappings, the contract number is the primary key
+		execute("create table estateagent (id integer generated by default as identity, name varchar(255), address varchar(255), " +
+				"login varchar(255), password varchar(255), primary key (id))");
+		execute("create table person (id integer generated by default as identity, firstname varchar(255), name varchar(255), " +
+				"address varchar(255), primary key (id))");
+		execute("create table house (id integer not null, city varchar(255), postalcode integer, street varchar(255), " +
+				"streetnumber varchar(255), squareArea integer, manager integer, floors integer, price integer, garden boolean, primary key (id))");
+		execute("create table apartment (id integer not null, city varchar(255), postalcode integer, street varchar(255), " +
+				"streetnumber varchar(255), squareArea integer, manager integer, floor integer, rent integer, rooms integer, " +
+				"balcony boolean, kitchen boolean, primary key (id))");
+		execute("create table purchasecontract (id integer, contractNo integer not null, date date, place varchar(255), " +
+				"contractPartner integer, noOfInstallments integer, intrestRate integer, house_id integer, primary key (contractNo))");
+		execute("create table tenancycontract (id integer, contractNo integer not null, date date, place varchar(255), " +
+				"contractPartner integer, startDate date, duration integer, additionalCosts integer, apartment_id integer, primary key (contractNo))");
+		execute("insert into estateagent (id, name, login, password) values (1, 'Max', 'max', 'secret')");
+		execute("insert into person (id, firstname, name) values (1, 'Erika', 'Mustermann')");
+		execute("insert into house values (1, 'Hamburg', 22527, 'Vogt-Kölln-Street', '2a', 120, 1, 2, 100000, true)");
+		execute("insert into apartment values (2, 'Berlin', 10115, 'Invalidenstraße', '3', 60, 1, 1, 790, 2, true, true)");
+		execute("insert into purchasecontract values (null, 7, date '2023-04-01', 'Hamburg', 1, 5, 4, 1)");
+		execute("insert into tenancycontract values (null, 8, date '2023-04-01', 'Berlin', 1, date '2023-05-01', 12, 65, 2)");
+
+		repository = openService();
+		assertEquals(SchemaMigrator.HBM2DDL_UPGRADE, query("select script from schema_version where version = 1"));
+		assertEquals(String.valueOf(SchemaMigrator.MIGRATIONS.length), query("select max(version) from schema_version"));
+		EstateAgent max = repository.getEstateAgentByLogin("max");
+		PurchaseContract pc = repository.getPurchaseContractById(7);
+		assertEquals(1, pc.getHouse().getId());
+		assertEquals("Mustermann", pc.getContractPartner().getName());
+		TenancyContract tc = repository.getTenancyContractByID(8);
+		assertEquals(2, tc.getApartment().getId());
+		assertPortfolio(max, 1, 100000, 1, 1, 790, 1);
+
+		//The sequences start after the existing ids
+		House h = house(max, "Kiel");
+		assertTrue(h.getId() > 2);
+		assertTrue(purchaseContract(h, repository.getPersonById(1)).getId() > 8);
+	}
+
+	@Test
+	void refusesAChangedMigration() throws SQLException {
+		repository.close();
+		execute("update schema_version set checksum = checksum + 1 where version = 2");
+
+		HibernateException e = assertThrows(HibernateException.class, this::openService);
+		assertTrue(e.getMessage().contains(SchemaMigrator.MIGRATIONS[1]));
+		//The unchanged script is accepted again
+		execute("update schema_version set checksum = checksum - 1 where version = 2");
+		repository = openService();
+		assertTrue(repository.getAllEstateAgents().isEmpty());
+	}
+
+	@Test
+	void expiryRunsResumeFromTheStoredPosition() {
+		EstateAgent max = agent("max");
+		Person p = person("Albers");
+		List<Integer> ending = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			Calendar start = Calendar.getInstance();
+			start.add(Calendar.MONTH, -12);
+			start.add(Calendar.DAY_OF_MONTH, i);
+			TenancyContract tc = tenancyContract(apartment(max), p);
+			TenancyContract stored = repository.getTenancyContractByID(tc.getId());
+			stored.setStartDate(start.getTime());
+			stored.setDuration(12);
+			repository.updateInstance(stored);
+			ending.add(tc.getId());
+		}
+		//Not in the window
+		tenancyContract(apartment(max), p);
+
+		List<Integer> processed = new ArrayList<>();
+		int[] failAt = {3};
+		TenancyExpiryScheduler scheduler = new TenancyExpiryScheduler(service(), tc -> {
+			if (processed.size() + 1 == failAt[0])
+				throw new IllegalStateException("Handler failed");
+			processed.add(tc.getId());
+		}, 30, 2);
+
+		ExpiryRun failed = scheduler.runOnce();
+		assertEquals("Handler failed", failed.getError());
+		assertEquals(2, failed.getProcessed());
+		assertEquals(ending.subList(0, 2), processed);
+
+		//The failed batch is repeated, the contracts before it are not processed again
+		failAt[0] = 0;
+		processed.clear();
+		ExpiryRun resumed = scheduler.runOnce();
+		assertNull(resumed.getError());
+		assertEquals(3, resumed.getProcessed());
+		assertEquals(2, resumed.getBatches());
+		assertEquals(ending.subList(2, 5), processed);
+
+		processed.clear();
+		assertEquals(0, scheduler.runOnce().getProcessed());
+		assertTrue(processed.isEmpty());
+		assertEquals(3, service().getExpiryRuns(10).size());
+	}
+
+	private ChangeRelay relay(List<ChangeRecord> delivered, long settleMillis) {
+		return new ChangeRelay(service(), "test", delivered::addAll, 2, settleMillis);
+	}
+
+	@Test
+	void relaysTheChangesAndStoresThePosition() {
+		EstateAgent max = agent("max");
+		House h = house(max, "Hamburg");
+		House stored = repository.getHouseById(h.getId());
+		stored.setPrice(5);
+		repository.updateInstance(stored);
+		repository.deleteHouse(stored);
+
+		List<ChangeRecord> delivered = new ArrayList<>();
+		assertEquals(4, relay(delivered, 0).runOnce());
+		assertEquals(List.of(ChangeRecord.INSERT, ChangeRecord.INSERT, ChangeRecord.UPDATE, ChangeRecord.DELETE),
+				delivered.stream().map(ChangeRecord::getOperation).toList());
+		assertEquals("price", delivered.get(2).getChangedFields());
+		assertEquals(delivered.get(3).getId(), service().getChangeOffset("test"));
+
+		//A new relay of the consumer continues at the stored position
+		delivered.clear();
+		assertEquals(0, relay(delivered, 0).runOnce());
+		person("Albers");
+		assertEquals(1, relay(delivered, 0).runOnce());
+		assertEquals("Person", delivered.get(0).getEntityType());
+	}
+
+	@Test
+	void aFailedBatchIsDeliveredAgain() {
+		person("Albers");
+		ChangeRelay failing = new ChangeRelay(service(), "test", changes -> {
+			throw new IllegalStateException("Consumer failed");
+		}, 10, 0);
+		assertThrows(IllegalStateException.class, failing::runOnce);
+		assertEquals(0, service().getChangeOffset("test"));
+
+		List<ChangeRecord> delivered = new ArrayList<>();
+		assertEquals(1, relay(delivered, 0).runOnce());
+	}
+
+	@Test
+	void waitsForChangesCommittedLater() throws Exception {
+		agent("max");
+		CountDownLatch recorded = new CountDownLatch(1);
+		CountDownLatch commit = new CountDownLatch(1);
+		//Records its change first and commits after the next change
+		CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> repository.inTransaction(() -> {
+			person("Slow");
+			recorded.countDown();
+			try {
+				commit.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		}));
+		try {
+			recorded.await();
+			person("Fast");
+
+			List<ChangeRecord> delivered = new ArrayList<>();
+			ChangeRelay relay = relay(delivered, 60000);
+			assertEquals(1, relay.runOnce());
+			assertEquals("EstateAgent", delivered.get(0).getEntityType());
+
+			commit.countDown();
+			slow.get();
+			assertEquals(2, relay.runOnce());
+			assertEquals(3, delivered.size());
+			assertTrue(delivered.get(1).getId() < delivered.get(2).getId());
+		} finally {
+			commit.countDown();
+		}
+	}
+
+	@Test
+	void passesTheIdsOfRolledBackTransactionsOnceSettled() {
+		assertThrows(IllegalStateException.class, () -> repository.inTransaction(() -> {
+			person("RolledBack");
+			throw new IllegalStateException("Rolled back");
+		}));
+		person("Albers");
+
+		List<ChangeRecord> delivered = new ArrayList<>();
+		assertEquals(0, relay(delivered, 60000).runOnce());
+		assertEquals(1, relay(delivered, 0).runOnce());
+		assertEquals(delivered.get(0).getId(), service().getChangeOffset("test"));
+	}
+}
@@ -0,0 +1,80 @@
+package de.dis2023.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.House;
+import de.dis2023.data.Person;
+
+class InMemoryEstateRepositoryTest extends EstateRepositoryTest {
+	protected EstateRepository createRepository() {
+		return new InMemoryEstateRepository();
+	}
+
+	@Test
+	void constraintViolationsChangeNothing() {
+		EstateAgent max = agent("max");
+		Person p = person("Albers");
+		tenancyContract(apartment(max), p);
+
+		House orphan = new House();
+		orphan.setManager(new EstateAgent());
+		assertThrows(IntegrityViolationException.class, () -> repository.addHouse(orphan));
+		assertThrows(IntegrityViolationException.class, () -> agent("max"));
+		assertThrows(IntegrityViolationException.class, () -> repository.deletePerson(p));
+		assertNotNull(repository.getPersonById(p.getId()));
+		assertEquals(0, repository.getAllHousesForEstateAgent(max).size());
+	}
+
+	@Test
+	void workBeforeAnExceptionIsKept() {
+		EstateAgent max = agent("max");
+		assertThrows(IllegalStateException.class, () -> repository.inTransaction(() -> {
+			house(max, "Hamburg");
+			throw new IllegalStateException();
+		}));
+		assertEquals(1, repository.getAllHousesForEstateAgent(max).size());
+	}
+
+	@Test
+	void parallelWritesAreSerialized() throws Exception {
+		EstateAgent max = agent("max");
+		House shared = house(max, "Hamburg");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Boolean>> updates = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				updates.add(executor.submit(() -> {
+					for (int i = 0; i < 100; i++)
+						house(max, "Kiel");
+					House mine = repository.getHouseById(shared.getId());
+					mine.setPrice(1);
+					try {
+						repository.updateInstance(mine);
+						return true;
+					} catch (EditConflictException e) {
+						return false;
+					}
+				}));
+			}
+
+			int updated = 0;
+			for (Future<Boolean> update : updates)
+				updated += update.get() ? 1 : 0;
+			assertEquals(801, repository.getHouseSummariesForEstateAgent(max).size());
+			assertEquals(updated, repository.getHouseById(shared.getId()).getVersion());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
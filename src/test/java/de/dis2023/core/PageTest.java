@@ -0,0 +1,112 @@
+package de.dis2023.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class PageTest {
+	//Ids 1 to 10 read like the repositories do: at most limit ids after or before the cursor
+	private NavigableSet<Integer> ids = new TreeSet<>(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10));
+
+	private List<Integer> rows(Page.Cursor cursor, int limit) {
+		List<Integer> ret = new ArrayList<>();
+		for (int id : cursor.isForward() ? ids.tailSet(cursor.getKey(), false) : ids.headSet(cursor.getKey(), false).descendingSet()) {
+			if (ret.size() == limit)
+				break;
+			ret.add(id);
+		}
+		return ret;
+	}
+
+	private Page<Integer> page(Page.Cursor cursor, int pageSize) {
+		return Page.of(this::rows, id -> id, cursor, pageSize);
+	}
+
+	@Test
+	void firstPage() {
+		Page<Integer> page = page(Page.Cursor.first(), 4);
+		assertEquals(List.of(1, 2, 3, 4), page.getItems());
+		assertFalse(page.hasPrevious());
+		assertTrue(page.hasNext());
+		assertNull(page.getPreviousCursor());
+	}
+
+	@Test
+	void pagesForwardToTheEnd() {
+		Page<Integer> page = page(Page.Cursor.first(), 4);
+		page = page(page.getNextCursor(), 4);
+		assertEquals(List.of(5, 6, 7, 8), page.getItems());
+		assertTrue(page.hasPrevious());
+		assertTrue(page.hasNext());
+
+		page = page(page.getNextCursor(), 4);
+		assertEquals(List.of(9, 10), page.getItems());
+		assertTrue(page.hasPrevious());
+		assertFalse(page.hasNext());
+		assertNull(page.getNextCursor());
+	}
+
+	@Test
+	void pagesBackwardInIdOrder() {
+		Page<Integer> page = page(Page.Cursor.last(), 4);
+		assertEquals(List.of(7, 8, 9, 10), page.getItems());
+		assertTrue(page.hasPrevious());
+		assertFalse(page.hasNext());
+
+		page = page(page.getPreviousCursor(), 4);
+		assertEquals(List.of(3, 4, 5, 6), page.getItems());
+		assertTrue(page.hasPrevious());
+		assertTrue(page.hasNext());
+		assertEquals(6, page.getNextCursor().getKey());
+	}
+
+	@Test
+	void pagingBeforeTheStartShowsTheFirstPage() {
+		Page<Integer> page = page(Page.Cursor.before(3), 4);
+		assertEquals(List.of(1, 2, 3, 4), page.getItems());
+		assertFalse(page.hasPrevious());
+		assertTrue(page.hasNext());
+	}
+
+	@Test
+	void pagingAfterTheEndShowsTheLastPage() {
+		Page<Integer> page = page(Page.Cursor.after(10), 4);
+		assertEquals(List.of(7, 8, 9, 10), page.getItems());
+		assertTrue(page.hasPrevious());
+		assertFalse(page.hasNext());
+	}
+
+	@Test
+	void deletedRowsAreSkipped() {
+		Page<Integer> page = page(Page.Cursor.first(), 4);
+		ids.removeAll(List.of(5, 6));
+		page = page(page.getNextCursor(), 4);
+		assertEquals(List.of(7, 8, 9, 10), page.getItems());
+		assertFalse(page.hasNext());
+	}
+
+	@Test
+	void emptyList() {
+		ids.clear();
+		Page<Integer> page = page(Page.Cursor.first(), 4);
+		assertTrue(page.isEmpty());
+		assertFalse(page.hasPrevious());
+		assertFalse(page.hasNext());
+		assertEquals(Collections.emptyList(), page.getItems());
+	}
+
+	@Test
+	void pageSizeMustBePositive() {
+		assertThrows(IllegalArgumentException.class, () -> page(Page.Cursor.first(), 0));
+	}
+}
@@ -0,0 +1,158 @@
+package de.dis2023.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class SearchIndexTest {
+	private SearchIndex index = new SearchIndex();
+
+	private List<Integer> search(String query, int group) {
+		return index.search(query, group, Page.Cursor.first(), 100);
+	}
+
+	@Test
+	void everyTermMatchesTheBeginningOfAWord() {
+		index.put(1, SearchIndex.ANY_GROUP, "Vogt-Kölln-Street", "2a", 22527, "Hamburg");
+		index.put(2, SearchIndex.ANY_GROUP, "Reeperbahn", "9", 20359, "Hamburg");
+
+		assertEquals(List.of(1, 2), search("ham", SearchIndex.ANY_GROUP));
+		assertEquals(List.of(1), search("ham vog", SearchIndex.ANY_GROUP));
+		assertEquals(List.of(1), search("KÖLLN", SearchIndex.ANY_GROUP));
+		assertEquals(List.of(), search("burg", SearchIndex.ANY_GROUP));
+		assertEquals(List.of(), search(" - ", SearchIndex.ANY_GROUP));
+	}
+
+	@Test
+	void searchesOnlyTheGroup() {
+		index.put(1, 7, "Hamburg");
+		index.put(2, 8, "Hamburg");
+		index.put(3, 7, "Berlin");
+
+		assertEquals(List.of(1), search("hamburg", 7));
+		assertEquals(List.of(2), search("hamburg", 8));
+		assertEquals(List.of(), search("hamburg", 9));
+		assertEquals(List.of(1, 2), search("hamburg", SearchIndex.ANY_GROUP));
+	}
+
+	@Test
+	void setGroupMovesTheRow() {
+		index.put(1, 7, "Hamburg");
+		index.setGroup(1, 8);
+
+		assertEquals(List.of(), search("hamburg", 7));
+		assertEquals(List.of(1), search("hamburg", 8));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	void putReplacesTheWords() {
+		index.put(1, 7, "Hamburg");
+		index.put(1, 8, "Berlin");
+
+		assertEquals(List.of(), search("hamburg", SearchIndex.ANY_GROUP));
+		assertEquals(List.of(), search("berlin", 7));
+		assertEquals(List.of(1), search("berlin", 8));
+	}
+
+	@Test
+	void removedRowsAreNotFound() {
+		index.put(1, 7, "Hamburg");
+		index.put(2, 7, "Hamburg");
+		index.remove(1);
+
+		assertEquals(List.of(2), search("hamburg", 7));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	void pagesInIdOrder() {
+		for (int id = 1; id <= 10; id++)
+			index.put(id, SearchIndex.ANY_GROUP, "Hamburg", id % 2 == 0 ? "Hafen" : "Harburg");
+
+		assertEquals(List.of(1, 2, 3), index.search("ha", SearchIndex.ANY_GROUP, Page.Cursor.first(), 3));
+		assertEquals(List.of(4, 5, 6), index.search("ha", SearchIndex.ANY_GROUP, Page.Cursor.after(3), 3));
+		assertEquals(List.of(10, 9, 8), index.search("ha", SearchIndex.ANY_GROUP, Page.Cursor.last(), 3));
+		assertEquals(List.of(4, 6, 8), index.search("ham haf", SearchIndex.ANY_GROUP, Page.Cursor.after(2), 3));
+	}
+
+	@Test
+	void buildRunsOnce() {
+		index.build(() -> index.put(1, SearchIndex.ANY_GROUP, "Hamburg"));
+		index.build(() -> index.put(2, SearchIndex.ANY_GROUP, "Hamburg"));
+
+		assertTrue(index.isBuilt());
+		assertEquals(List.of(1), search("hamburg", SearchIndex.ANY_GROUP));
+
+		index.clear();
+		assertFalse(index.isBuilt());
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	void removeDuringBuildIsNotUndone() throws Exception {
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch removing = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			//The build reads row 1, then row 1 is deleted before the build adds it
+			Future<?> build = executor.submit(() -> index.build(() -> {
+				reading.countDown();
+				await(removing);
+				index.put(1, SearchIndex.ANY_GROUP, "Hamburg");
+			}));
+			assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+			Thread remove = new Thread(() -> index.remove(1));
+			remove.start();
+			removing.countDown();
+			remove.join(10_000);
+			build.get(10, TimeUnit.SECONDS);
+
+			assertFalse(remove.isAlive());
+			assertEquals(List.of(), search("hamburg", SearchIndex.ANY_GROUP));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void searchesSeeEveryRowBeforeOrAfterAPut() throws Exception {
+		index.put(1, 7, "Hamburg");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> changes = executor.submit(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					index.put(1, 7, "Hamburg");
+					index.put(1, 8, "Berlin");
+				}
+			});
+			while (!changes.isDone()) {
+				List<Integer> hamburg = search("hamburg", 8);
+				List<Integer> berlin = search("berlin", 7);
+				assertEquals(List.of(), hamburg);
+				assertEquals(List.of(), berlin);
+			}
+			changes.get();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
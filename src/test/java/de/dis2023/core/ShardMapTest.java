@@ -0,0 +1,66 @@
+package de.dis2023.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+class ShardMapTest {
+	@Test
+	void spreadsTheAgentsByTheirId() {
+		ShardMap map = new ShardMap(3);
+		assertEquals(0, map.shardOf(3));
+		assertEquals(1, map.shardOf(4));
+		assertEquals(2, map.shardOf(5));
+	}
+
+	@Test
+	void assignedAgentsStayOnTheirShard() {
+		ShardMap map = new ShardMap(3);
+		map.assign(4, 0);
+		assertEquals(0, map.shardOf(4));
+		assertEquals(2, map.shardOf(5));
+		assertThrows(IllegalArgumentException.class, () -> map.assign(5, 3));
+	}
+
+	@Test
+	void everyShardHasItsOwnIdRange() {
+		ShardMap map = new ShardMap(ShardMap.MAX_SHARDS);
+		assertEquals(1, ShardMap.firstId(0));
+		for (int shard = 0; shard < ShardMap.MAX_SHARDS; shard++) {
+			assertEquals(shard, map.shardOfId(ShardMap.firstId(shard)));
+			if (shard > 0)
+				assertEquals(shard - 1, map.shardOfId(ShardMap.firstId(shard) - 1));
+		}
+	}
+
+	@Test
+	void idsOfMissingShardsAreRejected() {
+		ShardMap map = new ShardMap(2);
+		assertEquals(1, map.shardOfId(ShardMap.firstId(2) - 1));
+		assertThrows(IllegalArgumentException.class, () -> map.shardOfId(ShardMap.firstId(2)));
+		assertThrows(IllegalArgumentException.class, () -> map.shardOfId(-1));
+	}
+
+	@Test
+	void numberOfShardsIsLimited() {
+		assertThrows(IllegalArgumentException.class, () -> new ShardMap(0));
+		assertThrows(IllegalArgumentException.class, () -> new ShardMap(ShardMap.MAX_SHARDS + 1));
+	}
+
+	@Test
+	void loadsFromProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("shards", " 4 ");
+		properties.setProperty("agent.17", "3");
+		properties.setProperty("pool.size", "10");
+
+		ShardMap map = ShardMap.load(properties);
+		assertEquals(4, map.getShardCount());
+		assertEquals(3, map.shardOf(17));
+		assertEquals(2, map.shardOf(18));
+		assertEquals(1, ShardMap.load(new Properties()).getShardCount());
+	}
+}
@@ -0,0 +1,210 @@
+package de.dis2023.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import de.dis2023.authentication.EstateAgentAuthenticator;
+import de.dis2023.authentication.LoginSessions;
+import de.dis2023.data.Apartment;
+import de.dis2023.data.EstateAgent;
+import de.dis2023.data.Person;
+import de.dis2023.data.TenancyContract;
+
+/**
+ * Three shards on embedded H2 files in target/test-shards
+ */
+class ShardedEstateServiceTest {
+	private static final int SHARDS = 3;
+
+	private static ShardMap shardMap;
+	private static ShardedEstateService service;
+
+	@BeforeAll
+	static void open() {
+		String name = "shard" + System.nanoTime();
+		Properties properties = new Properties();
+		properties.setProperty("shards", String.valueOf(SHARDS));
+		for (int k = 0; k < SHARDS; k++) {
+			properties.setProperty("shard." + k + ".config", "hibernate.h2.cfg.xml");
+			properties.setProperty("shard." + k + "." + AvailableSettings.URL, "jdbc:h2:file:./target/test-shards/" + name + "-" + k);
+			properties.setProperty("shard." + k + "." + AvailableSettings.SHOW_SQL, "false");
+		}
+
+		service = ShardedEstateService.load(properties);
+		shardMap = service.getShardMap();
+	}
+
+	@AfterAll
+	static void close() {
+		service.close();
+	}
+
+	private static EstateAgent agent() {
+		EstateAgent ea = new EstateAgent();
+		ea.setName("Max Mustermann");
+		ea.setAddress("Am Informatikum 9");
+		ea.setLogin("max" + System.nanoTime());
+		ea.setPassword("max");
+		service.addEstateAgent(ea);
+		return ea;
+	}
+
+	private static EstateAgent agentOn(int shard) {
+		EstateAgent ea = agent();
+		while (shardMap.shardOf(ea.getId()) != shard)
+			ea = agent();
+		return ea;
+	}
+
+	private static Person person() {
+		Person p = new Person();
+		p.setFirstname("Erika");
+		p.setName("Mustermann");
+		p.setAddress("Informatikum");
+		service.addPerson(p);
+		return p;
+	}
+
+	private static Apartment apartment(EstateAgent manager) {
+		Apartment w = new Apartment();
+		w.setCity("Hamburg");
+		w.setPostalcode(22527);
+		w.setStreet("Vogt-Kölln-Street");
+		w.setStreetnumber("3");
+		w.setSquareArea(120);
+		w.setRent(790);
+		w.setManager(manager);
+		service.addApartment(w);
+		return w;
+	}
+
+	private static TenancyContract contract(Apartment w, Person p, int months) {
+		TenancyContract t = new TenancyContract();
+		t.setApartment(w);
+		t.setContractPartner(p);
+		t.setContractNo((int) (System.nanoTime() % 1000000));
+		t.setDate(new Date());
+		t.setPlace("Hamburg");
+		t.setStartDate(new Date());
+		t.setDuration(months);
+		t.setAdditionalCosts(65);
+		service.addTenancyContract(t);
+		return t;
+	}
+
+	@Test
+	void agentsAndPersonsAreOnEveryShard() {
+		EstateAgent ea = agent();
+		Person p = person();
+		for (int k = 0; k < SHARDS; k++) {
+			assertNotNull(service.getShard(k).getEstateAgentByID(ea.getId()));
+			assertNotNull(service.getShard(k).getPersonById(p.getId()));
+		}
+
+		p.setName("Albers");
+		service.updateInstance(p);
+		for (int k = 0; k < SHARDS; k++)
+			assertEquals("Albers", service.getShard(k).getPersonById(p.getId()).getName());
+	}
+
+	@Test
+	void estatesAndContractsAreOnTheShardOfTheirAgent() {
+		List<EstateAgent> agents = new ArrayList<>();
+		for (int k = 0; k < SHARDS; k++)
+			agents.add(agentOn(k));
+		Person p = person();
+
+		for (EstateAgent ea : agents) {
+			int shard = shardMap.shardOf(ea.getId());
+			Apartment w = apartment(ea);
+			TenancyContract t = contract(w, p, 12);
+			assertEquals(shard, shardMap.shardOfId(w.getId()));
+			assertEquals(shard, shardMap.shardOfId(t.getId()));
+			for (int k = 0; k < SHARDS; k++)
+				assertEquals(k == shard, service.getShard(k).getApartmentByID(w.getId()) != null);
+			assertEquals(w.getId(), service.getTenancyContractByID(t.getId()).getApartment().getId());
+		}
+	}
+
+	@Test
+	void estatesCannotMoveToAnotherShard() {
+		EstateAgent ea = agentOn(0);
+		EstateAgent other = agentOn(1);
+
+		Apartment w = service.getApartmentByID(apartment(ea).getId());
+		w.setManager(other);
+		assertThrows(IllegalArgumentException.class, () -> service.updateInstance(w));
+	}
+
+	@Test
+	void readsOverAllShardsAreMerged() {
+		Person p = person();
+		List<Integer> ids = new ArrayList<>();
+		for (int k = 0; k < SHARDS; k++)
+			ids.add(contract(apartment(agentOn(k)), p, 1200 + k).getId());
+
+		//Only the new contracts end this late
+		Calendar from = Calendar.getInstance();
+		from.add(Calendar.YEAR, 99);
+		Calendar to = Calendar.getInstance();
+		to.add(Calendar.YEAR, 110);
+		List<TenancyContract> ending = service.getTenancyContractsEndingBetween(from.getTime(), to.getTime(), 2);
+		assertEquals(ids.subList(0, 2), List.of(ending.get(0).getId(), ending.get(1).getId()));
+
+		List<TenancyContract> rest = service.getTenancyContractsEndingBetween(ending.get(1), to.getTime(), 10);
+		assertEquals(List.of(ids.get(2)), List.of(rest.get(0).getId()));
+		assertEquals(SHARDS, service.getAllTenancyContractsForIdList(ids).size());
+	}
+
+	@Test
+	void personWithAContractIsKeptOnAllShards() {
+		Person p = person();
+		contract(apartment(agent()), p, 12);
+
+		assertThrows(RuntimeException.class, () -> service.deletePerson(p));
+		for (int k = 0; k < SHARDS; k++)
+			assertNotNull(service.getShard(k).getPersonById(p.getId()));
+	}
+
+	@Test
+	void deletedAgentIsRemovedFromAllShards() {
+		EstateAgent ea = agent();
+		Apartment w = apartment(ea);
+
+		DeleteResult result = service.deleteEstateAgent(ea);
+		assertEquals(1, result.getApartments());
+		assertNull(service.getApartmentByID(w.getId()));
+		for (int k = 0; k < SHARDS; k++)
+			assertNull(service.getShard(k).getEstateAgentByID(ea.getId()));
+	}
+
+	@Test
+	void isUsableAsEstateRepository() {
+		EstateRepository repository = service;
+		EstateAgent ea = agentOn(SHARDS - 1);
+		Apartment w = apartment(ea);
+		LoginSessions sessions = new LoginSessions();
+		EstateAgentAuthenticator authenticator = new EstateAgentAuthenticator(repository, sessions);
+		String token = authenticator.login(ea.getLogin(), "max");
+		assertEquals(ea.getId(), sessions.get(token).getId());
+
+		assertEquals(w.getId(), repository.inTransaction(() -> repository.getApartmentByID(w.getId())).getId());
+		assertEquals(w.getId(), repository.async().getApartmentByID(w.getId()).join().getId());
+
+		repository.deleteEstateAgent(ea);
+		assertNull(sessions.get(token));
+	}
+}